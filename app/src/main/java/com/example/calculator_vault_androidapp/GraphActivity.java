@@ -0,0 +1,73 @@
+package com.example.calculator_vault_androidapp;
+
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.calculator_vault_androidapp.engine.ExpressionEvaluator;
+import com.example.calculator_vault_androidapp.views.GraphView;
+import com.google.android.material.appbar.MaterialToolbar;
+
+/**
+ * Graph mode: plots f(x) as it is typed.
+ */
+public class GraphActivity extends AppCompatActivity {
+
+    private EditText etFunction;
+    private GraphView graphView;
+
+    private final ExpressionEvaluator compiler = new ExpressionEvaluator();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_graph);
+
+        MaterialToolbar toolbar = findViewById(R.id.toolbar);
+        toolbar.setNavigationOnClickListener(v -> finish());
+
+        etFunction = findViewById(R.id.etFunction);
+        graphView = findViewById(R.id.graphView);
+
+        etFunction.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                plot(s.toString());
+            }
+        });
+        plot(etFunction.getText().toString());
+    }
+
+    private void plot(String text) {
+        String body = text.trim();
+        if (body.isEmpty()) {
+            etFunction.setError(null);
+            graphView.setFunction(null);
+            return;
+        }
+        try {
+            graphView.setFunction(compiler.compileFunction(body));
+            etFunction.setError(null);
+        } catch (IllegalArgumentException e) {
+            // Keep the last valid plot while the user is still typing
+            etFunction.setError(e.getMessage());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        graphView.release();
+    }
+}
@@ -16,6 +16,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.calculator_vault_androidapp.adapters.HistoryAdapter;
 import com.example.calculator_vault_androidapp.database.DatabaseHelper;
 import com.example.calculator_vault_androidapp.database.FirebaseHelper;
+import com.example.calculator_vault_androidapp.database.HistoryRecorder;
 import com.example.calculator_vault_androidapp.models.CalculationHistory;
 import com.google.android.gms.auth.api.signin.GoogleSignInClient;
 import com.google.android.material.appbar.MaterialToolbar;
@@ -153,6 +154,13 @@ public class HistoryActivity extends AppCompatActivity {
 
     private void loadHistory() {
         executor.execute(() -> {
+            // Entries queued by the calculator just before it was paused come first
+            try {
+                HistoryRecorder.getInstance(this).awaitWritten();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
             // First load from local database
             List<CalculationHistory> localHistory = dbHelper.getCalculationHistory();
             
@@ -0,0 +1,95 @@
+package com.example.calculator_vault_androidapp;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import com.example.calculator_vault_androidapp.database.DatabaseHelper;
+import com.example.calculator_vault_androidapp.utils.IntegrityScrubber;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the {@link IntegrityScrubber} over the vault while the device is idle.
+ *
+ * The job only starts in idle maintenance windows with the battery not low, and the
+ * scrubber also stops between slices as soon as the screen turns on or the battery runs
+ * low, so it never competes with the UI. Each run resumes from the saved checkpoint, so
+ * a large vault is covered over several days of short windows.
+ */
+public class IntegrityScrubService extends JobService {
+
+    private static final String TAG = "IntegrityScrubService";
+    private static final int JOB_ID = 1001;
+    private static final long PERIOD_MS = 6 * 60 * 60 * 1000L;
+    // Below this charge the scrubber pauses unless the device is charging
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean stopped;
+
+    /**
+     * Schedule the periodic scrub unless it is already scheduled.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) return;
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, IntegrityScrubService.class))
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(PERIOD_MS);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setRequiresBatteryNotLow(true);
+        }
+        scheduler.schedule(builder.build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        stopped = false;
+        PowerManager power = getSystemService(PowerManager.class);
+        BatteryManager battery = getSystemService(BatteryManager.class);
+        IntegrityScrubber scrubber = new IntegrityScrubber(DatabaseHelper.getInstance(this),
+                IntegrityScrubber.DEFAULT_BYTES_PER_SECOND,
+                () -> stopped || power.isInteractive() || isBatteryLow(battery));
+        executor.execute(() -> {
+            boolean finished = false;
+            try {
+                finished = scrubber.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Scrub failed", e);
+            }
+            // A paused pass carries on in the next window from its checkpoint
+            jobFinished(params, !finished && !stopped);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The scrubber sees this before its next slice and saves its checkpoint
+        stopped = true;
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
+    }
+
+    private static boolean isBatteryLow(BatteryManager battery) {
+        return !battery.isCharging()
+                && battery.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) <= LOW_BATTERY_PERCENT;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.calculator_vault_androidapp;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.calculator_vault_androidapp.utils.InputLatencyTracker;
+import com.google.android.material.appbar.MaterialToolbar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Debug screen showing keypad tap-to-frame latency per click handler, with export to a
+ * CSV file. Opened by long-pressing History on the calculator.
+ */
+public class LatencyActivity extends AppCompatActivity {
+
+    private TextView tvReport;
+    private InputLatencyTracker tracker;
+
+    private final ActivityResultLauncher<String> exportLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("text/csv"),
+            uri -> {
+                if (uri != null) {
+                    exportTo(uri);
+                }
+            });
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_latency);
+
+        tracker = InputLatencyTracker.getInstance();
+
+        MaterialToolbar toolbar = findViewById(R.id.toolbar);
+        toolbar.setNavigationOnClickListener(v -> finish());
+
+        tvReport = findViewById(R.id.tvReport);
+        findViewById(R.id.btnReset).setOnClickListener(v -> {
+            tracker.reset();
+            tvReport.setText(tracker.getReport());
+        });
+        findViewById(R.id.btnExport).setOnClickListener(v ->
+                exportLauncher.launch("keypad-latency.csv"));
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        tvReport.setText(tracker.getReport());
+    }
+
+    private void exportTo(Uri uri) {
+        try (OutputStream stream = getContentResolver().openOutputStream(uri)) {
+            if (stream == null) throw new IOException("Cannot open " + uri);
+            Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+            tracker.writeCsv(writer);
+            writer.flush();
+            Toast.makeText(this, "Exported", Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "Export failed", Toast.LENGTH_SHORT).show();
+        }
+    }
+}
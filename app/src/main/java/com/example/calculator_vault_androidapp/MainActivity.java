@@ -1,5 +1,8 @@
 package com.example.calculator_vault_androidapp;
 
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
@@ -9,12 +12,24 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.calculator_vault_androidapp.database.DatabaseHelper;
-import com.example.calculator_vault_androidapp.database.FirebaseHelper;
-import com.example.calculator_vault_androidapp.models.CalculationHistory;
-import com.example.calculator_vault_androidapp.utils.CryptoUtils;
+import com.example.calculator_vault_androidapp.database.HistoryRecorder;
+import com.example.calculator_vault_androidapp.engine.ExpressionBuffer;
+import com.example.calculator_vault_androidapp.engine.ExpressionCache;
+import com.example.calculator_vault_androidapp.engine.NumberFormatter;
+import com.example.calculator_vault_androidapp.engine.PreviewEvaluator;
+import com.example.calculator_vault_androidapp.engine.SuggestionTrie;
+import com.example.calculator_vault_androidapp.utils.CipherSuites;
+import com.example.calculator_vault_androidapp.utils.InputLatencyTracker;
+import com.example.calculator_vault_androidapp.utils.KeyDerivation;
+import com.example.calculator_vault_androidapp.utils.PinMatcher;
 import com.google.android.material.button.MaterialButton;
 
-import java.util.Stack;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Main calculator activity that also serves as the entry point to the hidden vault.
@@ -22,19 +37,41 @@ import java.util.Stack;
  */
 public class MainActivity extends AppCompatActivity implements View.OnClickListener {
 
+    // Number of recent history rows compiled into the expression cache at startup
+    private static final int CACHE_WARM_UP_SIZE = 100;
+    // Characters of the expression shown; longer (pasted) expressions show only their end
+    private static final int DISPLAY_WINDOW = 256;
+    // Longer expressions are shortened before being saved to history
+    private static final int MAX_HISTORY_EXPRESSION_LENGTH = 1000;
+    // Distinct history expressions loaded into the suggestion trie at startup
+    private static final int SUGGESTION_WARM_UP_SIZE = 10000;
+
     private TextView tvDisplay;
     private TextView tvExpression;
+    private TextView tvSuggestion;
     private DatabaseHelper dbHelper;
+    private HistoryRecorder historyRecorder;
+    private ExpressionCache expressionCache;
+    private PreviewEvaluator previewEvaluator;
+    private SuggestionTrie suggestionTrie;
+    private final NumberFormatter numberFormatter = new NumberFormatter();
+    // Tap-to-frame latency per click handler, shown by long-pressing History
+    private final InputLatencyTracker latencyTracker = InputLatencyTracker.getInstance();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
     
-    private StringBuilder expression = new StringBuilder();
-    private StringBuilder currentNumber = new StringBuilder();
-    private boolean hasDecimal = false;
-    private boolean lastWasOperator = false;
+    // Expression being entered, as typed tokens
+    private final ExpressionBuffer expression = new ExpressionBuffer();
+    // Result of the last calculation, used if the user continues from it
+    private String lastResult = "";
     private boolean lastWasEquals = false;
-    private int openParenCount = 0;
 
-    // Store current PIN for vault access (from user input sequence)
-    private StringBuilder pinAttempt = new StringBuilder();
+    // Exact decimal mode: results are computed with BigDecimal (toggle by long-pressing =)
+    private boolean exactMode = true;
+    private MathContext mathContext = MathContext.DECIMAL128;
+
+    // Watches the last five typed digits for the vault PIN
+    private final PinMatcher pinMatcher = PinMatcher.getInstance();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,6 +79,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         setContentView(R.layout.activity_main);
 
         dbHelper = DatabaseHelper.getInstance(this);
+        historyRecorder = HistoryRecorder.getInstance(this);
+        expressionCache = ExpressionCache.getInstance();
+        suggestionTrie = SuggestionTrie.getInstance();
+        previewEvaluator = new PreviewEvaluator(this::runOnUiThread, this::showPreview);
 
         // Check if first time - need to set up PIN
         if (dbHelper.isFirstTime()) {
@@ -52,249 +93,281 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
         // Initialize UI
         initializeUI();
+
+        // Compile recent history in the background so replays skip parsing
+        executor.execute(() ->
+            expressionCache.warmUp(dbHelper.getRecentExpressions(CACHE_WARM_UP_SIZE)));
+        // Suggestions are served from memory; only this load reads the history table
+        if (suggestionTrie.getNodeCount() <= 1) {
+            executor.execute(() ->
+                dbHelper.loadExpressionSuggestions(suggestionTrie, SUGGESTION_WARM_UP_SIZE));
+        }
+        // Read the PIN hashes once their key is loaded; keystrokes never touch the database
+        if (!pinMatcher.isLoaded()) {
+            executor.execute(() -> {
+                dbHelper.getPinVerifier();
+                pinMatcher.loadPinHashes(dbHelper.getProfilePinHashes());
+            });
+        }
+        // Time the PIN key derivation now so unlocking the vault does not pay for it
+        executor.execute(KeyDerivation::getCalibratedIterations);
+        // New files use the faster cipher on this device, benchmarked on first start only
+        executor.execute(this::selectCipherSuite);
+        // Check stored files for corruption in idle windows, long before they are opened
+        IntegrityScrubService.schedule(this);
+        // Files saved by older versions move out of the database into the content store
+        executor.execute(this::tidyContentStore);
+
+        // Text shared to the calculator from another app
+        handleSharedText(getIntent());
+    }
+
+    private void selectCipherSuite() {
+        Integer id = dbHelper.getCipherSuiteId();
+        if (id == null || !CipherSuites.setSelected(CipherSuites.byId(id))) {
+            dbHelper.setCipherSuiteId(CipherSuites.pickFastest().getId());
+        }
+    }
+
+    private void tidyContentStore() {
+        try {
+            dbHelper.migrateFileData();
+        } catch (IOException e) {
+            // Left in the database; retried next start, or when the file is opened
+        }
+        dbHelper.sweepContentStore();
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        handleSharedText(intent);
     }
 
     private void initializeUI() {
         tvDisplay = findViewById(R.id.tvDisplay);
         tvExpression = findViewById(R.id.tvExpression);
+        tvSuggestion = findViewById(R.id.tvSuggestion);
+        tvSuggestion.setOnClickListener(v -> onSuggestionClick());
+        latencyTracker.attach(tvDisplay);
+
+        // Long-press the display to paste an expression
+        tvDisplay.setOnLongClickListener(v -> {
+            pasteFromClipboard();
+            return true;
+        });
 
-        // Number buttons
+        // Keypad buttons; each is tagged with its handler, see onClick
+        String[] digits = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"};
         int[] numberIds = {R.id.btn0, R.id.btn1, R.id.btn2, R.id.btn3, R.id.btn4,
                           R.id.btn5, R.id.btn6, R.id.btn7, R.id.btn8, R.id.btn9};
-        for (int id : numberIds) {
-            findViewById(id).setOnClickListener(this);
+        for (int i = 0; i < numberIds.length; i++) {
+            String digit = digits[i];
+            bindKey(numberIds[i], "onNumberClick", () -> onNumberClick(digit));
         }
-        
-        // 00 button
-        findViewById(R.id.btn00).setOnClickListener(this);
+        bindKey(R.id.btn00, "onDoubleZeroClick", this::onDoubleZeroClick);
 
         // Operator buttons
-        findViewById(R.id.btnAdd).setOnClickListener(this);
-        findViewById(R.id.btnSubtract).setOnClickListener(this);
-        findViewById(R.id.btnMultiply).setOnClickListener(this);
-        findViewById(R.id.btnDivide).setOnClickListener(this);
-        findViewById(R.id.btnEquals).setOnClickListener(this);
-        findViewById(R.id.btnClear).setOnClickListener(this);
-        
+        bindKey(R.id.btnAdd, "onOperatorClick", () -> onOperatorClick('+'));
+        bindKey(R.id.btnSubtract, "onOperatorClick", () -> onOperatorClick('-'));
+        bindKey(R.id.btnMultiply, "onOperatorClick", () -> onOperatorClick('×'));
+        bindKey(R.id.btnDivide, "onOperatorClick", () -> onOperatorClick('÷'));
+        bindKey(R.id.btnEquals, "onEqualsClick", this::onEqualsClick);
+        findViewById(R.id.btnEquals).setOnLongClickListener(v -> {
+            exactMode = !exactMode;
+            Toast.makeText(this, exactMode ? "Exact decimal mode" : "Floating-point mode",
+                    Toast.LENGTH_SHORT).show();
+            return true;
+        });
+        bindKey(R.id.btnClear, "onClearClick", this::onClearClick);
+
         // Advanced function buttons
-        findViewById(R.id.btnDot).setOnClickListener(this);
-        findViewById(R.id.btnSqrt).setOnClickListener(this);
-        findViewById(R.id.btnSquare).setOnClickListener(this);
-        findViewById(R.id.btnPercent).setOnClickListener(this);
-        findViewById(R.id.btnBackspace).setOnClickListener(this);
-        findViewById(R.id.btnOpenParen).setOnClickListener(this);
-        findViewById(R.id.btnCloseParen).setOnClickListener(this);
-        findViewById(R.id.btnPlusMinus).setOnClickListener(this);
-
-        // History button
+        bindKey(R.id.btnDot, "onDotClick", this::onDotClick);
+        bindKey(R.id.btnSqrt, "onSqrtClick", this::onSqrtClick);
+        bindKey(R.id.btnSquare, "onSquareClick", this::onSquareClick);
+        bindKey(R.id.btnPercent, "onPercentClick", this::onPercentClick);
+        bindKey(R.id.btnBackspace, "onBackspaceClick", this::onBackspaceClick);
+        bindKey(R.id.btnOpenParen, "onOpenParenClick", this::onOpenParenClick);
+        bindKey(R.id.btnCloseParen, "onCloseParenClick", this::onCloseParenClick);
+        bindKey(R.id.btnPlusMinus, "onPlusMinusClick", this::onPlusMinusClick);
+
+        // History button (long-press for the keypad latency screen in debug builds)
         findViewById(R.id.btnHistory).setOnClickListener(v -> {
             Intent intent = new Intent(this, HistoryActivity.class);
             startActivity(intent);
         });
+        if (BuildConfig.DEBUG) {
+            findViewById(R.id.btnHistory).setOnLongClickListener(v -> {
+                startActivity(new Intent(this, LatencyActivity.class));
+                return true;
+            });
+        }
+
+        // Graph button
+        findViewById(R.id.btnGraph).setOnClickListener(v -> {
+            Intent intent = new Intent(this, GraphActivity.class);
+            startActivity(intent);
+        });
+
+        // Statistics button
+        findViewById(R.id.btnStatistics).setOnClickListener(v -> {
+            Intent intent = new Intent(this, StatisticsActivity.class);
+            startActivity(intent);
+        });
+    }
+
+    /**
+     * A keypad button's action and the handler name the latency tracker reports for it.
+     */
+    private static final class KeyHandler {
+        final String name;
+        final Runnable action;
+
+        KeyHandler(String name, Runnable action) {
+            this.name = name;
+            this.action = action;
+        }
+    }
+
+    private void bindKey(int id, String name, Runnable action) {
+        View button = findViewById(id);
+        button.setTag(new KeyHandler(name, action));
+        button.setOnClickListener(this);
     }
 
     @Override
     public void onClick(View v) {
-        int id = v.getId();
-
-        if (id == R.id.btn0) onNumberClick("0");
-        else if (id == R.id.btn00) onDoubleZeroClick();
-        else if (id == R.id.btn1) onNumberClick("1");
-        else if (id == R.id.btn2) onNumberClick("2");
-        else if (id == R.id.btn3) onNumberClick("3");
-        else if (id == R.id.btn4) onNumberClick("4");
-        else if (id == R.id.btn5) onNumberClick("5");
-        else if (id == R.id.btn6) onNumberClick("6");
-        else if (id == R.id.btn7) onNumberClick("7");
-        else if (id == R.id.btn8) onNumberClick("8");
-        else if (id == R.id.btn9) onNumberClick("9");
-        else if (id == R.id.btnAdd) onOperatorClick("+");
-        else if (id == R.id.btnSubtract) onOperatorClick("-");
-        else if (id == R.id.btnMultiply) onOperatorClick("×");
-        else if (id == R.id.btnDivide) onOperatorClick("÷");
-        else if (id == R.id.btnEquals) onEqualsClick();
-        else if (id == R.id.btnClear) onClearClick();
-        else if (id == R.id.btnDot) onDotClick();
-        else if (id == R.id.btnSqrt) onSqrtClick();
-        else if (id == R.id.btnSquare) onSquareClick();
-        else if (id == R.id.btnPercent) onPercentClick();
-        else if (id == R.id.btnBackspace) onBackspaceClick();
-        else if (id == R.id.btnOpenParen) onOpenParenClick();
-        else if (id == R.id.btnCloseParen) onCloseParenClick();
-        else if (id == R.id.btnPlusMinus) onPlusMinusClick();
+        // Only buttons bound by bindKey are dispatched here
+        KeyHandler handler = (KeyHandler) v.getTag();
+        latencyTracker.onKeystroke(handler.name);
+        handler.action.run();
     }
 
     private void onNumberClick(String digit) {
         // If last action was equals, start fresh
         if (lastWasEquals) {
-            expression.setLength(0);
-            currentNumber.setLength(0);
-            hasDecimal = false;
-            lastWasEquals = false;
-            pinAttempt.setLength(0);
+            startFresh();
+            pinMatcher.reset();
         }
 
         // Prevent leading zeros
-        if (digit.equals("0") && currentNumber.toString().equals("0")) {
-            return;
-        }
-        if (!digit.equals("0") && currentNumber.toString().equals("0")) {
-            currentNumber.setLength(0);
+        if (expression.currentNumberEquals("0")) {
+            if (digit.equals("0")) {
+                return;
+            }
+            expression.replaceCurrentNumber("");
         }
 
-        currentNumber.append(digit);
-        expression.append(digit);
-        lastWasOperator = false;
-        
-        // Track PIN attempt (only track consecutive digits)
-        pinAttempt.append(digit);
+        appendDigits(digit);
         
-        // Check for PIN match (exactly 5 digits entered consecutively)
-        if (pinAttempt.length() == 5) {
-            String potentialPin = pinAttempt.toString();
-            String storedHash = dbHelper.getPinHash();
-            
-            if (storedHash != null && CryptoUtils.verifyPin(potentialPin, storedHash)) {
-                // PIN matched! Open vault
-                openVault(potentialPin);
-                return;
-            }
+        // The vault opens when the last five consecutive digits are the PIN
+        if (pinMatcher.onDigit(digit.charAt(0))) {
+            openVault(pinMatcher.getWindow(), pinMatcher.getMatchedProfile());
+            return;
         }
 
         updateDisplay();
     }
 
-    private void onOperatorClick(String op) {
+    private void appendDigits(String digits) {
+        // A number straight after ")" or a √/² result multiplies it
+        int lastType = expression.getLastType();
+        if (lastType == ExpressionBuffer.CLOSE_PAREN || lastType == ExpressionBuffer.FUNCTION_RESULT) {
+            expression.appendOperator('×');
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            expression.appendToNumber(digits.charAt(i));
+        }
+    }
+
+    private void onOperatorClick(char op) {
         // Reset PIN attempt when operator is pressed
-        pinAttempt.setLength(0);
+        pinMatcher.reset();
 
         // If last action was equals, use the result as the starting point
         if (lastWasEquals) {
-            String result = currentNumber.toString();
-            expression.setLength(0);
-            expression.append(result);
-            lastWasEquals = false;
+            startFresh();
+            if (!lastResult.equals("Error")) {
+                expression.appendNumber(lastResult);
+            }
         }
 
         // Allow minus for negative numbers at start or after open paren
-        if (op.equals("-") && (expression.length() == 0 || 
-            expression.charAt(expression.length() - 1) == '(')) {
-            currentNumber.append("-");
-            expression.append("-");
+        int lastType = expression.getLastType();
+        if (op == '-' && (lastType == ExpressionBuffer.NONE || lastType == ExpressionBuffer.OPEN_PAREN)) {
+            expression.appendToNumber('-');
             updateDisplay();
             return;
         }
 
-        if (expression.length() == 0) return;
+        if (lastType == ExpressionBuffer.NONE || expression.currentNumberEquals("-")) return;
 
         // Replace operator if last was operator
-        if (lastWasOperator) {
-            expression.deleteCharAt(expression.length() - 1);
+        if (lastType == ExpressionBuffer.OPERATOR) {
+            expression.replaceLastOperator(op);
+        } else {
+            expression.appendOperator(op);
         }
-
-        expression.append(op);
-        currentNumber.setLength(0);
-        hasDecimal = false;
-        lastWasOperator = true;
         
         updateDisplay();
     }
 
     private void onDotClick() {
-        if (hasDecimal) return;
-        
         if (lastWasEquals) {
-            expression.setLength(0);
-            currentNumber.setLength(0);
-            lastWasEquals = false;
+            startFresh();
         }
+
+        boolean typingNumber = expression.getLastType() == ExpressionBuffer.NUMBER;
+        if (typingNumber && expression.currentNumberHasDecimal()) return;
         
-        if (currentNumber.length() == 0) {
-            currentNumber.append("0");
-            expression.append("0");
+        if (!typingNumber || expression.currentNumberEquals("-")) {
+            appendDigits("0");
         }
         
-        currentNumber.append(".");
-        expression.append(".");
-        hasDecimal = true;
-        lastWasOperator = false;
-        pinAttempt.setLength(0);
+        expression.appendToNumber('.');
+        pinMatcher.reset();
         
         updateDisplay();
     }
 
     private void onSqrtClick() {
-        pinAttempt.setLength(0);
+        pinMatcher.reset();
+        continueFromResult();
         
-        if (currentNumber.length() > 0) {
-            try {
-                double value = Double.parseDouble(currentNumber.toString());
-                if (value < 0) {
-                    Toast.makeText(this, "Invalid input", Toast.LENGTH_SHORT).show();
-                    return;
-                }
-                double result = Math.sqrt(value);
-                String resultStr = formatNumber(result);
-                
-                // Replace current number in expression
-                int numLen = currentNumber.length();
-                expression.delete(expression.length() - numLen, expression.length());
-                expression.append("√").append(currentNumber).append("→").append(resultStr);
-                
-                currentNumber.setLength(0);
-                currentNumber.append(resultStr);
-                hasDecimal = resultStr.contains(".");
-                
-                updateDisplay();
-            } catch (NumberFormatException e) {
-                Toast.makeText(this, "Invalid number", Toast.LENGTH_SHORT).show();
+        if (expression.hasCurrentNumber() && !expression.currentNumberEquals("-")) {
+            if (expression.getLastType() == ExpressionBuffer.NUMBER && expression.getCurrentNumber().startsWith("-")) {
+                Toast.makeText(this, "Invalid input", Toast.LENGTH_SHORT).show();
+                return;
             }
+            expression.applyFunction('√');
+            updateDisplay();
         }
     }
 
     private void onSquareClick() {
-        pinAttempt.setLength(0);
+        pinMatcher.reset();
+        continueFromResult();
         
-        if (currentNumber.length() > 0) {
-            try {
-                double value = Double.parseDouble(currentNumber.toString());
-                double result = value * value;
-                String resultStr = formatNumber(result);
-                
-                // Replace current number in expression
-                int numLen = currentNumber.length();
-                expression.delete(expression.length() - numLen, expression.length());
-                expression.append(currentNumber).append("²→").append(resultStr);
-                
-                currentNumber.setLength(0);
-                currentNumber.append(resultStr);
-                hasDecimal = resultStr.contains(".");
-                
-                updateDisplay();
-            } catch (NumberFormatException e) {
-                Toast.makeText(this, "Invalid number", Toast.LENGTH_SHORT).show();
-            }
+        if (expression.hasCurrentNumber() && !expression.currentNumberEquals("-")) {
+            expression.applyFunction('²');
+            updateDisplay();
         }
     }
 
     private void onPercentClick() {
-        pinAttempt.setLength(0);
+        pinMatcher.reset();
+        continueFromResult();
         
-        if (currentNumber.length() > 0) {
+        if (expression.getLastType() == ExpressionBuffer.NUMBER) {
             try {
-                double value = Double.parseDouble(currentNumber.toString());
-                double result = value / 100.0;
-                String resultStr = formatNumber(result);
-                
-                // Replace current number in expression
-                int numLen = currentNumber.length();
-                expression.delete(expression.length() - numLen, expression.length());
-                expression.append(resultStr);
-                
-                currentNumber.setLength(0);
-                currentNumber.append(resultStr);
-                hasDecimal = resultStr.contains(".");
-                
+                String percent;
+                if (exactMode) {
+                    percent = formatDecimal(new BigDecimal(expression.getCurrentNumber()).movePointLeft(2));
+                } else {
+                    double value = Double.parseDouble(expression.getCurrentNumber());
+                    percent = formatNumber(value / 100.0);
+                }
+                expression.replaceCurrentNumber(percent);
                 updateDisplay();
             } catch (NumberFormatException e) {
                 Toast.makeText(this, "Invalid number", Toast.LENGTH_SHORT).show();
@@ -303,338 +376,260 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     }
 
     private void onBackspaceClick() {
-        if (expression.length() > 0) {
-            char lastChar = expression.charAt(expression.length() - 1);
-            expression.deleteCharAt(expression.length() - 1);
-            
-            if (Character.isDigit(lastChar) || lastChar == '.') {
-                if (currentNumber.length() > 0) {
-                    char removed = currentNumber.charAt(currentNumber.length() - 1);
-                    currentNumber.deleteCharAt(currentNumber.length() - 1);
-                    if (removed == '.') hasDecimal = false;
-                    if (pinAttempt.length() > 0) {
-                        pinAttempt.deleteCharAt(pinAttempt.length() - 1);
-                    }
-                }
-                lastWasOperator = false;
-            } else if (lastChar == '(') {
-                openParenCount--;
-                lastWasOperator = false;
-            } else if (lastChar == ')') {
-                openParenCount++;
-                lastWasOperator = false;
-            } else {
-                // Removed an operator
-                lastWasOperator = false;
-                // Rebuild currentNumber from expression
-                rebuildCurrentNumber();
+        if (!expression.isEmpty()) {
+            if (expression.getLastType() == ExpressionBuffer.NUMBER) {
+                pinMatcher.backspace();
             }
-            
+            expression.backspace();
             updateDisplay();
         }
         lastWasEquals = false;
     }
-    
-    private void rebuildCurrentNumber() {
-        currentNumber.setLength(0);
-        hasDecimal = false;
-        
-        for (int i = expression.length() - 1; i >= 0; i--) {
-            char c = expression.charAt(i);
-            if (Character.isDigit(c) || c == '.') {
-                currentNumber.insert(0, c);
-                if (c == '.') hasDecimal = true;
-            } else if (c == '-' && (i == 0 || !Character.isDigit(expression.charAt(i-1)))) {
-                currentNumber.insert(0, c);
-                break;
-            } else {
-                break;
-            }
-        }
-    }
 
     private void onOpenParenClick() {
-        pinAttempt.setLength(0);
+        pinMatcher.reset();
         
         if (lastWasEquals) {
-            expression.setLength(0);
-            currentNumber.setLength(0);
-            hasDecimal = false;
-            lastWasEquals = false;
+            startFresh();
         }
         
-        // Add multiplication if there's a number before
-        if (currentNumber.length() > 0 || 
-            (expression.length() > 0 && expression.charAt(expression.length() - 1) == ')')) {
-            expression.append("×");
+        // Add multiplication if there's a number before ("-(" negates the group instead)
+        if ((expression.hasCurrentNumber() && !expression.currentNumberEquals("-"))
+                || expression.getLastType() == ExpressionBuffer.CLOSE_PAREN) {
+            expression.appendOperator('×');
         }
         
-        expression.append("(");
-        openParenCount++;
-        currentNumber.setLength(0);
-        hasDecimal = false;
-        lastWasOperator = false;
-        
+        expression.openParen();
         updateDisplay();
     }
 
     private void onCloseParenClick() {
-        pinAttempt.setLength(0);
+        pinMatcher.reset();
         
-        if (openParenCount > 0 && !lastWasOperator) {
-            expression.append(")");
-            openParenCount--;
-            currentNumber.setLength(0);
-            lastWasOperator = false;
-            
+        int lastType = expression.getLastType();
+        if (expression.getOpenParenCount() > 0 && lastType != ExpressionBuffer.OPERATOR
+                && lastType != ExpressionBuffer.OPEN_PAREN && !expression.currentNumberEquals("-")) {
+            expression.closeParen();
             updateDisplay();
         }
     }
 
     private void onPlusMinusClick() {
-        pinAttempt.setLength(0);
+        pinMatcher.reset();
+        continueFromResult();
         
-        if (currentNumber.length() > 0) {
-            int numLen = currentNumber.length();
-            String numStr = currentNumber.toString();
-            
-            if (numStr.startsWith("-")) {
-                // Remove the negative
-                currentNumber.deleteCharAt(0);
-                expression.delete(expression.length() - numLen, expression.length());
-                expression.append(currentNumber);
-            } else {
-                // Add negative
-                currentNumber.insert(0, "-");
-                expression.delete(expression.length() - numLen, expression.length());
-                expression.append(currentNumber);
-            }
-            
+        if (expression.getLastType() == ExpressionBuffer.NUMBER) {
+            String number = expression.getCurrentNumber();
+            expression.replaceCurrentNumber(number.startsWith("-") ? number.substring(1) : "-" + number);
             updateDisplay();
         }
     }
 
+    /**
+     * Clear the expression after a result was shown.
+     */
+    private void startFresh() {
+        expression.clear();
+        lastWasEquals = false;
+    }
+
+    /**
+     * If a result is showing, make it the current number so functions apply to it.
+     */
+    private void continueFromResult() {
+        if (lastWasEquals) {
+            startFresh();
+            if (!lastResult.equals("Error")) {
+                expression.appendNumber(lastResult);
+            }
+        }
+    }
+
     private void onEqualsClick() {
-        // Reset PIN attempt
-        pinAttempt.setLength(0);
+        // Reset PIN tracking
+        pinMatcher.reset();
+        previewEvaluator.cancel();
 
-        if (expression.length() == 0) return;
+        if (expression.isEmpty()) return;
         
         // Store the original expression BEFORE closing parentheses for display
-        String originalExpression = expression.toString().replaceAll("→[0-9.-]+", "");
+        String originalExpression = expression.getDisplay().toString();
         
         // Close any open parentheses
-        while (openParenCount > 0) {
-            expression.append(")");
-            openParenCount--;
-        }
+        expression.closeAllParens();
 
         try {
-            String expressionStr = expression.toString();
-            // Clean up expression for display (remove internal arrows)
-            String displayExpression = expressionStr.replaceAll("→[0-9.-]+", "");
-            
-            // Prepare for evaluation
-            String evalExpression = expressionStr
-                .replaceAll("√[0-9.-]+→", "")
-                .replaceAll("[0-9.-]+²→", "")
-                .replace("×", "*")
-                .replace("÷", "/");
+            String displayExpression = abbreviate(expression.getDisplay());
             
-            double result = evaluateExpression(evalExpression);
-            String resultStr = formatNumber(result);
-
-            // Save to local database
-            long historyId = dbHelper.saveCalculation(displayExpression, resultStr);
-
-            // Backup to Firebase if user is signed in
-            if (historyId != -1 && FirebaseHelper.getInstance().isAuthenticated()) {
-                CalculationHistory history = new CalculationHistory();
-                history.setId((int) historyId);
-                history.setExpression(displayExpression);
-                history.setResult(resultStr);
-                history.setCalculatedAt(new java.text.SimpleDateFormat(
-                    "yyyy-MM-dd HH:mm:ss", java.util.Locale.getDefault()).format(new java.util.Date()));
-                
-                FirebaseHelper.getInstance().backupCalculationHistory(history, 
-                    new FirebaseHelper.SyncCallback() {
-                        @Override
-                        public void onSuccess() {
-                            // Successfully synced to Firebase
-                        }
-                        @Override
-                        public void onFailure(String error) {
-                            // Failed to sync - data is still saved locally
-                        }
-                    });
+            String resultStr;
+            if (exactMode) {
+                resultStr = formatDecimal(
+                    expressionCache.evaluateExact(expression.getEvalExpression(), mathContext));
+            } else {
+                resultStr = formatNumber(expressionCache.evaluate(expression.getEvalExpression()));
             }
+            // Queued and written in batches (with the Firebase backup) off the UI thread
+            historyRecorder.record(displayExpression, resultStr);
 
             // Show result - top line shows original expression (no =), main display shows result
-            tvExpression.setText(originalExpression);
+            tvExpression.setText(window(originalExpression));
             tvDisplay.setText(resultStr);
+            tvSuggestion.setVisibility(View.GONE);
 
             // Reset for next calculation - but DON'T put result in expression yet
             // This way originalExpression won't be corrupted if user types more
-            expression.setLength(0);
-            currentNumber.setLength(0);
-            currentNumber.append(resultStr);  // Store result for potential continued calculation
-            hasDecimal = resultStr.contains(".");
-            lastWasOperator = false;
+            expression.clear();
+            lastResult = resultStr;  // Store result for potential continued calculation
             lastWasEquals = true;
-            openParenCount = 0;
             
         } catch (Exception e) {
             Toast.makeText(this, "Error", Toast.LENGTH_SHORT).show();
         }
     }
 
-    private double evaluateExpression(String expr) {
-        // Simple expression evaluator using two stacks
-        Stack<Double> numbers = new Stack<>();
-        Stack<Character> operators = new Stack<>();
+    private void onClearClick() {
+        previewEvaluator.cancel();
+        expression.clear();
+        lastResult = "";
+        lastWasEquals = false;
+        pinMatcher.reset();
+        tvExpression.setText("");
+        tvDisplay.setText("0");
+        tvSuggestion.setVisibility(View.GONE);
+    }
+
+    private String formatNumber(double number) {
+        return numberFormatter.format(number);
+    }
+
+    private String formatDecimal(BigDecimal number) {
+        // Integers are shown in full as long as they fit the working precision
+        return numberFormatter.format(number, mathContext.getPrecision());
+    }
+
+    private void updateDisplay() {
+        // Show full expression in top line (e.g., "2+3"); very long ones only show their end
+        CharSequence expressionText = window(expression.getDisplay());
+        tvExpression.setText(expressionText);
         
-        int i = 0;
-        while (i < expr.length()) {
-            char c = expr.charAt(i);
-            
-            if (c == ' ') {
-                i++;
-                continue;
-            }
-            
-            if (Character.isDigit(c) || (c == '-' && (i == 0 || !Character.isDigit(expr.charAt(i-1)) && expr.charAt(i-1) != ')'))) {
-                StringBuilder num = new StringBuilder();
-                if (c == '-') {
-                    num.append(c);
-                    i++;
-                }
-                while (i < expr.length() && (Character.isDigit(expr.charAt(i)) || expr.charAt(i) == '.')) {
-                    num.append(expr.charAt(i));
-                    i++;
-                }
-                numbers.push(Double.parseDouble(num.toString()));
-                continue;
-            }
-            
-            if (c == '(') {
-                operators.push(c);
-            } else if (c == ')') {
-                while (!operators.isEmpty() && operators.peek() != '(') {
-                    numbers.push(applyOp(operators.pop(), numbers.pop(), numbers.pop()));
-                }
-                if (!operators.isEmpty()) operators.pop();
-            } else if (isOperator(c)) {
-                while (!operators.isEmpty() && precedence(c) <= precedence(operators.peek())) {
-                    numbers.push(applyOp(operators.pop(), numbers.pop(), numbers.pop()));
-                }
-                operators.push(c);
-            }
-            i++;
+        // Main display always shows the expression being built
+        tvDisplay.setText(expressionText.length() == 0 ? "0" : expressionText);
+
+        // Compute a running result in the background; the top line shows it when ready
+        previewEvaluator.submit(expression.getEvalExpression());
+        updateSuggestion();
+    }
+
+    private void updateSuggestion() {
+        // Most frequent earlier expression starting with what has been typed
+        List<String> suggestions = suggestionTrie.suggest(expression.getDisplay());
+        if (suggestions.isEmpty()) {
+            tvSuggestion.setVisibility(View.GONE);
+        } else {
+            tvSuggestion.setText(suggestions.get(0));
+            tvSuggestion.setVisibility(View.VISIBLE);
         }
-        
-        while (!operators.isEmpty()) {
-            numbers.push(applyOp(operators.pop(), numbers.pop(), numbers.pop()));
+    }
+
+    private void onSuggestionClick() {
+        // The suggestion starts with the typed text, so only the rest is appended
+        CharSequence suggestion = tvSuggestion.getText();
+        int typed = expression.getDisplay().length();
+        if (lastWasEquals || suggestion.length() <= typed) return;
+        pinMatcher.reset();
+        try {
+            expression.appendExpression(suggestion.subSequence(typed, suggestion.length()));
+        } catch (IllegalArgumentException e) {
+            // Saved in a form the keypad cannot continue, e.g. an abbreviated long expression
+            Toast.makeText(this, "Can't use this suggestion", Toast.LENGTH_SHORT).show();
+            return;
         }
-        
-        return numbers.isEmpty() ? 0 : numbers.pop();
+        updateDisplay();
     }
-    
-    private boolean isOperator(char c) {
-        return c == '+' || c == '-' || c == '*' || c == '/';
+
+    /**
+     * @return The last DISPLAY_WINDOW characters of the text, so the views never lay out
+     *         a pasted expression of many thousands of characters
+     */
+    private static CharSequence window(CharSequence text) {
+        int length = text.length();
+        if (length <= DISPLAY_WINDOW) return text;
+        return "…" + text.subSequence(length - DISPLAY_WINDOW, length);
     }
-    
-    private int precedence(char op) {
-        if (op == '(' || op == ')') return 0;
-        if (op == '+' || op == '-') return 1;
-        if (op == '*' || op == '/') return 2;
-        return 0;
+
+    private static String abbreviate(CharSequence text) {
+        if (text.length() <= MAX_HISTORY_EXPRESSION_LENGTH) return text.toString();
+        return text.subSequence(0, MAX_HISTORY_EXPRESSION_LENGTH) + "…";
     }
-    
-    private double applyOp(char op, double b, double a) {
-        switch (op) {
-            case '+': return a + b;
-            case '-': return a - b;
-            case '*': return a * b;
-            case '/': 
-                if (b == 0) throw new ArithmeticException("Division by zero");
-                return a / b;
+
+    private void pasteFromClipboard() {
+        ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+        ClipData clip = clipboard != null ? clipboard.getPrimaryClip() : null;
+        if (clip == null || clip.getItemCount() == 0 || clip.getItemAt(0).getText() == null) {
+            Toast.makeText(this, "Clipboard is empty", Toast.LENGTH_SHORT).show();
+            return;
         }
-        return 0;
+        pasteExpression(clip.getItemAt(0).getText());
     }
 
-    private void onClearClick() {
-        expression.setLength(0);
-        currentNumber.setLength(0);
-        hasDecimal = false;
-        lastWasOperator = false;
-        lastWasEquals = false;
-        openParenCount = 0;
-        pinAttempt.setLength(0);
-        tvExpression.setText("");
-        tvDisplay.setText("0");
+    private void handleSharedText(Intent intent) {
+        if (intent == null || !Intent.ACTION_SEND.equals(intent.getAction())) return;
+        CharSequence text = intent.getCharSequenceExtra(Intent.EXTRA_TEXT);
+        if (text != null) {
+            pasteExpression(text);
+        }
     }
 
-    private String formatNumber(double number) {
-        if (Double.isNaN(number) || Double.isInfinite(number)) {
-            return "Error";
+    private void pasteExpression(CharSequence text) {
+        pinMatcher.reset();
+        if (lastWasEquals) {
+            startFresh();
         }
-        if (number == (long) number && Math.abs(number) < 1e15) {
-            return String.valueOf((long) number);
-        } else {
-            // Use maximum 10 decimal places, trim trailing zeros
-            String formatted = String.format("%.10f", number)
-                .replaceAll("0+$", "")
-                .replaceAll("\\.$", "");
-            
-            // If result is too long, use scientific notation
-            if (formatted.length() > 15) {
-                formatted = String.format("%.6E", number);
-            }
-            return formatted;
+        try {
+            // Tokenized and checked in one pass; nothing is appended if it is invalid
+            expression.appendExpression(text);
+        } catch (IllegalArgumentException e) {
+            Toast.makeText(this, "Can't paste: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            return;
         }
+        updateDisplay();
     }
 
-    private void updateDisplay() {
-        // Show full expression in top line (e.g., "2+3")
-        String expressionText = expression.length() > 0 ? expression.toString() : "";
-        // Clean up internal markers from display
-        expressionText = expressionText.replaceAll("→[0-9.-]+", "");
-        tvExpression.setText(expressionText);
-        
-        // Main display always shows the full expression being built
-        tvDisplay.setText(expressionText.isEmpty() ? "0" : expressionText);
+    private void showPreview(boolean valid, double result) {
+        // Without a preview the top line keeps the expression set by updateDisplay
+        if (!valid || lastWasEquals) return;
+        tvExpression.setText("= " + formatNumber(result));
     }
     
     private void onDoubleZeroClick() {
         // Add 00 (two zeros)
         if (lastWasEquals) {
-            expression.setLength(0);
-            currentNumber.setLength(0);
-            hasDecimal = false;
-            lastWasEquals = false;
-            pinAttempt.setLength(0);
+            startFresh();
+            pinMatcher.reset();
         }
         
         // Don't add 00 if current number is just "0"
-        if (currentNumber.toString().equals("0")) {
+        if (expression.currentNumberEquals("0")) {
             return;
         }
         
-        currentNumber.append("00");
-        expression.append("00");
-        lastWasOperator = false;
-        pinAttempt.append("00");
+        appendDigits("00");
+        if (pinMatcher.onDigit('0') || pinMatcher.onDigit('0')) {
+            openVault(pinMatcher.getWindow(), pinMatcher.getMatchedProfile());
+            return;
+        }
         
         updateDisplay();
     }
 
-    private void openVault(String pin) {
+    private void openVault(String pin, int profileId) {
         // Clear display and state
         onClearClick();
         
         // Open vault activity with PIN
         Intent intent = new Intent(this, VaultActivity.class);
         intent.putExtra("pin", pin);
+        intent.putExtra("profile_id", profileId);
         startActivity(intent);
     }
 
@@ -642,6 +637,24 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     protected void onResume() {
         super.onResume();
         // Clear any sensitive state when returning to calculator
-        pinAttempt.setLength(0);
+        pinMatcher.reset();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Commit queued history in the background before the app may be killed;
+        // History waits for it before reading
+        historyRecorder.flush();
+        // A keystroke that opened another screen has no calculator frame to wait for
+        latencyTracker.cancelPending();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        latencyTracker.detach(tvDisplay);
+        executor.shutdown();
+        previewEvaluator.shutdown();
     }
 }
\ No newline at end of file
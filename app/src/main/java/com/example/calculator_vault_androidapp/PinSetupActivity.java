@@ -12,14 +12,18 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.example.calculator_vault_androidapp.database.DatabaseHelper;
 import com.example.calculator_vault_androidapp.database.FirebaseHelper;
 import com.example.calculator_vault_androidapp.utils.CryptoUtils;
+import com.example.calculator_vault_androidapp.utils.PinVerifier;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 
 import android.widget.TextView;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
- * Activity for setting up or changing the vault PIN.
+ * Activity for setting up or changing the vault PIN, or adding another vault profile.
  */
 public class PinSetupActivity extends AppCompatActivity {
 
@@ -30,7 +34,10 @@ public class PinSetupActivity extends AppCompatActivity {
 
     private DatabaseHelper dbHelper;
     private boolean isChangeMode = false;
+    private boolean isAddProfileMode = false;
     private String currentStoredPin; // For re-encryption when changing PIN
+    private int profileId; // Profile whose PIN is changed
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,7 +49,9 @@ public class PinSetupActivity extends AppCompatActivity {
         // Check mode from intent
         String mode = getIntent().getStringExtra("mode");
         isChangeMode = "change".equals(mode);
+        isAddProfileMode = "add_profile".equals(mode);
         currentStoredPin = getIntent().getStringExtra("current_pin");
+        profileId = getIntent().getIntExtra("profile_id", DatabaseHelper.MAIN_PROFILE_ID);
 
         initializeUI();
         setupMode();
@@ -89,6 +98,12 @@ public class PinSetupActivity extends AppCompatActivity {
             tilCurrentPin.setVisibility(View.VISIBLE);
             btnSubmit.setText("Change PIN");
             btnCancel.setVisibility(View.VISIBLE);
+        } else if (isAddProfileMode) {
+            tvTitle.setText("New Vault");
+            tvSubtitle.setText("Set a 5-digit PIN that opens a separate vault");
+            tilCurrentPin.setVisibility(View.GONE);
+            btnSubmit.setText("Create Vault");
+            btnCancel.setVisibility(View.VISIBLE);
         } else {
             tvTitle.setText("Set Your PIN");
             tvSubtitle.setText("Create a 5-digit PIN to secure your vault");
@@ -131,8 +146,10 @@ public class PinSetupActivity extends AppCompatActivity {
                 return;
             }
 
-            String storedHash = dbHelper.getPinHash();
-            if (!CryptoUtils.verifyPin(currentPin, storedHash)) {
+            // Waits for legacy hashes to be rekeyed before reading this one
+            PinVerifier verifier = dbHelper.getPinVerifier();
+            String storedHash = dbHelper.getProfilePinHash(profileId);
+            if (!verifier.verify(currentPin, storedHash)) {
                 tilCurrentPin.setError("Current PIN is incorrect");
                 return;
             }
@@ -143,8 +160,20 @@ public class PinSetupActivity extends AppCompatActivity {
                 return;
             }
 
+            // Each PIN must open exactly one vault
+            if (dbHelper.isPinInUse(verifier.hash(newPin))) {
+                tilNewPin.setError("PIN is already in use");
+                return;
+            }
+
             // Update PIN and re-encrypt files
             changePinAndReencrypt(currentPin, newPin);
+        } else if (isAddProfileMode) {
+            if (dbHelper.isPinInUse(dbHelper.getPinVerifier().hash(newPin))) {
+                tilNewPin.setError("PIN is already in use");
+                return;
+            }
+            addProfile(newPin);
         } else {
             // First time setup - just set the PIN
             setNewPin(newPin);
@@ -152,7 +181,7 @@ public class PinSetupActivity extends AppCompatActivity {
     }
 
     private void setNewPin(String pin) {
-        String hash = CryptoUtils.hashPin(pin);
+        String hash = dbHelper.getPinVerifier().hash(pin);
         dbHelper.setPinHash(hash);
 
         // Backup to Firebase
@@ -177,41 +206,70 @@ public class PinSetupActivity extends AppCompatActivity {
         finish();
     }
 
-    private void changePinAndReencrypt(String oldPin, String newPin) {
-        try {
-            // Update all files with new encryption
-            dbHelper.updateAllFilesEncryption(oldPin, newPin);
+    private void addProfile(String pin) {
+        String name = getIntent().getStringExtra("profile_name");
+        if (dbHelper.createProfile(name != null ? name : "Vault", dbHelper.getPinVerifier().hash(pin)) == -1) {
+            Toast.makeText(this, "Error creating vault", Toast.LENGTH_LONG).show();
+            return;
+        }
+        Toast.makeText(this, "Vault created", Toast.LENGTH_SHORT).show();
+        finish();
+    }
 
-            // Update PIN hash
-            String newHash = CryptoUtils.hashPin(newPin);
-            dbHelper.setPinHash(newHash);
+    private void changePinAndReencrypt(String oldPin, String newPin) {
+        if (dbHelper.hasPendingPinChange(profileId)) {
+            Toast.makeText(this, "Files are still moving to the previous PIN; open the vault to finish",
+                    Toast.LENGTH_LONG).show();
+            return;
+        }
+        btnSubmit.setEnabled(false);
+        executor.execute(() -> {
+            try {
+                // Switches the PIN and journals the files; VaultActivity moves them
+                dbHelper.beginPinChange(profileId, oldPin, newPin);
+            } catch (RuntimeException e) {
+                runOnUiThread(() -> {
+                    btnSubmit.setEnabled(true);
+                    Toast.makeText(this, "Error changing PIN: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
+                return;
+            }
+            runOnUiThread(() -> onPinChanged(newPin));
+        });
+    }
 
+    private void onPinChanged(String newPin) {
+        if (profileId == DatabaseHelper.MAIN_PROFILE_ID) {
             // Backup to Firebase
-            FirebaseHelper.getInstance().backupPinHash(newHash, new FirebaseHelper.SyncCallback() {
+            FirebaseHelper.getInstance().backupPinHash(dbHelper.getPinHash(), new FirebaseHelper.SyncCallback() {
                 @Override
                 public void onSuccess() {}
 
                 @Override
                 public void onFailure(String error) {}
             });
+        }
 
-            Toast.makeText(this, "PIN changed successfully", Toast.LENGTH_SHORT).show();
+        Toast.makeText(this, "PIN changed successfully", Toast.LENGTH_SHORT).show();
 
-            // Return to vault with new PIN
-            Intent intent = new Intent(this, VaultActivity.class);
-            intent.putExtra("pin", newPin);
-            intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
-            startActivity(intent);
-            finish();
+        // Return to vault with new PIN
+        Intent intent = new Intent(this, VaultActivity.class);
+        intent.putExtra("pin", newPin);
+        intent.putExtra("profile_id", profileId);
+        intent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        startActivity(intent);
+        finish();
+    }
 
-        } catch (Exception e) {
-            Toast.makeText(this, "Error changing PIN: " + e.getMessage(), Toast.LENGTH_LONG).show();
-        }
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
     }
 
     @Override
     public void onBackPressed() {
-        if (isChangeMode) {
+        if (isChangeMode || isAddProfileMode) {
             super.onBackPressed();
         } else {
             // Don't allow back on first-time setup
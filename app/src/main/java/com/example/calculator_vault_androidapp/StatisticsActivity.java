@@ -0,0 +1,202 @@
+package com.example.calculator_vault_androidapp;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.widget.EditText;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.calculator_vault_androidapp.database.DatabaseHelper;
+import com.example.calculator_vault_androidapp.engine.NumberFormatter;
+import com.example.calculator_vault_androidapp.engine.StreamingStatistics;
+import com.example.calculator_vault_androidapp.engine.ValueListParser;
+import com.google.android.material.appbar.MaterialToolbar;
+import com.google.android.material.button.MaterialButton;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Statistics mode: summary statistics over a typed, pasted or imported list of values.
+ * Pasted and imported lists are streamed into the accumulator on a background thread
+ * without going through the text field, so very long lists stay cheap.
+ */
+public class StatisticsActivity extends AppCompatActivity {
+
+    private EditText etValues;
+    private TextView tvResults;
+    private MaterialButton btnCalculate, btnPaste, btnImport;
+
+    private DatabaseHelper dbHelper;
+    private final NumberFormatter numberFormatter = new NumberFormatter();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final ActivityResultLauncher<String> importLauncher = registerForActivityResult(
+            new ActivityResultContracts.GetContent(),
+            uri -> {
+                if (uri != null) {
+                    calculateFrom(uri);
+                }
+            });
+
+    /**
+     * Source of the values to summarize, read on the background thread.
+     */
+    private interface ValueSource {
+        void parseInto(ValueListParser parser) throws IOException;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_statistics);
+
+        dbHelper = DatabaseHelper.getInstance(this);
+
+        MaterialToolbar toolbar = findViewById(R.id.toolbar);
+        toolbar.setNavigationOnClickListener(v -> finish());
+
+        etValues = findViewById(R.id.etValues);
+        tvResults = findViewById(R.id.tvResults);
+        btnCalculate = findViewById(R.id.btnCalculate);
+        btnPaste = findViewById(R.id.btnPaste);
+        btnImport = findViewById(R.id.btnImport);
+
+        btnCalculate.setOnClickListener(v -> {
+            String typed = etValues.getText().toString();
+            calculate(parser -> parser.parse(typed));
+        });
+        btnPaste.setOnClickListener(v -> pasteValues());
+        btnImport.setOnClickListener(v -> importLauncher.launch("text/*"));
+    }
+
+    private void pasteValues() {
+        ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+        ClipData clip = clipboard != null ? clipboard.getPrimaryClip() : null;
+        if (clip == null || clip.getItemCount() == 0) {
+            Toast.makeText(this, "Clipboard is empty", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        ClipData.Item item = clip.getItemAt(0);
+        if (item.getUri() != null) {
+            calculateFrom(item.getUri());
+        } else {
+            // Parsed straight from the clipboard text, never copied into the text field
+            CharSequence text = item.coerceToText(this);
+            calculate(parser -> parser.parse(text));
+        }
+    }
+
+    private void calculateFrom(Uri uri) {
+        calculate(parser -> {
+            InputStream input = getContentResolver().openInputStream(uri);
+            if (input == null) throw new IOException("Cannot open " + uri);
+            try (Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+                parser.parse(reader);
+            }
+        });
+    }
+
+    private void calculate(ValueSource source) {
+        setBusy(true);
+        tvResults.setText("Calculating…");
+        executor.execute(() -> {
+            StreamingStatistics statistics = new StreamingStatistics();
+            ValueListParser parser = new ValueListParser(statistics);
+            try {
+                source.parseInto(parser);
+            } catch (IOException e) {
+                runOnUiThread(() -> {
+                    setBusy(false);
+                    tvResults.setText("");
+                    Toast.makeText(this, "Failed to read values", Toast.LENGTH_SHORT).show();
+                });
+                return;
+            }
+
+            String report = formatReport(statistics, parser.getRejectedCount());
+            if (statistics.getCount() > 0) {
+                dbHelper.saveCalculation("stats(n=" + statistics.getCount() + ")", formatSummary(statistics));
+            }
+            runOnUiThread(() -> {
+                setBusy(false);
+                tvResults.setText(report);
+            });
+        });
+    }
+
+    private String formatReport(StreamingStatistics s, long rejected) {
+        if (s.getCount() == 0) {
+            return "No values";
+        }
+        StringBuilder report = new StringBuilder();
+        report.append("Count: ").append(s.getCount()).append('\n');
+        appendLine(report, "Sum", s.getSum());
+        appendLine(report, "Mean", s.getMean());
+        appendLine(report, "Variance", s.getVariance());
+        appendLine(report, "Std dev", s.getStandardDeviation());
+        appendLine(report, "Min", s.getMin());
+        appendLine(report, "Q1", s.getQuantile(0.25));
+        appendLine(report, "Median", s.getQuantile(0.5));
+        appendLine(report, "Q3", s.getQuantile(0.75));
+        appendLine(report, "P99", s.getQuantile(0.99));
+        appendLine(report, "Max", s.getMax());
+        if (rejected > 0) {
+            report.append("Skipped ").append(rejected).append(" entries that are not numbers");
+        }
+        return report.toString();
+    }
+
+    private void appendLine(StringBuilder report, String label, double value) {
+        report.append(label).append(": ");
+        if (Double.isNaN(value)) {
+            report.append('–');
+        } else {
+            numberFormatter.formatTo(value, report);
+        }
+        report.append('\n');
+    }
+
+    /**
+     * One-line summary stored as the history result.
+     */
+    private String formatSummary(StreamingStatistics s) {
+        StringBuilder summary = new StringBuilder("mean ");
+        numberFormatter.formatTo(s.getMean(), summary);
+        if (s.getCount() > 1) {
+            summary.append(", sd ");
+            numberFormatter.formatTo(s.getStandardDeviation(), summary);
+        }
+        summary.append(", min ");
+        numberFormatter.formatTo(s.getMin(), summary);
+        summary.append(", median ");
+        numberFormatter.formatTo(s.getQuantile(0.5), summary);
+        summary.append(", max ");
+        numberFormatter.formatTo(s.getMax(), summary);
+        return summary.toString();
+    }
+
+    private void setBusy(boolean busy) {
+        btnCalculate.setEnabled(!busy);
+        btnPaste.setEnabled(!busy);
+        btnImport.setEnabled(!busy);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        executor.shutdownNow();
+    }
+}
@@ -20,20 +20,28 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.calculator_vault_androidapp.adapters.VaultFileAdapter;
 import com.example.calculator_vault_androidapp.database.DatabaseHelper;
 import com.example.calculator_vault_androidapp.database.FirebaseHelper;
+import com.example.calculator_vault_androidapp.database.PinChangeJob;
 import com.example.calculator_vault_androidapp.models.VaultFile;
+import com.example.calculator_vault_androidapp.utils.ContentStore;
 import com.example.calculator_vault_androidapp.utils.CryptoUtils;
 import com.example.calculator_vault_androidapp.utils.FileUtils;
+import com.example.calculator_vault_androidapp.utils.SessionKeyHolder;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.button.MaterialButton;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import javax.crypto.SecretKey;
+
 /**
  * Secret vault activity for managing encrypted files.
  */
@@ -48,8 +56,10 @@ public class VaultActivity extends AppCompatActivity {
     private VaultFileAdapter adapter;
     private DatabaseHelper dbHelper;
     private String currentPin;
+    private int profileId;
     
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final SessionKeyHolder sessionKeys = SessionKeyHolder.getInstance();
 
     // File picker launcher
     private final ActivityResultLauncher<String> filePickerLauncher = registerForActivityResult(
@@ -78,12 +88,64 @@ public class VaultActivity extends AppCompatActivity {
             return;
         }
 
+        profileId = getIntent().getIntExtra("profile_id", DatabaseHelper.MAIN_PROFILE_ID);
+
         dbHelper = DatabaseHelper.getInstance(this);
         
         initializeUI();
+        unlock();
+        resumePinChange();
         loadFiles();
     }
 
+    /**
+     * Derive the PIN key once for this session. Queued on the single executor ahead of
+     * every file operation, which then use the held key without deriving again.
+     */
+    private void unlock() {
+        if (sessionKeys.isOpen(profileId)) return;
+        executor.execute(() -> {
+            try {
+                sessionKeys.open(profileId, dbHelper.unlockProfile(profileId, currentPin));
+            } catch (RuntimeException e) {
+                runOnUiThread(() -> {
+                    Toast.makeText(this, "Error unlocking vault: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    lockVault();
+                });
+            }
+        });
+    }
+
+    /**
+     * Finish moving files to a new PIN: right after a change, or on the next unlock if the
+     * app was closed before it was done. Holds the executor, so file operations wait for it.
+     */
+    private void resumePinChange() {
+        executor.execute(() -> {
+            if (!sessionKeys.isOpen(profileId) || !dbHelper.hasPendingPinChange(profileId)) return;
+            AlertDialog[] progress = new AlertDialog[1];
+            runOnUiThread(() -> progress[0] = new AlertDialog.Builder(this)
+                    .setTitle("Changing PIN")
+                    .setMessage("Re-encrypting files for the new PIN…")
+                    .setCancelable(false)
+                    .show());
+            try {
+                PinChangeJob.getInstance(this).run(profileId, sessionKeys.get(profileId),
+                        (done, total) -> runOnUiThread(() -> {
+                            if (progress[0] != null) {
+                                progress[0].setMessage("Re-encrypting files for the new PIN… " + done + "/" + total);
+                            }
+                        }));
+            } catch (RuntimeException e) {
+                runOnUiThread(() ->
+                    Toast.makeText(this, "Error re-encrypting files: " + e.getMessage(), Toast.LENGTH_LONG).show());
+            }
+            runOnUiThread(() -> {
+                if (progress[0] != null) progress[0].dismiss();
+            });
+        });
+    }
+
     private void initializeUI() {
         MaterialToolbar toolbar = findViewById(R.id.toolbar);
         toolbar.setNavigationOnClickListener(v -> lockVault());
@@ -130,6 +192,13 @@ public class VaultActivity extends AppCompatActivity {
         btnDownload.setOnClickListener(v -> downloadSelectedFiles());
         btnDelete.setOnClickListener(v -> deleteSelectedFiles());
         btnChangePin.setOnClickListener(v -> changePin());
+        // Only the main vault can see or add other vaults, so a decoy gives nothing away
+        if (profileId == DatabaseHelper.MAIN_PROFILE_ID) {
+            btnChangePin.setOnLongClickListener(v -> {
+                manageProfiles();
+                return true;
+            });
+        }
         btnLock.setOnClickListener(v -> lockVault());
         btnSelectAll.setOnClickListener(v -> adapter.selectAll());
         btnClearSelection.setOnClickListener(v -> adapter.clearSelection());
@@ -137,7 +206,7 @@ public class VaultActivity extends AppCompatActivity {
 
     private void loadFiles() {
         executor.execute(() -> {
-            List<VaultFile> files = dbHelper.getAllFiles();
+            List<VaultFile> files = dbHelper.getAllFiles(profileId);
             runOnUiThread(() -> {
                 adapter.setFiles(files);
                 updateEmptyState(files.isEmpty());
@@ -172,40 +241,41 @@ public class VaultActivity extends AppCompatActivity {
                 String fileName = getFileName(uri);
                 String extension = FileUtils.getExtension(fileName);
                 
-                // Read file data
-                InputStream inputStream = getContentResolver().openInputStream(uri);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    baos.write(buffer, 0, bytesRead);
-                }
-                inputStream.close();
-                
-                byte[] originalData = baos.toByteArray();
-                long fileSize = originalData.length;
-
-                // Encrypt file data
-                byte[] encryptedData = CryptoUtils.encryptData(originalData, currentPin);
-
-                // Create vault file
+                // Encrypt while reading, one chunk at a time, under the file's own key,
+                // straight into the content store
+                SecretKey dataKey = CryptoUtils.newDataKey();
+                ContentStore.Writer content = dbHelper.newContentWriter();
                 VaultFile vaultFile = new VaultFile();
-                vaultFile.setFileName(fileName);
-                vaultFile.setOriginalExtension(extension);
-                vaultFile.setFileData(encryptedData);
-                vaultFile.setFileSize(fileSize);
+                try {
+                    long fileSize;
+                    try (InputStream inputStream = getContentResolver().openInputStream(uri);
+                         OutputStream encrypting = CryptoUtils.encryptingStream(content, dataKey)) {
+                        fileSize = FileUtils.copy(inputStream, encrypting);
+                    }
 
-                // Save to database
-                long id = dbHelper.saveFile(vaultFile);
-                vaultFile.setId((int) id);
+                    // Create vault file
+                    vaultFile.setFileName(fileName);
+                    vaultFile.setOriginalExtension(extension);
+                    vaultFile.setFileSize(fileSize);
+                    vaultFile.setProfileId(profileId);
+                    vaultFile.setWrappedKey(CryptoUtils.wrapDataKey(dataKey, sessionKeys.get(profileId)));
+
+                    // Save to database
+                    long id = dbHelper.saveFile(vaultFile, content);
+                    vaultFile.setId((int) id);
+                } finally {
+                    // No-op once saved
+                    content.abort();
+                }
 
                 // Backup to Firebase
-                FirebaseHelper.getInstance().backupVaultFile(vaultFile, new FirebaseHelper.SyncCallback() {
-                    @Override
-                    public void onSuccess() {}
-                    @Override
-                    public void onFailure(String error) {}
-                });
+                FirebaseHelper.getInstance().backupVaultFile(vaultFile, dbHelper.openFileData(vaultFile.getId()),
+                        new FirebaseHelper.SyncCallback() {
+                            @Override
+                            public void onSuccess() {}
+                            @Override
+                            public void onFailure(String error) {}
+                        });
 
                 runOnUiThread(() -> {
                     Toast.makeText(this, "File uploaded successfully", Toast.LENGTH_SHORT).show();
@@ -240,14 +310,10 @@ public class VaultActivity extends AppCompatActivity {
     private void openFile(VaultFile file) {
         executor.execute(() -> {
             try {
-                // Get encrypted data
-                byte[] encryptedData = dbHelper.getFileData(file.getId());
-                
-                // Decrypt data
-                byte[] decryptedData = CryptoUtils.decryptData(encryptedData, currentPin);
-
-                // Create temp file
-                File tempFile = FileUtils.createTempFile(this, file.getFileName(), decryptedData);
+                // Decrypt into a temp file, one chunk at a time
+                File tempFile = FileUtils.createTempFile(this, file.getFileName(),
+                        CryptoUtils.decryptingStream(openStored(file),
+                                file.getWrappedKey(), sessionKeys.get(profileId), currentPin));
 
                 // Get URI using FileProvider
                 Uri uri = FileProvider.getUriForFile(this,
@@ -274,6 +340,14 @@ public class VaultActivity extends AppCompatActivity {
         });
     }
 
+    private InputStream openStored(VaultFile file) throws IOException {
+        InputStream stored = dbHelper.openFileData(file.getId());
+        if (stored == null) {
+            throw new FileNotFoundException("File no longer exists");
+        }
+        return stored;
+    }
+
     private void openSelectedFiles() {
         List<VaultFile> selected = adapter.getSelectedFiles();
         if (selected.isEmpty()) {
@@ -303,16 +377,13 @@ public class VaultActivity extends AppCompatActivity {
 
         executor.execute(() -> {
             try {
-                // Get encrypted data
-                byte[] encryptedData = dbHelper.getFileData(fileToSave.getId());
-                
-                // Decrypt data
-                byte[] decryptedData = CryptoUtils.decryptData(encryptedData, currentPin);
-
-                // Write to output
-                OutputStream outputStream = getContentResolver().openOutputStream(uri);
-                outputStream.write(decryptedData);
-                outputStream.close();
+                // Decrypt straight to the output, one chunk at a time
+                try (InputStream decrypting = CryptoUtils.decryptingStream(
+                             openStored(fileToSave), fileToSave.getWrappedKey(),
+                             sessionKeys.get(profileId), currentPin);
+                     OutputStream outputStream = getContentResolver().openOutputStream(uri)) {
+                    FileUtils.copy(decrypting, outputStream);
+                }
 
                 runOnUiThread(() -> {
                     Toast.makeText(this, "File downloaded successfully", Toast.LENGTH_SHORT).show();
@@ -363,11 +434,55 @@ public class VaultActivity extends AppCompatActivity {
         Intent intent = new Intent(this, PinSetupActivity.class);
         intent.putExtra("mode", "change");
         intent.putExtra("current_pin", currentPin);
+        intent.putExtra("profile_id", profileId);
         startActivity(intent);
         finish();
     }
 
+    private void manageProfiles() {
+        executor.execute(() -> {
+            Map<Integer, String> profiles = dbHelper.getProfileNames();
+            profiles.remove(DatabaseHelper.MAIN_PROFILE_ID);
+            List<Integer> ids = new ArrayList<>(profiles.keySet());
+            String[] items = new String[ids.size() + 1];
+            for (int i = 0; i < ids.size(); i++) {
+                items[i] = profiles.get(ids.get(i));
+            }
+            items[ids.size()] = "Add vault";
+
+            runOnUiThread(() -> new AlertDialog.Builder(this)
+                    .setTitle("Vaults")
+                    .setItems(items, (dialog, which) -> {
+                        if (which == ids.size()) {
+                            Intent intent = new Intent(this, PinSetupActivity.class);
+                            intent.putExtra("mode", "add_profile");
+                            intent.putExtra("profile_name", "Vault " + (ids.size() + 2));
+                            startActivity(intent);
+                        } else {
+                            confirmDeleteProfile(ids.get(which), items[which]);
+                        }
+                    })
+                    .setNegativeButton("Cancel", null)
+                    .show());
+        });
+    }
+
+    private void confirmDeleteProfile(int id, String name) {
+        new AlertDialog.Builder(this)
+                .setTitle("Delete Vault")
+                .setMessage("Delete " + name + " and all of its files?")
+                .setPositiveButton("Delete", (dialog, which) -> executor.execute(() -> {
+                    dbHelper.deleteProfile(id);
+                    runOnUiThread(() ->
+                        Toast.makeText(this, name + " deleted", Toast.LENGTH_SHORT).show());
+                }))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
     private void lockVault() {
+        sessionKeys.wipe();
+
         // Clean up temp files
         FileUtils.deleteTempFiles();
         FileUtils.clearTempDirectory(this);
@@ -390,6 +505,10 @@ public class VaultActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         FileUtils.deleteTempFiles();
+        // A rotation recreates the activity in the same session; anything else ends it
+        if (!isChangingConfigurations()) {
+            sessionKeys.wipe();
+        }
         executor.shutdown();
     }
 }
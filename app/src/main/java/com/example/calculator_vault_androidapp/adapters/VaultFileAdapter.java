@@ -101,7 +101,10 @@ public class VaultFileAdapter extends RecyclerView.Adapter<VaultFileAdapter.View
         
         holder.tvFileName.setText(file.getFileName());
         holder.tvFileType.setText(file.getOriginalExtension().toUpperCase());
-        holder.tvFileSize.setText(FileUtils.formatFileSize(file.getFileSize()));
+        // Flagged by the integrity scrubber; opening it would fail verification
+        holder.tvFileSize.setText(file.isCorrupt()
+                ? FileUtils.formatFileSize(file.getFileSize()) + " · damaged"
+                : FileUtils.formatFileSize(file.getFileSize()));
         holder.tvUploadDate.setText(formatDate(file.getUploadedAt()));
         
         boolean isSelected = selectedIds.contains(file.getId());
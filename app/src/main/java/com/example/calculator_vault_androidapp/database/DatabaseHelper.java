@@ -3,45 +3,112 @@ package com.example.calculator_vault_androidapp.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.ParcelFileDescriptor;
 
+import com.example.calculator_vault_androidapp.engine.SuggestionTrie;
 import com.example.calculator_vault_androidapp.models.CalculationHistory;
 import com.example.calculator_vault_androidapp.models.VaultFile;
+import com.example.calculator_vault_androidapp.utils.ChunkedCipherReader;
+import com.example.calculator_vault_androidapp.utils.ContentStore;
 import com.example.calculator_vault_androidapp.utils.CryptoUtils;
+import com.example.calculator_vault_androidapp.utils.IntegrityScrubber;
+import com.example.calculator_vault_androidapp.utils.KeyDerivation;
+import com.example.calculator_vault_androidapp.utils.KeystoreKeys;
+import com.example.calculator_vault_androidapp.utils.PinMatcher;
+import com.example.calculator_vault_androidapp.utils.PinVerifier;
+import com.example.calculator_vault_androidapp.utils.SessionKey;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
 
 /**
- * SQLite database helper for managing app data.
+ * SQLite database helper for managing app data. Vault file contents live in a
+ * {@link ContentStore} under filesDir; their rows keep only metadata and the entry name.
  */
-public class DatabaseHelper extends SQLiteOpenHelper {
+public class DatabaseHelper extends SQLiteOpenHelper implements IntegrityScrubber.Store {
 
     private static final String DATABASE_NAME = "calculator_vault.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 10;
+    // Marks a PIN hash from before keyed verifiers, replaced once the verifier key is loaded
+    private static final String LEGACY_PIN_HASH_PREFIX = "sha256:";
+    private static final String CONTENT_STORE_DIR = "vault_store";
+    // Entries younger than this may belong to a file still being saved
+    private static final long SWEEP_MIN_AGE_MS = 24 * 60 * 60 * 1000L;
+
+    // Profile opened by the PIN chosen at first launch; it cannot be deleted
+    public static final int MAIN_PROFILE_ID = 1;
 
     // Table names
     private static final String TABLE_CONFIG = "config";
     private static final String TABLE_VAULT_FILES = "vault_files";
+    private static final String TABLE_VAULT_PROFILES = "vault_profiles";
     private static final String TABLE_CALCULATION_HISTORY = "calculation_history";
+    private static final String TABLE_PIN_CHANGES = "pin_changes";
+    private static final String TABLE_PIN_CHANGE_FILES = "pin_change_files";
 
     // Config table columns
     private static final String COL_CONFIG_ID = "id";
     private static final String COL_CONFIG_PIN_HASH = "pin_hash";
     private static final String COL_CONFIG_IS_FIRST_TIME = "is_first_time";
     private static final String COL_CONFIG_CREATED_AT = "created_at";
+    private static final String COL_CONFIG_CIPHER_SUITE = "cipher_suite";
+    private static final String COL_CONFIG_SCRUB_FILE_ID = "scrub_file_id";
+    private static final String COL_CONFIG_SCRUB_OFFSET = "scrub_offset";
+    private static final String COL_CONFIG_SCRUB_BASELINE = "scrub_baseline";
+    private static final String COL_CONFIG_PIN_VERIFIER_KEY = "pin_verifier_key";
 
     // Vault files table columns
     private static final String COL_FILE_ID = "id";
     private static final String COL_FILE_NAME = "file_name";
     private static final String COL_FILE_EXTENSION = "original_extension";
+    // Contents of files saved before the content store; emptied as they are moved out
     private static final String COL_FILE_DATA = "file_data";
     private static final String COL_FILE_SIZE = "file_size";
     private static final String COL_FILE_UPLOADED_AT = "uploaded_at";
+    private static final String COL_FILE_PROFILE_ID = "profile_id";
+    private static final String COL_FILE_WRAPPED_KEY = "wrapped_key";
+    private static final String COL_FILE_CHECKSUMS = "checksums";
+    private static final String COL_FILE_CORRUPT = "corrupt";
+    private static final String COL_FILE_STORAGE_REF = "storage_ref";
+
+    // Vault profiles table columns
+    private static final String COL_PROFILE_ID = "id";
+    private static final String COL_PROFILE_NAME = "name";
+    private static final String COL_PROFILE_PIN_HASH = "pin_hash";
+    private static final String COL_PROFILE_CREATED_AT = "created_at";
+    private static final String COL_PROFILE_KDF_SALT = "kdf_salt";
+    private static final String COL_PROFILE_KDF_ITERATIONS = "kdf_iterations";
+
+    // PIN change journal columns: one row per profile being moved to a new PIN, and one
+    // per file of it not moved yet
+    private static final String COL_PIN_CHANGE_PROFILE_ID = "profile_id";
+    private static final String COL_PIN_CHANGE_SEALED_OLD_PIN = "sealed_old_pin";
+    private static final String COL_PIN_CHANGE_OLD_KDF_SALT = "old_kdf_salt";
+    private static final String COL_PIN_CHANGE_OLD_KDF_ITERATIONS = "old_kdf_iterations";
+    private static final String COL_PIN_CHANGE_TOTAL_FILES = "total_files";
+    private static final String COL_PIN_CHANGE_FILE_ID = "file_id";
 
     // Calculation history table columns
     private static final String COL_HISTORY_ID = "id";
@@ -51,6 +118,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     private static DatabaseHelper instance;
     private final SimpleDateFormat dateFormat;
+    private final ContentStore contentStore;
+    private final Future<PinVerifier> pinVerifier;
 
     public static synchronized DatabaseHelper getInstance(Context context) {
         if (instance == null) {
@@ -62,6 +131,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+        contentStore = new ContentStore(new File(context.getFilesDir(), CONTENT_STORE_DIR));
+        // The Keystore and any legacy hashes are slow; load them off the caller's thread,
+        // long before a PIN is typed
+        ExecutorService loader = Executors.newSingleThreadExecutor();
+        pinVerifier = loader.submit(this::loadPinVerifier);
+        loader.shutdown();
     }
 
     @Override
@@ -71,7 +146,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 COL_CONFIG_ID + " INTEGER PRIMARY KEY, " +
                 COL_CONFIG_PIN_HASH + " TEXT, " +
                 COL_CONFIG_IS_FIRST_TIME + " INTEGER DEFAULT 1, " +
-                COL_CONFIG_CREATED_AT + " TEXT" +
+                COL_CONFIG_CREATED_AT + " TEXT, " +
+                COL_CONFIG_CIPHER_SUITE + " INTEGER, " +
+                COL_CONFIG_SCRUB_FILE_ID + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_CONFIG_SCRUB_OFFSET + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_CONFIG_SCRUB_BASELINE + " BLOB, " +
+                COL_CONFIG_PIN_VERIFIER_KEY + " BLOB" +
                 ")";
         db.execSQL(createConfigTable);
 
@@ -82,9 +162,19 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 COL_FILE_EXTENSION + " TEXT, " +
                 COL_FILE_DATA + " BLOB, " +
                 COL_FILE_SIZE + " INTEGER, " +
-                COL_FILE_UPLOADED_AT + " TEXT" +
+                COL_FILE_UPLOADED_AT + " TEXT, " +
+                COL_FILE_PROFILE_ID + " INTEGER NOT NULL DEFAULT " + MAIN_PROFILE_ID + ", " +
+                COL_FILE_WRAPPED_KEY + " BLOB, " +
+                COL_FILE_CHECKSUMS + " BLOB, " +
+                COL_FILE_CORRUPT + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_FILE_STORAGE_REF + " TEXT" +
                 ")";
         db.execSQL(createVaultFilesTable);
+        createProfileIndex(db);
+        createStorageRefIndex(db);
+
+        createProfilesTable(db);
+        insertMainProfile(db, null);
 
         // Create calculation history table
         String createHistoryTable = "CREATE TABLE " + TABLE_CALCULATION_HISTORY + " (" +
@@ -95,6 +185,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 ")";
         db.execSQL(createHistoryTable);
 
+        createPinChangeTables(db);
+
         // Insert initial config row
         ContentValues values = new ContentValues();
         values.put(COL_CONFIG_ID, 1);
@@ -105,17 +197,217 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CONFIG);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_VAULT_FILES);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CALCULATION_HISTORY);
-        onCreate(db);
+        // Migrate step by step so vault files survive upgrades
+        if (oldVersion < 2) {
+            // Version 2: vault profiles; existing files and PIN become the main profile
+            db.execSQL("ALTER TABLE " + TABLE_VAULT_FILES + " ADD COLUMN " +
+                    COL_FILE_PROFILE_ID + " INTEGER NOT NULL DEFAULT " + MAIN_PROFILE_ID);
+            createProfileIndex(db);
+            createProfilesTable(db);
+            String pinHash = null;
+            Cursor cursor = db.query(TABLE_CONFIG, new String[]{COL_CONFIG_PIN_HASH},
+                    COL_CONFIG_ID + " = ?", new String[]{"1"}, null, null, null);
+            if (cursor.moveToFirst()) {
+                pinHash = cursor.getString(0);
+            }
+            cursor.close();
+            insertMainProfile(db, pinHash);
+        }
+        if (oldVersion < 3) {
+            // Version 3: per-file data keys; existing files get one at their next PIN change
+            db.execSQL("ALTER TABLE " + TABLE_VAULT_FILES + " ADD COLUMN " +
+                    COL_FILE_WRAPPED_KEY + " BLOB");
+        }
+        if (oldVersion >= 2 && oldVersion < 4) {
+            // Version 4: salted PIN key derivation; profiles move to it at their next
+            // unlock. A profiles table created by the step above already has the columns
+            db.execSQL("ALTER TABLE " + TABLE_VAULT_PROFILES + " ADD COLUMN " +
+                    COL_PROFILE_KDF_SALT + " BLOB");
+            db.execSQL("ALTER TABLE " + TABLE_VAULT_PROFILES + " ADD COLUMN " +
+                    COL_PROFILE_KDF_ITERATIONS + " INTEGER");
+        }
+        if (oldVersion < 5) {
+            // Version 5: cipher suite for new files, chosen by benchmark at the next start
+            db.execSQL("ALTER TABLE " + TABLE_CONFIG + " ADD COLUMN " +
+                    COL_CONFIG_CIPHER_SUITE + " INTEGER");
+        }
+        if (oldVersion < 6) {
+            // Version 6: slice checksums for the integrity scrubber; existing files get
+            // theirs on the first scrub pass
+            db.execSQL("ALTER TABLE " + TABLE_VAULT_FILES + " ADD COLUMN " +
+                    COL_FILE_CHECKSUMS + " BLOB");
+            db.execSQL("ALTER TABLE " + TABLE_VAULT_FILES + " ADD COLUMN " +
+                    COL_FILE_CORRUPT + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE_CONFIG + " ADD COLUMN " +
+                    COL_CONFIG_SCRUB_FILE_ID + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE_CONFIG + " ADD COLUMN " +
+                    COL_CONFIG_SCRUB_OFFSET + " INTEGER NOT NULL DEFAULT 0");
+        }
+        if (oldVersion < 7) {
+            // Version 7: journal for PIN changes that resume after process death
+            createPinChangeTables(db);
+        }
+        if (oldVersion < 8) {
+            // Version 8: contents move to the content store; rows are moved one at a time
+            // by migrateFileData, or when first opened
+            db.execSQL("ALTER TABLE " + TABLE_VAULT_FILES + " ADD COLUMN " +
+                    COL_FILE_STORAGE_REF + " TEXT");
+            createStorageRefIndex(db);
+        }
+        if (oldVersion < 9) {
+            // Version 9: PIN hashes become keyed verifiers. Rekeying needs the verifier key,
+            // so the old hashes are only marked here and replaced by loadPinVerifier
+            db.execSQL("ALTER TABLE " + TABLE_CONFIG + " ADD COLUMN " +
+                    COL_CONFIG_PIN_VERIFIER_KEY + " BLOB");
+            db.execSQL("UPDATE " + TABLE_VAULT_PROFILES + " SET " + COL_PROFILE_PIN_HASH + " = '" +
+                    LEGACY_PIN_HASH_PREFIX + "' || " + COL_PROFILE_PIN_HASH +
+                    " WHERE " + COL_PROFILE_PIN_HASH + " IS NOT NULL");
+            db.execSQL("UPDATE " + TABLE_CONFIG + " SET " + COL_CONFIG_PIN_HASH + " = '" +
+                    LEGACY_PIN_HASH_PREFIX + "' || " + COL_CONFIG_PIN_HASH +
+                    " WHERE " + COL_CONFIG_PIN_HASH + " IS NOT NULL");
+        }
+        if (oldVersion < 10) {
+            // Version 10: a file's first scrub pass resumes with its checksums so far
+            db.execSQL("ALTER TABLE " + TABLE_CONFIG + " ADD COLUMN " +
+                    COL_CONFIG_SCRUB_BASELINE + " BLOB");
+        }
+    }
+
+    /**
+     * Load the PIN verifier key, creating it on first use, and replace any PIN hashes
+     * marked by the version 9 upgrade. Runs once, on the loader thread.
+     */
+    private PinVerifier loadPinVerifier() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        Cursor cursor = db.query(TABLE_CONFIG, new String[]{COL_CONFIG_PIN_VERIFIER_KEY},
+                COL_CONFIG_ID + " = ?", new String[]{"1"}, null, null, null);
+        byte[] wrapped = cursor.moveToFirst() ? cursor.getBlob(0) : null;
+        cursor.close();
+
+        byte[] key;
+        if (wrapped != null) {
+            key = KeystoreKeys.unwrap(wrapped);
+        } else {
+            key = PinVerifier.newKey();
+            ContentValues values = new ContentValues();
+            values.put(COL_CONFIG_PIN_VERIFIER_KEY, KeystoreKeys.wrap(key));
+            db.update(TABLE_CONFIG, values, COL_CONFIG_ID + " = ?", new String[]{"1"});
+        }
+        PinVerifier verifier = new PinVerifier(key);
+        Arrays.fill(key, (byte) 0);
+
+        rekeyLegacyPinHashes(db, verifier);
+        PinMatcher.getInstance().setVerifier(verifier);
+        return verifier;
+    }
+
+    /**
+     * Replace the plain SHA-256 PIN hashes of earlier versions with {@link PinVerifier}
+     * hashes, recovering each PIN from its old hash.
+     */
+    private void rekeyLegacyPinHashes(SQLiteDatabase db, PinVerifier verifier) {
+        String legacy = LEGACY_PIN_HASH_PREFIX + "%";
+        Map<Integer, String> profiles = new LinkedHashMap<>();
+        Cursor cursor = db.query(TABLE_VAULT_PROFILES, new String[]{COL_PROFILE_ID, COL_PROFILE_PIN_HASH},
+                COL_PROFILE_PIN_HASH + " LIKE ?", new String[]{legacy}, null, null, null);
+        while (cursor.moveToNext()) {
+            profiles.put(cursor.getInt(0), cursor.getString(1));
+        }
+        cursor.close();
+        for (Map.Entry<Integer, String> profile : profiles.entrySet()) {
+            ContentValues values = new ContentValues();
+            values.put(COL_PROFILE_PIN_HASH, rekeyPinHash(profile.getValue(), verifier));
+            db.update(TABLE_VAULT_PROFILES, values, COL_PROFILE_ID + " = ?",
+                    new String[]{String.valueOf(profile.getKey())});
+        }
+
+        cursor = db.query(TABLE_CONFIG, new String[]{COL_CONFIG_PIN_HASH},
+                COL_CONFIG_ID + " = ? AND " + COL_CONFIG_PIN_HASH + " LIKE ?",
+                new String[]{"1", legacy}, null, null, null);
+        String configHash = cursor.moveToFirst() ? cursor.getString(0) : null;
+        cursor.close();
+        if (configHash != null) {
+            ContentValues values = new ContentValues();
+            values.put(COL_CONFIG_PIN_HASH, rekeyPinHash(configHash, verifier));
+            db.update(TABLE_CONFIG, values, COL_CONFIG_ID + " = ?", new String[]{"1"});
+        }
+    }
+
+    private static String rekeyPinHash(String marked, PinVerifier verifier) {
+        String pin = PinVerifier.recoverLegacyPin(marked.substring(LEGACY_PIN_HASH_PREFIX.length()));
+        // A hash that is no PIN's opened nothing; drop it rather than keep it unkeyed
+        return pin != null ? verifier.hash(pin) : null;
+    }
+
+    private void createPinChangeTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PIN_CHANGES + " (" +
+                COL_PIN_CHANGE_PROFILE_ID + " INTEGER PRIMARY KEY, " +
+                COL_PIN_CHANGE_SEALED_OLD_PIN + " BLOB NOT NULL, " +
+                COL_PIN_CHANGE_OLD_KDF_SALT + " BLOB, " +
+                COL_PIN_CHANGE_OLD_KDF_ITERATIONS + " INTEGER, " +
+                COL_PIN_CHANGE_TOTAL_FILES + " INTEGER NOT NULL" +
+                ")");
+        db.execSQL("CREATE TABLE " + TABLE_PIN_CHANGE_FILES + " (" +
+                COL_PIN_CHANGE_FILE_ID + " INTEGER PRIMARY KEY, " +
+                COL_PIN_CHANGE_PROFILE_ID + " INTEGER NOT NULL" +
+                ")");
+        db.execSQL("CREATE INDEX idx_pin_change_files_profile ON " + TABLE_PIN_CHANGE_FILES +
+                " (" + COL_PIN_CHANGE_PROFILE_ID + ")");
+    }
+
+    private void createProfilesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_VAULT_PROFILES + " (" +
+                COL_PROFILE_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COL_PROFILE_NAME + " TEXT, " +
+                COL_PROFILE_PIN_HASH + " TEXT UNIQUE, " +
+                COL_PROFILE_CREATED_AT + " TEXT, " +
+                COL_PROFILE_KDF_SALT + " BLOB, " +
+                COL_PROFILE_KDF_ITERATIONS + " INTEGER" +
+                ")");
+    }
+
+    private void createProfileIndex(SQLiteDatabase db) {
+        // Every file listing and re-encryption is scoped to one profile
+        db.execSQL("CREATE INDEX idx_vault_files_profile ON " + TABLE_VAULT_FILES +
+                " (" + COL_FILE_PROFILE_ID + ")");
+    }
+
+    private void createStorageRefIndex(SQLiteDatabase db) {
+        // An entry is deleted only once no row points to it
+        db.execSQL("CREATE INDEX idx_vault_files_storage_ref ON " + TABLE_VAULT_FILES +
+                " (" + COL_FILE_STORAGE_REF + ")");
+    }
+
+    private void insertMainProfile(SQLiteDatabase db, String pinHash) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PROFILE_ID, MAIN_PROFILE_ID);
+        values.put(COL_PROFILE_NAME, "Main");
+        values.put(COL_PROFILE_PIN_HASH, pinHash);
+        values.put(COL_PROFILE_CREATED_AT, dateFormat.format(new Date()));
+        db.insert(TABLE_VAULT_PROFILES, null, values);
     }
 
     // ===================== CONFIG OPERATIONS =====================
 
     /**
-     * Set the PIN hash in config.
-     * @param hash The SHA-256 hash of the PIN
+     * @return The keyed hash that PIN hashes are stored as. Waits for its key if it is still
+     *         loading, which it only is for a moment after the app starts
+     * @throws IllegalStateException If the key could not be loaded
+     */
+    public PinVerifier getPinVerifier() {
+        try {
+            return pinVerifier.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("PIN verifier key not available", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        }
+    }
+
+    /**
+     * Set the PIN hash of the main profile in config.
+     * @param hash The {@link PinVerifier} hash of the PIN
      */
     public void setPinHash(String hash) {
         SQLiteDatabase db = this.getWritableDatabase();
@@ -123,25 +415,180 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COL_CONFIG_PIN_HASH, hash);
         values.put(COL_CONFIG_IS_FIRST_TIME, 0);
         db.update(TABLE_CONFIG, values, COL_CONFIG_ID + " = ?", new String[]{"1"});
+        setProfilePinHash(MAIN_PROFILE_ID, hash);
     }
 
     /**
-     * Get the stored PIN hash.
+     * Get the stored PIN hash of the main profile.
      * @return The PIN hash or null if not set
      */
     public String getPinHash() {
+        return getProfilePinHash(MAIN_PROFILE_ID);
+    }
+
+    /**
+     * Get the cipher suite chosen for new files on this device.
+     * @return The suite's header id, or null if no benchmark has run yet
+     */
+    public Integer getCipherSuiteId() {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_CONFIG, new String[]{COL_CONFIG_PIN_HASH},
+        Cursor cursor = db.query(TABLE_CONFIG, new String[]{COL_CONFIG_CIPHER_SUITE},
                 COL_CONFIG_ID + " = ?", new String[]{"1"}, null, null, null);
-        
+        Integer id = null;
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            id = cursor.getInt(0);
+        }
+        cursor.close();
+        return id;
+    }
+
+    /**
+     * Store the cipher suite chosen for new files, so the benchmark runs only once.
+     * @param id The suite's header id
+     */
+    public void setCipherSuiteId(int id) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_CONFIG_CIPHER_SUITE, id);
+        db.update(TABLE_CONFIG, values, COL_CONFIG_ID + " = ?", new String[]{"1"});
+    }
+
+    // ===================== VAULT PROFILE OPERATIONS =====================
+
+    /**
+     * Create a vault profile, e.g. a decoy vault, opened by its own PIN.
+     * @param name The profile name
+     * @param pinHash The {@link PinVerifier} hash of the profile's PIN, not used by another profile
+     * @return The ID of the new profile, or -1 if error
+     */
+    public long createProfile(String name, String pinHash) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_PROFILE_NAME, name);
+        values.put(COL_PROFILE_PIN_HASH, pinHash);
+        values.put(COL_PROFILE_CREATED_AT, dateFormat.format(new Date()));
+        long id = db.insert(TABLE_VAULT_PROFILES, null, values);
+        if (id != -1) {
+            PinMatcher.getInstance().setPinHash((int) id, pinHash);
+        }
+        return id;
+    }
+
+    /**
+     * Set the PIN hash of a profile.
+     * @param profileId The profile ID
+     * @param hash The {@link PinVerifier} hash of the PIN
+     */
+    public void setProfilePinHash(int profileId, String hash) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_PROFILE_PIN_HASH, hash);
+        db.update(TABLE_VAULT_PROFILES, values, COL_PROFILE_ID + " = ?",
+                new String[]{String.valueOf(profileId)});
+        // Keystroke PIN checks use the in-memory copy
+        PinMatcher.getInstance().setPinHash(profileId, hash);
+    }
+
+    /**
+     * Get the PIN hash of a profile.
+     * @param profileId The profile ID
+     * @return The PIN hash or null if not set
+     */
+    public String getProfilePinHash(int profileId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_VAULT_PROFILES, new String[]{COL_PROFILE_PIN_HASH},
+                COL_PROFILE_ID + " = ?", new String[]{String.valueOf(profileId)}, null, null, null);
+
         String hash = null;
         if (cursor.moveToFirst()) {
-            hash = cursor.getString(cursor.getColumnIndexOrThrow(COL_CONFIG_PIN_HASH));
+            hash = cursor.getString(cursor.getColumnIndexOrThrow(COL_PROFILE_PIN_HASH));
         }
         cursor.close();
         return hash;
     }
 
+    /**
+     * Get the PIN hashes of all profiles, to build the in-memory PIN index.
+     * @return PIN hashes by profile ID, for profiles with a PIN set
+     */
+    public Map<Integer, String> getProfilePinHashes() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_VAULT_PROFILES,
+                new String[]{COL_PROFILE_ID, COL_PROFILE_PIN_HASH},
+                COL_PROFILE_PIN_HASH + " IS NOT NULL", null, null, null, null);
+
+        Map<Integer, String> hashes = new LinkedHashMap<>();
+        while (cursor.moveToNext()) {
+            hashes.put(cursor.getInt(0), cursor.getString(1));
+        }
+        cursor.close();
+        return hashes;
+    }
+
+    /**
+     * Get the names of all profiles.
+     * @return Profile names by ID, in creation order
+     */
+    public Map<Integer, String> getProfileNames() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_VAULT_PROFILES,
+                new String[]{COL_PROFILE_ID, COL_PROFILE_NAME},
+                null, null, null, null, COL_PROFILE_ID);
+
+        Map<Integer, String> names = new LinkedHashMap<>();
+        while (cursor.moveToNext()) {
+            names.put(cursor.getInt(0), cursor.getString(1));
+        }
+        cursor.close();
+        return names;
+    }
+
+    /**
+     * Check whether any profile already opens with a PIN.
+     * @param pinHash The {@link PinVerifier} hash of the PIN
+     * @return true if the PIN belongs to a profile
+     */
+    public boolean isPinInUse(String pinHash) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_VAULT_PROFILES, new String[]{COL_PROFILE_ID},
+                COL_PROFILE_PIN_HASH + " = ?", new String[]{pinHash}, null, null, null);
+        boolean inUse = cursor.moveToFirst();
+        cursor.close();
+        return inUse;
+    }
+
+    /**
+     * Delete a profile and all of its files. The main profile is never deleted.
+     * @param profileId The profile ID
+     */
+    public void deleteProfile(int profileId) {
+        if (profileId == MAIN_PROFILE_ID) return;
+        SQLiteDatabase db = this.getWritableDatabase();
+        String[] args = {String.valueOf(profileId)};
+        List<String> refs = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_STORAGE_REF},
+                    COL_FILE_PROFILE_ID + " = ? AND " + COL_FILE_STORAGE_REF + " IS NOT NULL",
+                    args, null, null, null);
+            while (cursor.moveToNext()) {
+                refs.add(cursor.getString(0));
+            }
+            cursor.close();
+            db.delete(TABLE_VAULT_FILES, COL_FILE_PROFILE_ID + " = ?", args);
+            db.delete(TABLE_VAULT_PROFILES, COL_PROFILE_ID + " = ?", args);
+            db.delete(TABLE_PIN_CHANGES, COL_PIN_CHANGE_PROFILE_ID + " = ?", args);
+            db.delete(TABLE_PIN_CHANGE_FILES, COL_PIN_CHANGE_PROFILE_ID + " = ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (String ref : refs) {
+            releaseContent(ref);
+        }
+        PinMatcher.getInstance().setPinHash(profileId, null);
+    }
+
     /**
      * Check if this is the first time the app is launched.
      * @return true if first time (PIN not set)
@@ -161,33 +608,47 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     // ===================== VAULT FILE OPERATIONS =====================
 
+    /**
+     * Start storing a file's encrypted contents. Write them through the returned stream,
+     * commit it, and pass the writer to {@link #saveFile}.
+     */
+    public ContentStore.Writer newContentWriter() throws IOException {
+        return contentStore.newWriter();
+    }
+
     /**
      * Save a file to the vault.
      * @param file The VaultFile object to save
+     * @param content Its committed contents
      * @return The row ID of the inserted file
      */
-    public long saveFile(VaultFile file) {
+    public long saveFile(VaultFile file, ContentStore.Writer content) throws IOException {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COL_FILE_NAME, file.getFileName());
         values.put(COL_FILE_EXTENSION, file.getOriginalExtension());
-        values.put(COL_FILE_DATA, file.getFileData());
+        values.put(COL_FILE_STORAGE_REF, content.commit());
+        values.put(COL_FILE_CHECKSUMS, content.getChecksums());
         values.put(COL_FILE_SIZE, file.getFileSize());
         values.put(COL_FILE_UPLOADED_AT, dateFormat.format(new Date()));
+        values.put(COL_FILE_PROFILE_ID, file.getProfileId());
+        values.put(COL_FILE_WRAPPED_KEY, file.getWrappedKey());
         return db.insert(TABLE_VAULT_FILES, null, values);
     }
 
     /**
-     * Get all files in the vault (without file data for performance).
+     * Get all files in a vault profile (without file data for performance).
+     * @param profileId The profile ID
      * @return List of VaultFile objects
      */
-    public List<VaultFile> getAllFiles() {
+    public List<VaultFile> getAllFiles(int profileId) {
         List<VaultFile> files = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
         
         String[] columns = {COL_FILE_ID, COL_FILE_NAME, COL_FILE_EXTENSION, 
-                           COL_FILE_SIZE, COL_FILE_UPLOADED_AT};
-        Cursor cursor = db.query(TABLE_VAULT_FILES, columns, null, null, null, null,
+                           COL_FILE_SIZE, COL_FILE_UPLOADED_AT, COL_FILE_WRAPPED_KEY, COL_FILE_CORRUPT};
+        Cursor cursor = db.query(TABLE_VAULT_FILES, columns,
+                COL_FILE_PROFILE_ID + " = ?", new String[]{String.valueOf(profileId)}, null, null,
                 COL_FILE_UPLOADED_AT + " DESC");
 
         while (cursor.moveToNext()) {
@@ -197,6 +658,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             file.setOriginalExtension(cursor.getString(cursor.getColumnIndexOrThrow(COL_FILE_EXTENSION)));
             file.setFileSize(cursor.getLong(cursor.getColumnIndexOrThrow(COL_FILE_SIZE)));
             file.setUploadedAt(cursor.getString(cursor.getColumnIndexOrThrow(COL_FILE_UPLOADED_AT)));
+            file.setProfileId(profileId);
+            file.setWrappedKey(cursor.getBlob(cursor.getColumnIndexOrThrow(COL_FILE_WRAPPED_KEY)));
+            file.setCorrupt(cursor.getInt(cursor.getColumnIndexOrThrow(COL_FILE_CORRUPT)) != 0);
             files.add(file);
         }
         cursor.close();
@@ -204,31 +668,67 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Get file data by ID.
+     * Open a file's encrypted contents. A file saved before the content store is moved
+     * into it first.
+     * @param id The file ID
+     * @return The stored bytes, for the caller to close, or null if the file does not exist
+     */
+    public InputStream openFileData(int id) throws IOException {
+        String ref = getStorageRef(id);
+        if (ref == null) {
+            ref = migrateFile(id);
+            if (ref == null) return null;
+        }
+        return contentStore.open(ref);
+    }
+
+    /**
+     * Open a file's encrypted contents by range, for {@link CryptoUtils#decryptingReader}
+     * to read its plaintext at any position. A file saved before the content store is
+     * moved into it first. The entry is looked up once, so each range read is a plain
+     * file read.
      * @param id The file ID
-     * @return The file data as byte array
+     * @return The stored bytes, or null if the file does not exist
      */
-    public byte[] getFileData(int id) {
+    public ChunkedCipherReader.Source getFileSource(int id) throws IOException {
+        String ref = getStorageRef(id);
+        if (ref == null) {
+            ref = migrateFile(id);
+            if (ref == null) return null;
+        }
+        String entry = ref;
+        return new ChunkedCipherReader.Source() {
+            @Override
+            public long length() {
+                return contentStore.length(entry);
+            }
+
+            @Override
+            public byte[] read(long offset, int length) throws IOException {
+                return contentStore.read(entry, offset, length);
+            }
+        };
+    }
+
+    private String getStorageRef(int id) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_DATA},
+        Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_STORAGE_REF},
                 COL_FILE_ID + " = ?", new String[]{String.valueOf(id)}, null, null, null);
-        
-        byte[] data = null;
-        if (cursor.moveToFirst()) {
-            data = cursor.getBlob(cursor.getColumnIndexOrThrow(COL_FILE_DATA));
-        }
+        String ref = cursor.moveToFirst() ? cursor.getString(0) : null;
         cursor.close();
-        return data;
+        return ref;
     }
 
     /**
-     * Get a complete VaultFile by ID.
+     * Get a VaultFile by ID, without its contents; see {@link #openFileData}.
      * @param id The file ID
      * @return The VaultFile object or null
      */
     public VaultFile getFileById(int id) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_VAULT_FILES, null,
+        String[] columns = {COL_FILE_ID, COL_FILE_NAME, COL_FILE_EXTENSION, COL_FILE_SIZE,
+                COL_FILE_UPLOADED_AT, COL_FILE_PROFILE_ID, COL_FILE_WRAPPED_KEY, COL_FILE_CORRUPT};
+        Cursor cursor = db.query(TABLE_VAULT_FILES, columns,
                 COL_FILE_ID + " = ?", new String[]{String.valueOf(id)}, null, null, null);
         
         VaultFile file = null;
@@ -237,9 +737,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             file.setId(cursor.getInt(cursor.getColumnIndexOrThrow(COL_FILE_ID)));
             file.setFileName(cursor.getString(cursor.getColumnIndexOrThrow(COL_FILE_NAME)));
             file.setOriginalExtension(cursor.getString(cursor.getColumnIndexOrThrow(COL_FILE_EXTENSION)));
-            file.setFileData(cursor.getBlob(cursor.getColumnIndexOrThrow(COL_FILE_DATA)));
             file.setFileSize(cursor.getLong(cursor.getColumnIndexOrThrow(COL_FILE_SIZE)));
             file.setUploadedAt(cursor.getString(cursor.getColumnIndexOrThrow(COL_FILE_UPLOADED_AT)));
+            file.setProfileId(cursor.getInt(cursor.getColumnIndexOrThrow(COL_FILE_PROFILE_ID)));
+            file.setWrappedKey(cursor.getBlob(cursor.getColumnIndexOrThrow(COL_FILE_WRAPPED_KEY)));
+            file.setCorrupt(cursor.getInt(cursor.getColumnIndexOrThrow(COL_FILE_CORRUPT)) != 0);
         }
         cursor.close();
         return file;
@@ -251,35 +753,537 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public void deleteFile(int id) {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_VAULT_FILES, COL_FILE_ID + " = ?", new String[]{String.valueOf(id)});
+        String[] args = {String.valueOf(id)};
+        String ref;
+        db.beginTransaction();
+        try {
+            ref = getStorageRef(id);
+            db.delete(TABLE_VAULT_FILES, COL_FILE_ID + " = ?", args);
+            db.delete(TABLE_PIN_CHANGE_FILES, COL_PIN_CHANGE_FILE_ID + " = ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        // After the commit, so a crash leaves an orphan for the sweep, never a dangling row
+        releaseContent(ref);
     }
 
     /**
-     * Update all files' encryption when PIN is changed.
-     * @param oldPin The old PIN
-     * @param newPin The new PIN
+     * Get a file's wrapped data key without its data.
+     * @param id The file ID
+     * @return The wrapped key, or null if the file predates data keys or does not exist
      */
-    public void updateAllFilesEncryption(String oldPin, String newPin) {
+    public byte[] getWrappedKey(int id) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_WRAPPED_KEY},
+                COL_FILE_ID + " = ?", new String[]{String.valueOf(id)}, null, null, null);
+        byte[] wrappedKey = cursor.moveToFirst() ? cursor.getBlob(0) : null;
+        cursor.close();
+        return wrappedKey;
+    }
+
+    /**
+     * Derive the PIN key of a profile, once per unlock. A profile still on the unsalted
+     * key gets a salt and calibrated iteration count, and its wrapped data keys are moved
+     * to the new key. Slow by design; call off the UI thread.
+     * @param profileId The profile being unlocked
+     * @param pin Its PIN
+     * @return The key to keep in {@link com.example.calculator_vault_androidapp.utils.SessionKeyHolder}
+     */
+    public SessionKey unlockProfile(int profileId, String pin) {
+        KeyDerivation.Params params = getKdfParams(profileId);
+        if (params != null) {
+            return KeyDerivation.derive(pin, params);
+        }
+        KeyDerivation.Params newParams = KeyDerivation.newParams();
+        SessionKey pinKey = KeyDerivation.derive(pin, newParams);
         SQLiteDatabase db = this.getWritableDatabase();
-        Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_ID, COL_FILE_DATA},
-                null, null, null, null, null);
+        db.beginTransaction();
+        try {
+            rewrapKeys(db, profileId, CryptoUtils.derivePinKey(pin), pinKey);
+            putKdfParams(db, profileId, newParams);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return pinKey;
+    }
 
+    private void rewrapKeys(SQLiteDatabase db, int profileId, SecretKey oldPinKey, SecretKey newPinKey) {
+        Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_ID, COL_FILE_WRAPPED_KEY},
+                COL_FILE_PROFILE_ID + " = ? AND " + COL_FILE_WRAPPED_KEY + " IS NOT NULL",
+                new String[]{String.valueOf(profileId)}, null, null, null);
         while (cursor.moveToNext()) {
-            int id = cursor.getInt(cursor.getColumnIndexOrThrow(COL_FILE_ID));
-            byte[] encryptedData = cursor.getBlob(cursor.getColumnIndexOrThrow(COL_FILE_DATA));
-            
-            // Decrypt with old PIN
-            byte[] decryptedData = CryptoUtils.decryptData(encryptedData, oldPin);
-            // Re-encrypt with new PIN
-            byte[] newEncryptedData = CryptoUtils.encryptData(decryptedData, newPin);
-            
+            int id = cursor.getInt(0);
             ContentValues values = new ContentValues();
-            values.put(COL_FILE_DATA, newEncryptedData);
+            values.put(COL_FILE_WRAPPED_KEY,
+                    CryptoUtils.rewrapDataKey(cursor.getBlob(1), oldPinKey, newPinKey));
             db.update(TABLE_VAULT_FILES, values, COL_FILE_ID + " = ?", new String[]{String.valueOf(id)});
         }
         cursor.close();
     }
 
+    /**
+     * Get the salt and iteration count a profile's PIN key is derived with.
+     * @param profileId The profile ID
+     * @return The params, or null if the profile still uses the unsalted key
+     */
+    public KeyDerivation.Params getKdfParams(int profileId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_VAULT_PROFILES,
+                new String[]{COL_PROFILE_KDF_SALT, COL_PROFILE_KDF_ITERATIONS},
+                COL_PROFILE_ID + " = ? AND " + COL_PROFILE_KDF_SALT + " IS NOT NULL",
+                new String[]{String.valueOf(profileId)}, null, null, null);
+
+        KeyDerivation.Params params = null;
+        if (cursor.moveToFirst()) {
+            params = new KeyDerivation.Params(cursor.getBlob(0), cursor.getInt(1));
+        }
+        cursor.close();
+        return params;
+    }
+
+    private void putKdfParams(SQLiteDatabase db, int profileId, KeyDerivation.Params params) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PROFILE_KDF_SALT, params.salt);
+        values.put(COL_PROFILE_KDF_ITERATIONS, params.iterations);
+        db.update(TABLE_VAULT_PROFILES, values, COL_PROFILE_ID + " = ?",
+                new String[]{String.valueOf(profileId)});
+    }
+
+    // ===================== CONTENT STORE OPERATIONS =====================
+
+    /**
+     * Move every file still stored in its row into the content store, then give the
+     * freed pages back to the file system. One file at a time, each streamed from a
+     * single read of its row. Call off the UI thread.
+     * @return The number of files moved
+     */
+    public int migrateFileData() throws IOException {
+        SQLiteDatabase db = this.getWritableDatabase();
+        int moved = 0;
+        while (true) {
+            Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_ID},
+                    COL_FILE_STORAGE_REF + " IS NULL", null, null, null, COL_FILE_ID, "1");
+            int id = cursor.moveToFirst() ? cursor.getInt(0) : -1;
+            cursor.close();
+            if (id == -1) break;
+            migrateFile(id);
+            moved++;
+        }
+        if (moved > 0) {
+            db.execSQL("VACUUM");
+        }
+        return moved;
+    }
+
+    /**
+     * Copy one file's row contents into the content store and point the row at them.
+     * @return The entry name, or null if the file does not exist
+     */
+    private String migrateFile(int id) throws IOException {
+        SQLiteDatabase db = this.getWritableDatabase();
+        String[] args = {String.valueOf(id)};
+        long length = getRowDataLength(id);
+        if (length < 0) return null;
+        ContentStore.Writer writer = contentStore.newWriter();
+        try {
+            // A row without contents moves as an empty file
+            try (InputStream data = openRowData(id)) {
+                if (data != null) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int n;
+                    while ((n = data.read(buffer)) != -1) {
+                        writer.write(buffer, 0, n);
+                    }
+                }
+            }
+            String ref = writer.commit();
+            ContentValues values = new ContentValues();
+            values.put(COL_FILE_STORAGE_REF, ref);
+            values.putNull(COL_FILE_DATA);
+            values.put(COL_FILE_CHECKSUMS, writer.getChecksums());
+            // Another thread may have moved or replaced the file meanwhile; theirs stands
+            if (db.update(TABLE_VAULT_FILES, values, COL_FILE_ID + " = ? AND " +
+                    COL_FILE_STORAGE_REF + " IS NULL", args) == 0) {
+                releaseContent(ref);
+                return getStorageRef(id);
+            }
+            return ref;
+        } finally {
+            writer.abort();
+        }
+    }
+
+    /**
+     * Delete unreferenced entries: what is left by a crash between writing an entry and
+     * its row, or between deleting a row and its entry. Call off the UI thread.
+     * @return The number of files deleted
+     */
+    public int sweepContentStore() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Set<String> referenced = new HashSet<>();
+        Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_STORAGE_REF},
+                COL_FILE_STORAGE_REF + " IS NOT NULL", null, null, null, null);
+        while (cursor.moveToNext()) {
+            referenced.add(cursor.getString(0));
+        }
+        cursor.close();
+        return contentStore.sweep(referenced, SWEEP_MIN_AGE_MS);
+    }
+
+    /**
+     * Delete an entry once no row points to it. Identical contents share an entry.
+     */
+    private void releaseContent(String ref) {
+        if (ref == null) return;
+        SQLiteDatabase db = this.getReadableDatabase();
+        if (DatabaseUtils.queryNumEntries(db, TABLE_VAULT_FILES, COL_FILE_STORAGE_REF + " = ?",
+                new String[]{ref}) == 0) {
+            contentStore.delete(ref);
+        }
+    }
+
+    private long getRowDataLength(int id) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT length(" + COL_FILE_DATA + ") FROM " + TABLE_VAULT_FILES +
+                " WHERE " + COL_FILE_ID + " = ?", new String[]{String.valueOf(id)});
+        // A row without contents moves as an empty file
+        long length = cursor.moveToFirst() ? (cursor.isNull(0) ? 0 : cursor.getLong(0)) : -1;
+        cursor.close();
+        return length;
+    }
+
+    /**
+     * Open a row's contents as a stream, without a cursor window. SQLite reads the whole
+     * blob once into shared memory; substr() slices would each read all of it again.
+     * Rows only hold files saved whole from the heap, so the copy is bounded.
+     * @return The contents, or null if the row has none or does not exist
+     */
+    private InputStream openRowData(int id) {
+        SQLiteStatement statement = this.getReadableDatabase().compileStatement("SELECT " + COL_FILE_DATA +
+                " FROM " + TABLE_VAULT_FILES + " WHERE " + COL_FILE_ID + " = ?");
+        try {
+            statement.bindLong(1, id);
+            ParcelFileDescriptor fd = statement.simpleQueryForBlobFileDescriptor();
+            return fd != null ? new ParcelFileDescriptor.AutoCloseInputStream(fd) : null;
+        } catch (SQLiteDoneException e) {
+            return null;
+        } finally {
+            statement.close();
+        }
+    }
+
+    // ===================== PIN CHANGE OPERATIONS =====================
+
+    /**
+     * The old PIN of a profile's unfinished PIN change, recovered with the new PIN key.
+     */
+    public static final class PinChange {
+        public final String oldPin;
+        public final SecretKey oldPinKey;
+        public final int totalFiles;
+
+        PinChange(String oldPin, SecretKey oldPinKey, int totalFiles) {
+            this.oldPin = oldPin;
+            this.oldPinKey = oldPinKey;
+            this.totalFiles = totalFiles;
+        }
+    }
+
+    /**
+     * A file's new state after {@link PinChangeJob} moved it to the new PIN.
+     */
+    public static final class MovedFile {
+        public final int id;
+        public final byte[] wrappedKey;
+        public final ContentStore.Writer content;
+
+        /**
+         * @param id The file ID
+         * @param wrappedKey Its data key under the new PIN key, or null if it no longer exists
+         * @param content Its re-encrypted contents, or null if only the key was rewrapped
+         */
+        public MovedFile(int id, byte[] wrappedKey, ContentStore.Writer content) {
+            this.id = id;
+            this.wrappedKey = wrappedKey;
+            this.content = content;
+        }
+    }
+
+    /**
+     * Switch a profile to a new PIN and journal every one of its files for
+     * {@link PinChangeJob} to move to the new PIN key. One transaction: from its commit
+     * only the new PIN opens the vault, and the old PIN is kept sealed under the new PIN
+     * key until the last file has moved. Derives two keys; call off the UI thread.
+     * @param profileId The profile whose PIN changes
+     * @param oldPin The current PIN
+     * @param newPin The new PIN
+     * @throws IllegalStateException If the profile's previous PIN change is unfinished
+     */
+    public void beginPinChange(int profileId, String oldPin, String newPin) {
+        if (hasPendingPinChange(profileId)) {
+            throw new IllegalStateException("Files are still moving to the previous PIN");
+        }
+        KeyDerivation.Params oldParams = getKdfParams(profileId);
+        KeyDerivation.Params newParams = KeyDerivation.newParams();
+        SessionKey newPinKey = KeyDerivation.derive(newPin, newParams);
+        String newHash = getPinVerifier().hash(newPin);
+        String[] args = {String.valueOf(profileId)};
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT INTO " + TABLE_PIN_CHANGE_FILES + " (" + COL_PIN_CHANGE_FILE_ID + ", " +
+                    COL_PIN_CHANGE_PROFILE_ID + ") SELECT " + COL_FILE_ID + ", " + COL_FILE_PROFILE_ID +
+                    " FROM " + TABLE_VAULT_FILES + " WHERE " + COL_FILE_PROFILE_ID + " = ?", args);
+
+            ContentValues job = new ContentValues();
+            job.put(COL_PIN_CHANGE_PROFILE_ID, profileId);
+            job.put(COL_PIN_CHANGE_SEALED_OLD_PIN, CryptoUtils.sealPin(oldPin, newPinKey));
+            if (oldParams != null) {
+                job.put(COL_PIN_CHANGE_OLD_KDF_SALT, oldParams.salt);
+                job.put(COL_PIN_CHANGE_OLD_KDF_ITERATIONS, oldParams.iterations);
+            }
+            job.put(COL_PIN_CHANGE_TOTAL_FILES,
+                    DatabaseUtils.queryNumEntries(db, TABLE_PIN_CHANGE_FILES, COL_PIN_CHANGE_PROFILE_ID + " = ?", args));
+            db.insertOrThrow(TABLE_PIN_CHANGES, null, job);
+
+            ContentValues profile = new ContentValues();
+            profile.put(COL_PROFILE_PIN_HASH, newHash);
+            db.update(TABLE_VAULT_PROFILES, profile, COL_PROFILE_ID + " = ?", args);
+            putKdfParams(db, profileId, newParams);
+            if (profileId == MAIN_PROFILE_ID) {
+                ContentValues config = new ContentValues();
+                config.put(COL_CONFIG_PIN_HASH, newHash);
+                db.update(TABLE_CONFIG, config, COL_CONFIG_ID + " = ?", new String[]{"1"});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            newPinKey.destroy();
+        }
+        PinMatcher.getInstance().setPinHash(profileId, newHash);
+    }
+
+    /**
+     * @return true if some of the profile's files are still under its previous PIN
+     */
+    public boolean hasPendingPinChange(int profileId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return DatabaseUtils.queryNumEntries(db, TABLE_PIN_CHANGES, COL_PIN_CHANGE_PROFILE_ID + " = ?",
+                new String[]{String.valueOf(profileId)}) > 0;
+    }
+
+    /**
+     * Recover the old PIN and key of an unfinished PIN change.
+     * @param profileId The profile
+     * @param newPinKey The profile's current PIN key, from the session
+     * @return The change, or null if there is none
+     * @throws IllegalArgumentException If newPinKey is not the key the change was begun with
+     */
+    public PinChange openPinChange(int profileId, SecretKey newPinKey) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_PIN_CHANGES,
+                new String[]{COL_PIN_CHANGE_SEALED_OLD_PIN, COL_PIN_CHANGE_OLD_KDF_SALT,
+                        COL_PIN_CHANGE_OLD_KDF_ITERATIONS, COL_PIN_CHANGE_TOTAL_FILES},
+                COL_PIN_CHANGE_PROFILE_ID + " = ?", new String[]{String.valueOf(profileId)},
+                null, null, null);
+        PinChange change = null;
+        if (cursor.moveToFirst()) {
+            String oldPin = CryptoUtils.openPin(cursor.getBlob(0), newPinKey);
+            SecretKey oldPinKey = cursor.isNull(1) ? CryptoUtils.derivePinKey(oldPin)
+                    : KeyDerivation.derive(oldPin, new KeyDerivation.Params(cursor.getBlob(1), cursor.getInt(2)));
+            change = new PinChange(oldPin, oldPinKey, cursor.getInt(3));
+        }
+        cursor.close();
+        return change;
+    }
+
+    /**
+     * @return How many of the profile's files are not yet moved to its new PIN
+     */
+    public int countPendingPinChangeFiles(int profileId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, TABLE_PIN_CHANGE_FILES,
+                COL_PIN_CHANGE_PROFILE_ID + " = ?", new String[]{String.valueOf(profileId)});
+    }
+
+    /**
+     * @return Up to limit IDs of the profile's files not yet moved to its new PIN
+     */
+    public List<Integer> getPendingPinChangeFiles(int profileId, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_PIN_CHANGE_FILES, new String[]{COL_PIN_CHANGE_FILE_ID},
+                COL_PIN_CHANGE_PROFILE_ID + " = ?", new String[]{String.valueOf(profileId)},
+                null, null, COL_PIN_CHANGE_FILE_ID, String.valueOf(limit));
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getInt(0));
+        }
+        cursor.close();
+        return ids;
+    }
+
+    /**
+     * Store a batch of files moved to the new PIN and strike them from the journal, in one
+     * transaction, so each file is either fully moved and struck or neither. Contents
+     * replaced by re-encryption are deleted after the commit.
+     * @param files Each with its ID and new wrapped key; with new contents too if it was
+     *              re-encrypted; with a null wrapped key if it no longer exists
+     */
+    public void commitPinChangeBatch(List<MovedFile> files) throws IOException {
+        SQLiteDatabase db = this.getWritableDatabase();
+        List<String> replaced = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            for (MovedFile file : files) {
+                String[] args = {String.valueOf(file.id)};
+                if (file.wrappedKey != null) {
+                    ContentValues values = new ContentValues();
+                    values.put(COL_FILE_WRAPPED_KEY, file.wrappedKey);
+                    if (file.content != null) {
+                        replaced.add(getStorageRef(file.id));
+                        values.put(COL_FILE_STORAGE_REF, file.content.commit());
+                        values.put(COL_FILE_CHECKSUMS, file.content.getChecksums());
+                        values.put(COL_FILE_CORRUPT, 0);
+                    }
+                    db.update(TABLE_VAULT_FILES, values, COL_FILE_ID + " = ?", args);
+                }
+                db.delete(TABLE_PIN_CHANGE_FILES, COL_PIN_CHANGE_FILE_ID + " = ?", args);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (String ref : replaced) {
+            releaseContent(ref);
+        }
+    }
+
+    /**
+     * Drop the sealed old PIN once every file has moved.
+     * @return true if the change is complete
+     */
+    public boolean finishPinChange(int profileId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        String[] args = {String.valueOf(profileId)};
+        db.beginTransaction();
+        try {
+            if (DatabaseUtils.queryNumEntries(db, TABLE_PIN_CHANGE_FILES, COL_PIN_CHANGE_PROFILE_ID + " = ?", args) > 0) {
+                return false;
+            }
+            db.delete(TABLE_PIN_CHANGES, COL_PIN_CHANGE_PROFILE_ID + " = ?", args);
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // ===================== INTEGRITY SCRUB OPERATIONS =====================
+
+    @Override
+    public int getNextFileId(int afterId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_ID},
+                COL_FILE_ID + " > ?", new String[]{String.valueOf(afterId)}, null, null,
+                COL_FILE_ID, "1");
+        int id = cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        cursor.close();
+        return id;
+    }
+
+    @Override
+    public long getStoredLength(int fileId) {
+        String ref = getStorageRef(fileId);
+        if (ref == null) {
+            // Skipped until migrateFileData moves it: each slice of a row would read the
+            // whole blob again
+            return -1;
+        }
+        long length = contentStore.length(ref);
+        // An entry gone from disk while its row still points to it is damage, not a
+        // replacement by a PIN change
+        if (length < 0 && ref.equals(getStorageRef(fileId))) {
+            markCorrupt(fileId);
+        }
+        return length;
+    }
+
+    @Override
+    public byte[] readStoredSlice(int fileId, long offset, int length) {
+        // Looked up per slice, so a file replaced mid-pass is read as it is now
+        String ref = getStorageRef(fileId);
+        if (ref == null) return null;
+        try {
+            return contentStore.read(ref, offset, length);
+        } catch (IOException e) {
+            // Ends this file's pass; it is read again on the next one
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] getChecksums(int fileId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_VAULT_FILES, new String[]{COL_FILE_CHECKSUMS},
+                COL_FILE_ID + " = ?", new String[]{String.valueOf(fileId)}, null, null, null);
+        byte[] checksums = cursor.moveToFirst() ? cursor.getBlob(0) : null;
+        cursor.close();
+        return checksums;
+    }
+
+    @Override
+    public void setChecksums(int fileId, byte[] checksums) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_FILE_CHECKSUMS, checksums);
+        db.update(TABLE_VAULT_FILES, values, COL_FILE_ID + " = ?", new String[]{String.valueOf(fileId)});
+    }
+
+    @Override
+    public void markCorrupt(int fileId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_FILE_CORRUPT, 1);
+        db.update(TABLE_VAULT_FILES, values, COL_FILE_ID + " = ?", new String[]{String.valueOf(fileId)});
+    }
+
+    @Override
+    public long[] getScrubCheckpoint() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_CONFIG, new String[]{COL_CONFIG_SCRUB_FILE_ID, COL_CONFIG_SCRUB_OFFSET},
+                COL_CONFIG_ID + " = ?", new String[]{"1"}, null, null, null);
+        long[] checkpoint = {0, 0};
+        if (cursor.moveToFirst()) {
+            checkpoint[0] = cursor.getLong(0);
+            checkpoint[1] = cursor.getLong(1);
+        }
+        cursor.close();
+        return checkpoint;
+    }
+
+    @Override
+    public byte[] getScrubBaseline() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_CONFIG, new String[]{COL_CONFIG_SCRUB_BASELINE},
+                COL_CONFIG_ID + " = ?", new String[]{"1"}, null, null, null);
+        byte[] baseline = cursor.moveToFirst() ? cursor.getBlob(0) : null;
+        cursor.close();
+        return baseline;
+    }
+
+    @Override
+    public void setScrubCheckpoint(int fileId, long offset, byte[] baseline) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_CONFIG_SCRUB_FILE_ID, fileId);
+        values.put(COL_CONFIG_SCRUB_OFFSET, offset);
+        values.put(COL_CONFIG_SCRUB_BASELINE, baseline);
+        db.update(TABLE_CONFIG, values, COL_CONFIG_ID + " = ?", new String[]{"1"});
+    }
+
     // ===================== CALCULATION HISTORY OPERATIONS =====================
 
     /**
@@ -294,7 +1298,41 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COL_HISTORY_EXPRESSION, expression);
         values.put(COL_HISTORY_RESULT, result);
         values.put(COL_HISTORY_CALCULATED_AT, dateFormat.format(new Date()));
-        return db.insert(TABLE_CALCULATION_HISTORY, null, values);
+        long id = db.insert(TABLE_CALCULATION_HISTORY, null, values);
+        if (id != -1) {
+            SuggestionTrie.getInstance().add(expression);
+        }
+        return id;
+    }
+
+    /**
+     * Save several calculations in one transaction, e.g. a batch queued by
+     * {@link HistoryRecorder}. Each entry's ID is set to its inserted row ID.
+     * @param entries Entries with expression, result and calculation time set
+     */
+    public void saveCalculations(List<CalculationHistory> entries) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        db.beginTransaction();
+        try {
+            for (CalculationHistory entry : entries) {
+                values.clear();
+                values.put(COL_HISTORY_EXPRESSION, entry.getExpression());
+                values.put(COL_HISTORY_RESULT, entry.getResult());
+                values.put(COL_HISTORY_CALCULATED_AT, entry.getCalculatedAt());
+                entry.setId((int) db.insert(TABLE_CALCULATION_HISTORY, null, values));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        SuggestionTrie trie = SuggestionTrie.getInstance();
+        for (CalculationHistory entry : entries) {
+            if (entry.getId() != -1) {
+                trie.add(entry.getExpression());
+            }
+        }
     }
 
     /**
@@ -320,6 +1358,50 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return history;
     }
 
+    /**
+     * Get the expressions of the most recent calculations, newest first.
+     * @param limit Maximum number of rows to read
+     * @return List of expressions
+     */
+    public List<String> getRecentExpressions(int limit) {
+        List<String> expressions = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        Cursor cursor = db.query(TABLE_CALCULATION_HISTORY, new String[]{COL_HISTORY_EXPRESSION},
+                null, null, null, null,
+                COL_HISTORY_CALCULATED_AT + " DESC, " + COL_HISTORY_ID + " DESC",
+                String.valueOf(limit));
+
+        while (cursor.moveToNext()) {
+            expressions.add(cursor.getString(0));
+        }
+        cursor.close();
+        return expressions;
+    }
+
+    /**
+     * Add the most frequently calculated expressions to a suggestion trie, with their
+     * counts. Rows are streamed from the cursor; call this off the UI thread.
+     * @param trie The trie to fill
+     * @param limit Maximum number of distinct expressions
+     */
+    public void loadExpressionSuggestions(SuggestionTrie trie, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        Cursor cursor = db.query(TABLE_CALCULATION_HISTORY,
+                new String[]{COL_HISTORY_EXPRESSION, "COUNT(*)"},
+                null, null, COL_HISTORY_EXPRESSION, null, "COUNT(*) DESC",
+                String.valueOf(limit));
+
+        while (cursor.moveToNext()) {
+            String expression = cursor.getString(0);
+            if (expression != null) {
+                trie.add(expression, cursor.getInt(1));
+            }
+        }
+        cursor.close();
+    }
+
     /**
      * Delete a single calculation from history.
      * @param id The calculation ID to delete
@@ -335,5 +1417,6 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public void clearAllHistory() {
         SQLiteDatabase db = this.getWritableDatabase();
         db.delete(TABLE_CALCULATION_HISTORY, null, null);
+        SuggestionTrie.getInstance().clear();
     }
 }
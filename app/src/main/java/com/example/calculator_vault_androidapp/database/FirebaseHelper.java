@@ -25,9 +25,13 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Firebase helper for cloud backup and sync operations with Google Sign-In.
@@ -37,9 +41,13 @@ public class FirebaseHelper {
     private static final String TAG = "FirebaseHelper";
     private static FirebaseHelper instance;
     public static final int RC_SIGN_IN = 9001;
+    // Stored bytes per backed-up piece of a vault file
+    private static final int BACKUP_PIECE_SIZE = 512 * 1024;
     
     private final FirebaseAuth firebaseAuth;
     private final FirebaseDatabase firebaseDatabase;
+    // Reads the next piece of a file backup once the last one is acknowledged
+    private final ExecutorService backupExecutor = Executors.newSingleThreadExecutor();
     private String userId;
 
     public interface AuthCallback {
@@ -206,33 +214,85 @@ public class FirebaseHelper {
     }
 
     /**
-     * Backup a vault file to Firebase.
+     * Backup a vault file to Firebase. Its contents are written as a list of pieces under
+     * file_data, each written once the one before is acknowledged, so only one piece is
+     * held in memory however large the file. The metadata, with file_pieces, is written
+     * last, so a backup cut short has none.
      * @param file The VaultFile to backup
+     * @param storedData Its encrypted contents, closed when read; null fails the backup
      * @param callback Callback for result
      */
-    public void backupVaultFile(VaultFile file, SyncCallback callback) {
+    public void backupVaultFile(VaultFile file, InputStream storedData, SyncCallback callback) {
+        if (storedData == null) {
+            callback.onFailure("File not found");
+            return;
+        }
         DatabaseReference userRef = getUserReference();
         if (userRef == null) {
+            closeQuietly(storedData);
             callback.onFailure("Not authenticated");
             return;
         }
 
+        String fileKey = file.getId() != null ? String.valueOf(file.getId()) :
+                userRef.child("vault_files").push().getKey();
+        if (fileKey == null) {
+            closeQuietly(storedData);
+            callback.onFailure("Failed to generate file key");
+            return;
+        }
+
         Map<String, Object> fileData = new HashMap<>();
         fileData.put("file_name", file.getFileName());
         fileData.put("original_extension", file.getOriginalExtension());
-        fileData.put("file_data", Base64.encodeToString(file.getFileData(), Base64.DEFAULT));
         fileData.put("file_size", file.getFileSize());
         fileData.put("uploaded_at", System.currentTimeMillis());
+        fileData.put("profile_id", file.getProfileId());
+        if (file.getWrappedKey() != null) {
+            fileData.put("wrapped_key", Base64.encodeToString(file.getWrappedKey(), Base64.NO_WRAP));
+        }
+        backupPieces(userRef.child("vault_files").child(fileKey), fileData, storedData, 0, callback);
+    }
 
-        String fileKey = file.getId() != null ? String.valueOf(file.getId()) : 
-                userRef.child("vault_files").push().getKey();
-        
-        if (fileKey != null) {
-            userRef.child("vault_files").child(fileKey).setValue(fileData)
+    private void backupPieces(DatabaseReference fileRef, Map<String, Object> fileData, InputStream in,
+                              int index, SyncCallback callback) {
+        byte[] piece = new byte[BACKUP_PIECE_SIZE];
+        int length = 0;
+        try {
+            int n;
+            while (length < piece.length && (n = in.read(piece, length, piece.length - length)) != -1) {
+                length += n;
+            }
+        } catch (IOException e) {
+            closeQuietly(in);
+            callback.onFailure(e.getMessage());
+            return;
+        }
+
+        if (length == 0) {
+            closeQuietly(in);
+            fileData.put("file_pieces", index);
+            // Merged, so the pieces already written stay
+            fileRef.updateChildren(fileData)
                     .addOnSuccessListener(aVoid -> callback.onSuccess())
                     .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
-        } else {
-            callback.onFailure("Failed to generate file key");
+            return;
+        }
+        fileRef.child("file_data").child(String.valueOf(index))
+                .setValue(Base64.encodeToString(piece, 0, length, Base64.NO_WRAP))
+                .addOnSuccessListener(backupExecutor,
+                        aVoid -> backupPieces(fileRef, fileData, in, index + 1, callback))
+                .addOnFailureListener(e -> {
+                    closeQuietly(in);
+                    callback.onFailure(e.getMessage());
+                });
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing more to read from it either way
         }
     }
 
@@ -282,6 +342,33 @@ public class FirebaseHelper {
         }
     }
 
+    /**
+     * Backup several calculation history entries to Firebase in one write.
+     * @param entries The entries, with their local IDs set
+     * @param callback Callback for result
+     */
+    public void backupCalculationHistory(List<CalculationHistory> entries, SyncCallback callback) {
+        DatabaseReference userRef = getUserReference();
+        if (userRef == null) {
+            callback.onFailure("Not authenticated");
+            return;
+        }
+
+        Map<String, Object> updates = new HashMap<>();
+        for (CalculationHistory item : entries) {
+            if (item.getId() <= 0) continue;
+            Map<String, Object> historyData = new HashMap<>();
+            historyData.put("expression", item.getExpression());
+            historyData.put("result", item.getResult());
+            historyData.put("calculated_at", item.getCalculatedAt());
+            updates.put(String.valueOf(item.getId()), historyData);
+        }
+
+        userRef.child("calculation_history").updateChildren(updates)
+                .addOnSuccessListener(aVoid -> callback.onSuccess())
+                .addOnFailureListener(e -> callback.onFailure(e.getMessage()));
+    }
+
     /**
      * Backup all data to Firebase.
      * @param pinHash The PIN hash
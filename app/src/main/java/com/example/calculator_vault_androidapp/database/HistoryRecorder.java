@@ -0,0 +1,160 @@
+package com.example.calculator_vault_androidapp.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.calculator_vault_androidapp.models.CalculationHistory;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records calculations to history without blocking the keypad.
+ *
+ * Entries are queued in memory and written by a background thread, one SQLite
+ * transaction per batch: as soon as {@link #BATCH_SIZE} entries are waiting, or
+ * {@link #FLUSH_DELAY_MS} after the first of them was queued, or when {@link #flush} is
+ * called as the calculator is paused. A batch that fails to commit goes back to the head
+ * of the queue and is retried. Signed-in users get each batch backed up to Firebase in a
+ * single write.
+ */
+public class HistoryRecorder {
+
+    private static final String TAG = "HistoryRecorder";
+
+    static final int BATCH_SIZE = 32;
+    static final long FLUSH_DELAY_MS = 2000;
+
+    private static HistoryRecorder instance;
+
+    private final DatabaseHelper dbHelper;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    // Only used on the writer thread
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+
+    // Guarded by this
+    private List<Entry> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    public static synchronized HistoryRecorder getInstance(Context context) {
+        if (instance == null) {
+            instance = new HistoryRecorder(DatabaseHelper.getInstance(context));
+        }
+        return instance;
+    }
+
+    private HistoryRecorder(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Queue a calculation for history. Returns immediately.
+     * @param expression The calculation expression
+     * @param result The calculation result
+     */
+    public void record(String expression, String result) {
+        Entry entry = new Entry(expression, result, System.currentTimeMillis());
+        synchronized (this) {
+            pending.add(entry);
+            if (pending.size() >= BATCH_SIZE) {
+                writer.execute(this::writePending);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                writer.schedule(this::writePending, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Start writing everything queued so far. Returns immediately. Call when the
+     * calculator is paused so no entries are lost if the process is killed.
+     */
+    public void flush() {
+        writer.execute(this::writePending);
+    }
+
+    /**
+     * Write everything queued so far and wait until it is committed, or has failed and
+     * been queued again. Call off the UI thread, e.g. before reading history.
+     */
+    public void awaitWritten() throws InterruptedException {
+        try {
+            // The writer runs tasks in order, so this also waits for any earlier flush
+            writer.submit(this::writePending).get();
+        } catch (ExecutionException e) {
+            // writePending handles its own failures
+        }
+    }
+
+    private void writePending() {
+        List<Entry> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            batch = pending;
+            pending = new ArrayList<>();
+            flushScheduled = false;
+        }
+
+        List<CalculationHistory> rows = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            CalculationHistory row = new CalculationHistory();
+            row.setExpression(entry.expression);
+            row.setResult(entry.result);
+            row.setCalculatedAt(dateFormat.format(new Date(entry.time)));
+            rows.add(row);
+        }
+        try {
+            dbHelper.saveCalculations(rows);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to save " + rows.size() + " history entries, will retry", e);
+            requeue(batch);
+            return;
+        }
+
+        FirebaseHelper firebaseHelper = FirebaseHelper.getInstance();
+        if (firebaseHelper.isAuthenticated()) {
+            firebaseHelper.backupCalculationHistory(rows, new FirebaseHelper.SyncCallback() {
+                @Override
+                public void onSuccess() {
+                    // Successfully synced to Firebase
+                }
+                @Override
+                public void onFailure(String error) {
+                    // Failed to sync - data is still saved locally
+                }
+            });
+        }
+    }
+
+    /**
+     * Put a batch that failed to commit back ahead of anything queued since, and retry it
+     * after {@link #FLUSH_DELAY_MS}.
+     */
+    private synchronized void requeue(List<Entry> batch) {
+        batch.addAll(pending);
+        pending = batch;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(this::writePending, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final class Entry {
+        final String expression;
+        final String result;
+        final long time;
+
+        Entry(String expression, String result, long time) {
+            this.expression = expression;
+            this.result = result;
+            this.time = time;
+        }
+    }
+}
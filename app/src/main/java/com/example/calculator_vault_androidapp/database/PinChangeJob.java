@@ -0,0 +1,158 @@
+package com.example.calculator_vault_androidapp.database;
+
+import android.content.Context;
+
+import com.example.calculator_vault_androidapp.utils.ContentStore;
+import com.example.calculator_vault_androidapp.utils.CryptoUtils;
+import com.example.calculator_vault_androidapp.utils.FileUtils;
+import com.example.calculator_vault_androidapp.utils.SessionKey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Moves a profile's files to its new PIN after {@link DatabaseHelper#beginPinChange}.
+ *
+ * Files are taken from the journal in batches. Each batch is worked on by a pool of one
+ * thread per core and committed in one transaction together with striking its files from
+ * the journal, so a file is always wholly under the old PIN key or the new one. If the
+ * process dies, the next unlock with the new PIN calls {@link #run} again and it carries
+ * on with the files still in the journal.
+ */
+public class PinChangeJob {
+
+    /**
+     * Told after each committed batch; called on the job's thread.
+     */
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+    }
+
+    // Files per worker per transaction; files from before data keys are re-encrypted
+    // as streams into the content store, so memory does not grow with file size
+    static final int FILES_PER_WORKER = 4;
+
+    private static PinChangeJob instance;
+
+    private final DatabaseHelper dbHelper;
+    private final ExecutorService workers;
+    private final int threads;
+
+    public static synchronized PinChangeJob getInstance(Context context) {
+        if (instance == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            instance = new PinChangeJob(DatabaseHelper.getInstance(context),
+                    Executors.newFixedThreadPool(cores, runnable -> {
+                        Thread thread = new Thread(runnable, "pin-change");
+                        thread.setDaemon(true);
+                        return thread;
+                    }), cores);
+        }
+        return instance;
+    }
+
+    private PinChangeJob(DatabaseHelper dbHelper, ExecutorService workers, int threads) {
+        this.dbHelper = dbHelper;
+        this.workers = workers;
+        this.threads = threads;
+    }
+
+    /**
+     * Move every journaled file of the profile to the new PIN key. Blocks until done;
+     * call from a background thread. Returns at once if no change is pending.
+     * @param profileId The profile
+     * @param newPinKey Its current PIN key, from the session
+     * @param listener Progress, or null
+     * @throws IllegalStateException If a file cannot be moved; the journal keeps it for the next run
+     */
+    public synchronized void run(int profileId, SecretKey newPinKey, ProgressListener listener) {
+        DatabaseHelper.PinChange change = dbHelper.openPinChange(profileId, newPinKey);
+        if (change == null) return;
+        try {
+            int batchSize = threads * FILES_PER_WORKER;
+            int done = change.totalFiles - dbHelper.countPendingPinChangeFiles(profileId);
+            List<Integer> batch = dbHelper.getPendingPinChangeFiles(profileId, batchSize);
+            while (!batch.isEmpty()) {
+                try {
+                    dbHelper.commitPinChangeBatch(moveAll(batch, change, newPinKey));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not store moved files: " + e.getMessage(), e);
+                }
+                done += batch.size();
+                if (listener != null) {
+                    listener.onProgress(Math.min(done, change.totalFiles), change.totalFiles);
+                }
+                batch = dbHelper.getPendingPinChangeFiles(profileId, batchSize);
+            }
+            dbHelper.finishPinChange(profileId);
+        } finally {
+            if (change.oldPinKey instanceof SessionKey) {
+                ((SessionKey) change.oldPinKey).destroy();
+            }
+        }
+    }
+
+    private List<DatabaseHelper.MovedFile> moveAll(List<Integer> ids, DatabaseHelper.PinChange change,
+                                                    SecretKey newPinKey) {
+        List<Future<DatabaseHelper.MovedFile>> futures = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            Callable<DatabaseHelper.MovedFile> task = () -> move(id, change, newPinKey);
+            futures.add(workers.submit(task));
+        }
+        List<DatabaseHelper.MovedFile> moved = new ArrayList<>(ids.size());
+        try {
+            for (Future<DatabaseHelper.MovedFile> future : futures) {
+                moved.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not move file to the new PIN: "
+                    + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        }
+        return moved;
+    }
+
+    /**
+     * @return The file's new state for {@link DatabaseHelper#commitPinChangeBatch}
+     */
+    private DatabaseHelper.MovedFile move(int id, DatabaseHelper.PinChange change,
+                                          SecretKey newPinKey) throws IOException {
+        byte[] wrappedKey = dbHelper.getWrappedKey(id);
+        if (wrappedKey != null) {
+            return new DatabaseHelper.MovedFile(id,
+                    CryptoUtils.rewrapDataKey(wrappedKey, change.oldPinKey, newPinKey), null);
+        }
+        InputStream stored = dbHelper.openFileData(id);
+        if (stored == null) {
+            // Deleted since the change began; only its journal entry is left to strike
+            return new DatabaseHelper.MovedFile(id, null, null);
+        }
+        // Stored before data keys: re-encrypt once under a new data key, streamed
+        SecretKey dataKey = CryptoUtils.newDataKey();
+        ContentStore.Writer content = dbHelper.newContentWriter();
+        try {
+            try (InputStream in = stored;
+                 InputStream decrypting = CryptoUtils.decryptingStream(in, change.oldPin);
+                 OutputStream encrypting = CryptoUtils.encryptingStream(content, dataKey)) {
+                FileUtils.copy(decrypting, encrypting);
+            }
+            content.commit();
+        } catch (IOException | RuntimeException e) {
+            content.abort();
+            throw e;
+        }
+        return new DatabaseHelper.MovedFile(id, CryptoUtils.wrapDataKey(dataKey, newPinKey), content);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evaluates a compiled function of x over many x values, e.g. once per frame while a
+ * graph is panned or zoomed.
+ *
+ * Dense batches are split into contiguous ranges evaluated in parallel, the calling
+ * thread taking the first range. Sample and scratch buffers are kept between calls, so
+ * re-plotting at the same resolution does not allocate new arrays.
+ * Instances are meant to be used from one thread at a time.
+ */
+public class BatchEvaluator {
+
+    // Below this many samples handing work to other threads costs more than it saves
+    static final int PARALLEL_THRESHOLD = 4096;
+
+    private final int threads;
+    private final ExecutorService pool;
+
+    // Scratch space for each range, index 0 is used by the calling thread
+    private final double[][] scratch;
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+
+    /**
+     * Create an evaluator using every available core.
+     */
+    public BatchEvaluator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads Number of threads to split dense batches across, including the caller
+     */
+    public BatchEvaluator(int threads) {
+        this.threads = Math.max(1, threads);
+        this.pool = this.threads > 1 ? Executors.newFixedThreadPool(this.threads - 1) : null;
+        this.scratch = new double[this.threads][];
+    }
+
+    /**
+     * Evaluate f at xs[0..count) into ys[0..count).
+     * @param function A function compiled with {@link ExpressionEvaluator#compileFunction}
+     * @param xs Input values
+     * @param ys Receives the results
+     * @param count Number of values
+     */
+    public void evaluate(CompiledExpression function, double[] xs, double[] ys, int count) {
+        int ranges = count < PARALLEL_THRESHOLD ? 1 : threads;
+        if (ranges == 1) {
+            function.evaluateBatch(xs, ys, 0, count, scratchFor(0, function));
+            return;
+        }
+
+        int rangeSize = (count + ranges - 1) / ranges;
+        CountDownLatch done = new CountDownLatch(ranges - 1);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int r = 1; r < ranges; r++) {
+            int from = Math.min(count, r * rangeSize);
+            int to = Math.min(count, from + rangeSize);
+            double[] rangeScratch = scratchFor(r, function);
+            pool.execute(() -> {
+                try {
+                    function.evaluateBatch(xs, ys, from, to, rangeScratch);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        function.evaluateBatch(xs, ys, 0, Math.min(count, rangeSize), scratchFor(0, function));
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                // The other ranges are still writing into ys, so keep waiting
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Sample f at count evenly spaced points from xMin to xMax inclusive.
+     * @param function A function compiled with {@link ExpressionEvaluator#compileFunction}
+     * @param xMin First x value
+     * @param xMax Last x value
+     * @param count Number of samples, at least 2
+     * @return f at each sample; the array is reused by the next call and may be longer than count
+     */
+    public double[] sample(CompiledExpression function, double xMin, double xMax, int count) {
+        if (xs.length < count) {
+            xs = new double[count];
+            ys = new double[count];
+        }
+        double step = (xMax - xMin) / (count - 1);
+        for (int i = 0; i < count; i++) {
+            xs[i] = xMin + i * step;
+        }
+        evaluate(function, xs, ys, count);
+        return ys;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private double[] scratchFor(int range, CompiledExpression function) {
+        double[] buffer = scratch[range];
+        if (buffer == null || buffer.length < function.getBatchScratchSize()) {
+            buffer = new double[function.getBatchScratchSize()];
+            scratch[range] = buffer;
+        }
+        return buffer;
+    }
+}
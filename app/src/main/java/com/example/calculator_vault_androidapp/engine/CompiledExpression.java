@@ -0,0 +1,252 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * An expression compiled to postfix code by {@link ExpressionEvaluator#compile}.
+ * Immutable and safe to share between threads; each caller supplies its own
+ * operand stack, so evaluation itself does not allocate.
+ */
+public final class CompiledExpression {
+
+    // Samples per column in evaluateBatch, small enough for the columns to stay in cache
+    static final int BATCH_BLOCK = 256;
+
+    // Opcodes from OperatorTable
+    private final byte[] code;
+    private final double[] constants;
+    private final int maxDepth;
+
+    // Source text and constant ranges, so exact mode parses the digits as typed
+    private final char[] source;
+    private final int[] constantStarts;
+    private final int[] constantEnds;
+    // true if every constant is written as an integer below 2^53
+    private final boolean integerConstants;
+    // true if compiled by compileFunction and x appears in it
+    private final boolean usesVariable;
+
+    CompiledExpression(byte[] code, double[] constants, int maxDepth,
+                       char[] source, int[] constantStarts, int[] constantEnds) {
+        this.code = code;
+        this.constants = constants;
+        this.maxDepth = maxDepth;
+        this.source = source;
+        this.constantStarts = constantStarts;
+        this.constantEnds = constantEnds;
+
+        // Judged from the digits as typed; the parsed double may already be rounded
+        boolean integers = true;
+        for (int i = 0; i < constants.length; i++) {
+            if (!isIntegerLiteral(source, constantStarts[i], constantEnds[i])) {
+                integers = false;
+                break;
+            }
+        }
+        boolean variable = false;
+        for (byte op : code) {
+            if (op == OperatorTable.PUSH_VARIABLE) {
+                variable = true;
+                break;
+            }
+        }
+        this.usesVariable = variable;
+        this.integerConstants = integers && !variable;
+    }
+
+    /**
+     * Evaluate using a caller-provided operand stack.
+     * @param stack Scratch stack of at least {@link #getMaxDepth()} elements
+     * @return The result, or 0 for an empty expression
+     * @throws ArithmeticException If the expression divides by zero
+     */
+    public double evaluate(double[] stack) {
+        return evaluate(stack, Double.NaN);
+    }
+
+    /**
+     * Evaluate a function of x using a caller-provided operand stack.
+     * @param stack Scratch stack of at least {@link #getMaxDepth()} elements
+     * @param x The value of the variable
+     * @return The result, or 0 for an empty expression
+     * @throws ArithmeticException If the expression divides by zero
+     */
+    public double evaluate(double[] stack, double x) {
+        int top = 0;
+        int constant = 0;
+        for (byte op : code) {
+            if (op == OperatorTable.PUSH_CONSTANT) {
+                stack[top++] = constants[constant++];
+            } else if (op == OperatorTable.PUSH_VARIABLE) {
+                stack[top++] = x;
+            } else {
+                top = OperatorTable.apply(op, stack, top);
+            }
+        }
+        return top == 0 ? 0 : stack[top - 1];
+    }
+
+    /**
+     * Evaluate a function of x for many x values. Works through the inputs in blocks,
+     * running each opcode over a whole block at a time, so dispatch is paid per block
+     * rather than per value as with {@link #evaluate(double[], double)}. Division by zero
+     * gives infinity or NaN for that sample instead of throwing.
+     * @param xs Input values
+     * @param results Receives f(xs[i]) at index i
+     * @param from First index to evaluate
+     * @param to Index after the last one to evaluate
+     * @param scratch Scratch space of at least {@link #getBatchScratchSize()} elements
+     */
+    public void evaluateBatch(double[] xs, double[] results, int from, int to, double[] scratch) {
+        for (int start = from; start < to; start += BATCH_BLOCK) {
+            int count = Math.min(BATCH_BLOCK, to - start);
+            int top = 0;
+            int constant = 0;
+            for (byte op : code) {
+                if (op == OperatorTable.PUSH_CONSTANT) {
+                    int column = top++ * BATCH_BLOCK;
+                    Arrays.fill(scratch, column, column + count, constants[constant++]);
+                } else if (op == OperatorTable.PUSH_VARIABLE) {
+                    System.arraycopy(xs, start, scratch, top++ * BATCH_BLOCK, count);
+                } else {
+                    top = OperatorTable.applyBatch(op, scratch, top, BATCH_BLOCK, count);
+                }
+            }
+            if (top == 0) {
+                Arrays.fill(results, start, start + count, 0);
+            } else {
+                System.arraycopy(scratch, (top - 1) * BATCH_BLOCK, results, start, count);
+            }
+        }
+    }
+
+    /**
+     * Evaluate with a freshly allocated operand stack.
+     * @return The result, or 0 for an empty expression
+     */
+    public double evaluate() {
+        return evaluate(new double[Math.max(1, maxDepth)]);
+    }
+
+    /**
+     * Evaluate exactly in decimal. Integer-only expressions whose intermediate results
+     * stay within the exact range of a double take the double fast path; everything
+     * else is computed with BigDecimal.
+     * @param stack Scratch stack of at least {@link #getMaxDepth()} elements
+     * @param mathContext Precision and rounding for inexact operations such as 1÷3
+     * @return The result, or 0 for an empty expression
+     * @throws ArithmeticException If the expression divides by zero
+     * @throws IllegalStateException If the expression is a function of x
+     */
+    public BigDecimal evaluateExact(double[] stack, MathContext mathContext) {
+        if (usesVariable) {
+            throw new IllegalStateException("Cannot evaluate a function of x exactly");
+        }
+        if (integerConstants) {
+            double result = evaluateIntegers(stack);
+            if (!Double.isNaN(result)) {
+                return BigDecimal.valueOf((long) result);
+            }
+        }
+        return evaluateDecimal(mathContext);
+    }
+
+    /**
+     * @return true if {@link #evaluateExact} can use the double fast path for this expression
+     */
+    public boolean hasIntegerConstants() {
+        return integerConstants;
+    }
+
+    /**
+     * @return true if this is a function of x
+     */
+    public boolean usesVariable() {
+        return usesVariable;
+    }
+
+    /**
+     * @return The number of stack slots needed to evaluate this expression
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return The scratch size {@link #evaluateBatch} needs
+     */
+    public int getBatchScratchSize() {
+        return Math.max(1, maxDepth) * BATCH_BLOCK;
+    }
+
+    /**
+     * Double evaluation that gives up (returns NaN) as soon as an intermediate result
+     * is not an integer below 2^53, e.g. 7÷2 or a product reaching 2^53, or an operator
+     * is not exact in double arithmetic, e.g. √ or sin. Operands below 2^53 make a true
+     * result below 2^53 exact and round one at or above it to at least 2^53, so the
+     * strict bound catches every rounded result.
+     */
+    private double evaluateIntegers(double[] stack) {
+        int top = 0;
+        int constant = 0;
+        for (byte op : code) {
+            if (op == OperatorTable.PUSH_CONSTANT) {
+                stack[top++] = constants[constant++];
+            } else {
+                if (!OperatorTable.EXACT_ON_INTEGERS[op]) {
+                    return Double.NaN;
+                }
+                top = OperatorTable.apply(op, stack, top);
+                if (!isExactInteger(stack[top - 1])) {
+                    return Double.NaN;
+                }
+            }
+        }
+        return top == 0 ? 0 : stack[top - 1];
+    }
+
+    BigDecimal evaluateDecimal(MathContext mathContext) {
+        BigDecimal[] stack = new BigDecimal[Math.max(1, maxDepth)];
+        int top = 0;
+        int constant = 0;
+        for (byte op : code) {
+            if (op == OperatorTable.PUSH_CONSTANT) {
+                int start = constantStarts[constant];
+                stack[top++] = new BigDecimal(source, start, constantEnds[constant] - start);
+                constant++;
+            } else {
+                top = OperatorTable.applyDecimal(op, stack, top, mathContext);
+            }
+        }
+        return top == 0 ? BigDecimal.ZERO : stack[top - 1];
+    }
+
+    private static boolean isExactInteger(double value) {
+        return value == Math.rint(value) && Math.abs(value) < ExpressionEvaluator.MAX_EXACT_MANTISSA;
+    }
+
+    /**
+     * @return true if the literal in source[start, end) is an integer below 2^53 in
+     *         magnitude, allowing only zeros after a decimal point, e.g. "-42" or "42.0"
+     */
+    private static boolean isIntegerLiteral(char[] source, int start, int end) {
+        long value = 0;
+        boolean fraction = false;
+        for (int i = start; i < end; i++) {
+            char c = source[i];
+            if (c == '-') {
+                continue;
+            } else if (c == '.') {
+                fraction = true;
+            } else if (fraction) {
+                if (c != '0') return false;
+            } else {
+                value = value * 10 + (c - '0');
+                if (value >= ExpressionEvaluator.MAX_EXACT_MANTISSA) return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,468 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.util.Arrays;
+
+/**
+ * Typed token model of the expression being entered on the keypad.
+ *
+ * The text is shown as typed and evaluated as is, since the evaluator understands
+ * √ and ² directly. Token types let backspace undo "√9" as a whole and tell a typed
+ * number from a function result without re-scanning. Appending, backspace and
+ * current-number lookup only touch the last token.
+ */
+public class ExpressionBuffer {
+
+    // Token types
+    public static final int NONE = -1;
+    public static final int NUMBER = 0;
+    public static final int OPERATOR = 1;
+    public static final int OPEN_PAREN = 2;
+    public static final int CLOSE_PAREN = 3;
+    // A number with √ or ² applied, e.g. "√9" or "(-3)²"
+    public static final int FUNCTION_RESULT = 4;
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private final StringBuilder text = new StringBuilder();
+
+    private int[] types = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int count;
+    private int openParenCount;
+
+    /**
+     * @return The text shown to the user, e.g. "√9+2²"
+     */
+    public CharSequence getDisplay() {
+        return text;
+    }
+
+    /**
+     * @return The text to evaluate; the same as the display text
+     */
+    public CharSequence getEvalExpression() {
+        return text;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return The type of the last token, or NONE if empty
+     */
+    public int getLastType() {
+        return count == 0 ? NONE : types[count - 1];
+    }
+
+    public int getOpenParenCount() {
+        return openParenCount;
+    }
+
+    /**
+     * @return true if the last token is a number (typed or computed)
+     */
+    public boolean hasCurrentNumber() {
+        int type = getLastType();
+        return type == NUMBER || type == FUNCTION_RESULT;
+    }
+
+    /**
+     * @return The text of the current number or function result, or "" if there is none
+     */
+    public String getCurrentNumber() {
+        return hasCurrentNumber() ? text.substring(starts[count - 1]) : "";
+    }
+
+    /**
+     * @return true if the last token is a typed number equal to the given text
+     */
+    public boolean currentNumberEquals(CharSequence text) {
+        if (getLastType() != NUMBER) return false;
+        int start = starts[count - 1];
+        if (this.text.length() - start != text.length()) return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (this.text.charAt(start + i) != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the current number already contains a decimal point
+     */
+    public boolean currentNumberHasDecimal() {
+        if (!hasCurrentNumber()) return false;
+        for (int i = starts[count - 1]; i < text.length(); i++) {
+            if (text.charAt(i) == '.') return true;
+        }
+        return false;
+    }
+
+    /**
+     * Append a digit, decimal point or leading minus to the current number,
+     * starting a new number token if the last token is not a typed number.
+     */
+    public void appendToNumber(char c) {
+        if (getLastType() != NUMBER) {
+            push(NUMBER);
+        }
+        text.append(c);
+    }
+
+    /**
+     * Append a complete number as a new token, e.g. a previous result.
+     */
+    public void appendNumber(CharSequence number) {
+        push(NUMBER);
+        text.append(number);
+    }
+
+    /**
+     * Append a binary operator token (+, -, ×, ÷).
+     */
+    public void appendOperator(char op) {
+        push(OPERATOR);
+        text.append(op);
+    }
+
+    /**
+     * Replace the last token, which must be an operator, with another operator.
+     */
+    public void replaceLastOperator(char op) {
+        text.setCharAt(text.length() - 1, op);
+    }
+
+    public void openParen() {
+        push(OPEN_PAREN);
+        text.append('(');
+        openParenCount++;
+    }
+
+    public void closeParen() {
+        push(CLOSE_PAREN);
+        text.append(')');
+        openParenCount--;
+    }
+
+    /**
+     * Close every open parenthesis.
+     */
+    public void closeAllParens() {
+        while (openParenCount > 0) {
+            closeParen();
+        }
+    }
+
+    /**
+     * Append pasted text, tokenizing and validating it in one linear pass. Spaces are
+     * dropped, * and / become × and ÷, and × is inserted before a '(', √ or number that
+     * follows an operand where the keypad would insert one. Digits continue a typed
+     * number. √, ² and ! are kept with their operand as one token.
+     * @param input The text, e.g. "(12.5 + 3) * 4"
+     * @throws IllegalArgumentException If the text is not a valid expression or does not
+     *         continue the current one; the buffer is then left unchanged
+     */
+    public void appendExpression(CharSequence input) {
+        int savedCount = count;
+        int savedLength = text.length();
+        int savedOpenParens = openParenCount;
+        // ² ! and √ merge tokens below savedCount, so their starts change too
+        int[] savedTypes = Arrays.copyOf(types, count);
+        int[] savedStarts = Arrays.copyOf(starts, count);
+        try {
+            appendValidated(input);
+        } catch (IllegalArgumentException e) {
+            System.arraycopy(savedTypes, 0, types, 0, savedCount);
+            System.arraycopy(savedStarts, 0, starts, 0, savedCount);
+            count = savedCount;
+            text.setLength(savedLength);
+            openParenCount = savedOpenParens;
+            throw e;
+        }
+    }
+
+    private void appendValidated(CharSequence input) {
+        int firstChar = text.length();
+        int lastType = getLastType();
+        boolean expectOperand = lastType != NUMBER && lastType != CLOSE_PAREN && lastType != FUNCTION_RESULT;
+        // Inside a number token, its index, and what it has seen so far
+        boolean inNumber = false;
+        int numberToken = -1;
+        boolean hasDigit = false;
+        boolean hasDot = false;
+        // First token of the last complete operand, which ² and ! apply to
+        int operandStart = lastType == CLOSE_PAREN ? matchingOpenParen() : count - 1;
+        // Token index of each '(' opened by this paste and still open
+        int[] groups = new int[8];
+        int groupCount = 0;
+
+        if (lastType == NUMBER) {
+            // Digits continue a typed number, as on the keypad; a lone "-" waits for one
+            inNumber = true;
+            numberToken = count - 1;
+            hasDot = currentNumberHasDecimal();
+            for (int i = starts[count - 1]; i < text.length() && !hasDigit; i++) {
+                hasDigit = text.charAt(i) >= '0' && text.charAt(i) <= '9';
+            }
+            expectOperand = !hasDigit;
+        }
+
+        int len = input.length();
+        for (int i = 0; i < len; i++) {
+            char c = input.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.') {
+                if (!inNumber) {
+                    if (!expectOperand) {
+                        if (getLastType() == NUMBER) {
+                            throw new IllegalArgumentException("Missing operator at " + i);
+                        }
+                        appendOperator('×');
+                    }
+                    numberToken = count;
+                    push(NUMBER);
+                    inNumber = true;
+                    hasDigit = false;
+                    hasDot = false;
+                }
+                if (c == '.') {
+                    if (hasDot) throw new IllegalArgumentException("Malformed number at " + i);
+                    hasDot = true;
+                } else {
+                    hasDigit = true;
+                }
+                text.append(c);
+                expectOperand = false;
+                continue;
+            }
+
+            if (inNumber) {
+                if (!hasDigit) {
+                    // "." or "-" without digits; only "-(" is allowed, as a negated group
+                    if (hasDot || (c != '(' && !Character.isWhitespace(c))) {
+                        throw new IllegalArgumentException("Malformed number at " + i);
+                    }
+                    if (c != '(') continue;
+                } else {
+                    operandStart = absorbRoots(numberToken);
+                }
+                inNumber = false;
+            }
+
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            char op = normalizeOperator(c);
+            if (op != 0) {
+                if (!expectOperand) {
+                    appendOperator(op);
+                    expectOperand = true;
+                } else if (op == '-') {
+                    // Sign of the number or group that follows
+                    numberToken = count;
+                    push(NUMBER);
+                    text.append('-');
+                    inNumber = true;
+                    hasDigit = false;
+                    hasDot = false;
+                } else {
+                    throw new IllegalArgumentException("Unexpected '" + c + "' at " + i);
+                }
+            } else if (c == '(' || c == '√') {
+                if (!expectOperand) {
+                    appendOperator('×');
+                }
+                if (c == '√') {
+                    // Joined with its operand once that is complete
+                    push(OPERATOR);
+                    text.append('√');
+                } else {
+                    if (groupCount == groups.length) groups = grow(groups);
+                    groups[groupCount++] = count;
+                    openParen();
+                }
+                expectOperand = true;
+            } else if (c == ')') {
+                if (expectOperand) {
+                    throw new IllegalArgumentException("Unexpected ')' at " + i);
+                }
+                if (openParenCount == 0) {
+                    throw new IllegalArgumentException("Unmatched ')' at " + i);
+                }
+                closeParen();
+                operandStart = absorbRoots(groupCount > 0 ? groups[--groupCount] : matchingOpenParen());
+            } else if (c == '²' || c == '!') {
+                if (expectOperand) {
+                    throw new IllegalArgumentException("Unexpected '" + c + "' at " + i);
+                }
+                text.append(c);
+                types[operandStart] = FUNCTION_RESULT;
+                count = operandStart + 1;
+            } else {
+                throw new IllegalArgumentException("Unsupported character '" + c + "' at " + i);
+            }
+        }
+
+        if (inNumber) {
+            if (!hasDigit) throw new IllegalArgumentException("Malformed number at " + len);
+            absorbRoots(numberToken);
+        }
+        if (expectOperand && text.length() > firstChar && getLastType() != OPEN_PAREN) {
+            throw new IllegalArgumentException("Expression ends with an operator");
+        }
+    }
+
+    /**
+     * Join the operand that ends the buffer with any √ directly before it into one
+     * function result token. The text is unchanged.
+     * @param start First token of the operand
+     * @return First token of the joined operand
+     */
+    private int absorbRoots(int start) {
+        int first = start;
+        while (first > 0 && types[first - 1] == OPERATOR && text.charAt(starts[first - 1]) == '√') {
+            first--;
+        }
+        if (first < start) {
+            types[first] = FUNCTION_RESULT;
+            count = first + 1;
+        }
+        return first;
+    }
+
+    /**
+     * @return Index of the '(' token matching the ')' that ends the buffer
+     */
+    private int matchingOpenParen() {
+        int depth = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            if (types[i] == CLOSE_PAREN) depth++;
+            else if (types[i] == OPEN_PAREN && --depth == 0) return i;
+        }
+        return 0;
+    }
+
+    private static char normalizeOperator(char c) {
+        switch (c) {
+            case '+':
+            case '-':
+            case '^':
+            case '×':
+            case '÷':
+                return c;
+            case '−':
+                return '-';
+            case '*':
+                return '×';
+            case '/':
+                return '÷';
+        }
+        return 0;
+    }
+
+    /**
+     * Replace the text of the current number, keeping it a typed number.
+     * @param number The new number text; empty removes the token
+     */
+    public void replaceCurrentNumber(CharSequence number) {
+        if (hasCurrentNumber()) {
+            pop();
+        }
+        if (number.length() > 0) {
+            appendNumber(number);
+        }
+    }
+
+    /**
+     * Apply √ (prefix) or ² (suffix) to the current number. Negative numbers and
+     * function results are parenthesized first, e.g. "(-3)²" or "√(√16)".
+     * @param symbol '√' or '²'
+     */
+    public void applyFunction(char symbol) {
+        String operand = getCurrentNumber();
+        boolean wrap = getLastType() == FUNCTION_RESULT || operand.startsWith("-");
+        pop();
+        push(FUNCTION_RESULT);
+        if (symbol != '²') text.append(symbol);
+        if (wrap) text.append('(');
+        text.append(operand);
+        if (wrap) text.append(')');
+        if (symbol == '²') text.append(symbol);
+    }
+
+    /**
+     * Remove the last character typed. A √ or ² is undone as a whole,
+     * restoring the number it was applied to.
+     */
+    public void backspace() {
+        switch (getLastType()) {
+            case NONE:
+                return;
+            case NUMBER:
+                text.setLength(text.length() - 1);
+                if (text.length() == starts[count - 1]) {
+                    count--;
+                }
+                return;
+            case FUNCTION_RESULT: {
+                int from = starts[count - 1];
+                int to = text.length();
+                if (text.charAt(from) == '√') from++;
+                else to--;
+                if (text.charAt(from) == '(') {
+                    from++;
+                    to--;
+                }
+                String operand = text.substring(from, to);
+                pop();
+                push(isPlainNumber(operand) ? NUMBER : FUNCTION_RESULT);
+                text.append(operand);
+                return;
+            }
+            case OPEN_PAREN:
+                openParenCount--;
+                pop();
+                return;
+            case CLOSE_PAREN:
+                openParenCount++;
+                pop();
+                return;
+            default:
+                pop();
+        }
+    }
+
+    public void clear() {
+        text.setLength(0);
+        count = 0;
+        openParenCount = 0;
+    }
+
+    private void push(int type) {
+        if (count == types.length) {
+            types = grow(types);
+            starts = grow(starts);
+        }
+        types[count] = type;
+        starts[count] = text.length();
+        count++;
+    }
+
+    private void pop() {
+        count--;
+        text.setLength(starts[count]);
+    }
+
+    private static boolean isPlainNumber(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && c != '.' && !(c == '-' && i == 0)) return false;
+        }
+        return true;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of compiled expressions keyed by their normalized text.
+ * Repeated evaluations of the same expression (pressing = again, re-running a
+ * history entry) skip tokenizing and parsing entirely.
+ */
+public class ExpressionCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    // Longer expressions (e.g. pasted) are compiled but not kept, they are rarely repeated
+    static final int MAX_CACHED_LENGTH = 4096;
+
+    private static ExpressionCache instance;
+
+    private final Map<String, CompiledExpression> entries;
+    private final ExpressionEvaluator compiler = new ExpressionEvaluator();
+    private final StringBuilder keyBuffer = new StringBuilder();
+    private double[] stack = new double[32];
+
+    public static synchronized ExpressionCache getInstance() {
+        if (instance == null) {
+            instance = new ExpressionCache(DEFAULT_CAPACITY);
+        }
+        return instance;
+    }
+
+    public ExpressionCache(int capacity) {
+        entries = new LinkedHashMap<String, CompiledExpression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the compiled form of an expression, compiling and caching it on a miss.
+     * @param expr The expression
+     * @return The compiled expression
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public synchronized CompiledExpression get(CharSequence expr) {
+        String key = normalize(expr, keyBuffer);
+        CompiledExpression compiled = entries.get(key);
+        if (compiled == null) {
+            compiled = compiler.compile(key);
+            if (key.length() <= MAX_CACHED_LENGTH) {
+                entries.put(key, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Evaluate an expression through the cache.
+     * @param expr The expression
+     * @return The result
+     * @throws ArithmeticException If the expression divides by zero
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public synchronized double evaluate(CharSequence expr) {
+        CompiledExpression compiled = get(expr);
+        if (stack.length < compiled.getMaxDepth()) {
+            stack = new double[compiled.getMaxDepth()];
+        }
+        return compiled.evaluate(stack);
+    }
+
+    /**
+     * Evaluate an expression exactly in decimal through the cache.
+     * @param expr The expression
+     * @param mathContext Precision and rounding for inexact operations
+     * @return The result
+     * @throws ArithmeticException If the expression divides by zero
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public synchronized BigDecimal evaluateExact(CharSequence expr, MathContext mathContext) {
+        CompiledExpression compiled = get(expr);
+        if (stack.length < compiled.getMaxDepth()) {
+            stack = new double[compiled.getMaxDepth()];
+        }
+        return compiled.evaluateExact(stack, mathContext);
+    }
+
+    /**
+     * Pre-compile expressions, e.g. from recent history. Malformed entries are skipped.
+     * Expressions should be ordered newest first so the newest end up most recently used.
+     * Compiles on the calling thread without holding the cache, so lookups only wait for
+     * each insert.
+     * @param expressions The expressions to compile
+     */
+    public void warmUp(List<String> expressions) {
+        ExpressionEvaluator warmUpCompiler = new ExpressionEvaluator();
+        StringBuilder warmUpKey = new StringBuilder();
+        for (int i = expressions.size() - 1; i >= 0; i--) {
+            String expr = expressions.get(i);
+            if (expr == null) continue;
+            String key = normalize(expr, warmUpKey);
+            if (key.length() > MAX_CACHED_LENGTH) continue;
+            CompiledExpression compiled;
+            try {
+                compiled = warmUpCompiler.compile(key);
+            } catch (RuntimeException e) {
+                // Not a valid expression for this evaluator, skip it
+                continue;
+            }
+            synchronized (this) {
+                // One compiled meanwhile by get() is as good and has been used more recently
+                if (!entries.containsKey(key)) {
+                    entries.put(key, compiled);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of cached expressions
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Clear all cached expressions.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Normalize an expression to its cache key: spaces removed and display
+     * operators mapped to ASCII, so "2 × 3" and "2*3" share an entry.
+     */
+    private static String normalize(CharSequence expr, StringBuilder keyBuffer) {
+        keyBuffer.setLength(0);
+        for (int i = 0; i < expr.length(); i++) {
+            char c = expr.charAt(i);
+            if (c == ' ') continue;
+            if (c == '×') c = '*';
+            else if (c == '÷') c = '/';
+            keyBuffer.append(c);
+        }
+        return keyBuffer.toString();
+    }
+}
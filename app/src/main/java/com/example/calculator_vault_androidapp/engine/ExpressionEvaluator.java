@@ -0,0 +1,480 @@
+package com.example.calculator_vault_androidapp.engine;
+
+/**
+ * Infix expression evaluator used by the calculator.
+ * Supports +, -, * (or ×), / (or ÷), ^, parentheses, unary minus, postfix ² and !,
+ * prefix √ and the functions in {@link OperatorTable}, e.g. "2^3+sin(0.5)-pow(2,10)".
+ * Functions of x for plotting are compiled with {@link #compileFunction}.
+ *
+ * Operands and operators live on reusable primitive stacks and numbers are parsed
+ * in place, so evaluating an expression does not allocate once the stacks have grown
+ * to fit it. The same parser can also {@link #compile} an expression into a postfix
+ * {@link CompiledExpression} that is evaluated later without re-parsing.
+ * Instances are not thread-safe; keep one per thread and reuse it.
+ */
+public class ExpressionEvaluator {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    // The variable of a compiled function
+    static final char VARIABLE = 'x';
+
+    // Largest mantissa that a double represents exactly (2^53)
+    static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    // Powers of ten that are exactly representable as doubles
+    static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int valueCount;
+    private byte[] operators = new byte[INITIAL_CAPACITY];
+    // Operand count when each operator was pushed, used to count function arguments
+    private int[] operatorMarks = new int[INITIAL_CAPACITY];
+    private int operatorCount;
+
+    // Position just after the last number parsed by parseNumber
+    private int parseEnd;
+
+    // Compile mode: operators and constants are emitted as postfix code instead of applied
+    private boolean compiling;
+    // Whether the variable x may appear, only when compiling a function
+    private boolean allowVariable;
+    private byte[] code = new byte[INITIAL_CAPACITY];
+    private int codeLength;
+    private double[] constants = new double[INITIAL_CAPACITY];
+    // Source range of each constant, for exact decimal evaluation
+    private int[] constantStarts = new int[INITIAL_CAPACITY];
+    private int[] constantEnds = new int[INITIAL_CAPACITY];
+    private int constantCount;
+    private int depth;
+    private int maxDepth;
+
+    /**
+     * Evaluate an infix expression.
+     * @param expr The expression, e.g. "2+3×(4-1)"
+     * @return The result, or 0 for an empty expression
+     * @throws ArithmeticException If the expression divides by zero
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public double evaluate(CharSequence expr) {
+        compiling = false;
+        allowVariable = false;
+        parse(expr);
+        return valueCount == 0 ? 0 : values[valueCount - 1];
+    }
+
+    /**
+     * Compile an infix expression into postfix form for repeated evaluation.
+     * @param expr The expression, e.g. "2+3×(4-1)"
+     * @return The compiled expression
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public CompiledExpression compile(CharSequence expr) {
+        return compile(expr, false);
+    }
+
+    /**
+     * Compile a function of x, e.g. "x^2-2*x+1", for evaluation over many x values
+     * with {@link CompiledExpression#evaluateBatch}.
+     * @param expr The function body
+     * @return The compiled function
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public CompiledExpression compileFunction(CharSequence expr) {
+        return compile(expr, true);
+    }
+
+    private CompiledExpression compile(CharSequence expr, boolean variable) {
+        compiling = true;
+        allowVariable = variable;
+        codeLength = 0;
+        constantCount = 0;
+        depth = 0;
+        maxDepth = 0;
+        parse(expr);
+        byte[] compiledCode = new byte[codeLength];
+        System.arraycopy(code, 0, compiledCode, 0, codeLength);
+        double[] compiledConstants = new double[constantCount];
+        System.arraycopy(constants, 0, compiledConstants, 0, constantCount);
+        int[] starts = new int[constantCount];
+        System.arraycopy(constantStarts, 0, starts, 0, constantCount);
+        int[] ends = new int[constantCount];
+        System.arraycopy(constantEnds, 0, ends, 0, constantCount);
+        return new CompiledExpression(compiledCode, compiledConstants, maxDepth,
+                expr.toString().toCharArray(), starts, ends);
+    }
+
+    private void parse(CharSequence expr) {
+        reset();
+        int len = expr.length();
+        int i = 0;
+        while (i < len) {
+            i = step(expr, i);
+        }
+        finish();
+    }
+
+    /**
+     * Clear the operand and operator stacks before a new parse.
+     */
+    void reset() {
+        valueCount = 0;
+        operatorCount = 0;
+    }
+
+    /**
+     * Consume the token (or space) starting at the given index.
+     * @param expr The expression
+     * @param i Index of the token
+     * @return Index just after the token
+     */
+    int step(CharSequence expr, int i) {
+        int len = expr.length();
+        char c = expr.charAt(i);
+
+        if (c == ' ') {
+            return i + 1;
+        }
+
+        if (isNumberStart(c)) {
+            emitValue(parseNumber(expr, i, i), i);
+            return parseEnd;
+        }
+
+        if (c == '-' && isUnaryPosition(expr, i)) {
+            if (i + 1 < len && isNumberStart(expr.charAt(i + 1))) {
+                // Negative literal, parsed together with its sign unless a tighter
+                // operator follows: -2^2 is -(2^2)
+                double value = parseNumber(expr, i, i + 1);
+                if (bindsTighterThanNegate(expr, parseEnd)) {
+                    pushOperator(OperatorTable.NEGATE);
+                    emitValue(value, i + 1);
+                } else {
+                    emitValue(-value, i);
+                }
+                return parseEnd;
+            }
+            pushOperator(OperatorTable.NEGATE);
+            return i + 1;
+        }
+
+        if (c == '(') {
+            pushOperator(OperatorTable.OPEN_PAREN);
+        } else if (c == ')') {
+            closeGroup();
+        } else if (c == ',') {
+            while (operatorCount > 0 && operators[operatorCount - 1] != OperatorTable.OPEN_PAREN) {
+                reduce();
+            }
+            if (operatorCount == 0) {
+                throw new IllegalArgumentException("Unexpected ',' at " + i);
+            }
+        } else if (isLetter(c)) {
+            return parseName(expr, i);
+        } else {
+            int op = OperatorTable.forSymbol(c);
+            if (op < 0) {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' at " + i);
+            }
+            pushInfixOrAffix(op);
+        }
+        return i + 1;
+    }
+
+    /**
+     * Apply all pending operators at the end of the expression.
+     * @return The result, or 0 for an empty expression
+     */
+    double finish() {
+        while (operatorCount > 0) {
+            if (operators[operatorCount - 1] == OperatorTable.OPEN_PAREN) {
+                // Unclosed parenthesis, treat as closed at the end
+                closeGroup();
+            } else {
+                reduce();
+            }
+        }
+        if (operandCount() > 1) {
+            throw new IllegalArgumentException("Missing operator");
+        }
+        return valueCount == 0 ? 0 : values[valueCount - 1];
+    }
+
+    /**
+     * Copy the current stacks into a checkpoint.
+     */
+    void saveState(Checkpoint checkpoint) {
+        checkpoint.values = new double[valueCount];
+        System.arraycopy(values, 0, checkpoint.values, 0, valueCount);
+        checkpoint.operators = new byte[operatorCount];
+        System.arraycopy(operators, 0, checkpoint.operators, 0, operatorCount);
+        checkpoint.marks = new int[operatorCount];
+        System.arraycopy(operatorMarks, 0, checkpoint.marks, 0, operatorCount);
+    }
+
+    /**
+     * Restore the stacks from a checkpoint taken by {@link #saveState}.
+     */
+    void restoreState(Checkpoint checkpoint) {
+        reset();
+        for (double value : checkpoint.values) pushValue(value);
+        for (int i = 0; i < checkpoint.operators.length; i++) {
+            pushOperator(checkpoint.operators[i]);
+            operatorMarks[i] = checkpoint.marks[i];
+        }
+    }
+
+    /**
+     * @return Entries on the value and operator stacks, i.e. the cost of {@link #saveState}
+     */
+    int stateSize() {
+        return valueCount + operatorCount;
+    }
+
+    /**
+     * Snapshot of the evaluation stacks at a token boundary.
+     */
+    static final class Checkpoint {
+        double[] values = new double[0];
+        byte[] operators = new byte[0];
+        int[] marks = new int[0];
+    }
+
+    /**
+     * Parse an unsigned decimal number without creating a substring.
+     * Uses an exact mantissa / power-of-ten fast path and only falls back to
+     * Double.parseDouble for numbers with more significant digits than a double holds.
+     * @param expr The expression
+     * @param tokenStart Start of the token, including any sign (for error messages)
+     * @param digitsStart Start of the digits
+     * @return The parsed value; parseEnd is set to the index after the number
+     */
+    private double parseNumber(CharSequence expr, int tokenStart, int digitsStart) {
+        int len = expr.length();
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        boolean seenDigit = false;
+        boolean exact = true;
+
+        int i = digitsStart;
+        for (; i < len; i++) {
+            char c = expr.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (exact) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (seenDot) fractionDigits++;
+                    if (mantissa > MAX_EXACT_MANTISSA || fractionDigits >= POW10.length) {
+                        exact = false;
+                    }
+                }
+            } else if (c == '.') {
+                if (seenDot) {
+                    throw new IllegalArgumentException("Malformed number at " + tokenStart);
+                }
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+        parseEnd = i;
+
+        if (!seenDigit) {
+            throw new IllegalArgumentException("Malformed number at " + tokenStart);
+        }
+        if (exact) {
+            return fractionDigits == 0 ? mantissa : mantissa / POW10[fractionDigits];
+        }
+        return Double.parseDouble(expr.subSequence(digitsStart, i).toString());
+    }
+
+    /**
+     * Push or emit a parsed number.
+     * @param value The value
+     * @param start Start of the number token; it ends at parseEnd
+     */
+    private void emitValue(double value, int start) {
+        if (!compiling) {
+            pushValue(value);
+            return;
+        }
+        if (constantCount == constants.length) {
+            double[] grown = new double[constants.length * 2];
+            System.arraycopy(constants, 0, grown, 0, constantCount);
+            constants = grown;
+            int[] grownStarts = new int[constantCount * 2];
+            System.arraycopy(constantStarts, 0, grownStarts, 0, constantCount);
+            constantStarts = grownStarts;
+            int[] grownEnds = new int[constantCount * 2];
+            System.arraycopy(constantEnds, 0, grownEnds, 0, constantCount);
+            constantEnds = grownEnds;
+        }
+        constantStarts[constantCount] = start;
+        constantEnds[constantCount] = parseEnd;
+        constants[constantCount++] = value;
+        appendCode(OperatorTable.PUSH_CONSTANT);
+        if (++depth > maxDepth) maxDepth = depth;
+    }
+
+    private void appendCode(byte op) {
+        if (codeLength == code.length) {
+            byte[] grown = new byte[code.length * 2];
+            System.arraycopy(code, 0, grown, 0, codeLength);
+            code = grown;
+        }
+        code[codeLength++] = op;
+    }
+
+    /**
+     * Parse a function name such as "sin" and push its operator, or emit the variable.
+     * @return Index just after the name
+     */
+    private int parseName(CharSequence expr, int start) {
+        int end = start + 1;
+        while (end < expr.length() && isLetter(expr.charAt(end))) {
+            end++;
+        }
+        if (end == start + 1 && expr.charAt(start) == VARIABLE && allowVariable) {
+            appendCode(OperatorTable.PUSH_VARIABLE);
+            if (++depth > maxDepth) maxDepth = depth;
+            return end;
+        }
+        int op = OperatorTable.forName(expr, start, end);
+        if (op < 0) {
+            throw new IllegalArgumentException("Unknown function '" + expr.subSequence(start, end) + "' at " + start);
+        }
+        if (OperatorTable.KIND[op] == OperatorTable.FUNCTION
+                && (end == expr.length() || expr.charAt(end) != '(')) {
+            throw new IllegalArgumentException("Expected '(' after " + OperatorTable.NAMES[op]);
+        }
+        pushOperator((byte) op);
+        return end;
+    }
+
+    /**
+     * Push an operator given by its symbol, reducing operators that bind at least as tightly.
+     */
+    private void pushInfixOrAffix(int op) {
+        byte kind = OperatorTable.KIND[op];
+        if (kind == OperatorTable.PREFIX) {
+            // Its operand is still to come, nothing to reduce yet
+            pushOperator((byte) op);
+            return;
+        }
+        int precedence = OperatorTable.PRECEDENCE[op];
+        boolean rightAssociative = OperatorTable.RIGHT_ASSOCIATIVE[op];
+        while (operatorCount > 0) {
+            int top = OperatorTable.PRECEDENCE[operators[operatorCount - 1]];
+            if (top < precedence || (top == precedence && rightAssociative)) break;
+            reduce();
+        }
+        pushOperator((byte) op);
+        if (kind == OperatorTable.POSTFIX) {
+            // Its operand is complete
+            reduce();
+        }
+    }
+
+    /**
+     * Close the innermost parenthesis, applying the function it belongs to, if any.
+     */
+    private void closeGroup() {
+        while (operatorCount > 0 && operators[operatorCount - 1] != OperatorTable.OPEN_PAREN) {
+            reduce();
+        }
+        if (operatorCount == 0) return;
+        int arguments = operandCount() - operatorMarks[--operatorCount];
+        if (operatorCount > 0 && OperatorTable.KIND[operators[operatorCount - 1]] == OperatorTable.FUNCTION) {
+            int function = operators[operatorCount - 1];
+            if (arguments != OperatorTable.ARITY[function]) {
+                throw new IllegalArgumentException(OperatorTable.NAMES[function] + " expects "
+                        + OperatorTable.ARITY[function] + " arguments");
+            }
+            reduce();
+        } else if (arguments > 1) {
+            throw new IllegalArgumentException("Unexpected ','");
+        }
+    }
+
+    private void reduce() {
+        byte op = operators[--operatorCount];
+        int arity = OperatorTable.ARITY[op];
+        requireValues(arity);
+        if (compiling) {
+            appendCode(op);
+            depth -= arity - 1;
+            return;
+        }
+        valueCount = OperatorTable.apply(op, values, valueCount);
+    }
+
+    private int operandCount() {
+        return compiling ? depth : valueCount;
+    }
+
+    private void requireValues(int count) {
+        if (operandCount() < count) {
+            throw new IllegalArgumentException("Missing operand");
+        }
+    }
+
+    private void pushValue(double value) {
+        if (valueCount == values.length) {
+            double[] grown = new double[values.length * 2];
+            System.arraycopy(values, 0, grown, 0, valueCount);
+            values = grown;
+        }
+        values[valueCount++] = value;
+    }
+
+    private void pushOperator(byte op) {
+        if (operatorCount == operators.length) {
+            byte[] grown = new byte[operators.length * 2];
+            System.arraycopy(operators, 0, grown, 0, operatorCount);
+            operators = grown;
+            int[] grownMarks = new int[operatorMarks.length * 2];
+            System.arraycopy(operatorMarks, 0, grownMarks, 0, operatorCount);
+            operatorMarks = grownMarks;
+        }
+        operatorMarks[operatorCount] = operandCount();
+        operators[operatorCount++] = op;
+    }
+
+    private static boolean isNumberStart(char c) {
+        return (c >= '0' && c <= '9') || c == '.';
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    /**
+     * A minus is unary at the start of the expression or after an operator or '('.
+     */
+    private static boolean isUnaryPosition(CharSequence expr, int i) {
+        for (int j = i - 1; j >= 0; j--) {
+            char prev = expr.charAt(j);
+            if (prev == ' ') continue;
+            return !isNumberStart(prev) && prev != ')' && prev != VARIABLE
+                    && !OperatorTable.isPostfixSymbol(prev);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the next token is an operator that binds tighter than negation, such as ^ or !
+     */
+    private static boolean bindsTighterThanNegate(CharSequence expr, int i) {
+        while (i < expr.length() && expr.charAt(i) == ' ') {
+            i++;
+        }
+        if (i == expr.length()) return false;
+        int op = OperatorTable.forSymbol(expr.charAt(i));
+        return op >= 0 && OperatorTable.KIND[op] != OperatorTable.PREFIX
+                && OperatorTable.PRECEDENCE[op] > OperatorTable.PRECEDENCE[OperatorTable.NEGATE];
+    }
+}
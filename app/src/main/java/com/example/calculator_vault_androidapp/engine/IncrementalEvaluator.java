@@ -0,0 +1,96 @@
+package com.example.calculator_vault_androidapp.engine;
+
+/**
+ * Evaluator for an expression that is edited a keystroke at a time.
+ *
+ * While scanning it checkpoints the parse stacks every few tokens. On the next call
+ * only the part after the last checkpoint inside the unchanged prefix is re-parsed,
+ * so typing or deleting at the end of a long expression costs a handful of tokens
+ * instead of a full re-parse. Not thread-safe.
+ */
+public class IncrementalEvaluator {
+
+    // Tokens scanned between checkpoints; deeper stacks space them further apart so
+    // deeply nested input still costs linear time and memory
+    private static final int CHECKPOINT_INTERVAL = 16;
+
+    private final ExpressionEvaluator evaluator = new ExpressionEvaluator();
+    private final StringBuilder previous = new StringBuilder();
+
+    // Checkpoint 0 is the empty state at position 0 and is always valid
+    private int[] checkpointPositions = new int[16];
+    private ExpressionEvaluator.Checkpoint[] checkpoints = new ExpressionEvaluator.Checkpoint[16];
+    private int checkpointCount = 1;
+
+    public IncrementalEvaluator() {
+        checkpoints[0] = new ExpressionEvaluator.Checkpoint();
+    }
+
+    /**
+     * Evaluate the expression, reusing parse state from the previous call for the
+     * prefix both expressions share.
+     * @param expr The expression
+     * @return The result, or 0 for an empty expression
+     * @throws ArithmeticException If the expression divides by zero
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public double evaluate(CharSequence expr) {
+        int len = expr.length();
+        int common = commonPrefixLength(expr);
+
+        // A checkpoint is reusable only if the character after it is unchanged too,
+        // otherwise the token before it might now continue (e.g. "1" -> "12")
+        while (checkpointCount > 1 && checkpointPositions[checkpointCount - 1] >= common) {
+            checkpoints[--checkpointCount] = null;
+        }
+        previous.setLength(common);
+        previous.append(expr, common, len);
+
+        int i = checkpointPositions[checkpointCount - 1];
+        evaluator.restoreState(checkpoints[checkpointCount - 1]);
+
+        int tokens = 0;
+        while (i < len) {
+            i = evaluator.step(expr, i);
+            if (++tokens >= CHECKPOINT_INTERVAL && tokens >= evaluator.stateSize() && i < len) {
+                tokens = 0;
+                addCheckpoint(i);
+            }
+        }
+        return evaluator.finish();
+    }
+
+    /**
+     * Forget all reusable state.
+     */
+    public void reset() {
+        previous.setLength(0);
+        while (checkpointCount > 1) {
+            checkpoints[--checkpointCount] = null;
+        }
+    }
+
+    private void addCheckpoint(int position) {
+        if (checkpointCount == checkpoints.length) {
+            int[] grownPositions = new int[checkpointCount * 2];
+            System.arraycopy(checkpointPositions, 0, grownPositions, 0, checkpointCount);
+            checkpointPositions = grownPositions;
+            ExpressionEvaluator.Checkpoint[] grown = new ExpressionEvaluator.Checkpoint[checkpointCount * 2];
+            System.arraycopy(checkpoints, 0, grown, 0, checkpointCount);
+            checkpoints = grown;
+        }
+        ExpressionEvaluator.Checkpoint checkpoint = new ExpressionEvaluator.Checkpoint();
+        evaluator.saveState(checkpoint);
+        checkpointPositions[checkpointCount] = position;
+        checkpoints[checkpointCount++] = checkpoint;
+    }
+
+    private int commonPrefixLength(CharSequence expr) {
+        int max = Math.min(previous.length(), expr.length());
+        int i = 0;
+        while (i < max && previous.charAt(i) == expr.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
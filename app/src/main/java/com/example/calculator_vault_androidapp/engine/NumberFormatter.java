@@ -0,0 +1,351 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Formats calculator results for the display without String.format or regex.
+ *
+ * Display rules: integers below 1e15 are shown in full; other values are rounded
+ * half-up to at most 10 decimal places with trailing zeros removed; if that is longer
+ * than 15 characters the value is shown in scientific notation with 6 decimals
+ * (e.g. "1.234568E+20"). Rounding is applied to the shortest decimal that round-trips
+ * to the same double (Schubfach algorithm), as java.util.Formatter does, so output
+ * matches the previous "%.10f" / "%.6E" formatting with a '.' decimal separator.
+ *
+ * Exact results ({@link BigDecimal}) follow the same rules from their exact digits, except
+ * that integers are shown in full up to the working precision. Output never depends on
+ * the default locale, so a result can be read back as an operand.
+ *
+ * Formatting a double into a caller-provided StringBuilder does not allocate.
+ * Instances are not thread-safe.
+ */
+public class NumberFormatter {
+
+    private static final String ERROR = "Error";
+    private static final double MAX_PLAIN_INTEGER = 1e15;
+    private static final int MAX_FRACTION_DIGITS = 10;
+    private static final int MAX_FIXED_LENGTH = 15;
+    private static final int SCIENTIFIC_FRACTION_DIGITS = 6;
+
+    // Schubfach constants for double (see R. Giulietti, "The Schubfach way to render doubles")
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << (P - 1);
+    private static final int BQ_MASK = 0x7FF;
+    private static final long T_MASK = (1L << (P - 1)) - 1;
+    private static final long C_TINY = 3;
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    // g(k) = floor(10^-k 2^-r) + 1 with 2^125 <= g < 2^126, split into two 63-bit halves
+    private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+    private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+
+    static {
+        BigInteger mask63 = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int e = -k;
+            int shift = 125 - flog2pow10(e);
+            BigInteger beta;
+            if (e >= 0) {
+                BigInteger pow = BigInteger.TEN.pow(e);
+                beta = shift >= 0 ? pow.shiftLeft(shift) : pow.shiftRight(-shift);
+            } else {
+                beta = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(-e));
+            }
+            BigInteger g = beta.add(BigInteger.ONE);
+            G1[k - K_MIN] = g.shiftRight(63).longValue();
+            G0[k - K_MIN] = g.and(mask63).longValue();
+        }
+    }
+
+    private char[] digits = new char[20];
+    // Digits before rounding to the fixed form, in case the scientific form is needed
+    private char[] savedDigits = new char[20];
+    private int digitCount;
+    // Position of the decimal point relative to the first digit
+    private int pointPosition;
+
+    private final StringBuilder buffer = new StringBuilder(32);
+
+    /**
+     * Format a value for the display.
+     * @param value The value
+     * @return The formatted value, or "Error" for NaN and infinity
+     */
+    public String format(double value) {
+        buffer.setLength(0);
+        formatTo(value, buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Append a value formatted for the display.
+     * @param value The value
+     * @param out Destination; nothing else is allocated
+     */
+    public void formatTo(double value, StringBuilder out) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append(ERROR);
+            return;
+        }
+        if (value == (long) value && Math.abs(value) < MAX_PLAIN_INTEGER) {
+            out.append((long) value);
+            return;
+        }
+
+        shortestDecimal(Math.abs(value));
+        appendRounded(value < 0, out);
+    }
+
+    /**
+     * Format an exact result for the display.
+     * @param value The value
+     * @param maxIntegerDigits Longest integer shown in full, e.g. the working precision
+     * @return The formatted value
+     */
+    public String format(BigDecimal value, int maxIntegerDigits) {
+        BigDecimal stripped = value.stripTrailingZeros();
+        if (stripped.scale() <= 0 && stripped.precision() - stripped.scale() <= maxIntegerDigits) {
+            return stripped.toPlainString();
+        }
+        String unscaled = stripped.unscaledValue().abs().toString();
+        if (digits.length < unscaled.length()) {
+            digits = new char[unscaled.length()];
+            savedDigits = new char[unscaled.length()];
+        }
+        unscaled.getChars(0, unscaled.length(), digits, 0);
+        digitCount = unscaled.length();
+        pointPosition = stripped.precision() - stripped.scale();
+
+        buffer.setLength(0);
+        appendRounded(stripped.signum() < 0, buffer);
+        // Rounded away entirely; an exact zero has no sign
+        return digitCount == 0 ? "0" : buffer.toString();
+    }
+
+    /**
+     * Append the digits rounded to at most 10 decimal places, or in scientific notation
+     * if that is too long.
+     */
+    private void appendRounded(boolean negative, StringBuilder out) {
+        int start = out.length();
+        // Rounding carries into the digits, so keep them for the scientific form
+        int savedCount = digitCount;
+        int savedPoint = pointPosition;
+        System.arraycopy(digits, 0, savedDigits, 0, digitCount);
+        round(pointPosition + MAX_FRACTION_DIGITS);
+        if (negative) out.append('-');
+        appendFixed(out);
+
+        if (out.length() - start > MAX_FIXED_LENGTH) {
+            out.setLength(start);
+            System.arraycopy(savedDigits, 0, digits, 0, savedCount);
+            digitCount = savedCount;
+            pointPosition = savedPoint;
+            round(SCIENTIFIC_FRACTION_DIGITS + 1);
+            if (negative) out.append('-');
+            appendScientific(out);
+        }
+    }
+
+    /**
+     * Round the digits half-up, keeping the given number of leading digits.
+     */
+    private void round(int keep) {
+        if (keep >= digitCount) {
+            return;
+        }
+        if (keep < 0) {
+            digitCount = 0;
+            return;
+        }
+        boolean roundUp = digits[keep] >= '5';
+        digitCount = keep;
+        if (roundUp) {
+            int i = keep - 1;
+            while (i >= 0 && digits[i] == '9') {
+                i--;
+            }
+            if (i < 0) {
+                // All nines (or nothing kept): carry into a new leading digit
+                digits[0] = '1';
+                digitCount = 1;
+                pointPosition++;
+            } else {
+                digits[i]++;
+                digitCount = i + 1;
+            }
+        }
+        while (digitCount > 0 && digits[digitCount - 1] == '0') {
+            digitCount--;
+        }
+    }
+
+    private void appendFixed(StringBuilder out) {
+        if (digitCount == 0) {
+            // Rounded away entirely
+            out.append('0');
+            return;
+        }
+        if (pointPosition <= 0) {
+            out.append('0');
+        } else {
+            for (int i = 0; i < pointPosition; i++) {
+                out.append(i < digitCount ? digits[i] : '0');
+            }
+        }
+        if (digitCount > pointPosition) {
+            out.append('.');
+            for (int i = pointPosition; i < 0; i++) {
+                out.append('0');
+            }
+            for (int i = Math.max(0, pointPosition); i < digitCount; i++) {
+                out.append(digits[i]);
+            }
+        }
+    }
+
+    private void appendScientific(StringBuilder out) {
+        out.append(digitCount > 0 ? digits[0] : '0').append('.');
+        for (int i = 1; i <= SCIENTIFIC_FRACTION_DIGITS; i++) {
+            out.append(i < digitCount ? digits[i] : '0');
+        }
+        int exponent = digitCount > 0 ? pointPosition - 1 : 0;
+        out.append('E').append(exponent < 0 ? '-' : '+');
+        exponent = Math.abs(exponent);
+        if (exponent < 10) out.append('0');
+        out.append(exponent);
+    }
+
+    /**
+     * Compute the shortest decimal that rounds to the given positive finite double,
+     * leaving its digits in digits/digitCount and the decimal point in pointPosition.
+     */
+    private void shortestDecimal(double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & T_MASK;
+        int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+        if (bq != 0) {
+            // Normal value, mq = -q
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                // Integer fast path
+                long f = c >> mq;
+                if (f << mq == c) {
+                    setDigits(f, 0);
+                    return;
+                }
+            }
+            toDecimal(-mq, c, 0);
+        } else if (t < C_TINY) {
+            toDecimal(Q_MIN, 10 * t, -1);
+        } else {
+            toDecimal(Q_MIN, t, 0);
+        }
+    }
+
+    private void toDecimal(int q, long c, int dk) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G1[k - K_MIN];
+        long g0 = G0[k - K_MIN];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // Try one digit shorter first
+            long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                setDigits(upin ? sp10 : tp10, k);
+                return;
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            setDigits(uin ? s : t, k + dk);
+            return;
+        }
+        long cmp = vb - ((s + t) << 1);
+        setDigits(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk);
+    }
+
+    /**
+     * Store f * 10^e as digits without trailing zeros.
+     */
+    private void setDigits(long f, int e) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int count = 0;
+        for (long x = f; x != 0; x /= 10) {
+            count++;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + f % 10);
+            f /= 10;
+        }
+        digitCount = count;
+        pointPosition = count + e;
+    }
+
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+    }
+
+    // Math.multiplyHigh is not available on older Android releases
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    // floor(e * log10(2))
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    // floor(e * log10(2) + log10(3/4))
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    // floor(e * log2(10))
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+}
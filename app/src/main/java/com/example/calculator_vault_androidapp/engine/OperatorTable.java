@@ -0,0 +1,383 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * Registry of the operators and functions the evaluator understands.
+ *
+ * Every operator has a dense opcode that indexes its precedence, associativity, arity
+ * and syntax in the tables below, and execution is a switch over those opcodes, which
+ * compiles to a jump table. The four basic operators cost the same however many
+ * functions are registered. Trigonometric functions take radians.
+ */
+final class OperatorTable {
+
+    // Opcodes, dense from 0 so they can index the tables
+    static final byte ADD = 0;
+    static final byte SUBTRACT = 1;
+    static final byte MULTIPLY = 2;
+    static final byte DIVIDE = 3;
+    static final byte POWER = 4;
+    static final byte NEGATE = 5;
+    static final byte SQUARE = 6;
+    static final byte FACTORIAL = 7;
+    static final byte SQRT = 8;
+    static final byte SIN = 9;
+    static final byte COS = 10;
+    static final byte TAN = 11;
+    static final byte LOG = 12;
+    static final byte LN = 13;
+    static final byte POW = 14;
+    static final int OPERATOR_COUNT = 15;
+
+    // Operator stack marker for '(' and the postfix opcodes that push a constant or x
+    static final byte OPEN_PAREN = 15;
+    static final byte PUSH_CONSTANT = 16;
+    static final byte PUSH_VARIABLE = 17;
+
+    // Syntax kinds
+    static final byte INFIX = 0;
+    // Applies to the operand that follows, e.g. -x, √x, sin x
+    static final byte PREFIX = 1;
+    // Applies to the operand before it, e.g. x², x!
+    static final byte POSTFIX = 2;
+    // Called with a parenthesized argument list, e.g. pow(x,y)
+    static final byte FUNCTION = 3;
+
+    // Largest n for which n! is finite as a double
+    static final int MAX_FACTORIAL = 170;
+
+    static final byte[] KIND = new byte[OPERATOR_COUNT];
+    static final int[] PRECEDENCE = new int[OPERATOR_COUNT + 1];
+    static final boolean[] RIGHT_ASSOCIATIVE = new boolean[OPERATOR_COUNT];
+    static final int[] ARITY = new int[OPERATOR_COUNT];
+    // true if integer operands always give the exact integer result in double arithmetic
+    static final boolean[] EXACT_ON_INTEGERS = new boolean[OPERATOR_COUNT];
+    static final String[] NAMES = new String[OPERATOR_COUNT];
+
+    // Opcode for each ASCII symbol, or -1
+    private static final byte[] ASCII_SYMBOLS = new byte[128];
+
+    static {
+        Arrays.fill(ASCII_SYMBOLS, (byte) -1);
+        define(ADD, "+", INFIX, 1, false, 2, true);
+        define(SUBTRACT, "-", INFIX, 1, false, 2, true);
+        define(MULTIPLY, "*", INFIX, 2, false, 2, true);
+        define(DIVIDE, "/", INFIX, 2, false, 2, true);
+        define(NEGATE, null, PREFIX, 3, true, 1, true);
+        define(POWER, "^", INFIX, 4, true, 2, true);
+        define(SQRT, "sqrt", PREFIX, 5, true, 1, false);
+        define(SIN, "sin", PREFIX, 5, true, 1, false);
+        define(COS, "cos", PREFIX, 5, true, 1, false);
+        define(TAN, "tan", PREFIX, 5, true, 1, false);
+        define(LOG, "log", PREFIX, 5, true, 1, false);
+        define(LN, "ln", PREFIX, 5, true, 1, false);
+        define(POW, "pow", FUNCTION, 5, true, 2, true);
+        define(SQUARE, null, POSTFIX, 6, false, 1, true);
+        define(FACTORIAL, "!", POSTFIX, 6, false, 1, true);
+        PRECEDENCE[OPEN_PAREN] = 0;
+    }
+
+    private OperatorTable() {
+    }
+
+    private static void define(byte op, String name, byte kind, int precedence,
+                               boolean rightAssociative, int arity, boolean exactOnIntegers) {
+        NAMES[op] = name;
+        KIND[op] = kind;
+        PRECEDENCE[op] = precedence;
+        RIGHT_ASSOCIATIVE[op] = rightAssociative;
+        ARITY[op] = arity;
+        EXACT_ON_INTEGERS[op] = exactOnIntegers;
+        if (name != null && name.length() == 1) {
+            ASCII_SYMBOLS[name.charAt(0)] = op;
+        }
+    }
+
+    /**
+     * @return The opcode of a single-character operator symbol, or -1
+     */
+    static int forSymbol(char c) {
+        if (c < 128) return ASCII_SYMBOLS[c];
+        switch (c) {
+            case '×': return MULTIPLY;
+            case '÷': return DIVIDE;
+            case '√': return SQRT;
+            case '²': return SQUARE;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The opcode of the function named by expr[start, end), or -1
+     */
+    static int forName(CharSequence expr, int start, int end) {
+        for (int op = 0; op < OPERATOR_COUNT; op++) {
+            String name = NAMES[op];
+            if (name == null || name.length() != end - start || name.length() == 1) continue;
+            boolean match = true;
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != expr.charAt(start + i)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) return op;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the character ends an operand, so a following '-' is binary
+     */
+    static boolean isPostfixSymbol(char c) {
+        int op = forSymbol(c);
+        return op >= 0 && KIND[op] == POSTFIX;
+    }
+
+    /**
+     * Apply an operator to the top of an operand stack.
+     * @param op The opcode
+     * @param stack The operand stack, holding at least ARITY[op] values
+     * @param top Number of values on the stack
+     * @return The new number of values on the stack
+     * @throws ArithmeticException If the operator divides by zero
+     */
+    static int apply(int op, double[] stack, int top) {
+        double x = stack[top - 1];
+        switch (op) {
+            case ADD:
+                stack[top - 2] += x;
+                return top - 1;
+            case SUBTRACT:
+                stack[top - 2] -= x;
+                return top - 1;
+            case MULTIPLY:
+                stack[top - 2] *= x;
+                return top - 1;
+            case DIVIDE:
+                if (x == 0) throw new ArithmeticException("Division by zero");
+                stack[top - 2] /= x;
+                return top - 1;
+            case POWER:
+            case POW:
+                stack[top - 2] = Math.pow(stack[top - 2], x);
+                return top - 1;
+            case NEGATE:
+                stack[top - 1] = -x;
+                return top;
+            case SQUARE:
+                stack[top - 1] = x * x;
+                return top;
+            case FACTORIAL:
+                stack[top - 1] = factorial(x);
+                return top;
+            case SQRT:
+                stack[top - 1] = Math.sqrt(x);
+                return top;
+            case SIN:
+                stack[top - 1] = Math.sin(x);
+                return top;
+            case COS:
+                stack[top - 1] = Math.cos(x);
+                return top;
+            case TAN:
+                stack[top - 1] = Math.tan(x);
+                return top;
+            case LOG:
+                stack[top - 1] = Math.log10(x);
+                return top;
+            case LN:
+                stack[top - 1] = Math.log(x);
+                return top;
+        }
+        throw new IllegalArgumentException("Unknown opcode " + op);
+    }
+
+    /**
+     * Apply an operator to the top of a stack of operand columns, one element per sample.
+     * Column k occupies stack[k * stride, k * stride + count). Each operator runs as one
+     * loop over the batch, so dispatch is paid once per column rather than per sample.
+     * Division by zero gives infinity or NaN instead of throwing, so a single pole does
+     * not fail the whole batch.
+     * @param op The opcode
+     * @param stack The column stack, holding at least ARITY[op] columns
+     * @param top Number of columns on the stack
+     * @param stride Distance between columns
+     * @param count Number of samples in each column
+     * @return The new number of columns on the stack
+     */
+    static int applyBatch(int op, double[] stack, int top, int stride, int count) {
+        int x = (top - 1) * stride;
+        int a = x - stride;
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < count; i++) stack[a + i] += stack[x + i];
+                return top - 1;
+            case SUBTRACT:
+                for (int i = 0; i < count; i++) stack[a + i] -= stack[x + i];
+                return top - 1;
+            case MULTIPLY:
+                for (int i = 0; i < count; i++) stack[a + i] *= stack[x + i];
+                return top - 1;
+            case DIVIDE:
+                for (int i = 0; i < count; i++) stack[a + i] /= stack[x + i];
+                return top - 1;
+            case POWER:
+            case POW:
+                for (int i = 0; i < count; i++) stack[a + i] = Math.pow(stack[a + i], stack[x + i]);
+                return top - 1;
+            case NEGATE:
+                for (int i = 0; i < count; i++) stack[x + i] = -stack[x + i];
+                return top;
+            case SQUARE:
+                for (int i = 0; i < count; i++) stack[x + i] *= stack[x + i];
+                return top;
+            case FACTORIAL:
+                for (int i = 0; i < count; i++) stack[x + i] = factorial(stack[x + i]);
+                return top;
+            case SQRT:
+                for (int i = 0; i < count; i++) stack[x + i] = Math.sqrt(stack[x + i]);
+                return top;
+            case SIN:
+                for (int i = 0; i < count; i++) stack[x + i] = Math.sin(stack[x + i]);
+                return top;
+            case COS:
+                for (int i = 0; i < count; i++) stack[x + i] = Math.cos(stack[x + i]);
+                return top;
+            case TAN:
+                for (int i = 0; i < count; i++) stack[x + i] = Math.tan(stack[x + i]);
+                return top;
+            case LOG:
+                for (int i = 0; i < count; i++) stack[x + i] = Math.log10(stack[x + i]);
+                return top;
+            case LN:
+                for (int i = 0; i < count; i++) stack[x + i] = Math.log(stack[x + i]);
+                return top;
+        }
+        throw new IllegalArgumentException("Unknown opcode " + op);
+    }
+
+    /**
+     * Apply an operator to the top of a decimal operand stack. Functions without an
+     * exact decimal form (trigonometry, logarithms, fractional powers) are computed in
+     * double and rounded to the context.
+     * @param op The opcode
+     * @param stack The operand stack, holding at least ARITY[op] values
+     * @param top Number of values on the stack
+     * @param mathContext Precision and rounding for inexact operations
+     * @return The new number of values on the stack
+     * @throws ArithmeticException If the operator divides by zero or its operand is out of range
+     */
+    static int applyDecimal(int op, BigDecimal[] stack, int top, MathContext mathContext) {
+        BigDecimal x = stack[top - 1];
+        switch (op) {
+            case ADD:
+                stack[top - 2] = stack[top - 2].add(x, mathContext);
+                return top - 1;
+            case SUBTRACT:
+                stack[top - 2] = stack[top - 2].subtract(x, mathContext);
+                return top - 1;
+            case MULTIPLY:
+                stack[top - 2] = stack[top - 2].multiply(x, mathContext);
+                return top - 1;
+            case DIVIDE:
+                if (x.signum() == 0) throw new ArithmeticException("Division by zero");
+                stack[top - 2] = stack[top - 2].divide(x, mathContext);
+                return top - 1;
+            case POWER:
+            case POW:
+                stack[top - 2] = power(stack[top - 2], x, mathContext);
+                return top - 1;
+            case NEGATE:
+                stack[top - 1] = x.negate();
+                return top;
+            case SQUARE:
+                stack[top - 1] = x.multiply(x, mathContext);
+                return top;
+            case FACTORIAL:
+                stack[top - 1] = new BigDecimal(factorial(toFactorialOperand(x))).round(mathContext);
+                return top;
+            case SQRT:
+                stack[top - 1] = sqrt(x, mathContext);
+                return top;
+            case SIN:
+            case COS:
+            case TAN:
+            case LOG:
+            case LN: {
+                double[] scratch = {x.doubleValue()};
+                apply(op, scratch, 1);
+                stack[top - 1] = fromDouble(scratch[0], mathContext);
+                return top;
+            }
+        }
+        throw new IllegalArgumentException("Unknown opcode " + op);
+    }
+
+    private static double factorial(double x) {
+        if (x < 0 || x != Math.rint(x)) return Double.NaN;
+        if (x > MAX_FACTORIAL) return Double.POSITIVE_INFINITY;
+        double result = 1;
+        for (int i = 2; i <= (int) x; i++) {
+            result *= i;
+        }
+        return result;
+    }
+
+    private static BigInteger factorial(int n) {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 2; i <= n; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+        }
+        return result;
+    }
+
+    private static int toFactorialOperand(BigDecimal x) {
+        if (x.signum() < 0 || x.stripTrailingZeros().scale() > 0) {
+            throw new ArithmeticException("Factorial of a non-integer");
+        }
+        if (x.compareTo(BigDecimal.valueOf(MAX_FACTORIAL)) > 0) {
+            throw new ArithmeticException("Overflow");
+        }
+        return x.intValue();
+    }
+
+    private static BigDecimal power(BigDecimal base, BigDecimal exponent, MathContext mathContext) {
+        BigDecimal integer = exponent.stripTrailingZeros();
+        if (integer.scale() <= 0 && integer.abs().compareTo(BigDecimal.valueOf(999_999_999)) <= 0) {
+            if (base.signum() == 0 && integer.signum() < 0) {
+                throw new ArithmeticException("Division by zero");
+            }
+            return base.pow(integer.intValue(), mathContext);
+        }
+        return fromDouble(Math.pow(base.doubleValue(), exponent.doubleValue()), mathContext);
+    }
+
+    /**
+     * Square root by Newton's method, starting from the double estimate.
+     */
+    private static BigDecimal sqrt(BigDecimal x, MathContext mathContext) {
+        if (x.signum() < 0) throw new ArithmeticException("Square root of a negative number");
+        if (x.signum() == 0) return BigDecimal.ZERO;
+        BigDecimal two = BigDecimal.valueOf(2);
+        BigDecimal root = fromDouble(Math.sqrt(x.doubleValue()), mathContext);
+        // Each step doubles the correct digits, so a handful covers any practical precision
+        for (int i = 0; i < 8; i++) {
+            BigDecimal next = root.add(x.divide(root, mathContext), mathContext).divide(two, mathContext);
+            if (next.compareTo(root) == 0) break;
+            root = next;
+        }
+        return root;
+    }
+
+    private static BigDecimal fromDouble(double value, MathContext mathContext) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new ArithmeticException("Result out of range");
+        }
+        return BigDecimal.valueOf(value).round(mathContext);
+    }
+}
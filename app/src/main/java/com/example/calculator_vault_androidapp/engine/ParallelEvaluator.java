@@ -0,0 +1,112 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates many independent expressions at once, e.g. re-checking saved history after
+ * an evaluator change or importing a list of expressions.
+ *
+ * The list is split in halves on a fork/join pool down to small ranges, each parsed with
+ * its own evaluator. Every result is written to the slot of its input, so results come
+ * back in input order however the ranges are scheduled. A malformed expression or a
+ * division by zero gives NaN (null in exact mode) for that entry only.
+ */
+public class ParallelEvaluator {
+
+    // Expressions per leaf task; smaller ranges spend more on task overhead than they gain
+    static final int LEAF_SIZE = 64;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Create an evaluator running on the common pool, which has one thread per core.
+     */
+    public ParallelEvaluator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool The pool to run on
+     */
+    public ParallelEvaluator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Evaluate every expression in double precision.
+     * @param expressions The expressions
+     * @return The results in input order, NaN where an expression could not be evaluated
+     */
+    public double[] evaluate(List<? extends CharSequence> expressions) {
+        double[] results = new double[expressions.size()];
+        pool.invoke(new RangeTask(0, results.length, (from, to) -> {
+            ExpressionEvaluator evaluator = new ExpressionEvaluator();
+            for (int i = from; i < to; i++) {
+                try {
+                    results[i] = evaluator.evaluate(expressions.get(i));
+                } catch (RuntimeException e) {
+                    results[i] = Double.NaN;
+                }
+            }
+        }));
+        return results;
+    }
+
+    /**
+     * Evaluate every expression exactly in decimal.
+     * @param expressions The expressions
+     * @param mathContext Precision and rounding for inexact operations
+     * @return The results in input order, null where an expression could not be evaluated
+     */
+    public BigDecimal[] evaluateExact(List<? extends CharSequence> expressions, MathContext mathContext) {
+        BigDecimal[] results = new BigDecimal[expressions.size()];
+        pool.invoke(new RangeTask(0, results.length, (from, to) -> {
+            ExpressionEvaluator compiler = new ExpressionEvaluator();
+            double[] stack = new double[32];
+            for (int i = from; i < to; i++) {
+                try {
+                    CompiledExpression compiled = compiler.compile(expressions.get(i));
+                    if (stack.length < compiled.getMaxDepth()) {
+                        stack = new double[compiled.getMaxDepth()];
+                    }
+                    results[i] = compiled.evaluateExact(stack, mathContext);
+                } catch (RuntimeException e) {
+                    results[i] = null;
+                }
+            }
+        }));
+        return results;
+    }
+
+    private interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final RangeBody body;
+
+        RangeTask(int from, int to, RangeBody body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, body), new RangeTask(middle, to, body));
+        }
+    }
+}
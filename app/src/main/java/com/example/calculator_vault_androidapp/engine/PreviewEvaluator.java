@@ -0,0 +1,143 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Computes a running preview of the expression being typed on a background thread.
+ *
+ * Submissions are coalesced latest-wins: while the worker is busy, newer submissions
+ * overwrite older pending ones, so only the most recent expression is evaluated and
+ * results for superseded keystrokes are never delivered.
+ */
+public class PreviewEvaluator {
+
+    public interface Listener {
+        /**
+         * Called on the callback executor with the preview for the latest submission.
+         * @param valid false if there is nothing to preview or the expression could not be evaluated
+         * @param result The result when valid
+         */
+        void onPreview(boolean valid, double result);
+    }
+
+    private static final class Request {
+        final long generation;
+        final String expression;
+
+        Request(long generation, String expression) {
+            this.generation = generation;
+            this.expression = expression;
+        }
+    }
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Executor callbackExecutor;
+    private final Listener listener;
+    private final IncrementalEvaluator evaluator = new IncrementalEvaluator();
+
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param callbackExecutor Executor the listener is called on, e.g. the main thread
+     * @param listener Receives preview results
+     */
+    public PreviewEvaluator(Executor callbackExecutor, Listener listener) {
+        this.callbackExecutor = callbackExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * Request a preview of the given expression. Returns immediately.
+     * @param expression The evaluable expression
+     */
+    public void submit(CharSequence expression) {
+        pending.set(new Request(generation.incrementAndGet(), expression.toString()));
+        if (scheduled.compareAndSet(false, true)) {
+            worker.execute(this::drain);
+        }
+    }
+
+    /**
+     * Drop any pending or in-flight preview so it is not delivered.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        pending.set(null);
+    }
+
+    /**
+     * Stop the worker thread.
+     */
+    public void shutdown() {
+        cancel();
+        worker.shutdownNow();
+    }
+
+    private void drain() {
+        while (true) {
+            Request request = pending.getAndSet(null);
+            if (request == null) {
+                scheduled.set(false);
+                // A submission may have arrived after the getAndSet above
+                if (pending.get() == null || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            boolean valid = false;
+            double result = 0;
+            String expr = completePrefix(request.expression);
+            if (hasOperator(expr)) {
+                try {
+                    result = evaluator.evaluate(expr);
+                    valid = !Double.isNaN(result) && !Double.isInfinite(result);
+                } catch (RuntimeException e) {
+                    // Incomplete or invalid expression, no preview
+                }
+            }
+
+            if (request.generation == generation.get()) {
+                final boolean isValid = valid;
+                final double value = result;
+                callbackExecutor.execute(() -> {
+                    // Drop the result if a newer keystroke arrived meanwhile
+                    if (request.generation == generation.get()) {
+                        listener.onPreview(isValid, value);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Drop a trailing operator, function name or open parenthesis, so "2+3×" previews as "2+3".
+     */
+    private static String completePrefix(String expr) {
+        int end = expr.length();
+        while (end > 0) {
+            char c = expr.charAt(end - 1);
+            if ((c >= '0' && c <= '9') || c == '.' || c == ')' || c == '²' || c == '!') break;
+            end--;
+        }
+        return end == expr.length() ? expr : expr.substring(0, end);
+    }
+
+    /**
+     * A lone number (possibly negative) has nothing to preview.
+     */
+    private static boolean hasOperator(String expr) {
+        for (int i = 1; i < expr.length(); i++) {
+            char c = expr.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.util.Arrays;
+
+/**
+ * Bounded-memory quantile estimator (a KLL sketch).
+ *
+ * Values enter level 0; when the sketch is full, the first level over its capacity is
+ * sorted and every other value is promoted one level up, doubling its weight, while the
+ * rest are dropped. Level capacities shrink geometrically towards the bottom, so memory
+ * stays around 3k values however many are added. Rank error is roughly 1.7/k of the
+ * count, about 1% for the default k of 200. Not thread-safe.
+ */
+public class QuantileSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    // Capacity ratio between consecutive levels
+    private static final double C = 2.0 / 3.0;
+    private static final int MIN_LEVEL_CAPACITY = 2;
+
+    private final int k;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private int[] capacities = new int[1];
+    private int levelCount = 1;
+    private int maxRetained;
+    private int retained;
+    private long count;
+
+    // Random bit source for choosing which half survives a compaction
+    private long seed = 0x9E3779B97F4A7C15L;
+
+    // Merged view for queries, rebuilt lazily after updates
+    private double[] sortedValues = new double[0];
+    private long[] cumulativeWeights = new long[0];
+    private int sortedCount;
+    private boolean sortedValid;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k Accuracy parameter; larger is more accurate and uses more memory
+     */
+    public QuantileSketch(int k) {
+        this.k = Math.max(8, k);
+        updateCapacities();
+        levels[0] = new double[capacities[0]];
+    }
+
+    /**
+     * Add a value. NaN is ignored.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) return;
+        if (sizes[0] == levels[0].length) {
+            levels[0] = Arrays.copyOf(levels[0], levels[0].length * 2);
+        }
+        levels[0][sizes[0]++] = value;
+        retained++;
+        count++;
+        sortedValid = false;
+        if (retained > maxRetained) {
+            compress();
+        }
+    }
+
+    /**
+     * @return The number of values added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The number of values currently held
+     */
+    public int getRetained() {
+        return retained;
+    }
+
+    /**
+     * Estimate the value at a given quantile.
+     * @param q The quantile, from 0 (minimum) to 1 (maximum)
+     * @return The estimate, or NaN if no values were added
+     */
+    public double getQuantile(double q) {
+        if (count == 0) return Double.NaN;
+        buildSortedView();
+        long totalWeight = cumulativeWeights[sortedCount - 1];
+        long rank = (long) Math.ceil(Math.max(0, Math.min(1, q)) * totalWeight);
+        int index = Arrays.binarySearch(cumulativeWeights, 0, sortedCount, Math.max(1, rank));
+        if (index < 0) index = -index - 1;
+        return sortedValues[Math.min(index, sortedCount - 1)];
+    }
+
+    public void clear() {
+        for (int level = 0; level < levelCount; level++) {
+            sizes[level] = 0;
+        }
+        retained = 0;
+        count = 0;
+        sortedValid = false;
+    }
+
+    /**
+     * Recompute level capacities; the top level holds k and each one below 2/3 as many.
+     */
+    private void updateCapacities() {
+        if (capacities.length < levelCount) {
+            capacities = new int[levels.length];
+        }
+        maxRetained = 0;
+        for (int level = 0; level < levelCount; level++) {
+            int depth = levelCount - level - 1;
+            capacities[level] = Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(C, depth)));
+            maxRetained += capacities[level];
+        }
+    }
+
+    /**
+     * Compact the lowest level that is over capacity into the level above.
+     */
+    private void compress() {
+        for (int level = 0; level < levelCount; level++) {
+            if (sizes[level] < capacities[level]) continue;
+            if (level + 1 == levelCount) {
+                addLevel();
+            }
+            double[] values = levels[level];
+            int size = sizes[level];
+            Arrays.sort(values, 0, size);
+            // With an odd size the largest value stays behind at this level
+            int pairs = size / 2;
+            int offset = nextBit();
+            double[] above = levels[level + 1];
+            int aboveSize = sizes[level + 1];
+            if (above.length < aboveSize + pairs) {
+                above = Arrays.copyOf(above, Math.max(above.length * 2, aboveSize + pairs));
+                levels[level + 1] = above;
+            }
+            for (int i = 0; i < pairs; i++) {
+                above[aboveSize + i] = values[2 * i + offset];
+            }
+            sizes[level + 1] = aboveSize + pairs;
+            if (size % 2 == 1) {
+                values[0] = values[size - 1];
+                sizes[level] = 1;
+            } else {
+                sizes[level] = 0;
+            }
+            retained -= pairs;
+            return;
+        }
+    }
+
+    private void addLevel() {
+        if (levelCount == levels.length) {
+            levels = Arrays.copyOf(levels, levelCount * 2);
+            sizes = Arrays.copyOf(sizes, levelCount * 2);
+        }
+        levels[levelCount] = new double[MIN_LEVEL_CAPACITY];
+        sizes[levelCount] = 0;
+        levelCount++;
+        updateCapacities();
+    }
+
+    private int nextBit() {
+        // xorshift64
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) (seed & 1);
+    }
+
+    private void buildSortedView() {
+        if (sortedValid) return;
+        if (sortedValues.length < retained) {
+            sortedValues = new double[retained];
+            cumulativeWeights = new long[retained];
+        }
+        // Sort each level, then merge them by repeatedly taking the smallest head
+        int[] positions = new int[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            Arrays.sort(levels[level], 0, sizes[level]);
+        }
+        long weight = 0;
+        for (int n = 0; n < retained; n++) {
+            int best = -1;
+            for (int level = 0; level < levelCount; level++) {
+                if (positions[level] < sizes[level]
+                        && (best < 0 || levels[level][positions[level]] < levels[best][positions[best]])) {
+                    best = level;
+                }
+            }
+            sortedValues[n] = levels[best][positions[best]++];
+            weight += 1L << best;
+            cumulativeWeights[n] = weight;
+        }
+        sortedCount = retained;
+        sortedValid = true;
+    }
+}
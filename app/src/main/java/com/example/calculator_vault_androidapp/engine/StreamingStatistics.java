@@ -0,0 +1,124 @@
+package com.example.calculator_vault_androidapp.engine;
+
+/**
+ * Single-pass summary statistics over a stream of values.
+ *
+ * Mean and variance use Welford's update, which stays accurate where the naive
+ * sum-of-squares formula cancels catastrophically (e.g. values near 1e9 that differ
+ * in the last digits). The sum is Kahan-compensated. Quantiles come from a
+ * {@link QuantileSketch}, so memory does not grow with the number of values.
+ * Not thread-safe.
+ */
+public class StreamingStatistics {
+
+    private long count;
+    private double mean;
+    // Sum of squared differences from the current mean
+    private double m2;
+    private double sum;
+    private double sumCompensation;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private final QuantileSketch sketch;
+
+    public StreamingStatistics() {
+        this(new QuantileSketch());
+    }
+
+    StreamingStatistics(QuantileSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    /**
+     * Add a value. NaN and infinite values are ignored.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return;
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+
+        double y = value - sumCompensation;
+        double t = sum + y;
+        sumCompensation = (t - sum) - y;
+        sum = t;
+
+        if (value < min) min = value;
+        if (value > max) max = value;
+        sketch.add(value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return The mean, or NaN if empty
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return The population variance (divided by n), or NaN if empty
+     */
+    public double getPopulationVariance() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    /**
+     * @return The sample variance (divided by n - 1), or NaN with fewer than two values
+     */
+    public double getVariance() {
+        return count < 2 ? Double.NaN : m2 / (count - 1);
+    }
+
+    /**
+     * @return The sample standard deviation, or NaN with fewer than two values
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return The minimum, or NaN if empty
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * @return The maximum, or NaN if empty
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * Estimate a quantile. The minimum and maximum are exact.
+     * @param q The quantile, from 0 to 1, e.g. 0.5 for the median
+     * @return The estimate, or NaN if empty
+     */
+    public double getQuantile(double q) {
+        if (count == 0) return Double.NaN;
+        if (q <= 0) return min;
+        if (q >= 1) return max;
+        return sketch.getQuantile(q);
+    }
+
+    public void clear() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        sum = 0;
+        sumCompensation = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        sketch.clear();
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prefix trie of previously calculated expressions, used to suggest completions while
+ * typing.
+ *
+ * Every node caches the most frequent expressions below it, so a lookup walks the typed
+ * prefix and reads the answer off its last node without searching the subtree. The
+ * number of nodes is bounded: when it grows past the limit the trie is rebuilt from its
+ * most frequent expressions.
+ */
+public class SuggestionTrie {
+
+    public static final int SUGGESTION_COUNT = 3;
+    public static final int DEFAULT_MAX_NODES = 20_000;
+    // Longer expressions (e.g. pasted) are too specific to be worth suggesting
+    static final int MAX_EXPRESSION_LENGTH = 64;
+    // One more than shown, as the typed expression itself is never suggested
+    private static final int TOP_SIZE = SUGGESTION_COUNT + 1;
+
+    private static SuggestionTrie instance;
+
+    private final int maxNodes;
+    private Node root = new Node('\0', null);
+    private int nodeCount = 1;
+
+    public static synchronized SuggestionTrie getInstance() {
+        if (instance == null) {
+            instance = new SuggestionTrie(DEFAULT_MAX_NODES);
+        }
+        return instance;
+    }
+
+    /**
+     * @param maxNodes Nodes kept before the least frequent expressions are dropped
+     */
+    public SuggestionTrie(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Record one more use of an expression.
+     * @param expression The expression as displayed, e.g. "12×3+1"
+     */
+    public synchronized void add(CharSequence expression) {
+        add(expression, 1);
+    }
+
+    /**
+     * Record uses of an expression, e.g. its count in saved history.
+     * @param expression The expression as displayed
+     * @param count Number of uses
+     */
+    public synchronized void add(CharSequence expression, int count) {
+        if (insert(expression, count) && nodeCount > maxNodes) {
+            prune();
+        }
+    }
+
+    /**
+     * Get the most frequently used expressions that start with a prefix.
+     * @param prefix The expression typed so far
+     * @return Up to {@link #SUGGESTION_COUNT} longer expressions, most frequent first
+     */
+    public synchronized List<String> suggest(CharSequence prefix) {
+        if (prefix.length() == 0) {
+            return Collections.emptyList();
+        }
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<String> suggestions = new ArrayList<>(SUGGESTION_COUNT);
+        for (int i = 0; i < node.topCount && suggestions.size() < SUGGESTION_COUNT; i++) {
+            if (node.top[i] != node) {
+                suggestions.add(textOf(node.top[i]));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * @return The number of nodes, at most about the limit given to the constructor
+     */
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Forget all expressions.
+     */
+    public synchronized void clear() {
+        root = new Node('\0', null);
+        nodeCount = 1;
+    }
+
+    private boolean insert(CharSequence expression, int count) {
+        int length = expression.length();
+        if (length == 0 || length > MAX_EXPRESSION_LENGTH || count <= 0) {
+            return false;
+        }
+        Node node = root;
+        for (int i = 0; i < length; i++) {
+            char c = expression.charAt(i);
+            Node child = node.child(c);
+            if (child == null) {
+                child = node.addChild(c);
+                nodeCount++;
+            }
+            node = child;
+        }
+        node.count += count;
+        for (Node ancestor = node; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.promote(node);
+        }
+        return true;
+    }
+
+    /**
+     * Rebuild from the most frequent expressions until half the node limit is used.
+     * Counts only grow, so frequent expressions survive and rare ones make room.
+     */
+    private void prune() {
+        List<Node> expressions = new ArrayList<>();
+        List<Node> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            if (node.count > 0) expressions.add(node);
+            for (int i = 0; i < node.childCount; i++) {
+                pending.add(node.children[i]);
+            }
+        }
+        Collections.sort(expressions, (a, b) -> Integer.compare(b.count, a.count));
+
+        root = new Node('\0', null);
+        nodeCount = 1;
+        for (Node expression : expressions) {
+            if (nodeCount >= maxNodes / 2) break;
+            insert(textOf(expression), expression.count);
+        }
+    }
+
+    private static String textOf(Node node) {
+        char[] text = new char[MAX_EXPRESSION_LENGTH];
+        int start = text.length;
+        for (Node n = node; n.parent != null; n = n.parent) {
+            text[--start] = n.c;
+        }
+        return new String(text, start, text.length - start);
+    }
+
+    private static final class Node {
+        final char c;
+        final Node parent;
+        char[] keys;
+        Node[] children;
+        int childCount;
+        // Times this exact expression was used, 0 if it is only a prefix
+        int count;
+        // Most used expressions ending at or below this node, highest count first
+        Node[] top;
+        int topCount;
+
+        Node(char c, Node parent) {
+            this.c = c;
+            this.parent = parent;
+        }
+
+        Node child(char c) {
+            for (int i = 0; i < childCount; i++) {
+                if (keys[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            if (keys == null) {
+                // Most nodes sit in a chain with a single child
+                keys = new char[1];
+                children = new Node[1];
+            } else if (childCount == keys.length) {
+                keys = Arrays.copyOf(keys, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            Node child = new Node(c, this);
+            keys[childCount] = c;
+            children[childCount++] = child;
+            return child;
+        }
+
+        /**
+         * Update the cached ranking after the count of an expression below grew.
+         */
+        void promote(Node expression) {
+            if (top == null) {
+                top = new Node[TOP_SIZE];
+            }
+            int i = 0;
+            while (i < topCount && top[i] != expression) i++;
+            if (i == topCount) {
+                if (topCount < TOP_SIZE) {
+                    topCount++;
+                } else if (expression.count >= top[--i].count) {
+                    // Replaces the least used entry
+                } else {
+                    return;
+                }
+                top[i] = expression;
+            }
+            // Ties go to the most recently used
+            while (i > 0 && top[i - 1].count <= top[i].count) {
+                Node swap = top[i - 1];
+                top[i - 1] = top[i];
+                top[i] = swap;
+                i--;
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Parses a list of numbers separated by spaces, commas, semicolons or line breaks and
+ * feeds them into {@link StreamingStatistics} as they are read.
+ *
+ * Input is consumed character by character from a CharSequence or in fixed-size chunks
+ * from a Reader, so a pasted or imported list of a million values is never split into
+ * strings or collected into a list. Only the current token is buffered. Tokens that are
+ * not numbers are skipped and counted. Not thread-safe.
+ */
+public class ValueListParser {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    // Longest token kept; longer ones cannot be numbers and are rejected
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private final StreamingStatistics statistics;
+    private final char[] readBuffer = new char[READ_BUFFER_SIZE];
+    private final StringBuilder token = new StringBuilder(MAX_TOKEN_LENGTH);
+    private boolean tokenTooLong;
+    private long rejected;
+
+    /**
+     * @param statistics Receives every parsed value
+     */
+    public ValueListParser(StreamingStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Parse all values in the text.
+     * @param text The values, e.g. "1, 2.5\n-3e2"
+     */
+    public void parse(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            accept(text.charAt(i));
+        }
+        endToken();
+    }
+
+    /**
+     * Parse all values from a reader, e.g. an imported text file. Does not close it.
+     * @param reader The source
+     * @throws IOException If reading fails
+     */
+    public void parse(Reader reader) throws IOException {
+        int read;
+        while ((read = reader.read(readBuffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                accept(readBuffer[i]);
+            }
+        }
+        endToken();
+    }
+
+    /**
+     * @return The number of tokens skipped because they were not numbers
+     */
+    public long getRejectedCount() {
+        return rejected;
+    }
+
+    private void accept(char c) {
+        if (isSeparator(c)) {
+            endToken();
+        } else if (token.length() < MAX_TOKEN_LENGTH) {
+            token.append(c);
+        } else {
+            tokenTooLong = true;
+        }
+    }
+
+    private void endToken() {
+        if (token.length() == 0) return;
+        double value = tokenTooLong ? Double.NaN : parseValue(token);
+        if (Double.isNaN(value)) {
+            rejected++;
+        } else {
+            statistics.add(value);
+        }
+        token.setLength(0);
+        tokenTooLong = false;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ',' || c == ';' || Character.isWhitespace(c);
+    }
+
+    /**
+     * Parse a decimal number with an optional sign. Plain numbers with up to 15 digits
+     * take an exact mantissa / power-of-ten path; others use Double.parseDouble.
+     * @return The value, or NaN if the token is not a number
+     */
+    static double parseValue(CharSequence s) {
+        int len = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (s.charAt(0) == '-' || s.charAt(0) == '+') {
+            negative = s.charAt(0) == '-';
+            i = 1;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (seenDot) fractionDigits++;
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+        if (i == len && digits > 0 && digits <= 15) {
+            double value = fractionDigits == 0 ? mantissa : mantissa / ExpressionEvaluator.POW10[fractionDigits];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(s.toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -10,6 +10,11 @@ public class VaultFile {
     private byte[] fileData;
     private long fileSize;
     private String uploadedAt;
+    private int profileId = 1;
+    // File's data key encrypted with the PIN key; null for files stored before data keys
+    private byte[] wrappedKey;
+    // Set by the integrity scrubber when the stored bytes no longer match their checksums
+    private boolean corrupt;
 
     public VaultFile() {}
 
@@ -41,4 +46,13 @@ public class VaultFile {
 
     public String getUploadedAt() { return uploadedAt; }
     public void setUploadedAt(String uploadedAt) { this.uploadedAt = uploadedAt; }
+
+    public int getProfileId() { return profileId; }
+    public void setProfileId(int profileId) { this.profileId = profileId; }
+
+    public byte[] getWrappedKey() { return wrappedKey; }
+    public void setWrappedKey(byte[] wrappedKey) { this.wrappedKey = wrappedKey; }
+
+    public boolean isCorrupt() { return corrupt; }
+    public void setCorrupt(boolean corrupt) { this.corrupt = corrupt; }
 }
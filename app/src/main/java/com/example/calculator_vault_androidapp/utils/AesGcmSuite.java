@@ -0,0 +1,46 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * AES-256-GCM, the suite of every file written before suites were selectable. Fastest
+ * on devices with AES instructions.
+ */
+public class AesGcmSuite implements CipherSuite {
+
+    public static final byte ID = '1';
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "AES-GCM";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public Cipher newCipher() throws GeneralSecurityException {
+        return Cipher.getInstance("AES/GCM/NoPadding");
+    }
+
+    @Override
+    public SecretKey prepareKey(SecretKey key) {
+        return key;
+    }
+
+    @Override
+    public void init(Cipher cipher, int mode, SecretKey key, byte[] nonce) throws GeneralSecurityException {
+        cipher.init(mode, key, new GCMParameterSpec(ChunkedCipher.TAG_LENGTH * 8, nonce));
+    }
+}
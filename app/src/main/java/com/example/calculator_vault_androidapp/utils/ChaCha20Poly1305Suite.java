@@ -0,0 +1,71 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * ChaCha20-Poly1305 (RFC 8439). Runs in software at the same speed everywhere, so it
+ * beats AES-GCM on devices without AES instructions. Provided by the platform from
+ * API 28; older devices keep writing AES-GCM.
+ */
+public class ChaCha20Poly1305Suite implements CipherSuite {
+
+    public static final byte ID = '2';
+
+    // The JDK and Android's provider register the same cipher under different names
+    private static final String[] TRANSFORMATIONS = {"ChaCha20/Poly1305/NoPadding", "ChaCha20-Poly1305"};
+
+    private volatile String transformation;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "ChaCha20-Poly1305";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        try {
+            newCipher();
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Cipher newCipher() throws GeneralSecurityException {
+        if (transformation != null) {
+            return Cipher.getInstance(transformation);
+        }
+        GeneralSecurityException failure = null;
+        for (String name : TRANSFORMATIONS) {
+            try {
+                Cipher cipher = Cipher.getInstance(name);
+                transformation = name;
+                return cipher;
+            } catch (GeneralSecurityException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    @Override
+    public SecretKey prepareKey(SecretKey key) {
+        return "ChaCha20".equals(key.getAlgorithm()) ? key : new SecretKeySpec(key.getEncoded(), "ChaCha20");
+    }
+
+    @Override
+    public void init(Cipher cipher, int mode, SecretKey key, byte[] nonce) throws GeneralSecurityException {
+        cipher.init(mode, key, new IvParameterSpec(nonce));
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * Chunked authenticated encryption format for vault files.
+ *
+ * A file is a 16-byte header followed by chunks of AEAD ciphertext, each holding
+ * {@link #getChunkSize} bytes of plaintext (the last one up to that many) plus a 16-byte
+ * tag. Every chunk has its own nonce, made of a random per-file prefix and the chunk
+ * index, and is authenticated together with the header and a flag marking the last
+ * chunk. So chunks cannot be reordered, moved between files or dropped from the end
+ * unnoticed, yet any single chunk can be checked and decrypted on its own from its
+ * offset. {@link ChunkedCipherOutputStream} and {@link ChunkedCipherInputStream} stream
+ * whole files through one chunk buffer; {@link ParallelChunkedCipher} seals and opens
+ * runs of chunks on several cores.
+ *
+ * Header layout: magic "CVC", {@link CipherSuite} id (1 byte), chunk size (4 bytes,
+ * big-endian), nonce prefix (8 bytes). Files from before suites were selectable read as
+ * "CVC1", the id of AES-GCM. The suite byte is authenticated with the rest of the header.
+ * An instance reuses one {@link Cipher} and must be used from one thread.
+ */
+public class ChunkedCipher {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int HEADER_LENGTH = 16;
+    public static final int TAG_LENGTH = 16;
+
+    private static final byte[] MAGIC = {'C', 'V', 'C'};
+    private static final int SUITE_OFFSET = 3;
+    private static final int CHUNK_SIZE_OFFSET = 4;
+    private static final int PREFIX_OFFSET = 8;
+    private static final int PREFIX_LENGTH = 8;
+    private static final int NONCE_LENGTH = 12;
+    // Bounds the chunk buffers a forged header can make a reader allocate
+    private static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final CipherSuite suite;
+    private final SecretKey key;
+    private final byte[] header;
+    private final int chunkSize;
+    private final Cipher cipher;
+    private final byte[] nonce = new byte[NONCE_LENGTH];
+    private final byte[] lastFlag = new byte[1];
+    // Staging for ByteBuffer chunks, allocated on first use
+    private byte[] scratchIn;
+    private byte[] scratchOut;
+
+    private ChunkedCipher(CipherSuite suite, SecretKey key, byte[] header, int chunkSize) {
+        this.suite = suite;
+        this.key = suite.prepareKey(key);
+        this.header = header;
+        this.chunkSize = chunkSize;
+        System.arraycopy(header, PREFIX_OFFSET, nonce, 0, PREFIX_LENGTH);
+        try {
+            cipher = suite.newCipher();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(suite.getName() + " not available", e);
+        }
+    }
+
+    /**
+     * Start a new file with the selected {@link CipherSuites suite}.
+     * @param key The file's data key
+     * @param chunkSize Plaintext bytes per chunk
+     */
+    public static ChunkedCipher forWriting(SecretKey key, int chunkSize) {
+        return forWriting(CipherSuites.getSelected(), key, chunkSize);
+    }
+
+    /**
+     * Start a new file with a fresh random nonce prefix.
+     * @param suite Cipher the chunks are sealed with, recorded in the header
+     * @param key The file's data key
+     * @param chunkSize Plaintext bytes per chunk
+     */
+    public static ChunkedCipher forWriting(CipherSuite suite, SecretKey key, int chunkSize) {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        byte[] header = new byte[HEADER_LENGTH];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[SUITE_OFFSET] = suite.getId();
+        writeInt(header, CHUNK_SIZE_OFFSET, chunkSize);
+        byte[] prefix = new byte[PREFIX_LENGTH];
+        RANDOM.nextBytes(prefix);
+        System.arraycopy(prefix, 0, header, PREFIX_OFFSET, PREFIX_LENGTH);
+        return new ChunkedCipher(suite, key, header, chunkSize);
+    }
+
+    /**
+     * Open an existing file from its header, with the suite it was written with.
+     * @param key The file's data key
+     * @param header The first {@link #HEADER_LENGTH} bytes of the file
+     * @throws IOException If the header is not in this format or its suite cannot run here
+     */
+    public static ChunkedCipher forReading(SecretKey key, byte[] header) throws IOException {
+        if (!isChunked(header)) {
+            throw new IOException("Not a chunked vault file");
+        }
+        CipherSuite suite = CipherSuites.byId(header[SUITE_OFFSET]);
+        if (!suite.isAvailable()) {
+            throw new IOException(suite.getName() + " is not available on this device");
+        }
+        int chunkSize = readInt(header, CHUNK_SIZE_OFFSET);
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IOException("Invalid chunk size: " + chunkSize);
+        }
+        return new ChunkedCipher(suite, key, header.clone(), chunkSize);
+    }
+
+    /**
+     * @return true if data starts with the header of this format and a known suite
+     */
+    public static boolean isChunked(byte[] data) {
+        if (data == null || data.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) return false;
+        }
+        return CipherSuites.byId(data[SUITE_OFFSET]) != null;
+    }
+
+    /**
+     * @return The size of a file holding this many plaintext bytes
+     */
+    public static long sealedLength(long plaintextLength, int chunkSize) {
+        long chunks = Math.max(1, (plaintextLength + chunkSize - 1) / chunkSize);
+        return HEADER_LENGTH + plaintextLength + chunks * TAG_LENGTH;
+    }
+
+    /**
+     * @return A cipher for the same file with its own state, e.g. for another thread
+     */
+    public ChunkedCipher copy() {
+        return new ChunkedCipher(suite, key, header, chunkSize);
+    }
+
+    public CipherSuite getSuite() {
+        return suite;
+    }
+
+    public byte[] getHeader() {
+        return header.clone();
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return Offset of a chunk from the start of the file
+     */
+    public long chunkOffset(long index) {
+        return HEADER_LENGTH + index * (long) (chunkSize + TAG_LENGTH);
+    }
+
+    /**
+     * Encrypt one chunk.
+     * @param index Position of the chunk in the file
+     * @param last Whether this is the final chunk
+     * @param out Receives len + {@link #TAG_LENGTH} bytes at outOffset
+     * @return Bytes written to out
+     */
+    public int seal(long index, boolean last, byte[] in, int offset, int len,
+                    byte[] out, int outOffset) throws IOException {
+        try {
+            init(Cipher.ENCRYPT_MODE, index, last);
+            return cipher.doFinal(in, offset, len, out, outOffset);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt chunk " + index, e);
+        }
+    }
+
+    /**
+     * Verify and decrypt one chunk, independently of the others.
+     * @param index Position of the chunk in the file
+     * @param last Whether this is the final chunk
+     * @param in A whole sealed chunk of len bytes, tag included
+     * @param out Receives len - {@link #TAG_LENGTH} bytes at outOffset
+     * @return Bytes written to out
+     * @throws IOException If the chunk was modified, moved or is not at this index
+     */
+    public int open(long index, boolean last, byte[] in, int offset, int len,
+                    byte[] out, int outOffset) throws IOException {
+        if (len < TAG_LENGTH || len > chunkSize + TAG_LENGTH) {
+            throw new IOException("Invalid length " + len + " for chunk " + index);
+        }
+        try {
+            init(Cipher.DECRYPT_MODE, index, last);
+            return cipher.doFinal(in, offset, len, out, outOffset);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk " + index + " failed authentication", e);
+        }
+    }
+
+    /**
+     * Encrypt one chunk between buffers, heap or direct, without allocating. Reads all
+     * remaining bytes of in (at most one chunk) and writes them sealed at out's position.
+     * The buffers may overlap, e.g. when encrypting in place.
+     * @return Bytes written to out
+     */
+    public int seal(long index, boolean last, ByteBuffer in, ByteBuffer out) throws IOException {
+        int len = in.remaining();
+        if (len > chunkSize) {
+            throw new IOException("Chunk " + index + " longer than " + chunkSize);
+        }
+        ensureScratch();
+        in.get(scratchIn, 0, len);
+        int n = seal(index, last, scratchIn, 0, len, scratchOut, 0);
+        out.put(scratchOut, 0, n);
+        return n;
+    }
+
+    /**
+     * Verify and decrypt one chunk between buffers, heap or direct, without allocating.
+     * Reads all remaining bytes of in as one sealed chunk. The buffers may overlap.
+     * @return Bytes written to out
+     * @throws IOException If the chunk was modified, moved or is not at this index
+     */
+    public int open(long index, boolean last, ByteBuffer in, ByteBuffer out) throws IOException {
+        int len = in.remaining();
+        if (len < TAG_LENGTH || len > chunkSize + TAG_LENGTH) {
+            throw new IOException("Invalid length " + len + " for chunk " + index);
+        }
+        ensureScratch();
+        in.get(scratchIn, 0, len);
+        int n = open(index, last, scratchIn, 0, len, scratchOut, 0);
+        out.put(scratchOut, 0, n);
+        return n;
+    }
+
+    /**
+     * Encrypt a whole file held in a buffer: the header, then every chunk. May run in
+     * place, with out a view of the same memory starting at the same position; chunks
+     * are then sealed from the last to the first, so each only overwrites plaintext
+     * already consumed.
+     * @param plaintext All remaining bytes are encrypted
+     * @param out Needs {@link #sealedLength} bytes remaining; its position is advanced
+     * @return Bytes written
+     */
+    public int encryptInto(ByteBuffer plaintext, ByteBuffer out) throws IOException {
+        int length = plaintext.remaining();
+        long sealedLength = sealedLength(length, chunkSize);
+        if (out.remaining() < sealedLength) {
+            throw new IOException("Output buffer too small: " + out.remaining() + " < " + sealedLength);
+        }
+        int start = plaintext.position();
+        int outStart = out.position();
+        int chunks = Math.max(1, (length + chunkSize - 1) / chunkSize);
+        for (int i = chunks - 1; i >= 0; i--) {
+            int from = start + i * chunkSize;
+            plaintext.limit(Math.min(start + length, from + chunkSize)).position(from);
+            out.position(outStart + (int) chunkOffset(i));
+            seal(i, i == chunks - 1, plaintext, out);
+        }
+        out.position(outStart);
+        out.put(header);
+        out.position(outStart + (int) sealedLength);
+        plaintext.limit(start + length).position(start + length);
+        return (int) sealedLength;
+    }
+
+    /**
+     * Verify and decrypt a whole file held in a buffer. May run in place, with out a
+     * view of the same memory starting at the same position; chunks are opened from the
+     * first to the last, so each only overwrites ciphertext already consumed.
+     * @param sealed The file, header first, as its remaining bytes
+     * @param out Receives the plaintext; its position is advanced
+     * @return Bytes written
+     * @throws IOException If the header is not this file's or any chunk fails to verify
+     */
+    public int decryptInto(ByteBuffer sealed, ByteBuffer out) throws IOException {
+        int start = sealed.position();
+        int end = sealed.limit();
+        for (int i = 0; i < HEADER_LENGTH; i++) {
+            if (end - start < HEADER_LENGTH || sealed.get(start + i) != header[i]) {
+                throw new IOException("Buffer does not start with this file's header");
+            }
+        }
+        int sealedChunk = chunkSize + TAG_LENGTH;
+        int body = end - start - HEADER_LENGTH;
+        int chunks = Math.max(1, (body + sealedChunk - 1) / sealedChunk);
+        int written = 0;
+        for (int i = 0; i < chunks; i++) {
+            int from = start + (int) chunkOffset(i);
+            sealed.limit(Math.min(end, from + sealedChunk)).position(from);
+            written += open(i, i == chunks - 1, sealed, out);
+        }
+        sealed.limit(end).position(end);
+        return written;
+    }
+
+    private void ensureScratch() {
+        if (scratchIn == null) {
+            scratchIn = new byte[chunkSize + TAG_LENGTH];
+            scratchOut = new byte[chunkSize + TAG_LENGTH];
+        }
+    }
+
+    private void init(int mode, long index, boolean last) throws GeneralSecurityException {
+        if (index < 0 || index > 0xffffffffL) {
+            throw new GeneralSecurityException("Chunk index out of range: " + index);
+        }
+        writeInt(nonce, PREFIX_LENGTH, (int) index);
+        suite.init(cipher, mode, key, nonce);
+        cipher.updateAAD(header);
+        lastFlag[0] = (byte) (last ? 1 : 0);
+        cipher.updateAAD(lastFlag);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+}
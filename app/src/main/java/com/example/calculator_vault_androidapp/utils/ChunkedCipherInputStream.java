@@ -0,0 +1,159 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Decrypts a file in the {@link ChunkedCipher} format as it is read.
+ *
+ * Each chunk is verified before any of its plaintext is returned, so a reader never
+ * sees bytes that were tampered with. Reading past the end of a file that was cut short,
+ * or had chunks swapped, throws an {@link IOException} instead of returning -1. Chunks
+ * are read a batch at a time, one per worker of the {@link ParallelChunkedCipher} if
+ * one is given. Memory use is two batch buffers whatever the file size.
+ */
+public class ChunkedCipherInputStream extends FilterInputStream {
+
+    private final ParallelChunkedCipher parallel;
+    private final ChunkedCipher[] workers;
+    private final byte[] sealed;
+    private final byte[] plain;
+    private final ByteBuffer sealedBuffer;
+    private final ByteBuffer plainBuffer;
+    private final int sealedChunk;
+    private int position;
+    private int available;
+    private long index;
+    private boolean last;
+    // One byte read ahead of the current batch to find out whether it held the last chunk
+    private int lookahead = -1;
+
+    /**
+     * @param in The encrypted file, header first
+     * @param key The file's data key
+     * @throws IOException If the header cannot be read or is not in this format
+     */
+    public ChunkedCipherInputStream(InputStream in, SecretKey key) throws IOException {
+        this(in, key, null);
+    }
+
+    /**
+     * @param in The encrypted file, header first
+     * @param key The file's data key
+     * @param parallel Opens a chunk per worker at a time, or null to open on this thread
+     * @throws IOException If the header cannot be read or is not in this format
+     */
+    public ChunkedCipherInputStream(InputStream in, SecretKey key, ParallelChunkedCipher parallel) throws IOException {
+        super(in);
+        byte[] header = new byte[ChunkedCipher.HEADER_LENGTH];
+        if (readFully(in, header, 0, header.length) < header.length) {
+            throw new EOFException("File too short for a chunked vault header");
+        }
+        ChunkedCipher cipher = ChunkedCipher.forReading(key, header);
+        this.parallel = parallel;
+        workers = parallel != null ? parallel.workersFor(cipher) : new ChunkedCipher[]{cipher};
+        sealedChunk = cipher.getChunkSize() + ChunkedCipher.TAG_LENGTH;
+        sealed = new byte[workers.length * sealedChunk];
+        plain = new byte[workers.length * cipher.getChunkSize()];
+        sealedBuffer = ByteBuffer.wrap(sealed);
+        plainBuffer = ByteBuffer.wrap(plain);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return plain[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+        int n = Math.min(len, available - position);
+        System.arraycopy(plain, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            int step = (int) Math.min(n - skipped, available - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return available - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Make sure decrypted bytes are buffered.
+     * @return false at the verified end of the file
+     */
+    private boolean fill() throws IOException {
+        while (position == available) {
+            if (last) return false;
+            readBatch();
+        }
+        return true;
+    }
+
+    private void readBatch() throws IOException {
+        int length = 0;
+        if (lookahead >= 0) {
+            sealed[length++] = (byte) lookahead;
+            lookahead = -1;
+        }
+        length += readFully(in, sealed, length, sealed.length - length);
+        if (length < sealed.length) {
+            last = true;
+        } else {
+            lookahead = in.read();
+            last = lookahead < 0;
+        }
+        // A missing or shortened last chunk fails here, as the flag is authenticated
+        if (parallel != null) {
+            sealedBuffer.limit(length).position(0);
+            plainBuffer.clear();
+            available = parallel.open(workers, index, sealedBuffer, last, plainBuffer);
+            index += Math.max(1, (length + sealedChunk - 1) / sealedChunk);
+        } else {
+            available = workers[0].open(index++, last, sealed, 0, length, plain, 0);
+        }
+        position = 0;
+    }
+
+    private static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(b, off + total, len - total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+}
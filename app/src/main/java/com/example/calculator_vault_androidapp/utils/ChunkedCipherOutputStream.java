@@ -0,0 +1,125 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Encrypts everything written to it into the {@link ChunkedCipher} format.
+ *
+ * Plaintext is collected a batch of chunks at a time, one chunk per worker of the
+ * {@link ParallelChunkedCipher} if one is given, and a full batch is sealed once more
+ * data follows it, so the chunk written by {@link #close} is always the one flagged as
+ * last. Memory use is two batch buffers whatever the file size. The stream must be
+ * closed, or the file ends without its last chunk and will not decrypt.
+ */
+public class ChunkedCipherOutputStream extends FilterOutputStream {
+
+    private final ParallelChunkedCipher parallel;
+    private final ChunkedCipher[] workers;
+    private final byte[] plain;
+    private final byte[] sealed;
+    private final ByteBuffer plainBuffer;
+    private final ByteBuffer sealedBuffer;
+    private final int chunkSize;
+    private int buffered;
+    private long index;
+    private boolean closed;
+
+    public ChunkedCipherOutputStream(OutputStream out, SecretKey key) throws IOException {
+        this(out, key, ChunkedCipher.DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedCipherOutputStream(OutputStream out, SecretKey key, int chunkSize) throws IOException {
+        this(out, key, chunkSize, null);
+    }
+
+    /**
+     * @param out Receives the header at once, then sealed chunks
+     * @param key The file's data key, used with the selected {@link CipherSuites suite}
+     * @param chunkSize Plaintext bytes per chunk
+     * @param parallel Seals a chunk per worker at a time, or null to seal on this thread
+     */
+    public ChunkedCipherOutputStream(OutputStream out, SecretKey key, int chunkSize,
+                                     ParallelChunkedCipher parallel) throws IOException {
+        this(out, ChunkedCipher.forWriting(key, chunkSize), parallel);
+    }
+
+    /**
+     * @param out Receives the header at once, then sealed chunks
+     * @param cipher A new file from {@link ChunkedCipher#forWriting}
+     * @param parallel Seals a chunk per worker at a time, or null to seal on this thread
+     */
+    public ChunkedCipherOutputStream(OutputStream out, ChunkedCipher cipher,
+                                     ParallelChunkedCipher parallel) throws IOException {
+        super(out);
+        this.parallel = parallel;
+        this.chunkSize = cipher.getChunkSize();
+        workers = parallel != null ? parallel.workersFor(cipher) : new ChunkedCipher[]{cipher};
+        plain = new byte[workers.length * chunkSize];
+        sealed = new byte[workers.length * (chunkSize + ChunkedCipher.TAG_LENGTH)];
+        plainBuffer = ByteBuffer.wrap(plain);
+        sealedBuffer = ByteBuffer.wrap(sealed);
+        out.write(cipher.getHeader());
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (buffered == plain.length) {
+            sealBatch(false);
+        }
+        plain[buffered++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (buffered == plain.length) {
+                sealBatch(false);
+            }
+            int n = Math.min(len, plain.length - buffered);
+            System.arraycopy(b, off, plain, buffered, n);
+            buffered += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Flushes the underlying stream. Buffered plaintext is only sealed once the batch
+     * is full or the stream is closed, as only then is it known which chunk is last.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            sealBatch(true);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void sealBatch(boolean endsFile) throws IOException {
+        plainBuffer.limit(buffered).position(0);
+        sealedBuffer.clear();
+        int n;
+        if (parallel != null) {
+            n = parallel.seal(workers, index, plainBuffer, endsFile, sealedBuffer);
+        } else {
+            n = workers[0].seal(index, endsFile, plain, 0, buffered, sealed, 0);
+        }
+        out.write(sealed, 0, n);
+        index += Math.max(1, (buffered + chunkSize - 1) / chunkSize);
+        buffered = 0;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Reads the plaintext of a file in the {@link ChunkedCipher} format at any position.
+ *
+ * Only the chunks covering a read are fetched from the {@link Source} and verified, so a
+ * player or viewer can seek anywhere in a large file without reading what comes before
+ * it. The last chunk opened is kept, so small sequential reads fetch each chunk once. A
+ * file cut short is caught when its new last chunk is read, as the flag marking the last
+ * chunk is authenticated. Not thread-safe.
+ */
+public class ChunkedCipherReader {
+
+    /**
+     * The file's stored bytes, read by range.
+     */
+    public interface Source {
+        /**
+         * @return Stored length in bytes, or -1 if the file no longer exists
+         */
+        long length() throws IOException;
+
+        /**
+         * @return Up to length stored bytes from offset, or null if the file no longer exists
+         */
+        byte[] read(long offset, int length) throws IOException;
+    }
+
+    private final Source source;
+    private final ChunkedCipher cipher;
+    private final int chunkSize;
+    private final long storedLength;
+    private final long chunks;
+    private final long length;
+    private final byte[] plain;
+    private long openIndex = -1;
+    private int openLength;
+
+    /**
+     * @param source The encrypted file
+     * @param key The file's data key
+     * @throws IOException If the header cannot be read or is not in this format
+     */
+    public ChunkedCipherReader(Source source, SecretKey key) throws IOException {
+        this.source = source;
+        storedLength = source.length();
+        if (storedLength < 0) {
+            throw new FileNotFoundException("File no longer exists");
+        }
+        byte[] header = source.read(0, ChunkedCipher.HEADER_LENGTH);
+        if (header == null || header.length < ChunkedCipher.HEADER_LENGTH) {
+            throw new EOFException("File too short for a chunked vault header");
+        }
+        cipher = ChunkedCipher.forReading(key, header);
+        chunkSize = cipher.getChunkSize();
+        long sealedChunk = chunkSize + ChunkedCipher.TAG_LENGTH;
+        long body = storedLength - ChunkedCipher.HEADER_LENGTH;
+        chunks = (body + sealedChunk - 1) / sealedChunk;
+        // Even an empty file has one chunk, holding just its tag
+        if (chunks == 0 || body - (chunks - 1) * sealedChunk < ChunkedCipher.TAG_LENGTH) {
+            throw new EOFException("File ends inside a chunk tag");
+        }
+        length = body - chunks * ChunkedCipher.TAG_LENGTH;
+        plain = new byte[chunkSize];
+    }
+
+    /**
+     * @return Plaintext length in bytes
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Read plaintext from a position, opening only the chunks it spans.
+     * @return Bytes read, up to len, or -1 if position is at or past the end
+     * @throws IOException If a chunk was modified, moved or is missing
+     */
+    public int read(long position, byte[] b, int off, int len) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position " + position);
+        }
+        if (len == 0) return 0;
+        if (position >= length) return -1;
+        int total = 0;
+        while (total < len && position < length) {
+            long index = position / chunkSize;
+            openChunk(index);
+            int inChunk = (int) (position - index * chunkSize);
+            int n = Math.min(len - total, openLength - inChunk);
+            System.arraycopy(plain, inChunk, b, off + total, n);
+            total += n;
+            position += n;
+        }
+        return total;
+    }
+
+    /**
+     * @return A stream of the plaintext from position on; its skip() seeks without
+     *         opening the chunks skipped
+     */
+    public InputStream openStream(long position) {
+        return new InputStream() {
+            private long at = position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = ChunkedCipherReader.this.read(at, b, off, len);
+                if (n > 0) at += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                long step = Math.max(0, Math.min(n, length - at));
+                at += step;
+                return step;
+            }
+        };
+    }
+
+    private void openChunk(long index) throws IOException {
+        if (index == openIndex) return;
+        boolean last = index == chunks - 1;
+        long offset = cipher.chunkOffset(index);
+        int sealedLength = last ? (int) (storedLength - offset) : chunkSize + ChunkedCipher.TAG_LENGTH;
+        byte[] sealed = source.read(offset, sealedLength);
+        if (sealed == null || sealed.length < sealedLength) {
+            throw new EOFException("Chunk " + index + " is missing");
+        }
+        // Nothing from a chunk that fails to open may be served
+        openIndex = -1;
+        openLength = cipher.open(index, last, sealed, 0, sealedLength, plain, 0);
+        openIndex = index;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * An AEAD cipher that {@link ChunkedCipher} can encrypt vault files with.
+ *
+ * A suite takes a 32-byte key and a 12-byte nonce and appends a 16-byte tag, so files
+ * differ only in the suite id stored in their header. Implementations are stateless;
+ * {@link CipherSuites} lists them and picks the fastest one on this device.
+ */
+public interface CipherSuite {
+
+    /**
+     * @return The byte that marks files of this suite in the chunked header; never reused
+     */
+    byte getId();
+
+    String getName();
+
+    /**
+     * @return Whether this device's crypto providers implement the suite
+     */
+    boolean isAvailable();
+
+    /**
+     * @return A new, uninitialised cipher for one thread
+     */
+    Cipher newCipher() throws GeneralSecurityException;
+
+    /**
+     * Convert a data key to the form this suite's cipher accepts. Called once per file.
+     */
+    SecretKey prepareKey(SecretKey key);
+
+    /**
+     * Initialise a cipher from {@link #newCipher} for one chunk.
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param key From {@link #prepareKey}
+     * @param nonce 12 bytes, unique per key
+     */
+    void init(Cipher cipher, int mode, SecretKey key, byte[] nonce) throws GeneralSecurityException;
+}
@@ -0,0 +1,137 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The {@link CipherSuite}s vault files can be written with, and the one new files use.
+ *
+ * Files record their suite in their header, so any registered suite can be read back
+ * whichever is selected. The selection is made once per install by
+ * {@link #pickFastest}, which times each available suite sealing real chunks; the
+ * caller stores the winner's id and restores it with {@link #setSelected} on later
+ * starts. Until then new files use AES-GCM.
+ */
+public class CipherSuites {
+
+    public static final CipherSuite AES_GCM = new AesGcmSuite();
+    public static final CipherSuite CHACHA20_POLY1305 = new ChaCha20Poly1305Suite();
+
+    private static final List<CipherSuite> ALL =
+            Collections.unmodifiableList(Arrays.asList(AES_GCM, CHACHA20_POLY1305));
+
+    // Timed rounds per suite; the best counts, as early rounds run before the JIT has
+    // compiled the cipher. Stops once the best has not improved for a few rounds
+    private static final long ROUND_NANOS = 20_000_000L;
+    private static final int MAX_ROUNDS = 25;
+    private static final int ROUNDS_WITHOUT_GAIN = 3;
+
+    private static volatile CipherSuite selected = AES_GCM;
+
+    private CipherSuites() {}
+
+    /**
+     * @return Every registered suite, available here or not
+     */
+    public static List<CipherSuite> getAll() {
+        return ALL;
+    }
+
+    /**
+     * @return The suite with this header id, or null if none is registered
+     */
+    public static CipherSuite byId(int id) {
+        for (CipherSuite suite : ALL) {
+            if (suite.getId() == id) return suite;
+        }
+        return null;
+    }
+
+    /**
+     * @return The suite new files are written with
+     */
+    public static CipherSuite getSelected() {
+        return selected;
+    }
+
+    /**
+     * @param suite Suite for new files; ignored if this device cannot run it
+     * @return Whether the suite was selected
+     */
+    public static boolean setSelected(CipherSuite suite) {
+        if (suite == null || !suite.isAvailable()) return false;
+        selected = suite;
+        return true;
+    }
+
+    /**
+     * Time every available suite and select the fastest. Takes up to half a second per
+     * suite, so call it once, from a background thread, and store the result.
+     * @return The selected suite
+     */
+    public static CipherSuite pickFastest() {
+        CipherSuite fastest = AES_GCM;
+        double best = 0;
+        for (CipherSuite suite : getAvailable()) {
+            double throughput = measure(suite);
+            if (throughput > best) {
+                best = throughput;
+                fastest = suite;
+            }
+        }
+        selected = fastest;
+        return fastest;
+    }
+
+    static List<CipherSuite> getAvailable() {
+        List<CipherSuite> available = new ArrayList<>();
+        for (CipherSuite suite : ALL) {
+            if (suite.isAvailable()) available.add(suite);
+        }
+        return available;
+    }
+
+    /**
+     * Seal full-size chunks with a throwaway key in rounds of {@link #ROUND_NANOS}.
+     * @return Plaintext bytes sealed per second in the fastest round
+     */
+    static double measure(CipherSuite suite) {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        ChunkedCipher cipher = ChunkedCipher.forWriting(suite, new SecretKeySpec(key, "AES"),
+                ChunkedCipher.DEFAULT_CHUNK_SIZE);
+        byte[] plain = new byte[ChunkedCipher.DEFAULT_CHUNK_SIZE];
+        byte[] sealed = new byte[plain.length + ChunkedCipher.TAG_LENGTH];
+        double best = 0;
+        long index = 0;
+        try {
+            for (int round = 0, sinceGain = 0; round < MAX_ROUNDS && sinceGain < ROUNDS_WITHOUT_GAIN; round++) {
+                long start = System.nanoTime();
+                long chunks = 0;
+                long elapsed;
+                do {
+                    cipher.seal(index++, false, plain, 0, plain.length, sealed, 0);
+                    chunks++;
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < ROUND_NANOS);
+                double throughput = chunks * (double) plain.length * 1e9 / elapsed;
+                // Only a clear gain resets the count, so noise does not prolong the run
+                if (throughput > best * 1.05) {
+                    sinceGain = 0;
+                } else {
+                    sinceGain++;
+                }
+                best = Math.max(best, throughput);
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Keeps the encrypted bytes of vault files as plain files under one directory, each
+ * named by the SHA-256 of its contents.
+ *
+ * A file is written through a {@link Writer} into a temporary file that only takes its
+ * content name once complete and synced, so a name always stands for whole bytes that
+ * never change, and a crash leaves at most a temporary file behind. The database keeps
+ * the name as the file's pointer. Identical contents are kept once, so removing a name
+ * is up to the caller once no row points to it; {@link #sweep} catches what is missed.
+ */
+public class ContentStore {
+
+    private static final String TEMP_DIR = "tmp";
+    private static final int REF_LENGTH = 64;
+
+    private final File root;
+    private final File tempDir;
+
+    public ContentStore(File root) {
+        this.root = root;
+        this.tempDir = new File(root, TEMP_DIR);
+    }
+
+    /**
+     * Start a new entry. Write its bytes, then {@link Writer#commit} it.
+     */
+    public Writer newWriter() throws IOException {
+        if (!tempDir.isDirectory() && !tempDir.mkdirs()) {
+            throw new IOException("Cannot create " + tempDir);
+        }
+        return new Writer(File.createTempFile("entry", ".tmp", tempDir));
+    }
+
+    /**
+     * @throws FileNotFoundException If there is no such entry
+     */
+    public InputStream open(String ref) throws FileNotFoundException {
+        return new FileInputStream(fileFor(ref));
+    }
+
+    /**
+     * @return The entry's length in bytes, or -1 if there is no such entry
+     */
+    public long length(String ref) {
+        File file = fileFor(ref);
+        return file.isFile() ? file.length() : -1;
+    }
+
+    /**
+     * @return Up to length bytes of the entry from offset, or null if there is no such entry
+     */
+    public byte[] read(String ref, long offset, int length) throws IOException {
+        File file = fileFor(ref);
+        if (!file.isFile()) return null;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            int n = (int) Math.max(0, Math.min(length, in.length() - offset));
+            byte[] data = new byte[n];
+            in.seek(offset);
+            in.readFully(data);
+            return data;
+        }
+    }
+
+    public boolean contains(String ref) {
+        return fileFor(ref).isFile();
+    }
+
+    public void delete(String ref) {
+        File file = fileFor(ref);
+        if (file.delete()) {
+            // Leave no empty fan-out directories behind
+            file.getParentFile().delete();
+        }
+    }
+
+    /**
+     * Delete temporary files and entries not in referenced, if untouched for maxAgeMs.
+     * The age keeps an entry whose row is still being written from being taken.
+     * @return The number of files deleted
+     */
+    public int sweep(Set<String> referenced, long maxAgeMs) {
+        long cutoff = System.currentTimeMillis() - maxAgeMs;
+        int deleted = 0;
+        File[] dirs = root.listFiles();
+        if (dirs == null) return 0;
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (files == null) continue;
+            boolean temp = dir.getName().equals(TEMP_DIR);
+            for (File file : files) {
+                if ((temp || !referenced.contains(file.getName()))
+                        && file.lastModified() < cutoff && file.delete()) {
+                    deleted++;
+                }
+            }
+            if (!temp) dir.delete();
+        }
+        return deleted;
+    }
+
+    private File fileFor(String ref) {
+        // Names come from the database; never let one point outside the store
+        if (ref == null || ref.length() != REF_LENGTH) {
+            throw new IllegalArgumentException("Invalid content reference");
+        }
+        for (int i = 0; i < REF_LENGTH; i++) {
+            char c = ref.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                throw new IllegalArgumentException("Invalid content reference");
+            }
+        }
+        return new File(new File(root, ref.substring(0, 2)), ref);
+    }
+
+    /**
+     * Writes one entry. Hashes and checksums the bytes on the way through, so committing
+     * never reads them back. Not thread-safe.
+     */
+    public final class Writer extends OutputStream {
+        private final File temp;
+        private final FileOutputStream out;
+        private final MessageDigest digest;
+        private final IntegrityScrubber.SliceChecksums checksums = new IntegrityScrubber.SliceChecksums();
+        private long length;
+        private boolean closed;
+        private String ref;
+        private byte[] checksumBytes;
+
+        private Writer(File temp) throws IOException {
+            this.temp = temp;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+            out = new FileOutputStream(temp);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Writer closed");
+            out.write(b, off, len);
+            digest.update(b, off, len);
+            checksums.update(b, off, len);
+            length += len;
+        }
+
+        /**
+         * Sync the bytes to disk. Closing does not commit, so an encrypting stream
+         * around the writer can be closed first.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Close the writer and give the entry its content name.
+         * @return The name to keep as the file's pointer
+         */
+        public String commit() throws IOException {
+            if (ref != null) return ref;
+            close();
+            String name = toHex(digest.digest());
+            File target = fileFor(name);
+            File dir = target.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            if (target.isFile()) {
+                // Same bytes already stored
+                temp.delete();
+            } else if (!temp.renameTo(target)) {
+                throw new IOException("Cannot store " + name);
+            }
+            checksumBytes = checksums.toByteArray();
+            ref = name;
+            return ref;
+        }
+
+        /**
+         * Drop the entry unless committed; safe to call in a finally block after {@link #commit}.
+         */
+        public void abort() {
+            if (ref != null) return;
+            try {
+                close();
+            } catch (IOException e) {
+                // Deleted either way
+            }
+            temp.delete();
+        }
+
+        /**
+         * @return Bytes written
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return The entry's slice checksums for the {@link IntegrityScrubber}; after commit
+         */
+        public byte[] getChecksums() {
+            return checksumBytes != null ? Arrays.copyOf(checksumBytes, checksumBytes.length) : null;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -1,76 +1,289 @@
 package com.example.calculator_vault_androidapp.utils;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 /**
- * Utility class for cryptographic operations including PIN hashing and file encryption.
+ * Utility class for cryptographic operations including key wrapping and file encryption.
+ * PINs are checked with {@link PinVerifier}.
+ *
+ * Files are encrypted under their own random data key, stored wrapped (encrypted) by a
+ * key derived from the PIN with {@link KeyDerivation}. Changing the PIN only rewraps
+ * these small keys, see {@link #rewrapDataKey}.
  */
 public class CryptoUtils {
 
+    private static final int DATA_KEY_LENGTH = 32;
+    private static final int WRAP_NONCE_LENGTH = 12;
+    private static final int WRAP_TAG_LENGTH = 16;
+    // Nonce, encrypted key and tag
+    public static final int WRAPPED_KEY_LENGTH = WRAP_NONCE_LENGTH + DATA_KEY_LENGTH + WRAP_TAG_LENGTH;
+    private static final byte[] WRAP_AAD = "calculator_vault:data_key".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PIN_AAD = "calculator_vault:pin".getBytes(StandardCharsets.UTF_8);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     /**
-     * Hash a 5-digit PIN using SHA-256 and return hex string.
-     * @param pin The PIN to hash
-     * @return The SHA-256 hash as a hex string
+     * Derive the AES-256 key that files were encrypted with directly, before each file
+     * had its own data key.
+     * @param pin The vault PIN
+     * @return The key used by the chunked file format for those files
      */
-    public static String hashPin(String pin) {
+    public static SecretKey deriveFileKey(String pin) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(pin.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hex = new StringBuilder();
-            for (byte b : hash) {
-                String h = Integer.toHexString(0xff & b);
-                if (h.length() == 1) hex.append('0');
-                hex.append(h);
-            }
-            return hex.toString();
+            digest.update("calculator_vault:file_key:".getBytes(StandardCharsets.UTF_8));
+            byte[] key = digest.digest(pin.getBytes(StandardCharsets.UTF_8));
+            return new SecretKeySpec(key, "AES");
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-256 not available", e);
         }
     }
 
     /**
-     * Verify input PIN against stored hash.
-     * @param inputPin The PIN entered by user
-     * @param storedHash The stored hash to compare against
-     * @return true if PIN matches, false otherwise
+     * Derive the unsalted PIN key that wrapped data keys before {@link KeyDerivation}.
+     * Profiles still using it are moved to a salted key when next unlocked.
+     * @param pin The vault PIN
+     * @return The key encryption key
      */
-    public static boolean verifyPin(String inputPin, String storedHash) {
-        if (inputPin == null || storedHash == null) {
-            return false;
+    public static SecretKey derivePinKey(String pin) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update("calculator_vault:pin_key:".getBytes(StandardCharsets.UTF_8));
+            byte[] key = digest.digest(pin.getBytes(StandardCharsets.UTF_8));
+            return new SecretKeySpec(key, "AES");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @return A new random AES-256 key for one file
+     */
+    public static SecretKey newDataKey() {
+        byte[] key = new byte[DATA_KEY_LENGTH];
+        RANDOM.nextBytes(key);
+        return new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * Encrypt a file's data key with the PIN key.
+     * @param dataKey The file's data key
+     * @param pinKey The profile's PIN key
+     * @return {@link #WRAPPED_KEY_LENGTH} bytes to store with the file
+     */
+    public static byte[] wrapDataKey(SecretKey dataKey, SecretKey pinKey) {
+        return seal(dataKey.getEncoded(), pinKey, WRAP_AAD);
+    }
+
+    /**
+     * Decrypt a file's data key.
+     * @param wrapped Bytes from {@link #wrapDataKey}
+     * @param pinKey The profile's PIN key
+     * @return The file's data key
+     * @throws IllegalArgumentException If the PIN key is wrong or the bytes were modified
+     */
+    public static SecretKey unwrapDataKey(byte[] wrapped, SecretKey pinKey) {
+        if (wrapped == null || wrapped.length != WRAPPED_KEY_LENGTH) {
+            throw new IllegalArgumentException("Invalid wrapped key");
         }
-        return hashPin(inputPin).equals(storedHash);
+        return new SecretKeySpec(open(wrapped, pinKey, WRAP_AAD), "AES");
     }
 
     /**
-     * Encrypt data using XOR with PIN.
+     * Encrypt a PIN under another PIN's key, e.g. the old PIN for a PIN change that
+     * resumes after the new PIN is entered. Never store a PIN any other way.
+     * @return Bytes for {@link #openPin}
+     */
+    public static byte[] sealPin(String pin, SecretKey pinKey) {
+        return seal(pin.getBytes(StandardCharsets.UTF_8), pinKey, PIN_AAD);
+    }
+
+    /**
+     * Decrypt a PIN from {@link #sealPin}.
+     * @throws IllegalArgumentException If the key is wrong or the bytes were modified
+     */
+    public static String openPin(byte[] sealed, SecretKey pinKey) {
+        if (sealed == null || sealed.length < WRAP_NONCE_LENGTH + WRAP_TAG_LENGTH) {
+            throw new IllegalArgumentException("Invalid sealed PIN");
+        }
+        return new String(open(sealed, pinKey, PIN_AAD), StandardCharsets.UTF_8);
+    }
+
+    // AES-GCM with a random nonce: nonce, then ciphertext and tag
+    private static byte[] seal(byte[] secret, SecretKey key, byte[] aad) {
+        byte[] sealed = new byte[WRAP_NONCE_LENGTH + secret.length + WRAP_TAG_LENGTH];
+        RANDOM.nextBytes(sealed);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key,
+                    new GCMParameterSpec(WRAP_TAG_LENGTH * 8, sealed, 0, WRAP_NONCE_LENGTH));
+            cipher.updateAAD(aad);
+            cipher.doFinal(secret, 0, secret.length, sealed, WRAP_NONCE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Key wrapping failed", e);
+        }
+        return sealed;
+    }
+
+    private static byte[] open(byte[] sealed, SecretKey key, byte[] aad) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key,
+                    new GCMParameterSpec(WRAP_TAG_LENGTH * 8, sealed, 0, WRAP_NONCE_LENGTH));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(sealed, WRAP_NONCE_LENGTH, sealed.length - WRAP_NONCE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Wrapped key failed authentication", e);
+        }
+    }
+
+    /**
+     * Move a file's data key from one PIN key to another. The file data is untouched.
+     * @param wrapped Bytes from {@link #wrapDataKey} under the old PIN key
+     * @return The data key wrapped under the new PIN key
+     */
+    public static byte[] rewrapDataKey(byte[] wrapped, SecretKey oldPinKey, SecretKey newPinKey) {
+        return wrapDataKey(unwrapDataKey(wrapped, oldPinKey), newPinKey);
+    }
+
+    /**
+     * Wrap a stream so everything written to it is encrypted in chunks under a file's
+     * data key, a batch of chunks at a time across all cores. Close the returned stream
+     * to write the last chunk.
+     * @param out Receives the encrypted file
+     * @param dataKey The file's data key
+     */
+    public static OutputStream encryptingStream(OutputStream out, SecretKey dataKey) throws IOException {
+        return new ChunkedCipherOutputStream(out, dataKey, ChunkedCipher.DEFAULT_CHUNK_SIZE,
+                ParallelChunkedCipher.getInstance());
+    }
+
+    /**
+     * Wrap a file's encrypted stream so reading it returns verified plaintext. Chunks are
+     * opened a batch at a time across all cores.
+     * @param in The encrypted file
+     * @param wrappedKey The file's wrapped data key, or null for files stored before
+     *                   data keys, which are decrypted with the PIN directly
+     * @param pinKey The profile's PIN key, from the session
+     * @param pin The vault PIN, only used for files without a data key
+     */
+    public static InputStream decryptingStream(InputStream in, byte[] wrappedKey,
+                                               SecretKey pinKey, String pin) throws IOException {
+        if (wrappedKey == null) {
+            return decryptingStream(in, pin);
+        }
+        return new ChunkedCipherInputStream(in, unwrapDataKey(wrappedKey, pinKey),
+                ParallelChunkedCipher.getInstance());
+    }
+
+    /**
+     * Open a file for reading its verified plaintext at any position, e.g. to seek in a
+     * video. Files stored before chunked encryption cannot be read this way.
+     * @param source The encrypted file, by range
+     * @param wrappedKey The file's wrapped data key, or null for files stored before
+     *                   data keys, which are opened with the PIN directly
+     * @param pinKey The profile's PIN key, from the session
+     * @param pin The vault PIN, only used for files without a data key
+     * @throws IOException If the file is not in the chunked format
+     */
+    public static ChunkedCipherReader decryptingReader(ChunkedCipherReader.Source source, byte[] wrappedKey,
+                                                       SecretKey pinKey, String pin) throws IOException {
+        SecretKey key = wrappedKey != null ? unwrapDataKey(wrappedKey, pinKey) : deriveFileKey(pin);
+        return new ChunkedCipherReader(source, key);
+    }
+
+    /**
+     * Wrap a stream of a file stored before data keys so reading it returns plaintext.
+     * Files stored before chunked encryption are decrypted with the old XOR scheme.
+     * @param in The encrypted file
+     * @param pin The PIN to derive the key from
+     */
+    public static InputStream decryptingStream(InputStream in, String pin) throws IOException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in, ChunkedCipher.HEADER_LENGTH);
+        }
+        byte[] header = new byte[ChunkedCipher.HEADER_LENGTH];
+        in.mark(header.length);
+        int n = 0;
+        while (n < header.length) {
+            int read = in.read(header, n, header.length - n);
+            if (read < 0) break;
+            n += read;
+        }
+        in.reset();
+        if (n == header.length && ChunkedCipher.isChunked(header)) {
+            return new ChunkedCipherInputStream(in, deriveFileKey(pin));
+        }
+        return new XorInputStream(in, pin.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encrypt data with the chunked AES-GCM format.
      * @param data The data to encrypt
-     * @param pin The PIN to use as key
+     * @param dataKey The file's data key
      * @return The encrypted data
      */
-    public static byte[] encryptData(byte[] data, String pin) {
-        if (data == null || pin == null || pin.isEmpty()) {
-            return data;
+    public static byte[] encryptData(byte[] data, SecretKey dataKey) {
+        if (data == null) {
+            return null;
         }
-        return xorWithKey(data, pin.getBytes(StandardCharsets.UTF_8));
+        byte[] out = new byte[(int) ChunkedCipher.sealedLength(data.length, ChunkedCipher.DEFAULT_CHUNK_SIZE)];
+        try {
+            ParallelChunkedCipher.getInstance().encryptInto(dataKey, ByteBuffer.wrap(data), ByteBuffer.wrap(out));
+        } catch (IOException e) {
+            throw new IllegalStateException("Encryption failed", e);
+        }
+        return out;
     }
 
     /**
-     * Decrypt data using XOR with PIN.
+     * Decrypt data stored before data keys, verifying every chunk. Data stored before
+     * chunked encryption is decrypted with the old XOR scheme.
      * @param data The data to decrypt
-     * @param pin The PIN to use as key
+     * @param pin The PIN to derive the key from
      * @return The decrypted data
+     * @throws IllegalArgumentException If the data was modified or the PIN is wrong
      */
     public static byte[] decryptData(byte[] data, String pin) {
         if (data == null || pin == null || pin.isEmpty()) {
             return data;
         }
-        return xorWithKey(data, pin.getBytes(StandardCharsets.UTF_8));
+        if (!ChunkedCipher.isChunked(data)) {
+            return xorWithKey(data, pin.getBytes(StandardCharsets.UTF_8));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        byte[] buffer = new byte[8192];
+        try (InputStream decrypting = new ChunkedCipherInputStream(
+                new ByteArrayInputStream(data), deriveFileKey(pin))) {
+            int n;
+            while ((n = decrypting.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Decryption failed: " + e.getMessage(), e);
+        }
+        return out.toByteArray();
     }
 
     /**
-     * XOR operation with key.
+     * XOR operation with key, for files stored before chunked encryption.
      * @param data The data to XOR
      * @param key The key bytes
      * @return The XORed data
@@ -99,4 +312,45 @@ public class CryptoUtils {
         }
         return true;
     }
+
+    /**
+     * Streams data stored with the old XOR scheme.
+     */
+    private static final class XorInputStream extends FilterInputStream {
+        private final byte[] key;
+        private long position;
+
+        XorInputStream(InputStream in, byte[] key) {
+            super(in);
+            this.key = key;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0) return -1;
+            return (b ^ key[(int) (position++ % key.length)]) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            for (int i = 0; i < n; i++) {
+                b[off + i] ^= key[(int) (position++ % key.length)];
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 }
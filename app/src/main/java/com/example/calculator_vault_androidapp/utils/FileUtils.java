@@ -6,6 +6,8 @@ import android.webkit.MimeTypeMap;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -77,6 +79,45 @@ public class FileUtils {
         return tempFile;
     }
 
+    /**
+     * Create a temporary file from a stream, e.g. one decrypting a vault file.
+     * @param context Android context
+     * @param fileName The file name
+     * @param data The file data, closed when written
+     * @return The created temp file
+     * @throws IOException If reading or file creation fails
+     */
+    public static File createTempFile(Context context, String fileName, InputStream data) throws IOException {
+        File tempDir = new File(context.getCacheDir(), "vault_temp");
+        if (!tempDir.exists()) {
+            tempDir.mkdirs();
+        }
+
+        File tempFile = new File(tempDir, fileName);
+        synchronized (TEMP_FILES) {
+            TEMP_FILES.add(tempFile);
+        }
+        try (InputStream in = data; FileOutputStream fos = new FileOutputStream(tempFile)) {
+            copy(in, fos);
+        }
+        return tempFile;
+    }
+
+    /**
+     * Copy a stream to another through a small buffer.
+     * @return The number of bytes copied
+     */
+    public static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
     /**
      * Delete all temporary files created by the vault.
      */
@@ -0,0 +1,136 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures the time from a keypad tap to the frame that shows its effect.
+ *
+ * MainActivity calls {@link #onKeystroke} as a click handler starts; the draw listener
+ * on the display closes every pending keystroke when the next frame is drawn. Latencies
+ * are kept per handler in {@link LatencyHistogram}s. Keystrokes that miss the frame
+ * after them count as janky. Everything runs on the UI thread.
+ */
+public class InputLatencyTracker implements ViewTreeObserver.OnDrawListener {
+
+    // One frame at 60 Hz
+    static final long JANK_THRESHOLD_NANOS = 16_666_667L;
+    // Keystrokes waiting for a frame; more than this between two frames are not measured
+    private static final int MAX_PENDING = 16;
+
+    private static InputLatencyTracker instance;
+
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final String[] pendingHandlers = new String[MAX_PENDING];
+    private final long[] pendingStarts = new long[MAX_PENDING];
+    private int pendingCount;
+
+    public static synchronized InputLatencyTracker getInstance() {
+        if (instance == null) {
+            instance = new InputLatencyTracker();
+        }
+        return instance;
+    }
+
+    /**
+     * Start measuring frames drawn for a view's window.
+     */
+    public void attach(View view) {
+        view.getViewTreeObserver().addOnDrawListener(this);
+    }
+
+    public void detach(View view) {
+        view.getViewTreeObserver().removeOnDrawListener(this);
+        pendingCount = 0;
+    }
+
+    /**
+     * Record that a click handler is starting.
+     * @param handler The handler name, e.g. "onNumberClick"
+     */
+    public void onKeystroke(String handler) {
+        if (pendingCount < MAX_PENDING) {
+            pendingHandlers[pendingCount] = handler;
+            pendingStarts[pendingCount++] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Drop keystrokes still waiting for a frame, e.g. when another screen opens.
+     */
+    public void cancelPending() {
+        pendingCount = 0;
+    }
+
+    @Override
+    public void onDraw() {
+        if (pendingCount == 0) return;
+        long now = System.nanoTime();
+        for (int i = 0; i < pendingCount; i++) {
+            histogramFor(pendingHandlers[i]).record(now - pendingStarts[i]);
+            pendingHandlers[i] = null;
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * @return One line per handler with count, percentiles, max and janky keystrokes
+     */
+    public String getReport() {
+        if (histograms.isEmpty()) {
+            return "No keystrokes recorded yet";
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-16s %6s %7s %7s %7s %7s %5s%n",
+                "handler (ms)", "n", "p50", "p95", "p99", "max", "jank"));
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            report.append(String.format(Locale.US, "%-16s %6d %7.2f %7.2f %7.2f %7.2f %5d%n",
+                    entry.getKey(), h.getCount(), millis(h.getQuantileNanos(0.50)),
+                    millis(h.getQuantileNanos(0.95)), millis(h.getQuantileNanos(0.99)),
+                    millis(h.getMaxNanos()), h.getJankCount()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Write the per-handler summary as CSV, latencies in milliseconds.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        out.write("handler,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms,jank\n");
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            out.write(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%d\n",
+                    entry.getKey(), h.getCount(), millis(h.getMeanNanos()),
+                    millis(h.getQuantileNanos(0.50)), millis(h.getQuantileNanos(0.95)),
+                    millis(h.getQuantileNanos(0.99)), millis(h.getMaxNanos()), h.getJankCount()));
+        }
+    }
+
+    /**
+     * Forget all measurements.
+     */
+    public void reset() {
+        histograms.clear();
+        pendingCount = 0;
+    }
+
+    private LatencyHistogram histogramFor(String handler) {
+        LatencyHistogram histogram = histograms.get(handler);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(JANK_THRESHOLD_NANOS);
+            histograms.put(handler, histogram);
+        }
+        return histogram;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Checks stored vault files for corruption in the background, a slice at a time.
+ *
+ * Every file has a CRC32 of each {@link #SLICE_SIZE} slice of its stored (encrypted)
+ * bytes, so it can be checked without the PIN while the vault is locked. A scrub pass
+ * walks the files in ID order from a checkpoint, reads at most
+ * {@link #getBytesPerSecond} on average, and stops as soon as its {@link PauseCondition}
+ * says so, saving where it got to; the next run carries on from there. Files stored
+ * before checksums existed get theirs from their first pass, which is checkpointed with
+ * the checksums computed so far, so even a large file completes over short idle windows.
+ */
+public class IntegrityScrubber {
+
+    public static final int SLICE_SIZE = 256 * 1024;
+    public static final int CHECKSUM_LENGTH = 4;
+    // A budget small enough to go unnoticed; a 20 GB vault takes about 3 hours of idle time
+    public static final long DEFAULT_BYTES_PER_SECOND = 2 * 1024 * 1024;
+    // Longest time between saved checkpoints while a file is being read
+    static final long CHECKPOINT_INTERVAL_MS = 10_000;
+
+    /**
+     * Where the scrubbed files and the checkpoint are kept.
+     */
+    public interface Store {
+        /**
+         * @return The smallest file ID above afterId, or -1 if there is none
+         */
+        int getNextFileId(int afterId);
+
+        /**
+         * @return Stored length of the file in bytes, or -1 if it was deleted or cannot
+         *         be read by slice yet; the file is skipped this pass
+         */
+        long getStoredLength(int fileId);
+
+        /**
+         * @return Up to length stored bytes from offset, or null if the file was deleted
+         */
+        byte[] readStoredSlice(int fileId, long offset, int length);
+
+        /**
+         * @return The file's slice checksums, or null if it has none yet
+         */
+        byte[] getChecksums(int fileId);
+
+        void setChecksums(int fileId, byte[] checksums);
+
+        /**
+         * Record that a file's stored bytes no longer match its checksums.
+         */
+        void markCorrupt(int fileId);
+
+        /**
+         * @return {fileId, offset} to resume from, {0, 0} at the start of a pass
+         */
+        long[] getScrubCheckpoint();
+
+        /**
+         * @return The baseline saved with the checkpoint, or null
+         */
+        byte[] getScrubBaseline();
+
+        /**
+         * Save where to resume, in one write with the baseline if there is one.
+         * @param baseline Checksums of the slices before offset of a file getting its
+         *                 first checksums, or null
+         */
+        void setScrubCheckpoint(int fileId, long offset, byte[] baseline);
+    }
+
+    /**
+     * Asked between slices whether to stop, e.g. because the screen came on.
+     */
+    public interface PauseCondition {
+        boolean shouldPause();
+    }
+
+    /**
+     * Builds a file's slice checksums from its bytes as they are written, in order.
+     */
+    public static final class SliceChecksums {
+        private final CRC32 crc = new CRC32();
+        private byte[] checksums = new byte[16 * CHECKSUM_LENGTH];
+        private int slices;
+        private int inSlice;
+
+        public void update(byte[] data, int off, int len) {
+            while (len > 0) {
+                int n = Math.min(len, SLICE_SIZE - inSlice);
+                crc.update(data, off, n);
+                inSlice += n;
+                off += n;
+                len -= n;
+                if (inSlice == SLICE_SIZE) {
+                    endSlice();
+                }
+            }
+        }
+
+        /**
+         * @return The checksums; call once, after the last byte
+         */
+        public byte[] toByteArray() {
+            if (inSlice > 0) {
+                endSlice();
+            }
+            return Arrays.copyOf(checksums, slices * CHECKSUM_LENGTH);
+        }
+
+        private void endSlice() {
+            if ((slices + 1) * CHECKSUM_LENGTH > checksums.length) {
+                checksums = Arrays.copyOf(checksums, checksums.length * 2);
+            }
+            writeChecksum(checksums, slices++, crc.getValue());
+            crc.reset();
+            inSlice = 0;
+        }
+    }
+
+    private final Store store;
+    private final long bytesPerSecond;
+    private final PauseCondition pause;
+    private final CRC32 crc = new CRC32();
+
+    public IntegrityScrubber(Store store, long bytesPerSecond, PauseCondition pause) {
+        this.store = store;
+        this.bytesPerSecond = Math.max(1, bytesPerSecond);
+        this.pause = pause;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Checksums of data as stored, one per slice; keep them with the file.
+     */
+    public static byte[] checksums(byte[] data) {
+        SliceChecksums checksums = new SliceChecksums();
+        checksums.update(data, 0, data.length);
+        return checksums.toByteArray();
+    }
+
+    /**
+     * Scrub from the checkpoint until the pass ends or the pause condition holds.
+     * Blocks, mostly sleeping to stay within the budget; run it on a background thread.
+     * @return true if the pass finished and the checkpoint is back at the start
+     */
+    public boolean run() throws InterruptedException {
+        long[] checkpoint = store.getScrubCheckpoint();
+        int fileId = (int) checkpoint[0];
+        long offset = checkpoint[1];
+        byte[] baseline = null;
+        if (offset == 0) {
+            fileId = store.getNextFileId(fileId);
+        } else {
+            baseline = store.getScrubBaseline();
+        }
+        long start = System.nanoTime();
+        long budgeted = 0;
+        long lastCheckpoint = System.currentTimeMillis();
+
+        while (fileId != -1) {
+            long length = store.getStoredLength(fileId);
+            byte[] expected = store.getChecksums(fileId);
+            // Files without checksums are read whole to take them as their baseline
+            byte[] computed = expected == null && length >= 0
+                    ? new byte[(int) ((length + SLICE_SIZE - 1) / SLICE_SIZE) * CHECKSUM_LENGTH] : null;
+            if (computed != null && !resumeBaseline(computed, baseline, offset, length)) {
+                offset = 0;
+            }
+            baseline = null;
+            boolean corrupt = false;
+            while (length >= 0 && offset < length) {
+                if (pause.shouldPause()) {
+                    saveCheckpoint(fileId, offset, computed);
+                    return false;
+                }
+                int slice = (int) (offset / SLICE_SIZE);
+                byte[] data = store.readStoredSlice(fileId, offset, SLICE_SIZE);
+                if (data == null) break;
+                long value = checksum(data);
+                if (computed != null) {
+                    writeChecksum(computed, slice, value);
+                } else if (!matches(expected, slice, value) && !confirm(fileId, offset, slice)) {
+                    corrupt = true;
+                    break;
+                }
+                offset += data.length;
+
+                budgeted += data.length;
+                throttle(start, budgeted);
+                long now = System.currentTimeMillis();
+                if (now - lastCheckpoint >= CHECKPOINT_INTERVAL_MS) {
+                    saveCheckpoint(fileId, offset, computed);
+                    lastCheckpoint = now;
+                }
+            }
+            if (corrupt) {
+                store.markCorrupt(fileId);
+            } else if (computed != null && length >= 0 && offset >= length) {
+                store.setChecksums(fileId, computed);
+            }
+            // Offset 0 marks the file as done
+            store.setScrubCheckpoint(fileId, 0, null);
+            lastCheckpoint = System.currentTimeMillis();
+            fileId = store.getNextFileId(fileId);
+            offset = 0;
+        }
+        store.setScrubCheckpoint(0, 0, null);
+        return true;
+    }
+
+    /**
+     * Take up a baseline saved by an earlier run, if it still fits the file.
+     * @return true if computed now holds the checksums of every slice before offset
+     */
+    private static boolean resumeBaseline(byte[] computed, byte[] baseline, long offset, long length) {
+        if (baseline == null || offset % SLICE_SIZE != 0 || offset >= length
+                || baseline.length != offset / SLICE_SIZE * CHECKSUM_LENGTH) {
+            return false;
+        }
+        System.arraycopy(baseline, 0, computed, 0, baseline.length);
+        return true;
+    }
+
+    /**
+     * Re-read a mismatching slice and its checksums once, in case the file was being
+     * rewritten, e.g. re-encrypted, between the two reads.
+     */
+    private boolean confirm(int fileId, long offset, int slice) {
+        byte[] expected = store.getChecksums(fileId);
+        byte[] data = store.readStoredSlice(fileId, offset, SLICE_SIZE);
+        return data == null || expected == null || matches(expected, slice, checksum(data));
+    }
+
+    /**
+     * Save the position to resume from, with the checksums computed so far if the file is
+     * getting its baseline. At offset 0 the file must be read from its start, so the
+     * checkpoint names the ID before it, which resumes at the next file up.
+     */
+    private void saveCheckpoint(int fileId, long offset, byte[] computed) {
+        if (offset == 0) {
+            store.setScrubCheckpoint(fileId - 1, 0, null);
+        } else {
+            store.setScrubCheckpoint(fileId, offset, computed != null
+                    ? Arrays.copyOf(computed, (int) (offset / SLICE_SIZE) * CHECKSUM_LENGTH) : null);
+        }
+    }
+
+    private void throttle(long start, long bytes) throws InterruptedException {
+        long dueNanos = bytes * 1_000_000_000L / bytesPerSecond;
+        long aheadNanos = dueNanos - (System.nanoTime() - start);
+        if (aheadNanos > 0) {
+            Thread.sleep(aheadNanos / 1_000_000, (int) (aheadNanos % 1_000_000));
+        }
+    }
+
+    private long checksum(byte[] data) {
+        crc.reset();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    private static boolean matches(byte[] checksums, int slice, long value) {
+        int at = slice * CHECKSUM_LENGTH;
+        if (at + CHECKSUM_LENGTH > checksums.length) return false;
+        long stored = (checksums[at] & 0xffL) << 24 | (checksums[at + 1] & 0xffL) << 16
+                | (checksums[at + 2] & 0xffL) << 8 | (checksums[at + 3] & 0xffL);
+        return stored == value;
+    }
+
+    private static void writeChecksum(byte[] checksums, int slice, long value) {
+        int at = slice * CHECKSUM_LENGTH;
+        checksums[at] = (byte) (value >>> 24);
+        checksums[at + 1] = (byte) (value >>> 16);
+        checksums[at + 2] = (byte) (value >>> 8);
+        checksums[at + 3] = (byte) value;
+    }
+}
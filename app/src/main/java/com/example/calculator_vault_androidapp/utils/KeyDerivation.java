@@ -0,0 +1,137 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Salted, iterated derivation of the PIN key that wraps file data keys.
+ *
+ * Uses PBKDF2 with HMAC-SHA256 (implemented here, as the platform factory for it needs
+ * API 26). The iteration count is calibrated once per process by timing a short run, so
+ * unlocking takes about {@link #TARGET_UNLOCK_MS} on this device; each profile stores the
+ * salt and count it was derived with, so its key stays the same on faster or slower
+ * devices. Derivation runs once per unlock and the key is kept in
+ * {@link SessionKeyHolder}.
+ */
+public class KeyDerivation {
+
+    public static final long TARGET_UNLOCK_MS = 300;
+    static final int MIN_ITERATIONS = 10_000;
+    static final int MAX_ITERATIONS = 10_000_000;
+    public static final int SALT_LENGTH = 16;
+    private static final int KEY_LENGTH = 32;
+    // Derivations timed per calibration run, doubled until the run is long enough to trust
+    private static final int CALIBRATION_START = 1_000;
+    private static final long CALIBRATION_MIN_NANOS = 20_000_000L;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static volatile int calibratedIterations;
+
+    /**
+     * Salt and iteration count a profile's key is derived with.
+     */
+    public static final class Params {
+        public final byte[] salt;
+        public final int iterations;
+
+        public Params(byte[] salt, int iterations) {
+            this.salt = salt;
+            this.iterations = iterations;
+        }
+    }
+
+    private KeyDerivation() {}
+
+    /**
+     * @return A random salt with the iteration count calibrated for this device
+     */
+    public static Params newParams() {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return new Params(salt, getCalibratedIterations());
+    }
+
+    /**
+     * Derive the PIN key. Takes about {@link #TARGET_UNLOCK_MS} with calibrated params,
+     * so call it off the UI thread, once per unlock.
+     * @param pin The vault PIN
+     * @param params The profile's salt and iteration count
+     * @return The key, to be destroyed when the vault locks
+     */
+    public static SessionKey derive(String pin, Params params) {
+        return new SessionKey(pbkdf2(pin.getBytes(StandardCharsets.UTF_8), params.salt, params.iterations));
+    }
+
+    /**
+     * @return The iteration count that takes about {@link #TARGET_UNLOCK_MS}, measured on
+     *         first use; call early from a background thread to keep it off unlock
+     */
+    public static int getCalibratedIterations() {
+        int iterations = calibratedIterations;
+        if (iterations == 0) {
+            synchronized (KeyDerivation.class) {
+                if (calibratedIterations == 0) {
+                    calibratedIterations = calibrate(TARGET_UNLOCK_MS);
+                }
+                iterations = calibratedIterations;
+            }
+        }
+        return iterations;
+    }
+
+    /**
+     * Time short derivations and scale the count to a target duration.
+     * @param targetMillis Desired derivation time
+     * @return Iterations, clamped to [{@link #MIN_ITERATIONS}, {@link #MAX_ITERATIONS}]
+     */
+    static int calibrate(long targetMillis) {
+        byte[] password = {'0', '0', '0', '0', '0'};
+        byte[] salt = new byte[SALT_LENGTH];
+        // Warm up so the timed runs are not measuring the interpreter
+        pbkdf2(password, salt, CALIBRATION_START);
+        int iterations = CALIBRATION_START;
+        long elapsed;
+        while (true) {
+            long start = System.nanoTime();
+            pbkdf2(password, salt, iterations);
+            elapsed = System.nanoTime() - start;
+            if (elapsed >= CALIBRATION_MIN_NANOS || iterations >= MAX_ITERATIONS) break;
+            iterations *= 2;
+        }
+        long scaled = iterations * (targetMillis * 1_000_000L) / Math.max(1, elapsed);
+        return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, scaled));
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 producing one 32-byte block (RFC 8018).
+     */
+    static byte[] pbkdf2(byte[] password, byte[] salt, int iterations) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(password, "HmacSHA256"));
+            byte[] u = new byte[KEY_LENGTH];
+            byte[] key = new byte[KEY_LENGTH];
+            mac.update(salt);
+            mac.update(new byte[]{0, 0, 0, 1});
+            mac.doFinal(u, 0);
+            System.arraycopy(u, 0, key, 0, KEY_LENGTH);
+            for (int i = 1; i < iterations; i++) {
+                mac.update(u);
+                mac.doFinal(u, 0);
+                for (int j = 0; j < KEY_LENGTH; j++) {
+                    key[j] ^= u[j];
+                }
+            }
+            Arrays.fill(u, (byte) 0);
+            return key;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("HmacSHA256 not available", e);
+        }
+    }
+}
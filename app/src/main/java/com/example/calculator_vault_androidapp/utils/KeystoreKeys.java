@@ -0,0 +1,91 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Wraps app keys under an AES key kept in the Android Keystore, whose bytes never enter
+ * the app's memory or files. Each call goes to the Keystore, so wrap and unwrap a key
+ * once, off the main thread, and keep the unwrapped key in memory.
+ */
+public class KeystoreKeys {
+
+    private static final String PROVIDER = "AndroidKeyStore";
+    private static final String WRAPPING_KEY_ALIAS = "calculator_vault:key_wrap";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private KeystoreKeys() {}
+
+    /**
+     * Encrypt a key for storage.
+     * @param key Raw key bytes
+     * @return The IV followed by the sealed key, for {@link #unwrap}
+     * @throws IllegalStateException If the Keystore is not available
+     */
+    public static byte[] wrap(byte[] key) {
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            // The Keystore picks the IV
+            cipher.init(Cipher.ENCRYPT_MODE, getWrappingKey());
+            byte[] iv = cipher.getIV();
+            byte[] sealed = cipher.doFinal(key);
+            return ByteBuffer.allocate(iv.length + sealed.length).put(iv).put(sealed).array();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Android Keystore not available", e);
+        }
+    }
+
+    /**
+     * Decrypt a key from {@link #wrap}.
+     * @return Raw key bytes
+     * @throws IllegalStateException If the Keystore is not available, or the wrapping key
+     *         is not the one the bytes were sealed with
+     */
+    public static byte[] unwrap(byte[] wrapped) {
+        if (wrapped == null || wrapped.length <= IV_LENGTH) {
+            throw new IllegalStateException("Invalid wrapped key");
+        }
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, getWrappingKey(),
+                    new GCMParameterSpec(TAG_BITS, wrapped, 0, IV_LENGTH));
+            return cipher.doFinal(wrapped, IV_LENGTH, wrapped.length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Wrapped key cannot be opened on this device", e);
+        }
+    }
+
+    private static synchronized SecretKey getWrappingKey() throws GeneralSecurityException {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(PROVIDER);
+            keyStore.load(null);
+            Key key = keyStore.getKey(WRAPPING_KEY_ALIAS, null);
+            if (key instanceof SecretKey) {
+                return (SecretKey) key;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Android Keystore not available", e);
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, PROVIDER);
+        generator.init(new KeyGenParameterSpec.Builder(WRAPPING_KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size histogram of latencies with about 6% relative precision.
+ *
+ * Values are counted in log-linear buckets of microseconds: exact below 32 µs, then 16
+ * buckets per power of two. Recording is a few arithmetic operations and an array
+ * increment, so it can run on every keystroke without allocating.
+ */
+public class LatencyHistogram {
+
+    // Sub-buckets per power of two are 2^SUB_BUCKET_BITS
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values up to 2^36 µs (about 19 hours); anything longer lands in the last bucket
+    private static final int MAX_SHIFT = 31;
+    private static final int BUCKET_COUNT = (MAX_SHIFT + 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private final long jankThresholdNanos;
+    private long count;
+    private long jankCount;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * @param jankThresholdNanos Latencies above this count as janky
+     */
+    public LatencyHistogram(long jankThresholdNanos) {
+        this.jankThresholdNanos = jankThresholdNanos;
+    }
+
+    /**
+     * Record one latency.
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[bucketOf(nanos / 1000)]++;
+        count++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+        if (nanos > jankThresholdNanos) jankCount++;
+    }
+
+    /**
+     * Get a quantile, e.g. 0.95 for p95.
+     * @param q Quantile between 0 and 1
+     * @return The upper bound of the bucket holding the quantile in nanoseconds, capped at
+     *         the largest recorded value, or 0 if nothing was recorded
+     */
+    public long getQuantileNanos(double q) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(maxNanos, upperBoundOf(i) * 1000);
+            }
+        }
+        return maxNanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The number of latencies above the jank threshold
+     */
+    public long getJankCount() {
+        return jankCount;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        jankCount = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS + 1);
+        if (shift > MAX_SHIFT) {
+            return BUCKET_COUNT - 1;
+        }
+        return (shift + 1) * SUB_BUCKETS + (int) ((micros >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return The largest value in microseconds that falls in a bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
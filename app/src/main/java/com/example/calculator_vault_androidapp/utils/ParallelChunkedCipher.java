@@ -0,0 +1,207 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Seals and opens runs of {@link ChunkedCipher} chunks on several cores.
+ *
+ * Chunks have independent nonces, so a run is split into one contiguous range per
+ * worker; each range is processed by its own cipher copy straight into its place in the
+ * output, and the result is the same file a single thread would write. The calling
+ * thread takes the first range itself. Input and output must not overlap; use
+ * {@link ChunkedCipher#encryptInto} to work in place.
+ */
+public class ParallelChunkedCipher {
+
+    private static ParallelChunkedCipher instance;
+
+    private final ExecutorService pool;
+    private final int threads;
+
+    /**
+     * @return A shared instance with one worker per core
+     */
+    public static synchronized ParallelChunkedCipher getInstance() {
+        if (instance == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            instance = new ParallelChunkedCipher(Executors.newFixedThreadPool(cores, runnable -> {
+                Thread thread = new Thread(runnable, "vault-crypto");
+                thread.setDaemon(true);
+                return thread;
+            }), cores);
+        }
+        return instance;
+    }
+
+    /**
+     * @param pool Runs all but the first range of each run
+     * @param threads Ranges a run is split into, counting the calling thread
+     */
+    public ParallelChunkedCipher(ExecutorService pool, int threads) {
+        this.pool = pool;
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return One cipher per thread for a file, the given one first
+     */
+    public ChunkedCipher[] workersFor(ChunkedCipher cipher) {
+        ChunkedCipher[] workers = new ChunkedCipher[threads];
+        workers[0] = cipher;
+        for (int i = 1; i < threads; i++) {
+            workers[i] = cipher.copy();
+        }
+        return workers;
+    }
+
+    /**
+     * Encrypt consecutive chunks.
+     * @param workers From {@link #workersFor}
+     * @param firstIndex Index of the first chunk in the file
+     * @param plain Remaining bytes are split into chunks; all but the last must be full
+     * @param endsFile Whether the last chunk of the run is the last of the file
+     * @param out Receives the sealed chunks at its position, which is advanced
+     * @return Bytes written
+     */
+    public int seal(ChunkedCipher[] workers, long firstIndex, ByteBuffer plain,
+                    boolean endsFile, ByteBuffer out) throws IOException {
+        int chunkSize = workers[0].getChunkSize();
+        int length = plain.remaining();
+        int chunks = Math.max(1, (length + chunkSize - 1) / chunkSize);
+        int written = (int) (length + (long) chunks * ChunkedCipher.TAG_LENGTH);
+        run(workers, chunks, (worker, from, to) -> {
+            ByteBuffer in = plain.duplicate();
+            ByteBuffer dst = out.duplicate();
+            dst.position(out.position() + from * (chunkSize + ChunkedCipher.TAG_LENGTH));
+            for (int i = from; i < to; i++) {
+                int start = plain.position() + i * chunkSize;
+                in.limit(Math.min(plain.limit(), start + chunkSize)).position(start);
+                worker.seal(firstIndex + i, endsFile && i == chunks - 1, in, dst);
+            }
+        });
+        plain.position(plain.limit());
+        out.position(out.position() + written);
+        return written;
+    }
+
+    /**
+     * Verify and decrypt consecutive chunks.
+     * @param workers From {@link #workersFor}
+     * @param firstIndex Index of the first chunk in the file
+     * @param sealed Remaining bytes are sealed chunks; all but the last must be full
+     * @param endsFile Whether the last chunk of the run is the last of the file
+     * @param out Receives the plaintext at its position, which is advanced
+     * @return Bytes written
+     * @throws IOException If any chunk fails to verify
+     */
+    public int open(ChunkedCipher[] workers, long firstIndex, ByteBuffer sealed,
+                    boolean endsFile, ByteBuffer out) throws IOException {
+        int chunkSize = workers[0].getChunkSize();
+        int sealedChunk = chunkSize + ChunkedCipher.TAG_LENGTH;
+        int length = sealed.remaining();
+        int chunks = Math.max(1, (length + sealedChunk - 1) / sealedChunk);
+        int written = length - chunks * ChunkedCipher.TAG_LENGTH;
+        if (written < 0) {
+            throw new IOException("Truncated chunk at index " + (firstIndex + chunks - 1));
+        }
+        run(workers, chunks, (worker, from, to) -> {
+            ByteBuffer in = sealed.duplicate();
+            ByteBuffer dst = out.duplicate();
+            dst.position(out.position() + from * chunkSize);
+            for (int i = from; i < to; i++) {
+                int start = sealed.position() + i * sealedChunk;
+                in.limit(Math.min(sealed.limit(), start + sealedChunk)).position(start);
+                worker.open(firstIndex + i, endsFile && i == chunks - 1, in, dst);
+            }
+        });
+        sealed.position(sealed.limit());
+        out.position(out.position() + written);
+        return written;
+    }
+
+    /**
+     * Encrypt a whole file held in a buffer: header, then all chunks.
+     * @param key The file's data key
+     * @param plaintext All remaining bytes are encrypted
+     * @param out Needs {@link ChunkedCipher#sealedLength} bytes remaining
+     * @return Bytes written
+     */
+    public int encryptInto(SecretKey key, ByteBuffer plaintext, ByteBuffer out) throws IOException {
+        ChunkedCipher cipher = ChunkedCipher.forWriting(key, ChunkedCipher.DEFAULT_CHUNK_SIZE);
+        out.put(cipher.getHeader());
+        return ChunkedCipher.HEADER_LENGTH + seal(workersFor(cipher), 0, plaintext, true, out);
+    }
+
+    /**
+     * Verify and decrypt a whole file held in a buffer.
+     * @param key The file's data key
+     * @param sealed The file, header first, as its remaining bytes
+     * @param out Receives the plaintext
+     * @return Bytes written
+     * @throws IOException If the header is invalid or any chunk fails to verify
+     */
+    public int decryptInto(SecretKey key, ByteBuffer sealed, ByteBuffer out) throws IOException {
+        if (sealed.remaining() < ChunkedCipher.HEADER_LENGTH) {
+            throw new IOException("Buffer too short for a chunked vault header");
+        }
+        byte[] header = new byte[ChunkedCipher.HEADER_LENGTH];
+        sealed.get(header);
+        ChunkedCipher cipher = ChunkedCipher.forReading(key, header);
+        return open(workersFor(cipher), 0, sealed, true, out);
+    }
+
+    private interface RangeBody {
+        void run(ChunkedCipher worker, int from, int to) throws IOException;
+    }
+
+    private void run(ChunkedCipher[] workers, int chunks, RangeBody body) throws IOException {
+        int parts = Math.min(Math.min(threads, workers.length), chunks);
+        if (parts == 1) {
+            body.run(workers[0], 0, chunks);
+            return;
+        }
+        List<Future<Void>> futures = new ArrayList<>(parts);
+        for (int p = 1; p < parts; p++) {
+            ChunkedCipher worker = workers[p];
+            int from = chunks * p / parts;
+            int to = chunks * (p + 1) / parts;
+            futures.add(pool.submit(() -> {
+                body.run(worker, from, to);
+                return null;
+            }));
+        }
+        IOException failure = null;
+        try {
+            body.run(workers[0], 0, chunks / parts);
+        } catch (IOException e) {
+            failure = e;
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) failure = new IOException("Interrupted", e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+}
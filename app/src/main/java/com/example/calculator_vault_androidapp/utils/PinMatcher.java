@@ -0,0 +1,257 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+
+/**
+ * Watches typed digits for the PIN of any vault profile.
+ *
+ * Keeps the last few digits of the current run in a ring, so a PIN is found anywhere
+ * in a longer number. The stored hashes are held in memory in an open-addressing table
+ * keyed by the first eight bytes of each hash; each keystroke computes the
+ * {@link PinVerifier} hash of the last five digits into preallocated buffers and probes
+ * the table once, so checking costs the same with one profile or many, with no database
+ * access. The table is rebuilt and swapped as a whole by {@link #setPinHash}.
+ * {@link #setVerifier} must be called before any hash is set.
+ * {@link #onDigit} and the other keystroke methods must be called from one thread.
+ */
+public class PinMatcher {
+
+    private static final int PIN_LENGTH = 5;
+    // Digits remembered so a few backspaces can be undone; a power of two
+    private static final int CAPACITY = 8;
+    private static final int HASH_LENGTH = 32;
+
+    private static PinMatcher instance;
+
+    // Replaced as a whole so keystrokes never see a partially built table
+    private volatile Index index = Index.EMPTY;
+    private volatile boolean loaded;
+    // Decoded hashes by profile id, guarded by this
+    private final Map<Integer, byte[]> hashes = new LinkedHashMap<>();
+    private PinVerifier verifier;
+
+    private final byte[] ring = new byte[CAPACITY];
+    private final byte[] window = new byte[PIN_LENGTH];
+    private final byte[] hash = new byte[HASH_LENGTH];
+    // Position after the newest digit, and how many trailing digits in the ring are valid
+    private int end;
+    private int known;
+    private int matchedProfile = -1;
+
+    public static synchronized PinMatcher getInstance() {
+        if (instance == null) {
+            instance = new PinMatcher();
+        }
+        return instance;
+    }
+
+    PinMatcher() {}
+
+    /**
+     * Set the key stored hashes are computed with.
+     */
+    public synchronized void setVerifier(PinVerifier verifier) {
+        this.verifier = verifier;
+        index = Index.build(hashes, verifier);
+    }
+
+    /**
+     * Set the stored hashes once they have been read from the database. Ignored if a hash
+     * has already been set, so a slow initial load cannot undo a later PIN change.
+     * @param hexHashes {@link PinVerifier} hashes of the PINs as hex strings, by profile id
+     */
+    public synchronized void loadPinHashes(Map<Integer, String> hexHashes) {
+        if (!loaded) {
+            for (Map.Entry<Integer, String> entry : hexHashes.entrySet()) {
+                putHash(entry.getKey(), entry.getValue());
+            }
+            index = Index.build(hashes, verifier);
+            loaded = true;
+        }
+    }
+
+    /**
+     * Replace the stored hash of one profile, e.g. after its PIN is changed.
+     * @param profileId The vault profile
+     * @param hexHash The {@link PinVerifier} hash of the PIN as a hex string, or null to remove it
+     */
+    public synchronized void setPinHash(int profileId, String hexHash) {
+        putHash(profileId, hexHash);
+        index = Index.build(hashes, verifier);
+        loaded = true;
+    }
+
+    /**
+     * @return true once a hash has been loaded or set
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Record a typed digit.
+     * @param digit '0' to '9'
+     * @return true if the last five digits are the PIN of a profile
+     */
+    public boolean onDigit(char digit) {
+        ring[end] = (byte) digit;
+        end = (end + 1) & (CAPACITY - 1);
+        if (known < CAPACITY) known++;
+        return matches();
+    }
+
+    /**
+     * Forget the newest digit, if it is still remembered.
+     */
+    public void backspace() {
+        if (known > 0) {
+            known--;
+            end = (end - 1) & (CAPACITY - 1);
+        }
+    }
+
+    /**
+     * Forget all digits, e.g. when anything other than a digit is typed.
+     */
+    public void reset() {
+        known = 0;
+    }
+
+    /**
+     * @return The last five digits, i.e. the PIN right after {@link #onDigit} returned true
+     */
+    public String getWindow() {
+        return new String(window, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return The profile whose PIN was typed, right after {@link #onDigit} returned true
+     */
+    public int getMatchedProfile() {
+        return matchedProfile;
+    }
+
+    private boolean matches() {
+        Index current = index;
+        if (current.size == 0 || known < PIN_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < PIN_LENGTH; i++) {
+            window[i] = ring[(end - PIN_LENGTH + i) & (CAPACITY - 1)];
+        }
+        // Only this thread uses the table's Mac
+        current.mac.update(window, 0, PIN_LENGTH);
+        try {
+            current.mac.doFinal(hash, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        int profile = current.find(hash);
+        if (profile < 0) {
+            return false;
+        }
+        matchedProfile = profile;
+        return true;
+    }
+
+    private void putHash(int profileId, String hexHash) {
+        byte[] decoded = decodeHex(hexHash);
+        if (decoded == null) {
+            hashes.remove(profileId);
+        } else {
+            hashes.put(profileId, decoded);
+        }
+    }
+
+    private static byte[] decodeHex(String hex) {
+        if (hex == null || hex.length() != HASH_LENGTH * 2) {
+            return null;
+        }
+        byte[] bytes = new byte[HASH_LENGTH];
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private static long keyOf(byte[] hash) {
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            key = (key << 8) | (hash[i] & 0xff);
+        }
+        return key;
+    }
+
+    /**
+     * Immutable open-addressing table from PIN hash to profile id, with the Mac that
+     * computes the hashes. Hashes are already uniformly distributed, so their first bytes
+     * serve as the table key directly.
+     */
+    private static final class Index {
+        static final Index EMPTY = new Index(0, null);
+
+        final long[] keys;
+        final byte[][] hashes;
+        final int[] profiles;
+        final int size;
+        final Mac mac;
+
+        private Index(int size, Mac mac) {
+            // At most half full, so probes stay short
+            int capacity = Integer.highestOneBit(Math.max(1, size) * 2) * 2;
+            keys = new long[capacity];
+            hashes = new byte[capacity][];
+            profiles = new int[capacity];
+            this.size = size;
+            this.mac = mac;
+        }
+
+        static Index build(Map<Integer, byte[]> byProfile, PinVerifier verifier) {
+            if (byProfile.isEmpty()) {
+                return EMPTY;
+            }
+            if (verifier == null) {
+                throw new IllegalStateException("PIN verifier not set");
+            }
+            Index built = new Index(byProfile.size(), verifier.newMac());
+            int mask = built.keys.length - 1;
+            for (Map.Entry<Integer, byte[]> entry : byProfile.entrySet()) {
+                byte[] hash = entry.getValue();
+                long key = keyOf(hash);
+                int slot = (int) key & mask;
+                while (built.hashes[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                built.keys[slot] = key;
+                built.hashes[slot] = hash;
+                built.profiles[slot] = entry.getKey();
+            }
+            return built;
+        }
+
+        /**
+         * @return The profile with this hash, or -1
+         */
+        int find(byte[] hash) {
+            long key = keyOf(hash);
+            int mask = keys.length - 1;
+            for (int slot = (int) key & mask; hashes[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key && MessageDigest.isEqual(hashes[slot], hash)) {
+                    return profiles[slot];
+                }
+            }
+            return -1;
+        }
+    }
+}
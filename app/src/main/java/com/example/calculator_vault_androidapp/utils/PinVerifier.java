@@ -0,0 +1,123 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes the value stored to check a PIN: an HMAC-SHA256 of the PIN under a random key
+ * stored wrapped by a key held in the Android Keystore, see {@link KeystoreKeys}.
+ *
+ * Five digits are only 100,000 guesses, so no hash of the PIN alone, salted or slow, keeps
+ * it from anyone holding the database. The wrapping key never leaves the Keystore, so the
+ * stored values can only be checked on this device. The key is unwrapped once and used
+ * in memory, so a keystroke costs an in-process HMAC, never a Keystore call. Thread-safe.
+ */
+public class PinVerifier {
+
+    public static final int KEY_LENGTH = 32;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int PIN_SPACE = 100_000;
+
+    private final SecretKey key;
+
+    /**
+     * @param key HMAC-SHA256 key
+     */
+    public PinVerifier(SecretKey key) {
+        this.key = key;
+    }
+
+    /**
+     * @param key Raw key bytes, normally from {@link #newKey} by way of {@link KeystoreKeys#unwrap}
+     */
+    public PinVerifier(byte[] key) {
+        this(new SecretKeySpec(key, ALGORITHM));
+    }
+
+    /**
+     * @return A new random key of {@link #KEY_LENGTH} bytes, to be stored only wrapped
+     */
+    public static byte[] newKey() {
+        byte[] key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    /**
+     * @param pin The PIN
+     * @return The verifier to store for it, as a hex string
+     */
+    public String hash(String pin) {
+        return toHex(newMac().doFinal(pin.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Check a PIN against a stored verifier in constant time.
+     * @param pin The PIN entered by the user
+     * @param stored The stored verifier, or null
+     * @return true if the PIN matches
+     */
+    public boolean verify(String pin, String stored) {
+        if (pin == null || stored == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(hash(pin).getBytes(StandardCharsets.US_ASCII),
+                stored.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return A Mac initialised with the key, for callers that hash many PINs on one thread
+     */
+    Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PIN verifier key not usable", e);
+        }
+    }
+
+    /**
+     * Find the PIN behind a hash stored before keyed verifiers, a plain SHA-256 of the PIN,
+     * so it can be replaced by {@link #hash}. That this takes milliseconds is why they were
+     * replaced.
+     * @param legacyHash The SHA-256 of the PIN as a hex string
+     * @return The 5-digit PIN, or null if no PIN has this hash
+     */
+    public static String recoverLegacyPin(String legacyHash) {
+        if (legacyHash == null) return null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] pin = new byte[5];
+            for (int candidate = 0; candidate < PIN_SPACE; candidate++) {
+                int rest = candidate;
+                for (int i = pin.length - 1; i >= 0; i--) {
+                    pin[i] = (byte) ('0' + rest % 10);
+                    rest /= 10;
+                }
+                if (toHex(digest.digest(pin)).equals(legacyHash)) {
+                    return new String(pin, StandardCharsets.US_ASCII);
+                }
+            }
+            return null;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+
+/**
+ * AES key whose bytes can be wiped, unlike {@link javax.crypto.spec.SecretKeySpec}.
+ */
+public class SessionKey implements SecretKey {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] key;
+    private volatile boolean destroyed;
+
+    /**
+     * @param key Key bytes, owned by this object from now on
+     */
+    public SessionKey(byte[] key) {
+        this.key = key;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return "AES";
+    }
+
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    @Override
+    public byte[] getEncoded() {
+        if (destroyed) {
+            throw new IllegalStateException("Key has been destroyed");
+        }
+        return key.clone();
+    }
+
+    /**
+     * Overwrite the key bytes. Ciphers initialised with the key before keep working.
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+        Arrays.fill(key, (byte) 0);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    // SecretKey is Serializable, but the PIN key must never be written anywhere
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        throw new NotSerializableException("SessionKey");
+    }
+}
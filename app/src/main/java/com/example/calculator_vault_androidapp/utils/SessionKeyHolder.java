@@ -0,0 +1,62 @@
+package com.example.calculator_vault_androidapp.utils;
+
+/**
+ * Holds the PIN key of the open vault between unlock and lock.
+ *
+ * VaultActivity derives the key once when it opens and stores it here; every file
+ * operation after that reuses it without deriving again. {@link #wipe} destroys it when
+ * the vault is locked or closed.
+ */
+public class SessionKeyHolder {
+
+    private static SessionKeyHolder instance;
+
+    private SessionKey key;
+    private int profileId;
+
+    public static synchronized SessionKeyHolder getInstance() {
+        if (instance == null) {
+            instance = new SessionKeyHolder();
+        }
+        return instance;
+    }
+
+    SessionKeyHolder() {}
+
+    /**
+     * Store the key of a newly unlocked profile, replacing any other.
+     */
+    public synchronized void open(int profileId, SessionKey key) {
+        wipe();
+        this.profileId = profileId;
+        this.key = key;
+    }
+
+    /**
+     * @return true if a key for this profile is held
+     */
+    public synchronized boolean isOpen(int profileId) {
+        return key != null && this.profileId == profileId;
+    }
+
+    /**
+     * @return The PIN key of the profile
+     * @throws IllegalStateException If the profile is not unlocked
+     */
+    public synchronized SessionKey get(int profileId) {
+        if (!isOpen(profileId)) {
+            throw new IllegalStateException("Vault is locked");
+        }
+        return key;
+    }
+
+    /**
+     * Destroy the held key.
+     */
+    public synchronized void wipe() {
+        if (key != null) {
+            key.destroy();
+            key = null;
+        }
+    }
+}
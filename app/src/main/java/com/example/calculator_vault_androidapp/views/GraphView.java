@@ -0,0 +1,154 @@
+package com.example.calculator_vault_androidapp.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import com.example.calculator_vault_androidapp.engine.BatchEvaluator;
+import com.example.calculator_vault_androidapp.engine.CompiledExpression;
+
+/**
+ * Plots a function of x across the visible range. Drag to pan, pinch to zoom.
+ * Every frame re-samples the function through a {@link BatchEvaluator}, so the curve
+ * stays sharp at any zoom level.
+ */
+public class GraphView extends View {
+
+    // Samples per horizontal pixel
+    private static final int SAMPLES_PER_PIXEL = 2;
+    private static final double MIN_UNITS_PER_PIXEL = 1e-9;
+    private static final double MAX_UNITS_PER_PIXEL = 1e9;
+
+    private final BatchEvaluator batchEvaluator = new BatchEvaluator();
+    private final Paint axisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint curvePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+
+    private CompiledExpression function;
+
+    // Visible range: the point at the center of the view and the zoom level
+    private double centerX = 0;
+    private double centerY = 0;
+    private double unitsPerPixel = 0.02;
+
+    // Line segment endpoints for Canvas.drawLines, reused between frames
+    private float[] segments = new float[0];
+
+    public GraphView(Context context) {
+        this(context, null);
+    }
+
+    public GraphView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        axisPaint.setColor(Color.GRAY);
+        axisPaint.setStrokeWidth(2f);
+        curvePaint.setColor(0xFFFF9800);
+        curvePaint.setStrokeWidth(4f);
+
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                double zoomed = unitsPerPixel / detector.getScaleFactor();
+                unitsPerPixel = Math.max(MIN_UNITS_PER_PIXEL, Math.min(MAX_UNITS_PER_PIXEL, zoomed));
+                invalidate();
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                centerX += distanceX * unitsPerPixel;
+                centerY -= distanceY * unitsPerPixel;
+                invalidate();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Set the function to plot.
+     * @param function A function compiled with compileFunction, or null to show only the axes
+     */
+    public void setFunction(CompiledExpression function) {
+        this.function = function;
+        invalidate();
+    }
+
+    /**
+     * Stop the evaluation threads. Call when the hosting activity is destroyed.
+     */
+    public void release() {
+        batchEvaluator.shutdown();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+        if (!scaleDetector.isInProgress()) {
+            gestureDetector.onTouchEvent(event);
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        int height = getHeight();
+        if (width < 2 || height < 2) return;
+
+        double xMin = centerX - width / 2.0 * unitsPerPixel;
+        double xMax = centerX + width / 2.0 * unitsPerPixel;
+
+        // Axes
+        float axisX = (float) (-xMin / unitsPerPixel);
+        float axisY = (float) toScreenY(0, height);
+        canvas.drawLine(0, axisY, width, axisY, axisPaint);
+        canvas.drawLine(axisX, 0, axisX, height, axisPaint);
+
+        if (function == null) return;
+
+        int count = width * SAMPLES_PER_PIXEL;
+        double[] ys = batchEvaluator.sample(function, xMin, xMax, count);
+        if (segments.length < (count - 1) * 4) {
+            segments = new float[(count - 1) * 4];
+        }
+
+        float step = (float) (width - 1) / (count - 1);
+        int length = 0;
+        double previous = toScreenY(ys[0], height);
+        for (int i = 1; i < count; i++) {
+            double current = toScreenY(ys[i], height);
+            // Skip gaps (NaN, infinity) and jumps across poles such as tan at π/2
+            if (isDrawable(previous, height) && isDrawable(current, height)
+                    && Math.abs(current - previous) < height) {
+                segments[length++] = (i - 1) * step;
+                segments[length++] = (float) previous;
+                segments[length++] = i * step;
+                segments[length++] = (float) current;
+            }
+            previous = current;
+        }
+        canvas.drawLines(segments, 0, length, curvePaint);
+    }
+
+    private double toScreenY(double y, int height) {
+        return height / 2.0 - (y - centerY) / unitsPerPixel;
+    }
+
+    private static boolean isDrawable(double screenY, int height) {
+        return !Double.isNaN(screenY) && screenY > -height && screenY < 2.0 * height;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link BatchEvaluator} and {@link CompiledExpression#evaluateBatch}.
+ */
+public class BatchEvaluatorTest {
+
+    private final ExpressionEvaluator compiler = new ExpressionEvaluator();
+
+    @Test
+    public void batch_matchesScalarEvaluation() {
+        String[] functions = {"x^2-2*x+1", "sin(x)*cos(2*x)", "-x", "√(x*x+1)", "pow(x,3)-x!", "1/x", "3"};
+        double[] xs = new double[1000];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = (i - 500) / 37.0;
+        }
+        double[] ys = new double[xs.length];
+        double[] stack = new double[16];
+        for (String f : functions) {
+            CompiledExpression compiled = compiler.compileFunction(f);
+            compiled.evaluateBatch(xs, ys, 0, xs.length, new double[compiled.getBatchScratchSize()]);
+            for (int i = 0; i < xs.length; i++) {
+                double expected;
+                try {
+                    expected = compiled.evaluate(stack, xs[i]);
+                } catch (ArithmeticException e) {
+                    // Division by zero is a gap in a batch rather than an error
+                    assertTrue(Double.isInfinite(ys[i]) || Double.isNaN(ys[i]));
+                    continue;
+                }
+                assertEquals(f + " at " + xs[i], expected, ys[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void denseSamples_areSplitAcrossThreads() {
+        BatchEvaluator evaluator = new BatchEvaluator(4);
+        try {
+            CompiledExpression f = compiler.compileFunction("x*x+1");
+            int count = BatchEvaluator.PARALLEL_THRESHOLD * 3 + 7;
+            double[] ys = evaluator.sample(f, -1, 1, count);
+            double step = 2.0 / (count - 1);
+            for (int i = 0; i < count; i++) {
+                double x = -1 + i * step;
+                assertEquals(x * x + 1, ys[i], 0);
+            }
+            assertSame(ys, evaluator.sample(f, -2, 2, count));
+        } finally {
+            evaluator.shutdown();
+        }
+    }
+
+    @Test
+    public void variable_isOnlyAllowedInFunctions() {
+        assertTrue(compiler.compileFunction("x-1").usesVariable());
+        assertEquals(2, compiler.compileFunction("x-1").evaluate(new double[4], 3), 0);
+        try {
+            compiler.compile("x-1");
+            fail("x outside a function should not compile");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for exact decimal evaluation.
+ */
+public class ExactEvaluationTest {
+
+    private final ExpressionEvaluator evaluator = new ExpressionEvaluator();
+    private final double[] stack = new double[64];
+
+    private BigDecimal exact(String expr) {
+        return evaluator.compile(expr).evaluateExact(stack, MathContext.DECIMAL128);
+    }
+
+    @Test
+    public void decimalFractions_areExact() {
+        assertEquals(0, new BigDecimal("0.3").compareTo(exact("0.1+0.2")));
+        assertEquals(0, new BigDecimal("-1.1").compareTo(exact("-(0.5+0.6)")));
+        assertEquals(0, new BigDecimal("0.75").compareTo(exact("3÷4")));
+    }
+
+    @Test
+    public void largeIntegerProducts_areExact() {
+        assertEquals(new BigDecimal("121932631137021071359549253925"),
+                exact("123456789012345×987654321098765"));
+        assertEquals(new BigDecimal("10000000000000000"), exact("100000000×100000000"));
+    }
+
+    @Test
+    public void smallIntegers_takeFastPath() {
+        CompiledExpression compiled = evaluator.compile("12×(3+4)-5÷5");
+        assertTrue(compiled.hasIntegerConstants());
+        assertEquals(BigDecimal.valueOf(83), compiled.evaluateExact(stack, MathContext.DECIMAL128));
+        assertFalse(evaluator.compile("1.5+1").hasIntegerConstants());
+    }
+
+    @Test
+    public void inexactDivision_fallsBackToDecimal() {
+        BigDecimal result = exact("1÷3");
+        assertEquals(34, result.precision());
+        assertEquals(0, new BigDecimal("3.5").compareTo(exact("7÷2")));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void divisionByZero_throws() {
+        exact("1.5÷0");
+    }
+
+    @Test
+    public void functions_areExactWhereTheyCanBe() {
+        assertEquals(0, new BigDecimal("0.01").compareTo(exact("0.1²")));
+        assertEquals(0, new BigDecimal("1.21").compareTo(exact("1.1^2")));
+        assertEquals(0, new BigDecimal("1.5").compareTo(exact("√2.25")));
+        assertEquals(0, new BigDecimal("2432902008176640000").compareTo(exact("20!")));
+        assertEquals(0, new BigDecimal("0.125").compareTo(exact("2^-3")));
+        assertEquals(0, new BigDecimal("3").compareTo(exact("√9")));
+        assertEquals(new BigDecimal("1.414213562373095048801688724209698"), exact("√2"));
+        assertEquals(Math.sin(1), exact("sin(1)").doubleValue(), 0);
+    }
+
+    @Test
+    public void integerPowers_takeFastPath() {
+        CompiledExpression compiled = evaluator.compile("2^10+3!-4²");
+        assertTrue(compiled.hasIntegerConstants());
+        assertEquals(BigDecimal.valueOf(1014), compiled.evaluateExact(new double[8], MathContext.DECIMAL128));
+    }
+
+    @Test
+    public void integersAroundTwoToThe53_areExact() {
+        assertFalse(evaluator.compile("9007199254740993").hasIntegerConstants());
+        assertFalse(evaluator.compile("9007199254740992+1").hasIntegerConstants());
+        assertTrue(evaluator.compile("9007199254740991").hasIntegerConstants());
+        assertEquals(new BigDecimal("9007199254740993"), exact("9007199254740993"));
+        assertEquals(new BigDecimal("9007199254740993"), exact("9007199254740992+1"));
+        assertEquals(new BigDecimal("9007199254740992"), exact("9007199254740993-1"));
+        assertEquals(new BigDecimal("-9007199254740993"), exact("-9007199254740993"));
+        // Operands below 2^53 whose result reaches it leave the fast path
+        assertEquals(new BigDecimal("9007199254740993"), exact("9007199254740991+2"));
+        assertEquals(new BigDecimal("9007199254740992"), exact("9007199254740991+1"));
+        assertEquals(new BigDecimal("18014398509481983"), exact("9007199254740991×2+1"));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void factorialOfFraction_throws() {
+        exact("2.5!");
+    }
+
+    @Test
+    public void repeatedEvaluation_onSharedStack_isStable() {
+        CompiledExpression integers = evaluator.compile("12×(3+4)-5÷5+100×7");
+        CompiledExpression decimals = evaluator.compile("1.2×(3.4+4.5)-5.6÷7+100.25×7");
+        assertTrue(integers.hasIntegerConstants());
+        assertFalse(decimals.hasIntegerConstants());
+
+        // Alternate the fast and decimal paths over the same stack
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(BigDecimal.valueOf(783), integers.evaluateExact(stack, MathContext.DECIMAL128));
+            assertEquals(0, new BigDecimal("710.43").compareTo(decimals.evaluateExact(stack, MathContext.DECIMAL128)));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ExpressionBuffer}.
+ */
+public class ExpressionBufferTest {
+
+    @Test
+    public void functions_areKeptAsTokens() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.appendToNumber('9');
+        buffer.applyFunction('√');
+        buffer.appendOperator('+');
+        buffer.appendToNumber('2');
+        buffer.applyFunction('²');
+
+        assertEquals("√9+2²", buffer.getDisplay().toString());
+        assertEquals("√9+2²", buffer.getEvalExpression().toString());
+        assertEquals(ExpressionBuffer.FUNCTION_RESULT, buffer.getLastType());
+        assertEquals(7, new ExpressionEvaluator().evaluate(buffer.getEvalExpression()), 0);
+    }
+
+    @Test
+    public void functions_wrapNegativeAndNestedOperands() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.appendNumber("-3");
+        buffer.applyFunction('²');
+        assertEquals("(-3)²", buffer.getDisplay().toString());
+        assertEquals(9, new ExpressionEvaluator().evaluate(buffer.getEvalExpression()), 0);
+
+        buffer.applyFunction('√');
+        assertEquals("√((-3)²)", buffer.getDisplay().toString());
+
+        buffer.backspace();
+        assertEquals("(-3)²", buffer.getDisplay().toString());
+        assertEquals(ExpressionBuffer.FUNCTION_RESULT, buffer.getLastType());
+        buffer.backspace();
+        assertTrue(buffer.currentNumberEquals("-3"));
+    }
+
+    @Test
+    public void backspace_restoresPreviousToken() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.appendToNumber('1');
+        buffer.appendToNumber('2');
+        buffer.appendOperator('×');
+        buffer.appendToNumber('9');
+        buffer.applyFunction('√');
+
+        buffer.backspace();
+        assertEquals("12×9", buffer.getDisplay().toString());
+        assertEquals("12×9", buffer.getEvalExpression().toString());
+
+        buffer.backspace();
+        buffer.backspace();
+        assertTrue(buffer.currentNumberEquals("12"));
+        assertFalse(buffer.currentNumberHasDecimal());
+    }
+
+    @Test
+    public void parentheses_areCounted() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.openParen();
+        buffer.openParen();
+        buffer.appendToNumber('1');
+        buffer.closeParen();
+        assertEquals(1, buffer.getOpenParenCount());
+
+        buffer.backspace();
+        assertEquals(2, buffer.getOpenParenCount());
+
+        buffer.closeAllParens();
+        assertEquals("((1))", buffer.getDisplay().toString());
+        assertEquals(0, buffer.getOpenParenCount());
+    }
+
+    @Test
+    public void replaceCurrentNumber_andOperator() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.appendToNumber('5');
+        buffer.appendOperator('+');
+        buffer.replaceLastOperator('÷');
+        buffer.appendToNumber('4');
+        buffer.replaceCurrentNumber("-4");
+        assertEquals("5÷-4", buffer.getDisplay().toString());
+        assertEquals(ExpressionBuffer.NUMBER, buffer.getLastType());
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        assertEquals("", buffer.getCurrentNumber());
+    }
+
+    @Test
+    public void appendExpression_normalizesAndContinuesInput() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.appendExpression(" (12.5 + 3) * 4 / -2\n");
+        assertEquals("(12.5+3)×4÷-2", buffer.getDisplay().toString());
+        assertEquals(ExpressionBuffer.NUMBER, buffer.getLastType());
+        assertEquals("-2", buffer.getCurrentNumber());
+
+        buffer.appendExpression("(1)2 - -(3)");
+        assertEquals("(12.5+3)×4÷-2×(1)×2--(3)", buffer.getDisplay().toString());
+        assertEquals(-59, new ExpressionEvaluator().evaluate(buffer.getEvalExpression()), 0);
+
+        buffer.clear();
+        buffer.appendToNumber('-');
+        buffer.appendExpression("5^2");
+        assertEquals("-5^2", buffer.getDisplay().toString());
+        assertEquals(-25, new ExpressionEvaluator().evaluate(buffer.getEvalExpression()), 0);
+
+        // Typing continues from pasted tokens, and backspace removes them one at a time
+        buffer.clear();
+        buffer.appendExpression("2×(3");
+        assertEquals(1, buffer.getOpenParenCount());
+        buffer.appendToNumber('4');
+        buffer.backspace();
+        buffer.backspace();
+        buffer.backspace();
+        assertEquals("2×", buffer.getDisplay().toString());
+        assertEquals(0, buffer.getOpenParenCount());
+    }
+
+    @Test
+    public void appendExpression_keepsFunctionsWithTheirOperand() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.appendExpression("√(√16)+(-3)²×2√9");
+        assertEquals("√(√16)+(-3)²×2×√9", buffer.getDisplay().toString());
+        assertEquals(ExpressionBuffer.FUNCTION_RESULT, buffer.getLastType());
+        assertEquals(0, buffer.getOpenParenCount());
+        assertEquals(2 + 9 * 2 * 3, new ExpressionEvaluator().evaluate(buffer.getEvalExpression()), 0);
+
+        // Backspace unwraps a pasted result just like a typed one
+        buffer.backspace();
+        assertEquals("√(√16)+(-3)²×2×9", buffer.getDisplay().toString());
+        assertEquals(ExpressionBuffer.NUMBER, buffer.getLastType());
+
+        // Digits continue a typed number, then ² applies to the whole number
+        buffer.clear();
+        buffer.appendToNumber('1');
+        buffer.appendExpression("2²");
+        assertEquals("12²", buffer.getDisplay().toString());
+        assertEquals(ExpressionBuffer.FUNCTION_RESULT, buffer.getLastType());
+        buffer.backspace();
+        assertEquals("12", buffer.getCurrentNumber());
+    }
+
+    @Test
+    public void appendExpression_rejectsInvalidTextUnchanged() {
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.openParen();
+        buffer.appendToNumber('1');
+        buffer.appendOperator('+');
+        String[] invalid = {")", "1 2", "1.2.3", "*3", "3+", ".", "-", "4+-", "2))", "2,5", "x", "²", "√", "2)²+"};
+        for (String text : invalid) {
+            try {
+                buffer.appendExpression(text);
+                fail("Accepted " + text);
+            } catch (IllegalArgumentException expected) {
+                assertEquals("(1+", buffer.getDisplay().toString());
+                assertEquals(1, buffer.getOpenParenCount());
+                assertEquals(ExpressionBuffer.OPERATOR, buffer.getLastType());
+            }
+        }
+    }
+
+    @Test
+    public void appendExpression_rejectedPostfixLeavesTokensIntact() {
+        for (String invalid : new String[] {"²+x", "!+x", "²²)"}) {
+            ExpressionBuffer buffer = new ExpressionBuffer();
+            buffer.openParen();
+            buffer.appendToNumber('2');
+            buffer.appendOperator('+');
+            buffer.appendToNumber('3');
+            buffer.closeParen();
+            try {
+                buffer.appendExpression(invalid);
+                fail("Accepted " + invalid);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+            assertEquals("(2+3)", buffer.getDisplay().toString());
+            assertEquals(ExpressionBuffer.CLOSE_PAREN, buffer.getLastType());
+
+            buffer.backspace();
+            assertEquals("(2+3", buffer.getDisplay().toString());
+            assertEquals("3", buffer.getCurrentNumber());
+            buffer.backspace();
+            buffer.backspace();
+            assertEquals("(2", buffer.getDisplay().toString());
+            assertEquals("2", buffer.getCurrentNumber());
+        }
+    }
+
+    @Test
+    public void appendExpression_megabytePasteIsReadWhole() {
+        String unit = "12.5 + 3 * (4 - 1.25) / 7 - ";
+        StringBuilder flat = new StringBuilder();
+        StringBuilder flatDisplay = new StringBuilder();
+        int units = 0;
+        while (flat.length() < 1 << 20) {
+            flat.append(unit);
+            flatDisplay.append("12.5+3×(4-1.25)÷7-");
+            units++;
+        }
+        flat.append('1');
+        flatDisplay.append('1');
+        StringBuilder nested = new StringBuilder();
+        int depth = 100_000;
+        for (int i = 0; i < depth; i++) nested.append("(1+");
+        nested.append('0');
+        for (int i = 0; i < depth; i++) nested.append(')');
+
+        ExpressionBuffer buffer = new ExpressionBuffer();
+        buffer.appendExpression(flat);
+        assertEquals(flatDisplay.toString(), buffer.getDisplay().toString());
+        assertEquals(ExpressionBuffer.NUMBER, buffer.getLastType());
+        assertEquals(0, buffer.getOpenParenCount());
+        double expected = 12.5 - (units - 1) * 12.5 + units * (3 * 2.75 / 7) - 1;
+        double plain = new ExpressionEvaluator().evaluate(buffer.getEvalExpression());
+        assertEquals(expected, plain, Math.abs(expected) * 1e-9);
+        assertEquals(plain, new IncrementalEvaluator().evaluate(buffer.getEvalExpression()), 0);
+
+        buffer = new ExpressionBuffer();
+        buffer.appendExpression(nested);
+        assertEquals(nested.toString(), buffer.getDisplay().toString());
+        assertEquals(ExpressionBuffer.CLOSE_PAREN, buffer.getLastType());
+        assertEquals(0, buffer.getOpenParenCount());
+        assertEquals(depth, new ExpressionEvaluator().evaluate(buffer.getEvalExpression()), 0);
+        assertEquals(depth, new IncrementalEvaluator().evaluate(buffer.getEvalExpression()), 0);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ExpressionCache} and {@link CompiledExpression}.
+ */
+public class ExpressionCacheTest {
+
+    private static final double DELTA = 1e-12;
+
+    @Test
+    public void compiledExpression_matchesDirectEvaluation() {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        String[] expressions = {"2+3*4", "(2+3)×4", "6÷-(2)", "-(2+3)×4", "0.1+0.2", "3×(1+2", ""};
+        for (String expr : expressions) {
+            assertEquals(expr, evaluator.evaluate(expr), evaluator.compile(expr).evaluate(), DELTA);
+        }
+    }
+
+    @Test
+    public void equivalentSpellings_shareAnEntry() {
+        ExpressionCache cache = new ExpressionCache(8);
+        CompiledExpression first = cache.get("2 × 3");
+        assertSame(first, cache.get("2*3"));
+        assertEquals(6, cache.evaluate("2×3"), DELTA);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvicted() {
+        ExpressionCache cache = new ExpressionCache(2);
+        CompiledExpression a = cache.get("1+1");
+        cache.get("2+2");
+        cache.get("1+1");
+        cache.get("3+3");
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("1+1"));
+    }
+
+    @Test
+    public void warmUp_skipsMalformedEntries() {
+        ExpressionCache cache = new ExpressionCache(8);
+        cache.warmUp(Arrays.asList("1+2", "√9", null, "1.2.3", "4×5"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test(timeout = 10_000)
+    public void warmUp_doesNotBlockLookups() throws InterruptedException {
+        ExpressionCache cache = new ExpressionCache(8);
+        CountDownLatch warming = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Stalls the warm-up on its last entry until the lookup below is done
+        List<String> history = new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index == 0) {
+                    warming.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return "1+" + index;
+            }
+
+            @Override
+            public int size() {
+                return 3;
+            }
+        };
+        Thread warmUp = new Thread(() -> cache.warmUp(history));
+        warmUp.start();
+        warming.await();
+
+        assertEquals(4, cache.evaluate("2×2"), 0);
+        release.countDown();
+        warmUp.join();
+        assertEquals(4, cache.size());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void compiledDivisionByZero_throws() {
+        new ExpressionEvaluator().compile("1÷(2-2)").evaluate();
+    }
+}
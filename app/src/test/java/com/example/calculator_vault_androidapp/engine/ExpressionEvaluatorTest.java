@@ -0,0 +1,137 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ExpressionEvaluator}.
+ */
+public class ExpressionEvaluatorTest {
+
+    private static final double DELTA = 1e-12;
+
+    private final ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+    @Test
+    public void precedence_isRespected() {
+        assertEquals(14, evaluator.evaluate("2+3*4"), DELTA);
+        assertEquals(20, evaluator.evaluate("(2+3)*4"), DELTA);
+        assertEquals(1, evaluator.evaluate("8-4-3"), DELTA);
+        assertEquals(1, evaluator.evaluate("8/4/2"), DELTA);
+    }
+
+    @Test
+    public void displayOperators_areAccepted() {
+        assertEquals(6, evaluator.evaluate("2×3"), DELTA);
+        assertEquals(2.5, evaluator.evaluate("5÷2"), DELTA);
+    }
+
+    @Test
+    public void unaryMinus_isHandled() {
+        assertEquals(-5, evaluator.evaluate("-5"), DELTA);
+        assertEquals(-6, evaluator.evaluate("2×-3"), DELTA);
+        assertEquals(-3, evaluator.evaluate("6÷-(2)"), DELTA);
+        assertEquals(-20, evaluator.evaluate("-(2+3)×4"), DELTA);
+        assertEquals(1, evaluator.evaluate("(-2+3)"), DELTA);
+    }
+
+    @Test
+    public void decimals_matchParseDouble() {
+        String[] numbers = {"0.1", "0.2", "3.14159", "123456.789", "0.000001", "9007199254740993",
+                "1.23456789012345678901234"};
+        for (String n : numbers) {
+            assertEquals(Double.parseDouble(n), evaluator.evaluate(n), 0);
+        }
+        assertEquals(0.1 + 0.2, evaluator.evaluate("0.1+0.2"), 0);
+    }
+
+    @Test
+    public void unclosedParentheses_areClosedAtEnd() {
+        assertEquals(9, evaluator.evaluate("3×(1+2"), DELTA);
+    }
+
+    @Test
+    public void emptyExpression_isZero() {
+        assertEquals(0, evaluator.evaluate(""), 0);
+    }
+
+    @Test
+    public void evaluator_isReusableAcrossLongExpressions() {
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 0; i < 1000; i++) {
+            sb.append("+(1");
+        }
+        for (int i = 0; i < 1000; i++) {
+            sb.append(')');
+        }
+        assertEquals(1001, evaluator.evaluate(sb), DELTA);
+        assertEquals(4, evaluator.evaluate("2+2"), DELTA);
+    }
+
+    @Test
+    public void powerAndPostfixOperators_bindTighterThanNegation() {
+        assertEquals(1024, evaluator.evaluate("2^10"), DELTA);
+        assertEquals(512, evaluator.evaluate("2^3^2"), DELTA);
+        assertEquals(-4, evaluator.evaluate("-2^2"), DELTA);
+        assertEquals(0.25, evaluator.evaluate("2^-2"), DELTA);
+        assertEquals(-9, evaluator.evaluate("-3²"), DELTA);
+        assertEquals(9, evaluator.evaluate("(-3)²"), DELTA);
+        assertEquals(-120, evaluator.evaluate("-5!"), DELTA);
+        assertEquals(64, evaluator.evaluate("2^3!"), DELTA);
+        assertEquals(5, evaluator.evaluate("3!-1"), DELTA);
+    }
+
+    @Test
+    public void functions_areEvaluated() {
+        assertEquals(7, evaluator.evaluate("√9+2²"), DELTA);
+        assertEquals(4, evaluator.evaluate("sqrt(16)"), DELTA);
+        assertEquals(Math.sin(0.5) + Math.cos(0.5), evaluator.evaluate("sin(0.5)+cos(0.5)"), DELTA);
+        assertEquals(Math.tan(1) * 2, evaluator.evaluate("2×tan(1)"), DELTA);
+        assertEquals(3, evaluator.evaluate("log(1000)"), DELTA);
+        assertEquals(1, evaluator.evaluate("ln(2.718281828459045)"), DELTA);
+        assertEquals(Math.pow(Math.sin(2), 2), evaluator.evaluate("sin(2)^2"), DELTA);
+        assertEquals(1025, evaluator.evaluate("pow(2,5+5)+1"), DELTA);
+        assertEquals(-8, evaluator.evaluate("-pow(2,3)"), DELTA);
+        assertEquals(2, evaluator.evaluate("pow(pow(2,2),0.5)"), DELTA);
+        assertEquals(1, evaluator.evaluate("0!"), DELTA);
+    }
+
+    @Test
+    public void functions_compileToTheSameResult() {
+        String[] expressions = {"√9+2²", "-2^2", "pow(2,10)-5!", "sin(1)×cos(2)", "ln(log(100)"};
+        for (String expr : expressions) {
+            assertEquals(expr, evaluator.evaluate(expr), evaluator.compile(expr).evaluate(), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void functionArgumentCount_isChecked() {
+        evaluator.evaluate("3+pow(2)");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFunction_throws() {
+        evaluator.evaluate("foo(2)");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingOperator_throws() {
+        evaluator.evaluate("(2,3)");
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void divisionByZero_throws() {
+        evaluator.evaluate("1÷0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedNumber_throws() {
+        evaluator.evaluate("1.2.3");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingOperand_throws() {
+        evaluator.evaluate("2+");
+    }
+}
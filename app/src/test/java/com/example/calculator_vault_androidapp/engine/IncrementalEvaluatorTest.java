@@ -0,0 +1,73 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link IncrementalEvaluator}.
+ */
+public class IncrementalEvaluatorTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void typingAndDeleting_matchesFullEvaluation() {
+        IncrementalEvaluator incremental = new IncrementalEvaluator();
+        ExpressionEvaluator full = new ExpressionEvaluator();
+
+        StringBuilder expr = new StringBuilder();
+        String keys = "12+3×(4-5.5)÷-(2+1)-7×8+90÷3";
+        for (int round = 0; round < 20; round++) {
+            for (int k = 0; k < keys.length(); k++) {
+                expr.append(keys.charAt(k));
+                assertSameResult(full, incremental, completePrefix(expr));
+            }
+            expr.append('+');
+        }
+        while (expr.length() > 0) {
+            expr.setLength(expr.length() - 1);
+            assertSameResult(full, incremental, completePrefix(expr));
+        }
+    }
+
+    @Test
+    public void editInTheMiddle_invalidatesLaterCheckpoints() {
+        IncrementalEvaluator incremental = new IncrementalEvaluator();
+        StringBuilder expr = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            expr.append("1+");
+        }
+        expr.append('1');
+        assertEquals(101, incremental.evaluate(expr), DELTA);
+        expr.setCharAt(11, '×');
+        assertEquals(new ExpressionEvaluator().evaluate(expr), incremental.evaluate(expr), DELTA);
+    }
+
+    private static void assertSameResult(ExpressionEvaluator full, IncrementalEvaluator incremental,
+                                         String expr) {
+        double expected;
+        try {
+            expected = full.evaluate(expr);
+        } catch (RuntimeException e) {
+            try {
+                incremental.evaluate(expr);
+                fail("Expected failure for " + expr);
+            } catch (RuntimeException expectedFailure) {
+                return;
+            }
+            return;
+        }
+        assertEquals(expr, expected, incremental.evaluate(expr), DELTA);
+    }
+
+    private static String completePrefix(CharSequence expr) {
+        int end = expr.length();
+        while (end > 0) {
+            char c = expr.charAt(end - 1);
+            if ((c >= '0' && c <= '9') || c == '.' || c == ')') break;
+            end--;
+        }
+        return expr.subSequence(0, end).toString();
+    }
+}
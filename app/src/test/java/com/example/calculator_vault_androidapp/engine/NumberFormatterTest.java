@@ -0,0 +1,139 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Golden tests for {@link NumberFormatter} against the previous String.format based formatting.
+ */
+public class NumberFormatterTest {
+
+    private final NumberFormatter formatter = new NumberFormatter();
+
+    /**
+     * The formatting MainActivity used before NumberFormatter, with a '.' separator.
+     */
+    private static String legacyFormat(double number) {
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+            return "Error";
+        }
+        if (number == (long) number && Math.abs(number) < 1e15) {
+            return String.valueOf((long) number);
+        }
+        String formatted = String.format(Locale.US, "%.10f", number)
+                .replaceAll("0+$", "")
+                .replaceAll("\\.$", "");
+        if (formatted.length() > 15) {
+            formatted = String.format(Locale.US, "%.6E", number);
+        }
+        return formatted;
+    }
+
+    @Test
+    public void goldenValues() {
+        assertEquals("0.3", formatter.format(0.1 + 0.2));
+        assertEquals("0.3333333333", formatter.format(1 / 3.0));
+        assertEquals("0.6666666667", formatter.format(2 / 3.0));
+        assertEquals("-0.5", formatter.format(-0.5));
+        assertEquals("42", formatter.format(42));
+        assertEquals("-7", formatter.format(-7));
+        assertEquals("999999999999999", formatter.format(999999999999999.0));
+        assertEquals("1.000000E+15", formatter.format(1e15));
+        assertEquals("1.234568E+05", formatter.format(123456.7890123456));
+        assertEquals("1.000000E+21", formatter.format(9.99999995e20));
+        assertEquals("0.0000000001", formatter.format(5e-11));
+        assertEquals("0", formatter.format(4.9999e-11));
+        assertEquals("-0", formatter.format(-1e-12));
+        assertEquals("1", formatter.format(0.99999999999));
+        assertEquals("1.797693E+308", formatter.format(Double.MAX_VALUE));
+        assertEquals("Error", formatter.format(Double.NaN));
+        assertEquals("Error", formatter.format(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void randomValues_matchLegacyFormatting() {
+        Random random = new Random(1234);
+        for (int i = 0; i < 100_000; i++) {
+            double value;
+            switch (i % 3) {
+                case 0:
+                    value = random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+                    break;
+                case 1:
+                    value = (random.nextInt(2_000_000) - 1_000_000) / Math.pow(10, random.nextInt(12));
+                    break;
+                default:
+                    value = random.nextInt(1000) / (double) (1 + random.nextInt(1000));
+                    break;
+            }
+            assertEquals(String.valueOf(value), legacyFormat(value), formatter.format(value));
+        }
+    }
+
+    /**
+     * The exact-mode formatting MainActivity used before, with a '.' separator.
+     */
+    private static String legacyFormat(BigDecimal number, int precision) {
+        BigDecimal stripped = number.stripTrailingZeros();
+        if (stripped.scale() <= 0 && stripped.precision() - stripped.scale() <= precision) {
+            return stripped.toPlainString();
+        }
+        String formatted = stripped.setScale(10, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+        if (formatted.length() > 15) {
+            formatted = String.format(Locale.US, "%.6E", stripped);
+        }
+        return formatted;
+    }
+
+    @Test
+    public void exactValues() {
+        assertEquals("121932631137021071359549253925",
+                formatter.format(new BigDecimal("121932631137021071359549253925"), 34));
+        assertEquals("1.234568E+40", formatter.format(new BigDecimal("1.2345675E+40"), 34));
+        assertEquals("-2.500000E+50", formatter.format(new BigDecimal("-2.5E+50"), 34));
+        // Carrying into the fixed form does not leak into the scientific one
+        assertEquals("1.234568E+20", formatter.format(new BigDecimal("123456799999999999999.99999999999"), 34));
+        assertEquals("0.1234567891", formatter.format(new BigDecimal("0.12345678905"), 34));
+        assertEquals("0", formatter.format(new BigDecimal("-1E-12"), 34));
+        assertEquals("0", formatter.format(BigDecimal.ZERO, 34));
+    }
+
+    @Test
+    public void exactValues_ignoreDefaultLocale() {
+        Locale saved = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            String formatted = formatter.format(new BigDecimal("123456789012345678901234567890.5"), 34);
+            assertEquals("1.234568E+29", formatted);
+            // The percent key reads the current number back this way
+            assertEquals(0, new BigDecimal("1.234568E+29").compareTo(new BigDecimal(formatted)));
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+    @Test
+    public void randomExactValues_matchLegacyFormatting() {
+        Random random = new Random(99);
+        for (int i = 0; i < 100_000; i++) {
+            BigInteger unscaled = new BigInteger(1 + random.nextInt(120), random);
+            if (random.nextBoolean()) unscaled = unscaled.negate();
+            BigDecimal value = new BigDecimal(unscaled, random.nextInt(80) - 40);
+            assertEquals(value.toString(), legacyFormat(value, 34), formatter.format(value, 34));
+        }
+    }
+
+    @Test
+    public void formatTo_appendsToBuilder() {
+        StringBuilder out = new StringBuilder("= ");
+        formatter.formatTo(2.5, out);
+        assertEquals("= 2.5", out.toString());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ParallelEvaluator}.
+ */
+public class ParallelEvaluatorTest {
+
+    private static List<String> expressions(int count) {
+        List<String> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+                case 0: list.add(i + "×2+0.1"); break;
+                case 1: list.add("√" + i + "÷(" + i + "-" + i + ")"); break;
+                case 2: list.add("(" + i + "+1.5)^2"); break;
+                default: list.add(i + "+"); break;
+            }
+        }
+        return list;
+    }
+
+    @Test
+    public void results_areInInputOrder() {
+        List<String> list = expressions(10_000);
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        double[] results = new ParallelEvaluator().evaluate(list);
+        BigDecimal[] exact = new ParallelEvaluator().evaluateExact(list, MathContext.DECIMAL128);
+
+        assertEquals(list.size(), results.length);
+        for (int i = 0; i < list.size(); i++) {
+            if (i % 2 == 1) {
+                // Division by zero and a missing operand fail only their own entry
+                assertTrue(Double.isNaN(results[i]));
+                assertNull(exact[i]);
+                continue;
+            }
+            assertEquals(list.get(i), evaluator.evaluate(list.get(i)), results[i], 0);
+        }
+        assertEquals(new BigDecimal("8.1"), exact[4]);
+        assertEquals(new BigDecimal("12.25"), exact[2]);
+    }
+
+    @Test
+    public void emptyAndSmallLists() {
+        ParallelEvaluator evaluator = new ParallelEvaluator();
+        assertEquals(0, evaluator.evaluate(new ArrayList<String>()).length);
+        assertArrayEquals(new double[] {3, 4}, evaluator.evaluate(Arrays.asList("1+2", "2×2")), 0);
+    }
+
+    @Test
+    public void givenPool_givesSameResults() {
+        List<String> list = expressions(50_000);
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            assertArrayEquals(new ParallelEvaluator().evaluateExact(list, MathContext.DECIMAL128),
+                    new ParallelEvaluator(single).evaluateExact(list, MathContext.DECIMAL128));
+            assertArrayEquals(new ParallelEvaluator().evaluate(list),
+                    new ParallelEvaluator(single).evaluate(list), 0);
+        } finally {
+            single.shutdown();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link StreamingStatistics}, {@link QuantileSketch} and {@link ValueListParser}.
+ */
+public class StreamingStatisticsTest {
+
+    @Test
+    public void summary_ofSmallList() {
+        StreamingStatistics stats = new StreamingStatistics();
+        new ValueListParser(stats).parse("2, 4, 4, 4, 5, 5, 7, 9");
+
+        assertEquals(8, stats.getCount());
+        assertEquals(40, stats.getSum(), 0);
+        assertEquals(5, stats.getMean(), 0);
+        assertEquals(4, stats.getPopulationVariance(), 1e-12);
+        assertEquals(32 / 7.0, stats.getVariance(), 1e-12);
+        assertEquals(2, stats.getMin(), 0);
+        assertEquals(9, stats.getMax(), 0);
+        assertEquals(4, stats.getQuantile(0.5), 0);
+    }
+
+    @Test
+    public void variance_isStableForLargeOffsets() {
+        // The naive sum-of-squares formula returns garbage here
+        StreamingStatistics stats = new StreamingStatistics();
+        for (int i = 0; i < 1000; i++) {
+            stats.add(1e9 + (i % 2 == 0 ? 4 : 7));
+        }
+        assertEquals(1e9 + 5.5, stats.getMean(), 1e-6);
+        assertEquals(2.25, stats.getPopulationVariance(), 1e-6);
+    }
+
+    @Test
+    public void parser_handlesSeparatorsSignsAndJunk() throws IOException {
+        StreamingStatistics stats = new StreamingStatistics();
+        ValueListParser parser = new ValueListParser(stats);
+        parser.parse(new StringReader("1;-2\n\n+3.5\t1e2, abc , 0.25 1.2.3"));
+        assertEquals(5, stats.getCount());
+        assertEquals(102.75, stats.getSum(), 1e-12);
+        assertEquals(2, parser.getRejectedCount());
+    }
+
+    @Test
+    public void parseValue_matchesParseDouble() {
+        String[] values = {"0", "-0.5", "123456789012345", "1234567890123456789", "0.000000000000001",
+                "3.14159", "-2.5e-3", "+7"};
+        for (String v : values) {
+            assertEquals(v, Double.parseDouble(v), ValueListParser.parseValue(v), 0);
+        }
+        assertTrue(Double.isNaN(ValueListParser.parseValue("-")));
+    }
+
+    @Test
+    public void sketch_staysBoundedWithSmallRankError() {
+        int n = 1_000_000;
+        QuantileSketch sketch = new QuantileSketch();
+        double[] values = new double[n];
+        Random random = new Random(42);
+        for (int i = 0; i < n; i++) {
+            values[i] = random.nextGaussian();
+            sketch.add(values[i]);
+        }
+        assertTrue("retained " + sketch.getRetained(), sketch.getRetained() < 4 * QuantileSketch.DEFAULT_K);
+
+        Arrays.sort(values);
+        for (double q : new double[]{0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99}) {
+            double estimate = sketch.getQuantile(q);
+            int rank = Arrays.binarySearch(values, estimate);
+            if (rank < 0) rank = -rank - 1;
+            assertEquals("q=" + q, q, rank / (double) n, 0.02);
+        }
+    }
+
+    @Test
+    public void millionPastedValues_parseInOnePass() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 1_000_000; i++) {
+            text.append(i % 1000).append(i % 10 == 0 ? '\n' : ',');
+        }
+        StreamingStatistics stats = new StreamingStatistics();
+        new ValueListParser(stats).parse(text);
+
+        assertEquals(1_000_000, stats.getCount());
+        assertEquals(499.5, stats.getMean(), 1e-9);
+        assertEquals(0, stats.getMin(), 0);
+        assertEquals(999, stats.getMax(), 0);
+        assertEquals(500, stats.getQuantile(0.5), 20);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.calculator_vault_androidapp.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link SuggestionTrie}.
+ */
+public class SuggestionTrieTest {
+
+    @Test
+    public void suggestions_areRankedByFrequency() {
+        SuggestionTrie trie = new SuggestionTrie(1000);
+        trie.add("12×3", 5);
+        trie.add("12+7", 2);
+        trie.add("12", 9);
+        trie.add("125÷5");
+        trie.add("13-1", 20);
+
+        assertEquals(Arrays.asList("12×3", "12+7", "125÷5"), trie.suggest("12"));
+        assertEquals(Arrays.asList("13-1", "12", "12×3"), trie.suggest("1"));
+        assertEquals(Collections.singletonList("125÷5"), trie.suggest("125"));
+        assertTrue(trie.suggest("125÷5").isEmpty());
+        assertTrue(trie.suggest("9").isEmpty());
+        assertTrue(trie.suggest("").isEmpty());
+
+        // Using an expression again moves it up
+        trie.add("125÷5", 5);
+        assertEquals(Arrays.asList("125÷5", "12×3", "12+7"), trie.suggest("12"));
+    }
+
+    @Test
+    public void longExpressions_areNotStored() {
+        SuggestionTrie trie = new SuggestionTrie(1000);
+        char[] digits = new char[SuggestionTrie.MAX_EXPRESSION_LENGTH + 1];
+        Arrays.fill(digits, '7');
+        trie.add(new String(digits));
+        assertEquals(1, trie.getNodeCount());
+    }
+
+    @Test
+    public void pruning_boundsNodesAndKeepsFrequentExpressions() {
+        SuggestionTrie trie = new SuggestionTrie(2000);
+        trie.add("42×42", 1000);
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            trie.add(random.nextInt(1_000_000) + "+" + random.nextInt(1000));
+            assertTrue(trie.getNodeCount() <= 2000);
+        }
+        List<String> suggestions = trie.suggest("4");
+        assertEquals("42×42", suggestions.get(0));
+    }
+
+    @Test
+    public void largeHistory_suggestionsStayWithinPrefixAndBounds() {
+        SuggestionTrie trie = new SuggestionTrie(SuggestionTrie.DEFAULT_MAX_NODES);
+        Random random = new Random(2);
+        for (int i = 0; i < 300_000; i++) {
+            trie.add(random.nextInt(500) + "×" + random.nextInt(50));
+        }
+        assertTrue(trie.getNodeCount() <= SuggestionTrie.DEFAULT_MAX_NODES);
+
+        for (String prefix : Arrays.asList("1", "12", "123×", "4", "49×1")) {
+            List<String> suggestions = trie.suggest(prefix);
+            assertFalse(prefix, suggestions.isEmpty());
+            assertTrue(prefix, suggestions.size() <= SuggestionTrie.SUGGESTION_COUNT);
+            for (String suggestion : suggestions) {
+                assertTrue(suggestion, suggestion.startsWith(prefix) && !suggestion.equals(prefix));
+            }
+        }
+    }
+}
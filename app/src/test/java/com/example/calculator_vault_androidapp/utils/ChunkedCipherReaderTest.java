@@ -0,0 +1,142 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ChunkedCipherReader}.
+ */
+public class ChunkedCipherReaderTest {
+
+    private static final SecretKey KEY = CryptoUtils.deriveFileKey("12345");
+    private static final int CHUNK = 1024;
+
+    /**
+     * Stored bytes in memory, counting the bytes fetched.
+     */
+    private static class MemorySource implements ChunkedCipherReader.Source {
+        final byte[] stored;
+        long fetched;
+
+        MemorySource(byte[] stored) {
+            this.stored = stored;
+        }
+
+        @Override
+        public long length() {
+            return stored.length;
+        }
+
+        @Override
+        public byte[] read(long offset, int length) {
+            byte[] range = Arrays.copyOfRange(stored, (int) offset, (int) Math.min(stored.length, offset + length));
+            fetched += range.length;
+            return range;
+        }
+    }
+
+    @Test
+    public void readsAnyRange() throws IOException {
+        byte[] data = randomBytes(10 * CHUNK + 77, 1);
+        ChunkedCipherReader reader = new ChunkedCipherReader(new MemorySource(encrypt(data)), KEY);
+        assertEquals(data.length, reader.length());
+
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            int position = random.nextInt(data.length);
+            int len = 1 + random.nextInt(3 * CHUNK);
+            byte[] buffer = new byte[len];
+            int n = reader.read(position, buffer, 0, len);
+            assertEquals(Math.min(len, data.length - position), n);
+            assertArrayEquals(Arrays.copyOfRange(data, position, position + n), Arrays.copyOf(buffer, n));
+        }
+        assertEquals(-1, reader.read(data.length, new byte[1], 0, 1));
+    }
+
+    @Test
+    public void seekingFetchesOnlyTheChunksRead() throws IOException {
+        byte[] data = randomBytes(100 * CHUNK, 3);
+        MemorySource source = new MemorySource(encrypt(data));
+        ChunkedCipherReader reader = new ChunkedCipherReader(source, KEY);
+
+        InputStream stream = reader.openStream(0);
+        assertEquals(90L * CHUNK, stream.skip(90L * CHUNK));
+        byte[] tail = readAll(stream);
+        assertArrayEquals(Arrays.copyOfRange(data, 90 * CHUNK, data.length), tail);
+        // The header and the last ten chunks
+        assertEquals(ChunkedCipher.HEADER_LENGTH + 10L * (CHUNK + ChunkedCipher.TAG_LENGTH), source.fetched);
+    }
+
+    @Test
+    public void emptyFileHasNoBytes() throws IOException {
+        ChunkedCipherReader reader = new ChunkedCipherReader(new MemorySource(encrypt(new byte[0])), KEY);
+        assertEquals(0, reader.length());
+        assertEquals(-1, reader.openStream(0).read());
+    }
+
+    @Test
+    public void modifiedChunkFailsOnlyWhereRead() throws IOException {
+        byte[] data = randomBytes(4 * CHUNK, 4);
+        byte[] sealed = encrypt(data);
+        sealed[ChunkedCipher.HEADER_LENGTH + 2 * (CHUNK + ChunkedCipher.TAG_LENGTH) + 5] ^= 1;
+        ChunkedCipherReader reader = new ChunkedCipherReader(new MemorySource(sealed), KEY);
+
+        byte[] buffer = new byte[CHUNK];
+        assertEquals(CHUNK, reader.read(3 * CHUNK, buffer, 0, CHUNK));
+        try {
+            reader.read(2 * CHUNK, buffer, 0, CHUNK);
+            fail("Modified chunk must not be served");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void truncatedFileFailsAtItsEnd() throws IOException {
+        byte[] data = randomBytes(4 * CHUNK, 5);
+        byte[] sealed = encrypt(data);
+        // Drop the last chunk whole, so the lengths still add up
+        byte[] truncated = Arrays.copyOf(sealed, sealed.length - (CHUNK + ChunkedCipher.TAG_LENGTH));
+        ChunkedCipherReader reader = new ChunkedCipherReader(new MemorySource(truncated), KEY);
+        try {
+            readAll(reader.openStream(0));
+            fail("Truncated file must not read to a clean end");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private static byte[] encrypt(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream encrypting = new ChunkedCipherOutputStream(out, KEY, CHUNK)) {
+            encrypting.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[700];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ChunkedCipher} and its streams.
+ */
+public class ChunkedCipherTest {
+
+    private static final SecretKey KEY = CryptoUtils.deriveFileKey("12345");
+    private static final int CHUNK = 1024;
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] encrypt(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream encrypting = new ChunkedCipherOutputStream(out, KEY, CHUNK)) {
+            // Odd write sizes cross chunk boundaries
+            for (int off = 0; off < data.length; off += 700) {
+                encrypting.write(data, off, Math.min(700, data.length - off));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] sealed, SecretKey key) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream decrypting = new ChunkedCipherInputStream(new ByteArrayInputStream(sealed), key)) {
+            byte[] buffer = new byte[333];
+            int n;
+            while ((n = decrypting.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertFailsToDecrypt(byte[] sealed) {
+        try {
+            decrypt(sealed, KEY);
+            fail("Expected authentication failure");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void roundTripsAtChunkBoundaries() throws IOException {
+        for (int length : new int[]{0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 3 * CHUNK, 5 * CHUNK + 17}) {
+            byte[] data = randomBytes(length);
+            byte[] sealed = encrypt(data);
+            assertEquals(ChunkedCipher.sealedLength(length, CHUNK), sealed.length);
+            assertArrayEquals("length " + length, data, decrypt(sealed, KEY));
+        }
+    }
+
+    @Test
+    public void sameDataEncryptsDifferentlyEachTime() throws IOException {
+        byte[] data = randomBytes(100);
+        assertFalse(Arrays.equals(encrypt(data), encrypt(data)));
+    }
+
+    @Test
+    public void detectsTamperingTruncationAndReordering() throws IOException {
+        byte[] sealed = encrypt(randomBytes(3 * CHUNK + 10));
+        int sealedChunk = CHUNK + ChunkedCipher.TAG_LENGTH;
+
+        byte[] flipped = sealed.clone();
+        flipped[ChunkedCipher.HEADER_LENGTH + sealedChunk + 5] ^= 1;
+        assertFailsToDecrypt(flipped);
+
+        // Dropping whole chunks from the end leaves a non-final chunk last
+        assertFailsToDecrypt(Arrays.copyOf(sealed, ChunkedCipher.HEADER_LENGTH + 2 * sealedChunk));
+        assertFailsToDecrypt(Arrays.copyOf(sealed, ChunkedCipher.HEADER_LENGTH));
+
+        byte[] swapped = sealed.clone();
+        System.arraycopy(sealed, ChunkedCipher.HEADER_LENGTH, swapped,
+                ChunkedCipher.HEADER_LENGTH + sealedChunk, sealedChunk);
+        System.arraycopy(sealed, ChunkedCipher.HEADER_LENGTH + sealedChunk, swapped,
+                ChunkedCipher.HEADER_LENGTH, sealedChunk);
+        assertFailsToDecrypt(swapped);
+
+        try {
+            decrypt(sealed, CryptoUtils.deriveFileKey("54321"));
+            fail("Expected authentication failure with the wrong key");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void decryptsOneChunkOnItsOwn() throws IOException {
+        byte[] data = randomBytes(4 * CHUNK + 100);
+        byte[] sealed = encrypt(data);
+        ChunkedCipher cipher = ChunkedCipher.forReading(KEY,
+                Arrays.copyOf(sealed, ChunkedCipher.HEADER_LENGTH));
+
+        byte[] plain = new byte[CHUNK];
+        int n = cipher.open(2, false, sealed, (int) cipher.chunkOffset(2),
+                CHUNK + ChunkedCipher.TAG_LENGTH, plain, 0);
+        assertEquals(CHUNK, n);
+        assertArrayEquals(Arrays.copyOfRange(data, 2 * CHUNK, 3 * CHUNK), plain);
+
+        int lastOffset = (int) cipher.chunkOffset(4);
+        n = cipher.open(4, true, sealed, lastOffset, sealed.length - lastOffset, plain, 0);
+        assertEquals(100, n);
+
+        // A chunk opened at the wrong index does not verify
+        try {
+            cipher.open(3, false, sealed, (int) cipher.chunkOffset(2),
+                    CHUNK + ChunkedCipher.TAG_LENGTH, plain, 0);
+            fail("Expected authentication failure");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cryptoUtilsReadsLegacyXorData() throws IOException {
+        byte[] data = randomBytes(50);
+        byte[] pin = "24680".getBytes();
+        byte[] legacy = new byte[data.length];
+        for (int i = 0; i < data.length; i++) legacy[i] = (byte) (data[i] ^ pin[i % pin.length]);
+
+        assertArrayEquals(data, CryptoUtils.decryptData(legacy, "24680"));
+        InputStream decrypting = CryptoUtils.decryptingStream(new ByteArrayInputStream(legacy), "24680");
+        byte[] streamed = new byte[data.length];
+        assertEquals(data.length, decrypting.read(streamed));
+        assertArrayEquals(data, streamed);
+
+        byte[] sealed = CryptoUtils.encryptData(data, CryptoUtils.deriveFileKey("24680"));
+        assertTrue(ChunkedCipher.isChunked(sealed));
+        assertArrayEquals(data, CryptoUtils.decryptData(sealed, "24680"));
+    }
+
+    @Test
+    public void streamsLargeFileThroughConstantMemory() throws IOException {
+        long length = 64L * 1024 * 1024;
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        // Encrypt generated data into a stream that only counts what it receives
+        CountingOutputStream sealedSink = new CountingOutputStream();
+        try (OutputStream encrypting = new ChunkedCipherOutputStream(sealedSink,
+                KEY, ChunkedCipher.DEFAULT_CHUNK_SIZE)) {
+            byte[] block = new byte[8192];
+            for (long written = 0; written < length; written += block.length) {
+                encrypting.write(block);
+            }
+        }
+        long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+
+        assertEquals(ChunkedCipher.sealedLength(length, ChunkedCipher.DEFAULT_CHUNK_SIZE), sealedSink.count);
+        // Nothing close to the file size is held
+        assertTrue(usedAfter - usedBefore < length / 2);
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link CipherSuites} and files written under each {@link CipherSuite}.
+ */
+public class CipherSuitesTest {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[32], "AES");
+    private static final int CHUNK = 1024;
+
+    @After
+    public void restoreDefault() {
+        CipherSuites.setSelected(CipherSuites.AES_GCM);
+    }
+
+    @Test
+    public void everySuiteRoundTripsAndIsRecordedInTheHeader() throws IOException {
+        byte[] data = randomBytes(5 * CHUNK + 3);
+        for (CipherSuite suite : CipherSuites.getAvailable()) {
+            byte[] sealed = encrypt(suite, data);
+
+            assertEquals(suite.getId(), sealed[3]);
+            assertTrue(ChunkedCipher.isChunked(sealed));
+            assertArrayEquals(suite.getName(), data, decrypt(sealed));
+        }
+    }
+
+    @Test
+    public void filesOfEitherSuiteReadWhicheverIsSelected() throws IOException {
+        assertTrue(CipherSuites.CHACHA20_POLY1305.isAvailable());
+        byte[] data = randomBytes(3 * CHUNK);
+        byte[] aes = encrypt(CipherSuites.AES_GCM, data);
+        byte[] chacha = encrypt(CipherSuites.CHACHA20_POLY1305, data);
+
+        for (CipherSuite selected : CipherSuites.getAvailable()) {
+            assertTrue(CipherSuites.setSelected(selected));
+            assertArrayEquals(data, decrypt(aes));
+            assertArrayEquals(data, decrypt(chacha));
+        }
+    }
+
+    @Test
+    public void newFilesUseTheSelectedSuite() throws IOException {
+        CipherSuites.setSelected(CipherSuites.CHACHA20_POLY1305);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (OutputStream out = new ChunkedCipherOutputStream(sink, KEY, CHUNK)) {
+            out.write(1);
+        }
+        assertEquals(ChaCha20Poly1305Suite.ID, sink.toByteArray()[3]);
+        assertSame(CipherSuites.CHACHA20_POLY1305,
+                ChunkedCipher.forReading(KEY, sink.toByteArray()).getSuite());
+    }
+
+    @Test
+    public void relabelledSuiteFailsAuthentication() throws IOException {
+        byte[] sealed = encrypt(CipherSuites.CHACHA20_POLY1305, randomBytes(CHUNK));
+        sealed[3] = AesGcmSuite.ID;
+        try {
+            decrypt(sealed);
+            fail("A file must only open under the suite it was sealed with");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void unknownSuiteIsNotChunked() {
+        byte[] header = ChunkedCipher.forWriting(KEY, CHUNK).getHeader();
+        header[3] = '9';
+        assertFalse(ChunkedCipher.isChunked(header));
+        assertNull(CipherSuites.byId('9'));
+        assertFalse(CipherSuites.setSelected(null));
+    }
+
+    @Test
+    public void benchmarkPicksAnAvailableSuite() {
+        for (CipherSuite suite : CipherSuites.getAvailable()) {
+            assertTrue(suite.getName(), CipherSuites.measure(suite) > 0);
+        }
+        CipherSuite fastest = CipherSuites.pickFastest();
+        assertTrue(fastest.isAvailable());
+        assertSame(fastest, CipherSuites.getSelected());
+    }
+
+    private static byte[] encrypt(CipherSuite suite, byte[] data) throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (OutputStream out = new ChunkedCipherOutputStream(sink,
+                ChunkedCipher.forWriting(suite, KEY, CHUNK), null)) {
+            out.write(data);
+        }
+        return sink.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] sealed) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = new ChunkedCipherInputStream(new ByteArrayInputStream(sealed), KEY)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                result.write(buffer, 0, n);
+            }
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ContentStore}.
+ */
+public class ContentStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void committedEntryReadsBackByContentName() throws Exception {
+        ContentStore store = new ContentStore(folder.getRoot());
+        byte[] data = randomBytes(3 * IntegrityScrubber.SLICE_SIZE + 123, 1);
+
+        ContentStore.Writer writer = store.newWriter();
+        // Uneven writes, as an encrypting stream makes them
+        for (int off = 0; off < data.length; off += 70_001) {
+            writer.write(data, off, Math.min(70_001, data.length - off));
+        }
+        String ref = writer.commit();
+
+        assertEquals(toHex(MessageDigest.getInstance("SHA-256").digest(data)), ref);
+        assertEquals(data.length, store.length(ref));
+        assertArrayEquals(IntegrityScrubber.checksums(data), writer.getChecksums());
+        assertArrayEquals(data, readAll(store.open(ref)));
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 1100), store.read(ref, 1000, 100));
+        // Reads past the end are cut short
+        assertEquals(23, store.read(ref, data.length - 23, 100).length);
+        assertEquals(0, tempFiles().length);
+    }
+
+    @Test
+    public void identicalContentsAreStoredOnce() throws IOException {
+        ContentStore store = new ContentStore(folder.getRoot());
+        byte[] data = randomBytes(5000, 2);
+        String first = write(store, data);
+        String second = write(store, data);
+
+        assertEquals(first, second);
+        assertEquals(1, new File(folder.getRoot(), first.substring(0, 2)).list().length);
+        assertEquals(0, tempFiles().length);
+    }
+
+    @Test
+    public void abortedEntryLeavesNothing() throws IOException {
+        ContentStore store = new ContentStore(folder.getRoot());
+        ContentStore.Writer writer = store.newWriter();
+        writer.write(randomBytes(1000, 3));
+        writer.abort();
+
+        assertEquals(0, tempFiles().length);
+        assertEquals(0, store.sweep(Collections.<String>emptySet(), 0));
+    }
+
+    @Test
+    public void sweepDeletesOnlyOldUnreferencedEntries() throws IOException {
+        ContentStore store = new ContentStore(folder.getRoot());
+        String kept = write(store, randomBytes(100, 4));
+        String orphan = write(store, randomBytes(100, 5));
+        String young = write(store, randomBytes(100, 6));
+        long hourAgo = System.currentTimeMillis() - 60 * 60 * 1000L;
+        for (String ref : Arrays.asList(kept, orphan)) {
+            assertTrue(new File(new File(folder.getRoot(), ref.substring(0, 2)), ref).setLastModified(hourAgo));
+        }
+
+        assertEquals(1, store.sweep(new HashSet<>(Collections.singletonList(kept)), 60_000));
+        assertTrue(store.contains(kept));
+        assertFalse(store.contains(orphan));
+        assertTrue(store.contains(young));
+    }
+
+    @Test
+    public void deleteRemovesEntry() throws IOException {
+        ContentStore store = new ContentStore(folder.getRoot());
+        String ref = write(store, randomBytes(100, 7));
+        store.delete(ref);
+
+        assertFalse(store.contains(ref));
+        assertEquals(-1, store.length(ref));
+        assertNull(store.read(ref, 0, 10));
+    }
+
+    @Test
+    public void namesOutsideTheStoreAreRejected() throws IOException {
+        ContentStore store = new ContentStore(folder.getRoot());
+        for (String ref : Arrays.asList("../../etc/passwd", "", null, repeat('A', 64), repeat('0', 63) + "/")) {
+            try {
+                store.open(ref);
+                fail("Accepted " + ref);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    private static String write(ContentStore store, byte[] data) throws IOException {
+        ContentStore.Writer writer = store.newWriter();
+        writer.write(data);
+        return writer.commit();
+    }
+
+    private File[] tempFiles() {
+        File[] files = new File(folder.getRoot(), "tmp").listFiles();
+        return files != null ? files : new File[0];
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static String repeat(char c, int n) {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
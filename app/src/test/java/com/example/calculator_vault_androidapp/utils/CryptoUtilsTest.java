@@ -0,0 +1,116 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link CryptoUtils}.
+ */
+public class CryptoUtilsTest {
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void fileOpensWithWrappedDataKey() throws IOException {
+        byte[] data = new byte[200_000];
+        new Random(1).nextBytes(data);
+        SecretKey dataKey = CryptoUtils.newDataKey();
+        byte[] wrapped = CryptoUtils.wrapDataKey(dataKey, CryptoUtils.derivePinKey("13579"));
+        assertEquals(CryptoUtils.WRAPPED_KEY_LENGTH, wrapped.length);
+
+        ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+        try (OutputStream encrypting = CryptoUtils.encryptingStream(sealed, dataKey)) {
+            encrypting.write(data);
+        }
+        InputStream decrypting = CryptoUtils.decryptingStream(
+                new ByteArrayInputStream(sealed.toByteArray()), wrapped,
+                CryptoUtils.derivePinKey("13579"), "13579");
+        assertArrayEquals(data, readAll(decrypting));
+    }
+
+    @Test
+    public void pinChangeRewrapsKeyWithoutTouchingData() throws IOException {
+        byte[] data = "secret notes".getBytes();
+        SecretKey dataKey = CryptoUtils.newDataKey();
+        byte[] sealed = CryptoUtils.encryptData(data, dataKey);
+        byte[] wrapped = CryptoUtils.wrapDataKey(dataKey, CryptoUtils.derivePinKey("11111"));
+
+        byte[] rewrapped = CryptoUtils.rewrapDataKey(wrapped,
+                CryptoUtils.derivePinKey("11111"), CryptoUtils.derivePinKey("22222"));
+        assertArrayEquals(data, readAll(CryptoUtils.decryptingStream(
+                new ByteArrayInputStream(sealed), rewrapped, CryptoUtils.derivePinKey("22222"), "22222")));
+
+        try {
+            CryptoUtils.unwrapDataKey(rewrapped, CryptoUtils.derivePinKey("11111"));
+            fail("Old PIN must no longer unwrap the key");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        rewrapped[20] ^= 1;
+        try {
+            CryptoUtils.unwrapDataKey(rewrapped, CryptoUtils.derivePinKey("22222"));
+            fail("Modified wrapped key must not unwrap");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void sealedPinOpensOnlyWithItsKey() {
+        SecretKey newPinKey = CryptoUtils.derivePinKey("22222");
+        byte[] sealed = CryptoUtils.sealPin("11111", newPinKey);
+        assertEquals("11111", CryptoUtils.openPin(sealed, newPinKey));
+
+        try {
+            CryptoUtils.openPin(sealed, CryptoUtils.derivePinKey("33333"));
+            fail("Another key must not open the PIN");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        // A wrapped data key under the same key is not accepted as a PIN
+        try {
+            CryptoUtils.openPin(CryptoUtils.wrapDataKey(CryptoUtils.newDataKey(), newPinKey), newPinKey);
+            fail("Wrapped key must not open as a PIN");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rewrappingKeepsEveryDataKey() {
+        SecretKey oldPinKey = CryptoUtils.derivePinKey("11111");
+        SecretKey newPinKey = CryptoUtils.derivePinKey("22222");
+        int files = 500;
+        SecretKey[] dataKeys = new SecretKey[files];
+        byte[][] wrapped = new byte[files][];
+        for (int i = 0; i < files; i++) {
+            dataKeys[i] = CryptoUtils.newDataKey();
+            wrapped[i] = CryptoUtils.wrapDataKey(dataKeys[i], oldPinKey);
+        }
+
+        for (int i = 0; i < files; i++) {
+            wrapped[i] = CryptoUtils.rewrapDataKey(wrapped[i], oldPinKey, newPinKey);
+        }
+        for (int i = 0; i < files; i++) {
+            assertArrayEquals(dataKeys[i].getEncoded(), CryptoUtils.unwrapDataKey(wrapped[i], newPinKey).getEncoded());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link IntegrityScrubber}.
+ */
+public class IntegrityScrubberTest {
+
+    private static final long UNLIMITED = Long.MAX_VALUE / 1_000_000_000L;
+
+    /**
+     * Files in memory, counting the bytes read.
+     */
+    private static class MemoryStore implements IntegrityScrubber.Store {
+        final TreeMap<Integer, byte[]> data = new TreeMap<>();
+        final Map<Integer, byte[]> checksums = new TreeMap<>();
+        final Set<Integer> corrupt = new HashSet<>();
+        long[] checkpoint = {0, 0};
+        byte[] baseline;
+        long bytesRead;
+
+        void add(int id, byte[] bytes, boolean withChecksums) {
+            data.put(id, bytes);
+            if (withChecksums) checksums.put(id, IntegrityScrubber.checksums(bytes));
+        }
+
+        @Override
+        public int getNextFileId(int afterId) {
+            Integer id = data.higherKey(afterId);
+            return id != null ? id : -1;
+        }
+
+        @Override
+        public long getStoredLength(int fileId) {
+            byte[] bytes = data.get(fileId);
+            return bytes != null ? bytes.length : -1;
+        }
+
+        @Override
+        public byte[] readStoredSlice(int fileId, long offset, int length) {
+            byte[] bytes = data.get(fileId);
+            if (bytes == null) return null;
+            byte[] slice = Arrays.copyOfRange(bytes, (int) offset, (int) Math.min(bytes.length, offset + length));
+            bytesRead += slice.length;
+            return slice;
+        }
+
+        @Override
+        public byte[] getChecksums(int fileId) {
+            return checksums.get(fileId);
+        }
+
+        @Override
+        public void setChecksums(int fileId, byte[] values) {
+            checksums.put(fileId, values);
+        }
+
+        @Override
+        public void markCorrupt(int fileId) {
+            corrupt.add(fileId);
+        }
+
+        @Override
+        public long[] getScrubCheckpoint() {
+            return checkpoint.clone();
+        }
+
+        @Override
+        public byte[] getScrubBaseline() {
+            return baseline;
+        }
+
+        @Override
+        public void setScrubCheckpoint(int fileId, long offset, byte[] values) {
+            checkpoint = new long[]{fileId, offset};
+            baseline = values;
+        }
+    }
+
+    @Test
+    public void findsFlippedByteAndPassesIntactFiles() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        store.add(1, randomBytes(3 * IntegrityScrubber.SLICE_SIZE + 10, 1), true);
+        store.add(2, randomBytes(IntegrityScrubber.SLICE_SIZE, 2), true);
+        store.add(5, new byte[0], true);
+        store.data.get(2)[1234] ^= 0x10;
+
+        assertTrue(new IntegrityScrubber(store, UNLIMITED, () -> false).run());
+        assertEquals(new HashSet<>(Arrays.asList(2)), store.corrupt);
+        assertArrayEquals(new long[]{0, 0}, store.checkpoint);
+    }
+
+    @Test
+    public void filesWithoutChecksumsGetABaseline() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        byte[] bytes = randomBytes(2 * IntegrityScrubber.SLICE_SIZE + 1, 3);
+        store.add(1, bytes, false);
+
+        new IntegrityScrubber(store, UNLIMITED, () -> false).run();
+        assertArrayEquals(IntegrityScrubber.checksums(bytes), store.checksums.get(1));
+
+        bytes[bytes.length - 1] ^= 1;
+        new IntegrityScrubber(store, UNLIMITED, () -> false).run();
+        assertTrue(store.corrupt.contains(1));
+    }
+
+    @Test
+    public void pausesAndResumesFromCheckpoint() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        int slices = 10;
+        store.add(1, randomBytes(slices * IntegrityScrubber.SLICE_SIZE, 4), true);
+        store.add(2, randomBytes(IntegrityScrubber.SLICE_SIZE, 5), true);
+
+        int[] asked = {0};
+        // Let 4 slices through, then pause, as if the screen came on
+        assertFalse(new IntegrityScrubber(store, UNLIMITED, () -> ++asked[0] > 4).run());
+        assertEquals(1, store.checkpoint[0]);
+        assertEquals(4L * IntegrityScrubber.SLICE_SIZE, store.checkpoint[1]);
+
+        store.bytesRead = 0;
+        assertTrue(new IntegrityScrubber(store, UNLIMITED, () -> false).run());
+        // Only the rest of the first file and the second file are read again
+        assertEquals(7L * IntegrityScrubber.SLICE_SIZE, store.bytesRead);
+        assertTrue(store.corrupt.isEmpty());
+    }
+
+    @Test
+    public void baselineResumesWithItsChecksumsSoFar() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        int slices = 10;
+        byte[] bytes = randomBytes(slices * IntegrityScrubber.SLICE_SIZE, 9);
+        store.add(1, bytes, false);
+
+        // Three slices per run, as in short idle windows
+        int runs = 0;
+        boolean finished = false;
+        while (!finished) {
+            int[] asked = {0};
+            finished = new IntegrityScrubber(store, UNLIMITED, () -> ++asked[0] > 3).run();
+            if (!finished) {
+                assertEquals(1, store.checkpoint[0]);
+                assertEquals(store.checkpoint[1] / IntegrityScrubber.SLICE_SIZE * IntegrityScrubber.CHECKSUM_LENGTH,
+                        store.baseline.length);
+            }
+            runs++;
+        }
+        assertEquals(4, runs);
+        // Every slice is read once across the runs
+        assertEquals(bytes.length, store.bytesRead);
+        assertArrayEquals(IntegrityScrubber.checksums(bytes), store.checksums.get(1));
+        assertNull(store.baseline);
+    }
+
+    @Test
+    public void baselineThatNoLongerFitsRestarts() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        byte[] bytes = randomBytes(4 * IntegrityScrubber.SLICE_SIZE, 10);
+        store.add(1, bytes, false);
+        store.checkpoint = new long[]{1, 2L * IntegrityScrubber.SLICE_SIZE};
+        store.baseline = new byte[IntegrityScrubber.CHECKSUM_LENGTH];
+
+        assertTrue(new IntegrityScrubber(store, UNLIMITED, () -> false).run());
+        assertEquals(bytes.length, store.bytesRead);
+        assertArrayEquals(IntegrityScrubber.checksums(bytes), store.checksums.get(1));
+    }
+
+    @Test
+    public void pauseBeforeAFileDoesNotSkipIt() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        store.add(3, randomBytes(IntegrityScrubber.SLICE_SIZE, 6), true);
+        store.add(7, randomBytes(IntegrityScrubber.SLICE_SIZE, 7), true);
+        store.data.get(7)[0] ^= 1;
+
+        int[] asked = {0};
+        assertFalse(new IntegrityScrubber(store, UNLIMITED, () -> ++asked[0] > 1).run());
+        assertTrue(new IntegrityScrubber(store, UNLIMITED, () -> false).run());
+        assertTrue(store.corrupt.contains(7));
+    }
+
+    @Test
+    public void staysWithinByteBudget() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        store.add(1, randomBytes(8 * IntegrityScrubber.SLICE_SIZE, 8), true);
+        long budget = 8L * IntegrityScrubber.SLICE_SIZE * 4;
+
+        long start = System.nanoTime();
+        new IntegrityScrubber(store, budget, () -> false).run();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        // The last slice is due 250 ms after the start
+        assertTrue(elapsedMs >= 240);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
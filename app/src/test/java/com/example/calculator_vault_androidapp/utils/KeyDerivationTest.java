@@ -0,0 +1,77 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link KeyDerivation} and {@link SessionKeyHolder}.
+ */
+public class KeyDerivationTest {
+
+    @Test
+    public void matchesPlatformPbkdf2() throws GeneralSecurityException {
+        byte[] salt = "0123456789abcdef".getBytes();
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        byte[] expected = factory.generateSecret(
+                new PBEKeySpec("24680".toCharArray(), salt, 4096, 256)).getEncoded();
+
+        assertArrayEquals(expected, KeyDerivation.pbkdf2("24680".getBytes(), salt, 4096));
+    }
+
+    @Test
+    public void saltAndPinBothChangeTheKey() {
+        KeyDerivation.Params params = new KeyDerivation.Params(new byte[KeyDerivation.SALT_LENGTH], 1000);
+        byte[] key = KeyDerivation.derive("12345", params).getEncoded();
+
+        assertArrayEquals(key, KeyDerivation.derive("12345", params).getEncoded());
+        assertFalse(Arrays.equals(key, KeyDerivation.derive("12346", params).getEncoded()));
+        byte[] otherSalt = new byte[KeyDerivation.SALT_LENGTH];
+        otherSalt[0] = 1;
+        assertFalse(Arrays.equals(key,
+                KeyDerivation.derive("12345", new KeyDerivation.Params(otherSalt, 1000)).getEncoded()));
+    }
+
+    @Test
+    public void calibratedIterationsStayWithinBounds() {
+        int iterations = KeyDerivation.calibrate(100);
+        assertTrue(iterations >= KeyDerivation.MIN_ITERATIONS);
+        assertTrue(iterations <= KeyDerivation.MAX_ITERATIONS);
+
+        KeyDerivation.Params params = new KeyDerivation.Params(new byte[KeyDerivation.SALT_LENGTH], iterations);
+        assertArrayEquals(KeyDerivation.derive("12345", params).getEncoded(),
+                KeyDerivation.derive("12345", params).getEncoded());
+    }
+
+    @Test
+    public void lockingWipesTheSessionKey() {
+        SessionKeyHolder holder = new SessionKeyHolder();
+        SessionKey key = new SessionKey(new byte[]{1, 2, 3, 4});
+        holder.open(7, key);
+        assertTrue(holder.isOpen(7));
+        assertFalse(holder.isOpen(1));
+        assertSame(key, holder.get(7));
+
+        holder.wipe();
+        assertFalse(holder.isOpen(7));
+        assertTrue(key.isDestroyed());
+        try {
+            key.getEncoded();
+            fail("Destroyed key must not be readable");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        try {
+            holder.get(7);
+            fail("Locked vault must have no key");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_areContiguousAndOrdered() {
+        int previous = -1;
+        for (long micros = 0; micros < 1_000_000; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(micros <= LatencyHistogram.upperBoundOf(bucket));
+            previous = bucket;
+        }
+        assertEquals(LatencyHistogram.bucketOf(Long.MAX_VALUE), LatencyHistogram.bucketOf(1L << 40));
+    }
+
+    @Test
+    public void quantiles_areWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram(16_666_667L);
+        Random random = new Random(3);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // Mostly a few ms with a long tail
+            values[i] = (long) (2_000_000 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[] {0.5, 0.95, 0.99}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            long estimate = histogram.getQuantileNanos(q);
+            assertTrue(q + ": " + estimate + " vs " + exact, estimate >= exact);
+            assertTrue(q + ": " + estimate + " vs " + exact, estimate <= exact * 1.07 + 1000);
+        }
+        assertEquals(values[values.length - 1], histogram.getMaxNanos());
+        assertEquals(100_000, histogram.getCount());
+
+        long janky = 0;
+        for (long value : values) if (value > 16_666_667L) janky++;
+        assertEquals(janky, histogram.getJankCount());
+
+        histogram.clear();
+        assertEquals(0, histogram.getQuantileNanos(0.5));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link PinMatcher}.
+ */
+public class PinMatcherTest {
+
+    private static final PinVerifier VERIFIER = new PinVerifier(
+            new SecretKeySpec("pin matcher test key".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+
+    private static PinMatcher newMatcher() {
+        PinMatcher matcher = new PinMatcher();
+        matcher.setVerifier(VERIFIER);
+        return matcher;
+    }
+
+    private static boolean type(PinMatcher matcher, String digits) {
+        boolean matched = false;
+        for (int i = 0; i < digits.length(); i++) {
+            matched = matcher.onDigit(digits.charAt(i));
+        }
+        return matched;
+    }
+
+    private static Map<Integer, String> single(String hash) {
+        Map<Integer, String> hashes = new HashMap<>();
+        hashes.put(1, hash);
+        return hashes;
+    }
+
+    @Test
+    public void matchesPinAnywhereInLongerNumber() {
+        PinMatcher matcher = newMatcher();
+        matcher.setPinHash(1, VERIFIER.hash("24680"));
+
+        assertFalse(type(matcher, "2468"));
+        assertTrue(matcher.onDigit('0'));
+        assertEquals("24680", matcher.getWindow());
+
+        matcher.reset();
+        assertTrue(type(matcher, "91324680"));
+        assertFalse(matcher.onDigit('1'));
+
+        // An operator in between breaks the run
+        matcher.reset();
+        type(matcher, "24");
+        matcher.reset();
+        assertFalse(type(matcher, "680"));
+    }
+
+    @Test
+    public void backspaceRemovesNewestDigit() {
+        PinMatcher matcher = newMatcher();
+        matcher.setPinHash(1, VERIFIER.hash("11112"));
+
+        type(matcher, "11113");
+        matcher.backspace();
+        assertTrue(matcher.onDigit('2'));
+
+        // Digits pushed out of the ring are forgotten rather than guessed
+        matcher.reset();
+        type(matcher, "1111111111");
+        for (int i = 0; i < 8; i++) matcher.backspace();
+        assertFalse(type(matcher, "112"));
+        assertTrue(type(matcher, "11112"));
+    }
+
+    @Test
+    public void hashIsLoadedOnceAndReplacedOnChange() {
+        PinMatcher matcher = newMatcher();
+        assertFalse(type(matcher, "12345"));
+        assertFalse(matcher.isLoaded());
+
+        matcher.loadPinHashes(single(VERIFIER.hash("12345")));
+        assertTrue(matcher.isLoaded());
+        assertTrue(type(matcher, "12345"));
+
+        matcher.setPinHash(1, VERIFIER.hash("54321"));
+        matcher.loadPinHashes(single(VERIFIER.hash("12345")));
+        assertFalse(type(matcher, "12345"));
+        assertTrue(type(matcher, "54321"));
+
+        matcher.setPinHash(1, null);
+        assertFalse(type(matcher, "54321"));
+    }
+
+    @Test
+    public void hashesUnderAnotherKeyDoNotMatch() {
+        PinVerifier other = new PinVerifier(
+                new SecretKeySpec("another key".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        PinMatcher matcher = newMatcher();
+        matcher.setPinHash(1, other.hash("13579"));
+        assertFalse(type(matcher, "13579"));
+    }
+
+    @Test
+    public void eachProfileIsFoundByItsOwnPin() {
+        PinMatcher matcher = newMatcher();
+        Map<Integer, String> hashes = new HashMap<>();
+        for (int profile = 1; profile <= 200; profile++) {
+            hashes.put(profile, VERIFIER.hash(String.format("%05d", profile * 7)));
+        }
+        matcher.loadPinHashes(hashes);
+
+        for (int profile = 1; profile <= 200; profile++) {
+            matcher.reset();
+            assertTrue(type(matcher, String.format("%05d", profile * 7)));
+            assertEquals(profile, matcher.getMatchedProfile());
+        }
+        matcher.reset();
+        assertFalse(type(matcher, "00008"));
+
+        // Removing a decoy leaves the others in place
+        matcher.setPinHash(2, null);
+        matcher.reset();
+        assertFalse(type(matcher, "00014"));
+        assertTrue(type(matcher, "00021"));
+        assertEquals(3, matcher.getMatchedProfile());
+    }
+
+    @Test
+    public void manyProfilesEachMatchTheirOwnPin() {
+        PinMatcher matcher = newMatcher();
+        Map<Integer, String> hashes = new HashMap<>();
+        for (int profile = 1; profile <= 1000; profile++) {
+            hashes.put(profile, VERIFIER.hash(String.format("%05d", profile)));
+        }
+        matcher.loadPinHashes(hashes);
+
+        for (int profile = 1; profile <= 1000; profile += 37) {
+            matcher.reset();
+            assertTrue(type(matcher, String.format("%05d", profile)));
+            assertEquals(profile, matcher.getMatchedProfile());
+        }
+        matcher.reset();
+        assertFalse(type(matcher, "99999"));
+    }
+}
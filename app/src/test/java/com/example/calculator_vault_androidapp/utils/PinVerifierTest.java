@@ -0,0 +1,71 @@
+package com.example.calculator_vault_androidapp.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link PinVerifier}.
+ */
+public class PinVerifierTest {
+
+    private static PinVerifier verifier(String key) {
+        return new PinVerifier(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    }
+
+    @Test
+    public void verifiesOnlyTheSamePinUnderTheSameKey() {
+        PinVerifier verifier = verifier("first key");
+        String stored = verifier.hash("24680");
+
+        assertTrue(verifier.verify("24680", stored));
+        assertFalse(verifier.verify("24681", stored));
+        assertFalse(verifier("second key").verify("24680", stored));
+        assertFalse(verifier.verify("24680", null));
+        assertFalse(verifier.verify(null, stored));
+    }
+
+    @Test
+    public void rawKeyBytesActAsAnHmacKey() {
+        byte[] key = PinVerifier.newKey();
+        assertEquals(PinVerifier.KEY_LENGTH, key.length);
+        assertFalse(Arrays.equals(key, PinVerifier.newKey()));
+
+        String stored = new PinVerifier(key).hash("24680");
+        assertTrue(new PinVerifier(new SecretKeySpec(key, "HmacSHA256")).verify("24680", stored));
+    }
+
+    @Test
+    public void storedValueIsNotThePlainHash() throws Exception {
+        String plain = toHex(MessageDigest.getInstance("SHA-256").digest("24680".getBytes(StandardCharsets.UTF_8)));
+        String stored = verifier("first key").hash("24680");
+
+        assertEquals(64, stored.length());
+        assertNotEquals(plain, stored);
+        assertNull(PinVerifier.recoverLegacyPin(stored));
+    }
+
+    @Test
+    public void legacyHashesGiveBackTheirPin() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (String pin : new String[]{"00000", "01234", "99999"}) {
+            String legacy = toHex(digest.digest(pin.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(pin, PinVerifier.recoverLegacyPin(legacy));
+        }
+        assertNull(PinVerifier.recoverLegacyPin(null));
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}